@@ -0,0 +1,72 @@
+package httpclientLearn.benchmark;
+
+import httpclientLearn.async.AsyncHttpClientHelper;
+import httpclientLearn.dto.HttpResult;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * AsyncHttpClientHelper一次并发发出fanOut个请求并等待全部完成的耗时
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AsyncFanOutBenchmark {
+
+    @Param({ "1", "16", "128" })
+    public int fanOut;
+
+    private BenchmarkServer server;
+    private AsyncHttpClientHelper helper;
+    private String uri;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkClients.init();
+        server = new BenchmarkServer(false).start();
+        helper = AsyncHttpClientHelper.getInstance(BenchmarkClients.ASYNC);
+        uri = server.getBaseUri() + "/bytes?n=1024";
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Benchmark
+    public List<HttpResult> fanOut() throws InterruptedException, ExecutionException {
+        List<ListenableFuture<HttpResult>> futures = new ArrayList<ListenableFuture<HttpResult>>(fanOut);
+        for (int i = 0; i < fanOut; i++) {
+            futures.add(helper.get(uri));
+        }
+        List<HttpResult> results = Futures.allAsList(futures).get();
+        for (HttpResult result : results) {
+            SyncClientBenchmark.check(result);
+        }
+        return results;
+    }
+}
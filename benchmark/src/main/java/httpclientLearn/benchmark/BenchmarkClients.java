@@ -0,0 +1,46 @@
+package httpclientLearn.benchmark;
+
+import javax.net.ssl.SSLContext;
+
+import config.ClientConfig;
+import httpclientLearn.registry.ClientRegistry;
+import httpclientLearn.ssl.SSLClientPool;
+
+/**
+ * 基准测试使用的命名client
+ *
+ * 连接池放大到不会成为瓶颈，测量的是请求/响应本身的开销而不是排队等待连接
+ */
+final class BenchmarkClients {
+
+    static final String HTTP = "bench-http";
+    static final String HTTPS = "bench-https";
+    static final String ASYNC = "bench-async";
+    /** executeAll使用虚拟线程的同步client */
+    static final String VIRTUAL = "bench-virtual";
+    /** 默认的每个route 20个连接，与HTTP/2对比 */
+    static final String HTTPS_ROUTE_LIMITED = "bench-https-20";
+    static final String H2 = "bench-h2";
+
+    private static final int POOL_SIZE = 512;
+
+    static {
+        // 同步和异步共用一个SSLContext，TLS会话缓存也随之共享
+        SSLContext tls = SSLClientPool.createTrustAllContext();
+        ClientRegistry.register(ClientConfig.custom(HTTP).setMaxTotal(POOL_SIZE).setDefaultMaxPerRoute(POOL_SIZE).build());
+        ClientRegistry.register(ClientConfig.custom(HTTPS).setMaxTotal(POOL_SIZE).setDefaultMaxPerRoute(POOL_SIZE).setSslContext(tls).build());
+        ClientRegistry.register(ClientConfig.custom(VIRTUAL).setMaxTotal(POOL_SIZE).setDefaultMaxPerRoute(POOL_SIZE).setVirtualThreads(true).build());
+        ClientRegistry.register(ClientConfig.custom(HTTPS_ROUTE_LIMITED).setSslContext(tls).build());
+        ClientRegistry.register(ClientConfig.custom(H2).setHttp2(true).setMaxConcurrentStreams(H2BenchmarkServer.MAX_CONCURRENT_STREAMS).setSslContext(tls).build());
+        ClientRegistry.register(ClientConfig.custom(ASYNC).setMaxTotal(POOL_SIZE).setDefaultMaxPerRoute(POOL_SIZE).setSslContext(tls).build());
+    }
+
+    private BenchmarkClients() {
+    }
+
+    /**
+     * 触发静态注册，同一个fork内可以重复调用
+     */
+    static void init() {
+    }
+}
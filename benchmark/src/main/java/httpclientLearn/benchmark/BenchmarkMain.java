@@ -0,0 +1,40 @@
+package httpclientLearn.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * benchmarks.jar的入口
+ *
+ * 不带参数时按默认矩阵运行：同步get/post、TLS开销和HTTP/2对比分别在 -Dthreads=1,4,16,64 个并发线程下运行，其余benchmark单线程运行；
+ * 带参数时等同于JMH自带的命令行，例如 java -jar benchmarks.jar PopulateBenchmark -t 4
+ */
+public class BenchmarkMain {
+
+    /** 需要在多个并发度下运行的benchmark */
+    private static final String CONCURRENT = "SyncClientBenchmark|TlsOverheadBenchmark|Http2Benchmark";
+    private static final String SINGLE = "AsyncFanOutBenchmark|PopulateBenchmark|RequestBuildBenchmark|VirtualThreadBenchmark";
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        if (args.length > 0) {
+            new Runner(new CommandLineOptions(args)).run();
+            return;
+        }
+
+        List<RunResult> results = new ArrayList<RunResult>();
+        for (String threads : System.getProperty("threads", "1,4,16,64").split(",")) {
+            Options options = new OptionsBuilder().include(CONCURRENT).threads(Integer.parseInt(threads.trim())).build();
+            results.addAll(new Runner(options).run());
+        }
+        results.addAll(new Runner(new OptionsBuilder().include(SINGLE).threads(1).build()).run());
+        System.out.println(results.size() + " benchmark runs finished");
+    }
+}
@@ -0,0 +1,126 @@
+package httpclientLearn.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.bootstrap.HttpServer;
+import org.apache.http.impl.bootstrap.ServerBootstrap;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.apache.http.ssl.SSLContexts;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * 基准测试使用的本地http/https服务，只监听回环地址，不依赖外网
+ *
+ * /bytes?n=N 返回N个字节，附带若干模拟的响应头，带上delay=毫秒数时先等待再响应，模拟慢的下游；/echo 原样返回请求体。
+ * https使用classpath中的自签名证书localhost.jks
+ */
+public class BenchmarkServer {
+
+    private static final String KEYSTORE = "/localhost.jks";
+    private static final char[] KEYSTORE_PASSWORD = "benchmark".toCharArray();
+    /** /bytes额外返回的响应头数量，接近常见网关的响应 */
+    static final int EXTRA_HEADERS = 12;
+
+    private final boolean https;
+    private HttpServer server;
+
+    public BenchmarkServer(boolean https) {
+        this.https = https;
+    }
+
+    public BenchmarkServer start() throws IOException {
+        ServerBootstrap bootstrap = ServerBootstrap.bootstrap().setListenerPort(0).setSocketConfig(SocketConfig.custom().setTcpNoDelay(true).setBacklogSize(1024).build())
+                .registerHandler("/bytes*", new BytesHandler()).registerHandler("/echo*", new EchoHandler());
+        if (https) {
+            bootstrap.setSslContext(serverSslContext());
+        }
+        server = bootstrap.create();
+        server.start();
+        return this;
+    }
+
+    public String getBaseUri() {
+        return (https ? "https" : "http") + "://localhost:" + server.getLocalPort();
+    }
+
+    public void stop() {
+        server.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    static SSLContext serverSslContext() throws IOException {
+        try {
+            KeyStore keyStore = KeyStore.getInstance("JKS");
+            InputStream in = BenchmarkServer.class.getResourceAsStream(KEYSTORE);
+            try {
+                keyStore.load(in, KEYSTORE_PASSWORD);
+            } finally {
+                in.close();
+            }
+            return SSLContexts.custom().loadKeyMaterial(keyStore, KEYSTORE_PASSWORD).build();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("load " + KEYSTORE + " failed", e);
+        }
+    }
+
+    private static class BytesHandler implements HttpRequestHandler {
+
+        // 同样大小的响应体只生成一次，避免服务端开销干扰客户端的测量
+        private final ConcurrentMap<Integer, byte[]> payloads = new ConcurrentHashMap<Integer, byte[]>();
+
+        @Override
+        public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+            String uri = request.getRequestLine().getUri();
+            int index = uri.indexOf("n=");
+            int n = index < 0 ? 0 : Integer.parseInt(uri.substring(index + 2).split("&")[0]);
+            index = uri.indexOf("delay=");
+            if (index >= 0) {
+                try {
+                    Thread.sleep(Long.parseLong(uri.substring(index + 6).split("&")[0]));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            byte[] body = payloads.get(n);
+            if (body == null) {
+                body = new byte[n];
+                for (int i = 0; i < n; i++) {
+                    body[i] = (byte) ('a' + i % 26);
+                }
+                payloads.putIfAbsent(n, body);
+            }
+            for (int i = 0; i < EXTRA_HEADERS; i++) {
+                response.addHeader("X-Bench-" + i, "value-" + i);
+            }
+            response.setEntity(new ByteArrayEntity(body, ContentType.TEXT_PLAIN));
+        }
+    }
+
+    private static class EchoHandler implements HttpRequestHandler {
+
+        @Override
+        public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+            if (request instanceof HttpEntityEnclosingRequest && ((HttpEntityEnclosingRequest) request).getEntity() != null) {
+                byte[] body = EntityUtils.toByteArray(((HttpEntityEnclosingRequest) request).getEntity());
+                response.setEntity(new ByteArrayEntity(body, ContentType.APPLICATION_OCTET_STREAM));
+            } else {
+                response.setEntity(new ByteArrayEntity(new byte[0], ContentType.APPLICATION_OCTET_STREAM));
+            }
+        }
+    }
+}
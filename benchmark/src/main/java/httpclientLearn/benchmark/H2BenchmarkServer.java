@@ -0,0 +1,198 @@
+package httpclientLearn.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocket;
+
+/**
+ * 基准测试使用的本地HTTP/2服务(h2 over TLS，ALPN)，只实现基准测试需要的最小子集，需要Java 9+
+ *
+ * 不解码请求头，每个请求在delay毫秒后返回payloadSize个字节(不超过默认的64KB流量控制窗口)；
+ * SETTINGS中声明的并发stream上限为 {@link #MAX_CONCURRENT_STREAMS}
+ */
+public class H2BenchmarkServer {
+
+    static final int MAX_CONCURRENT_STREAMS = 100;
+
+    private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final int DATA = 0x0;
+    private static final int HEADERS = 0x1;
+    private static final int SETTINGS = 0x4;
+    private static final int PING = 0x6;
+    private static final int GOAWAY = 0x7;
+    private static final int WINDOW_UPDATE = 0x8;
+    private static final int END_STREAM = 0x1;
+    private static final int ACK = 0x1;
+    private static final int END_HEADERS = 0x4;
+
+    private final byte[] payload;
+    private final byte[] headerBlock;
+    private final long delay;
+    private final Set<Socket> sockets = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+    private final ScheduledExecutorService responder = Executors.newScheduledThreadPool(4);
+    private SSLServerSocket serverSocket;
+
+    public H2BenchmarkServer(int payloadSize, long delay) {
+        this.payload = new byte[payloadSize];
+        for (int i = 0; i < payloadSize; i++) {
+            payload[i] = (byte) ('a' + i % 26);
+        }
+        this.delay = delay;
+        // :status 200取静态表第8项，content-length按不索引的字面量编码
+        byte[] name = "content-length".getBytes(StandardCharsets.US_ASCII);
+        byte[] value = String.valueOf(payloadSize).getBytes(StandardCharsets.US_ASCII);
+        this.headerBlock = new byte[4 + name.length + value.length];
+        headerBlock[0] = (byte) 0x88;
+        headerBlock[2] = (byte) name.length;
+        System.arraycopy(name, 0, headerBlock, 3, name.length);
+        headerBlock[3 + name.length] = (byte) value.length;
+        System.arraycopy(value, 0, headerBlock, 4 + name.length, value.length);
+    }
+
+    public H2BenchmarkServer start() throws IOException {
+        serverSocket = (SSLServerSocket) BenchmarkServer.serverSslContext().getServerSocketFactory().createServerSocket(0);
+        SSLParameters parameters = serverSocket.getSSLParameters();
+        try {
+            SSLParameters.class.getMethod("setApplicationProtocols", String[].class).invoke(parameters, (Object) new String[] { "h2" });
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("ALPN requires Java 9+", e);
+        }
+        serverSocket.setSSLParameters(parameters);
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!serverSocket.isClosed()) {
+                    try {
+                        final Socket socket = serverSocket.accept();
+                        socket.setTcpNoDelay(true);
+                        sockets.add(socket);
+                        Thread connection = new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                serve(socket);
+                            }
+                        }, "h2-bench-connection");
+                        connection.setDaemon(true);
+                        connection.start();
+                    } catch (IOException e) {
+                        // 服务停止
+                    }
+                }
+            }
+        }, "h2-bench-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return this;
+    }
+
+    public String getBaseUri() {
+        return "https://localhost:" + serverSocket.getLocalPort();
+    }
+
+    public void stop() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+        for (Socket socket : sockets) {
+            close(socket);
+        }
+        responder.shutdownNow();
+    }
+
+    private void serve(Socket socket) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            byte[] preface = new byte[PREFACE.length];
+            in.readFully(preface);
+            writeFrame(out, SETTINGS, 0, 0, new byte[] { 0, 0x3, 0, 0, 0, (byte) MAX_CONCURRENT_STREAMS });
+            while (true) {
+                int length = in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8 | in.readUnsignedByte();
+                int type = in.readUnsignedByte();
+                int flags = in.readUnsignedByte();
+                int stream = in.readInt() & 0x7fffffff;
+                byte[] frame = new byte[length];
+                in.readFully(frame);
+                if (type == SETTINGS && (flags & ACK) == 0) {
+                    writeFrame(out, SETTINGS, ACK, 0, new byte[0]);
+                } else if (type == PING && (flags & ACK) == 0) {
+                    writeFrame(out, PING, ACK, 0, frame);
+                } else if (type == HEADERS || type == DATA) {
+                    if (type == DATA && length > 0) {
+                        byte[] increment = { (byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length };
+                        writeFrame(out, WINDOW_UPDATE, 0, 0, increment);
+                        writeFrame(out, WINDOW_UPDATE, 0, stream, increment);
+                    }
+                    if ((flags & END_STREAM) != 0) {
+                        respond(out, stream);
+                    }
+                } else if (type == GOAWAY) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // 连接关闭
+        } finally {
+            sockets.remove(socket);
+            close(socket);
+        }
+    }
+
+    private void respond(final OutputStream out, final int stream) throws IOException {
+        Runnable response = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writeFrame(out, HEADERS, END_HEADERS, stream, headerBlock);
+                    writeFrame(out, DATA, END_STREAM, stream, payload);
+                } catch (IOException e) {
+                    // 连接已经关闭
+                }
+            }
+        };
+        if (delay > 0) {
+            responder.schedule(response, delay, TimeUnit.MILLISECONDS);
+        } else {
+            response.run();
+        }
+    }
+
+    private static void writeFrame(OutputStream out, int type, int flags, int stream, byte[] payload) throws IOException {
+        synchronized (out) {
+            out.write(payload.length >>> 16);
+            out.write(payload.length >>> 8);
+            out.write(payload.length);
+            out.write(type);
+            out.write(flags);
+            out.write(stream >>> 24);
+            out.write(stream >>> 16);
+            out.write(stream >>> 8);
+            out.write(stream);
+            out.write(payload);
+            out.flush();
+        }
+    }
+
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package httpclientLearn.benchmark;
+
+import httpclientLearn.dto.HttpResult;
+import httpclientLearn.simple.HttpClientHelper;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 服务端每个响应等待5ms时，HTTP/1.1连接池(每个route 20个连接)与HTTP/2多路复用(每个host 100个stream)的同步get吞吐和延迟
+ *
+ * 两者都走TLS。并发度由运行时的线程数(-t)决定，见 {@link BenchmarkMain}：并发超过20时HTTP/1.1的请求排队等待连接，HTTP/2只用一个连接。
+ * HTTP/2需要Java 11+，更低的版本上h2退回HTTP/1.1，结果没有意义。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Http2Benchmark {
+
+    private static final int PAYLOAD_SIZE = 1024;
+    private static final int SERVER_DELAY = 5;
+
+    @Param({ "http1", "h2" })
+    public String transport;
+
+    private BenchmarkServer server;
+    private H2BenchmarkServer h2Server;
+    private HttpClientHelper helper;
+    private String uri;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkClients.init();
+        if ("h2".equals(transport)) {
+            h2Server = new H2BenchmarkServer(PAYLOAD_SIZE, SERVER_DELAY).start();
+            helper = HttpClientHelper.getInstance(BenchmarkClients.H2);
+            uri = h2Server.getBaseUri() + "/bytes";
+        } else {
+            server = new BenchmarkServer(true).start();
+            helper = HttpClientHelper.getInstance(BenchmarkClients.HTTPS_ROUTE_LIMITED);
+            uri = server.getBaseUri() + "/bytes?n=" + PAYLOAD_SIZE + "&delay=" + SERVER_DELAY;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (server != null) {
+            server.stop();
+        }
+        if (h2Server != null) {
+            h2Server.stop();
+        }
+    }
+
+    @Benchmark
+    public HttpResult get() {
+        return SyncClientBenchmark.check(helper.get(uri));
+    }
+}
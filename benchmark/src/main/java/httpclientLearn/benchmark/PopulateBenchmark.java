@@ -0,0 +1,82 @@
+package httpclientLearn.benchmark;
+
+import httpclientLearn.dto.HttpResult;
+import httpclientLearn.simple.BaseHttpClientHelper;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHttpResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * populate()把响应头和响应体拷贝进HttpResult的开销，不经过网络
+ *
+ * ByteArrayEntity可以重复读取，同一个响应对象在每次调用中复用
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PopulateBenchmark {
+
+    @Param({ "4", "32" })
+    public int headerCount;
+
+    @Param({ "128", "16384" })
+    public int payloadSize;
+
+    @Param({ "false", "true" })
+    public boolean pooledBuffers;
+
+    private HttpResponse response;
+    private ExposedHelper helper;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        for (int i = 0; i < headerCount; i++) {
+            response.addHeader("X-Bench-" + i, "value-" + i);
+        }
+        response.setEntity(new ByteArrayEntity(new byte[payloadSize], ContentType.APPLICATION_JSON));
+        helper = new ExposedHelper();
+    }
+
+    @Benchmark
+    public HttpResult populate() throws IOException {
+        HttpResult result = new HttpResult(HttpVersion.HTTP_1_1, 200, "OK");
+        helper.populate(response, result, pooledBuffers);
+        // 归还池化buffer，否则测到的是buffer池耗尽后的分配开销
+        result.release();
+        return result;
+    }
+
+    private static class ExposedHelper extends BaseHttpClientHelper {
+
+        ExposedHelper() {
+            super(BenchmarkClients.HTTP);
+        }
+
+        @Override
+        public void populate(HttpResponse response, HttpResult result, boolean pooledBuffers) throws IOException {
+            super.populate(response, result, pooledBuffers);
+        }
+    }
+}
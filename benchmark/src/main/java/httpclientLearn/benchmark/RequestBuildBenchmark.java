@@ -0,0 +1,83 @@
+package httpclientLearn.benchmark;
+
+import httpclientLearn.registry.ClientRegistry;
+import httpclientLearn.registry.PooledHttpClient;
+import httpclientLearn.simple.BaseHttpClientHelper;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * buildRequest()里RequestBuilder的参数编码开销：get编码进uri，post编码成form表单
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBuildBenchmark {
+
+    @Param({ "0", "4", "32" })
+    public int paramCount;
+
+    private PooledHttpClient client;
+    private ExposedHelper helper;
+    private Map<String, String> headers;
+    private Map<String, Object> parameters;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkClients.init();
+        client = ClientRegistry.getClient(BenchmarkClients.HTTP);
+        helper = new ExposedHelper();
+        headers = new LinkedHashMap<String, String>();
+        headers.put("Accept", "application/json");
+        headers.put("X-Request-Id", "0123456789abcdef");
+        parameters = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < paramCount; i++) {
+            // 包含需要转义的字符
+            parameters.put("key" + i, "value " + i + "&=/中文");
+        }
+    }
+
+    @Benchmark
+    public HttpUriRequest get() {
+        return helper.buildRequest(client, RequestBuilder.get(), "http://localhost:8080/bench/path", headers, parameters, null);
+    }
+
+    @Benchmark
+    public HttpUriRequest post() {
+        return helper.buildRequest(client, RequestBuilder.post(), "http://localhost:8080/bench/path", headers, parameters, null);
+    }
+
+    private static class ExposedHelper extends BaseHttpClientHelper {
+
+        ExposedHelper() {
+            super(BenchmarkClients.HTTP);
+        }
+
+        @Override
+        public HttpUriRequest buildRequest(PooledHttpClient client, RequestBuilder requestBuilder, String uri, Map<String, String> headers, Map<String, Object> parameters,
+                HttpEntity entity) {
+            return super.buildRequest(client, requestBuilder, uri, headers, parameters, entity);
+        }
+    }
+}
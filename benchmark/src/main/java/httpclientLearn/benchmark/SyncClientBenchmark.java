@@ -0,0 +1,74 @@
+package httpclientLearn.benchmark;
+
+import httpclientLearn.dto.HttpResult;
+import httpclientLearn.simple.HttpClientHelper;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * HttpClientHelper同步get/post的吞吐和延迟，并发度由运行时的线程数(-t)决定，见 {@link BenchmarkMain}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SyncClientBenchmark {
+
+    @Param({ "128", "16384" })
+    public int payloadSize;
+
+    private BenchmarkServer server;
+    private HttpClientHelper helper;
+    private String getUri;
+    private String postUri;
+    private byte[] body;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkClients.init();
+        server = new BenchmarkServer(false).start();
+        helper = HttpClientHelper.getInstance(BenchmarkClients.HTTP);
+        getUri = server.getBaseUri() + "/bytes?n=" + payloadSize;
+        postUri = server.getBaseUri() + "/echo";
+        body = new byte[payloadSize];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Benchmark
+    public HttpResult get() {
+        return check(helper.get(getUri));
+    }
+
+    @Benchmark
+    public HttpResult post() {
+        return check(helper.post(postUri, body));
+    }
+
+    static HttpResult check(HttpResult result) {
+        if (result == null || result.getStatusCode() != 200) {
+            throw new IllegalStateException("unexpected result " + result);
+        }
+        return result;
+    }
+}
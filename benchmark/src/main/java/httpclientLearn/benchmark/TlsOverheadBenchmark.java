@@ -0,0 +1,70 @@
+package httpclientLearn.benchmark;
+
+import httpclientLearn.dto.HttpResult;
+import httpclientLearn.simple.BaseHttpClientHelper;
+import httpclientLearn.simple.HttpClientHelper;
+import httpclientLearn.ssl.HttpsClientHelper;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * HttpsClientHelper相对HttpClientHelper的额外开销
+ *
+ * keepAlive=true时握手被连接复用摊薄，只剩加解密；keepAlive=false时每次请求都重新建连和握手
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TlsOverheadBenchmark {
+
+    @Param({ "http", "https" })
+    public String scheme;
+
+    @Param({ "true", "false" })
+    public boolean keepAlive;
+
+    private BenchmarkServer server;
+    private BaseHttpClientHelper helper;
+    private String uri;
+    private Map<String, String> headers;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkClients.init();
+        boolean https = "https".equals(scheme);
+        server = new BenchmarkServer(https).start();
+        helper = https ? HttpsClientHelper.getInstance(BenchmarkClients.HTTPS) : HttpClientHelper.getInstance(BenchmarkClients.HTTP);
+        uri = server.getBaseUri() + "/bytes?n=1024";
+        headers = keepAlive ? null : Collections.singletonMap("Connection", "close");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Benchmark
+    public HttpResult get() {
+        return SyncClientBenchmark.check(helper.get(uri, headers));
+    }
+}
@@ -0,0 +1,98 @@
+package httpclientLearn.benchmark;
+
+import httpclientLearn.dto.BulkItem;
+import httpclientLearn.dto.BulkResult;
+import httpclientLearn.dto.HttpRequestSpec;
+import httpclientLearn.simple.HttpClientHelper;
+import httpclientLearn.simple.VirtualThreads;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 同步helper的executeAll一次发出requests个慢请求(服务端等待50ms)并等待全部完成的耗时，对比平台线程和虚拟线程
+ *
+ * 每个请求占用一个线程，并发度等于请求数，连接池上限512，超出的请求阻塞在租借连接上。
+ * 结束时打印峰值线程数和堆占用；内存的详细对比可以加上 -prof gc，或者 -jvmArgsAppend -XX:NativeMemoryTracking=summary 后用jcmd查看线程栈占用。
+ * 在JDK 21以下virtual退回到平台线程，两组结果相同。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VirtualThreadBenchmark {
+
+    /** 服务端每个响应等待的毫秒数 */
+    private static final int SERVER_DELAY = 50;
+
+    @Param({ "platform", "virtual" })
+    public String mode;
+
+    @Param({ "10000" })
+    public int requests;
+
+    private BenchmarkServer server;
+    private HttpClientHelper helper;
+    private List<HttpRequestSpec> specs;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkClients.init();
+        server = new BenchmarkServer(false).start();
+        helper = HttpClientHelper.getInstance("virtual".equals(mode) ? BenchmarkClients.VIRTUAL : BenchmarkClients.HTTP);
+        String uri = server.getBaseUri() + "/bytes?n=1024&delay=" + SERVER_DELAY;
+        specs = new ArrayList<HttpRequestSpec>(requests);
+        for (int i = 0; i < requests; i++) {
+            specs.add(HttpRequestSpec.get(uri));
+        }
+        ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        System.out.println();
+        System.out.println("mode=" + mode + (VirtualThreads.isSupported() ? "" : " (virtual threads not supported, platform threads used)") + " peakThreads="
+                + threads.getPeakThreadCount() + " heapUsed=" + (heap.getUsed() >> 20) + "MB heapCommitted=" + (heap.getCommitted() >> 20) + "MB");
+    }
+
+    @Benchmark
+    public int executeAll() {
+        BulkResult result = helper.executeAll(specs, requests, System.currentTimeMillis() + 60000);
+        try {
+            if (result.getSuccessCount() != requests) {
+                for (BulkItem item : result.getItems()) {
+                    if (!item.isSuccess()) {
+                        throw new IllegalStateException("request failed: " + item);
+                    }
+                }
+            }
+            return result.getSuccessCount();
+        } finally {
+            result.release();
+        }
+    }
+}
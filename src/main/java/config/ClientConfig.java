@@ -0,0 +1,1006 @@
+package config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.routing.HttpRoute;
+
+import httpclientLearn.admission.AdmissionPolicy;
+import httpclientLearn.codec.JacksonCodec;
+import httpclientLearn.codec.JsonCodec;
+
+/**
+ * 单个命名客户端的配置：连接池大小、超时、SSL等
+ *
+ * 通过 {@link #custom(String)} 创建，一旦build之后不可变
+ */
+public class ClientConfig {
+
+    private final String name;
+    private final int maxTotal;
+    private final int defaultMaxPerRoute;
+    private final int connectTimeout;
+    private final int socketTimeout;
+    private final int connectionRequestTimeout;
+    private final long idleTimeout;
+    private final long monitorPeriod;
+    private final int maxHeaderCount;
+    private final int maxLineLength;
+    private final SSLContext sslContext;
+    private final boolean pooledBuffers;
+    private final boolean adaptiveRouteSizing;
+    private final int minPerRoute;
+    private final int maxPerRoute;
+    private final long adaptivePeriod;
+    private final long leaseWaitThreshold;
+    private final long responseCacheSize;
+    private final boolean coalescing;
+    private final int maxRetries;
+    private final long retryBackoff;
+    private final double retryBudgetRatio;
+    private final int retryBudgetCapacity;
+    private final double hedgePercentile;
+    private final long hedgeMinDelay;
+    private final double breakerFailureRate;
+    private final double breakerSlowCallRate;
+    private final long breakerSlowCallDuration;
+    private final int breakerWindowSize;
+    private final int breakerMinimumCalls;
+    private final long breakerOpenDuration;
+    private final int breakerHalfOpenProbes;
+    private final boolean contentCompression;
+    private final int requestCompressionThreshold;
+    private final int tlsSessionCacheSize;
+    private final int tlsSessionTimeout;
+    private final List<WarmRoute> warmRoutes;
+    private final DnsResolver dnsResolver;
+    private final long dnsTtl;
+    private final long dnsFailureCooldown;
+    private final long connectRaceDelay;
+    private final int maxInFlight;
+    private final int maxInFlightPerRoute;
+    private final AdmissionPolicy admissionPolicy;
+    private final long admissionTimeout;
+    private final boolean virtualThreads;
+    private final boolean http2;
+    private final int maxConcurrentStreams;
+    private final int http2WindowSize;
+    private final List<RouteConfig> routes;
+    private final JsonCodec jsonCodec;
+
+    private ClientConfig(Builder builder) {
+        this.name = builder.name;
+        this.maxTotal = builder.maxTotal;
+        this.defaultMaxPerRoute = builder.defaultMaxPerRoute;
+        this.connectTimeout = builder.connectTimeout;
+        this.socketTimeout = builder.socketTimeout;
+        this.connectionRequestTimeout = builder.connectionRequestTimeout;
+        this.idleTimeout = builder.idleTimeout;
+        this.monitorPeriod = builder.monitorPeriod;
+        this.maxHeaderCount = builder.maxHeaderCount;
+        this.maxLineLength = builder.maxLineLength;
+        this.sslContext = builder.sslContext;
+        this.pooledBuffers = builder.pooledBuffers;
+        this.adaptiveRouteSizing = builder.adaptiveRouteSizing;
+        this.minPerRoute = builder.minPerRoute;
+        this.maxPerRoute = builder.maxPerRoute > 0 ? builder.maxPerRoute : builder.maxTotal;
+        this.adaptivePeriod = builder.adaptivePeriod;
+        this.leaseWaitThreshold = builder.leaseWaitThreshold;
+        this.responseCacheSize = builder.responseCacheSize;
+        this.coalescing = builder.coalescing;
+        this.maxRetries = builder.maxRetries;
+        this.retryBackoff = builder.retryBackoff;
+        this.retryBudgetRatio = builder.retryBudgetRatio;
+        this.retryBudgetCapacity = builder.retryBudgetCapacity;
+        this.hedgePercentile = builder.hedgePercentile;
+        this.hedgeMinDelay = builder.hedgeMinDelay;
+        this.breakerFailureRate = builder.breakerFailureRate;
+        this.breakerSlowCallRate = builder.breakerSlowCallRate;
+        this.breakerSlowCallDuration = builder.breakerSlowCallDuration;
+        this.breakerWindowSize = builder.breakerWindowSize;
+        this.breakerMinimumCalls = builder.breakerMinimumCalls;
+        this.breakerOpenDuration = builder.breakerOpenDuration;
+        this.breakerHalfOpenProbes = builder.breakerHalfOpenProbes;
+        this.contentCompression = builder.contentCompression;
+        this.requestCompressionThreshold = builder.requestCompressionThreshold;
+        this.tlsSessionCacheSize = builder.tlsSessionCacheSize;
+        this.tlsSessionTimeout = builder.tlsSessionTimeout;
+        this.warmRoutes = Collections.unmodifiableList(new ArrayList<WarmRoute>(builder.warmRoutes));
+        this.dnsResolver = builder.dnsResolver;
+        this.dnsTtl = builder.dnsTtl;
+        this.dnsFailureCooldown = builder.dnsFailureCooldown;
+        this.connectRaceDelay = builder.connectRaceDelay;
+        this.maxInFlight = builder.maxInFlight;
+        this.maxInFlightPerRoute = builder.maxInFlightPerRoute;
+        this.admissionPolicy = builder.admissionPolicy;
+        this.admissionTimeout = builder.admissionTimeout;
+        this.virtualThreads = builder.virtualThreads;
+        this.http2 = builder.http2;
+        this.maxConcurrentStreams = builder.maxConcurrentStreams;
+        this.http2WindowSize = builder.http2WindowSize;
+        this.routes = Collections.unmodifiableList(new ArrayList<RouteConfig>(builder.routes.values()));
+        this.jsonCodec = builder.jsonCodec;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public int getDefaultMaxPerRoute() {
+        return defaultMaxPerRoute;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public int getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    public int getConnectionRequestTimeout() {
+        return connectionRequestTimeout;
+    }
+
+    /**
+     * 空闲连接的最长保留时间(ms)
+     */
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * 过期/空闲连接清理任务的执行周期(ms)
+     */
+    public long getMonitorPeriod() {
+        return monitorPeriod;
+    }
+
+    public int getMaxHeaderCount() {
+        return maxHeaderCount;
+    }
+
+    public int getMaxLineLength() {
+        return maxLineLength;
+    }
+
+    /**
+     * @return 自定义的SSLContext，为null时使用系统默认配置
+     */
+    public SSLContext getSslContext() {
+        return sslContext;
+    }
+
+    /**
+     * @return 响应体是否读入BufferPool中的buffer，调用方需要release HttpResult
+     */
+    public boolean isPooledBuffers() {
+        return pooledBuffers;
+    }
+
+    /**
+     * @return 是否根据等待连接的情况自动调整每个route的连接数上限
+     */
+    public boolean isAdaptiveRouteSizing() {
+        return adaptiveRouteSizing;
+    }
+
+    /**
+     * 自动调整时每个route连接数的下限
+     */
+    public int getMinPerRoute() {
+        return minPerRoute;
+    }
+
+    /**
+     * 自动调整时每个route连接数的上限，未设置时等于maxTotal
+     */
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    /**
+     * 自动调整的执行周期(ms)
+     */
+    public long getAdaptivePeriod() {
+        return adaptivePeriod;
+    }
+
+    /**
+     * 一个周期内平均获取连接等待时间超过该值(ms)时扩大route的上限
+     */
+    public long getLeaseWaitThreshold() {
+        return leaseWaitThreshold;
+    }
+
+    /**
+     * @return 同步GET响应缓存的最大字节数，0表示不缓存
+     */
+    public long getResponseCacheSize() {
+        return responseCacheSize;
+    }
+
+    /**
+     * @return 是否合并相同的并发GET/HEAD请求
+     */
+    public boolean isCoalescing() {
+        return coalescing;
+    }
+
+    /**
+     * @return 幂等请求失败后的最大重试次数，0表示不重试
+     */
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * 两次重试之间的等待时间(ms)
+     */
+    public long getRetryBackoff() {
+        return retryBackoff;
+    }
+
+    /**
+     * @return 每个请求为重试预算存入的令牌数，例如0.1表示重试和对冲最多占请求数的10%
+     */
+    public double getRetryBudgetRatio() {
+        return retryBudgetRatio;
+    }
+
+    /**
+     * @return 重试预算最多积攒的令牌数
+     */
+    public int getRetryBudgetCapacity() {
+        return retryBudgetCapacity;
+    }
+
+    /**
+     * @return 请求耗时超过该百分位(例如95)时发出对冲请求，0表示不对冲
+     */
+    public double getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    /**
+     * 对冲请求的最小等待时间(ms)
+     */
+    public long getHedgeMinDelay() {
+        return hedgeMinDelay;
+    }
+
+    /**
+     * @return 滑动窗口内失败率(百分比)达到该值时熔断，0表示不按失败率熔断
+     */
+    public double getBreakerFailureRate() {
+        return breakerFailureRate;
+    }
+
+    /**
+     * @return 滑动窗口内慢调用率(百分比)达到该值时熔断，0表示不按慢调用率熔断
+     */
+    public double getBreakerSlowCallRate() {
+        return breakerSlowCallRate;
+    }
+
+    /**
+     * 耗时超过该值(ms)的调用记为慢调用
+     */
+    public long getBreakerSlowCallDuration() {
+        return breakerSlowCallDuration;
+    }
+
+    /**
+     * @return 每个host统计最近多少次调用
+     */
+    public int getBreakerWindowSize() {
+        return breakerWindowSize;
+    }
+
+    /**
+     * @return 窗口内调用次数不足该值时不熔断
+     */
+    public int getBreakerMinimumCalls() {
+        return breakerMinimumCalls;
+    }
+
+    /**
+     * 熔断打开后经过该时间(ms)进入半开状态
+     */
+    public long getBreakerOpenDuration() {
+        return breakerOpenDuration;
+    }
+
+    /**
+     * @return 半开状态放行的探测请求数
+     */
+    public int getBreakerHalfOpenProbes() {
+        return breakerHalfOpenProbes;
+    }
+
+    /**
+     * @return 是否发送Accept-Encoding并解压gzip/deflate响应
+     */
+    public boolean isContentCompression() {
+        return contentCompression;
+    }
+
+    /**
+     * @return 请求体不小于该字节数时以gzip发送，0表示不压缩请求体
+     */
+    public int getRequestCompressionThreshold() {
+        return requestCompressionThreshold;
+    }
+
+    /**
+     * @return TLS客户端会话缓存的条目数，0表示使用JDK默认值
+     */
+    public int getTlsSessionCacheSize() {
+        return tlsSessionCacheSize;
+    }
+
+    /**
+     * TLS会话可以复用的时间(秒)，0表示使用JDK默认值
+     */
+    public int getTlsSessionTimeout() {
+        return tlsSessionTimeout;
+    }
+
+    /**
+     * @return 启动时预热、之后保持最少空闲连接的route，没有时为空
+     */
+    public List<WarmRoute> getWarmRoutes() {
+        return warmRoutes;
+    }
+
+    /**
+     * @return 实际做解析的DnsResolver，null表示使用系统解析
+     */
+    public DnsResolver getDnsResolver() {
+        return dnsResolver;
+    }
+
+    /**
+     * DNS解析结果缓存多久(ms)后在后台刷新，0表示不缓存
+     */
+    public long getDnsTtl() {
+        return dnsTtl;
+    }
+
+    /**
+     * 连接失败的地址冷却多久(ms)，冷却期内排到最后
+     */
+    public long getDnsFailureCooldown() {
+        return dnsFailureCooldown;
+    }
+
+    /**
+     * 同步连接一个地址超过该时间(ms)没有连上时同时连接下一个地址，0表示逐个尝试
+     */
+    public long getConnectRaceDelay() {
+        return connectRaceDelay;
+    }
+
+    /**
+     * @return 异步client全局的在途请求上限，0表示不限制
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * @return 异步client每个host的在途请求上限，0表示不限制
+     */
+    public int getMaxInFlightPerRoute() {
+        return maxInFlightPerRoute;
+    }
+
+    public AdmissionPolicy getAdmissionPolicy() {
+        return admissionPolicy;
+    }
+
+    /**
+     * @return {@link AdmissionPolicy#TIMEOUT} 策略下等待名额的毫秒数
+     */
+    public long getAdmissionTimeout() {
+        return admissionTimeout;
+    }
+
+    /**
+     * @return 同步helper的executeAll是否使用虚拟线程，JDK 21以下退回到平台线程
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * @return 同步client是否使用HTTP/2传输(Java 11+)，https通过ALPN协商h2，http通过Upgrade升级到h2c，对端不支持时退回HTTP/1.1
+     */
+    public boolean isHttp2() {
+        return http2;
+    }
+
+    /**
+     * @return HTTP/2下每个host同时在途的stream上限，不应超过服务端的SETTINGS_MAX_CONCURRENT_STREAMS
+     */
+    public int getMaxConcurrentStreams() {
+        return maxConcurrentStreams;
+    }
+
+    /**
+     * @return HTTP/2接收方向每个stream的流量控制窗口(字节)，0表示使用JDK默认的16MB；对整个JVM生效
+     */
+    public int getHttp2WindowSize() {
+        return http2WindowSize;
+    }
+
+    /**
+     * @return 各route对连接数上限和超时的覆盖，没有时为空
+     */
+    public List<RouteConfig> getRoutes() {
+        return routes;
+    }
+
+    /**
+     * @return typed请求使用的解码器，每次请求时读取，可以在运行中替换；没有设置并且classpath中没有Jackson时为null
+     */
+    public JsonCodec getJsonCodec() {
+        return jsonCodec;
+    }
+
+    /**
+     * 运行中的client只能原地应用连接池大小、超时、空闲清理、报文限制、请求体压缩阈值、池化缓冲区和route覆盖，
+     * 其余配置要在client重新创建后才生效
+     *
+     * @return 与other相比，不能在运行中应用的配置项
+     */
+    public List<String> coldChanges(ClientConfig other) {
+        List<String> changes = new ArrayList<String>();
+        if (sslContext != other.sslContext) {
+            changes.add("sslContext");
+        }
+        if (adaptiveRouteSizing != other.adaptiveRouteSizing || minPerRoute != other.minPerRoute || maxPerRoute != other.maxPerRoute || adaptivePeriod != other.adaptivePeriod
+                || leaseWaitThreshold != other.leaseWaitThreshold) {
+            changes.add("adaptiveRouteSizing");
+        }
+        if (responseCacheSize != other.responseCacheSize) {
+            changes.add("responseCacheSize");
+        }
+        if (coalescing != other.coalescing) {
+            changes.add("coalescing");
+        }
+        if (maxRetries != other.maxRetries || retryBackoff != other.retryBackoff || retryBudgetRatio != other.retryBudgetRatio || retryBudgetCapacity != other.retryBudgetCapacity
+                || hedgePercentile != other.hedgePercentile || hedgeMinDelay != other.hedgeMinDelay) {
+            changes.add("retry");
+        }
+        if (breakerFailureRate != other.breakerFailureRate || breakerSlowCallRate != other.breakerSlowCallRate || breakerSlowCallDuration != other.breakerSlowCallDuration
+                || breakerWindowSize != other.breakerWindowSize || breakerMinimumCalls != other.breakerMinimumCalls || breakerOpenDuration != other.breakerOpenDuration
+                || breakerHalfOpenProbes != other.breakerHalfOpenProbes) {
+            changes.add("circuitBreaker");
+        }
+        if (contentCompression != other.contentCompression) {
+            changes.add("contentCompression");
+        }
+        if (tlsSessionCacheSize != other.tlsSessionCacheSize || tlsSessionTimeout != other.tlsSessionTimeout) {
+            changes.add("tlsSessionCache");
+        }
+        if (!warmRoutes.toString().equals(other.warmRoutes.toString())) {
+            changes.add("warmRoutes");
+        }
+        if (dnsResolver != other.dnsResolver || dnsTtl != other.dnsTtl || dnsFailureCooldown != other.dnsFailureCooldown || connectRaceDelay != other.connectRaceDelay) {
+            changes.add("dns");
+        }
+        if (maxInFlight != other.maxInFlight || maxInFlightPerRoute != other.maxInFlightPerRoute || admissionPolicy != other.admissionPolicy
+                || admissionTimeout != other.admissionTimeout) {
+            changes.add("admission");
+        }
+        if (http2 != other.http2 || maxConcurrentStreams != other.maxConcurrentStreams || http2WindowSize != other.http2WindowSize) {
+            changes.add("http2");
+        }
+        return changes;
+    }
+
+    public RequestConfig toRequestConfig() {
+        return RequestConfig.custom().setContentCompressionEnabled(contentCompression).setSocketTimeout(socketTimeout).setConnectTimeout(connectTimeout).setConnectionRequestTimeout(connectionRequestTimeout).build();
+    }
+
+    @Override
+    public String toString() {
+        return "ClientConfig[name=" + name + ",maxTotal=" + maxTotal + ",defaultMaxPerRoute=" + defaultMaxPerRoute + ",connectTimeout=" + connectTimeout + ",socketTimeout=" + socketTimeout
+                + ",connectionRequestTimeout=" + connectionRequestTimeout + ",idleTimeout=" + idleTimeout + ",monitorPeriod=" + monitorPeriod
+                + (adaptiveRouteSizing ? ",perRoute=[" + minPerRoute + "," + maxPerRoute + "]" : "") + (responseCacheSize > 0 ? ",responseCacheSize=" + responseCacheSize : "")
+                + (coalescing ? ",coalescing" : "") + (maxRetries > 0 ? ",maxRetries=" + maxRetries : "") + (hedgePercentile > 0 ? ",hedgePercentile=" + hedgePercentile : "")
+                + (breakerFailureRate > 0 || breakerSlowCallRate > 0 ? ",breaker=[" + breakerFailureRate + "%," + breakerSlowCallRate + "%]" : "")
+                + (contentCompression ? "" : ",noContentCompression") + (requestCompressionThreshold > 0 ? ",requestCompressionThreshold=" + requestCompressionThreshold : "")
+                + (warmRoutes.isEmpty() ? "" : ",warmRoutes=" + warmRoutes) + (dnsTtl > 0 ? ",dnsTtl=" + dnsTtl : "")
+                + (connectRaceDelay > 0 ? ",connectRaceDelay=" + connectRaceDelay : "")
+                + (maxInFlight > 0 || maxInFlightPerRoute > 0 ? ",admission=[" + maxInFlight + "," + maxInFlightPerRoute + "," + admissionPolicy + "]" : "") + (virtualThreads ? ",virtualThreads" : "")
+                + (http2 ? ",http2=[" + maxConcurrentStreams + "," + http2WindowSize + "]" : "") + (routes.isEmpty() ? "" : ",routes=" + routes) + "]";
+    }
+
+    public static Builder custom(String name) {
+        return new Builder(name);
+    }
+
+    public static Builder copy(ClientConfig config) {
+        return new Builder(config.getName()).setMaxTotal(config.getMaxTotal()).setDefaultMaxPerRoute(config.getDefaultMaxPerRoute()).setConnectTimeout(config.getConnectTimeout())
+                .setSocketTimeout(config.getSocketTimeout()).setConnectionRequestTimeout(config.getConnectionRequestTimeout()).setIdleTimeout(config.getIdleTimeout())
+                .setMonitorPeriod(config.getMonitorPeriod()).setMaxHeaderCount(config.getMaxHeaderCount()).setMaxLineLength(config.getMaxLineLength()).setSslContext(config.getSslContext())
+                .setPooledBuffers(config.isPooledBuffers()).setAdaptiveRouteSizing(config.isAdaptiveRouteSizing()).setMinPerRoute(config.getMinPerRoute())
+                .setMaxPerRoute(config.getMaxPerRoute()).setAdaptivePeriod(config.getAdaptivePeriod()).setLeaseWaitThreshold(config.getLeaseWaitThreshold())
+                .setResponseCacheSize(config.getResponseCacheSize()).setCoalescing(config.isCoalescing()).setMaxRetries(config.getMaxRetries())
+                .setRetryBackoff(config.getRetryBackoff()).setRetryBudget(config.getRetryBudgetRatio(), config.getRetryBudgetCapacity()).setHedgePercentile(config.getHedgePercentile())
+                .setHedgeMinDelay(config.getHedgeMinDelay())
+                .setCircuitBreaker(config.getBreakerFailureRate(), config.getBreakerSlowCallRate(), config.getBreakerSlowCallDuration())
+                .setCircuitBreakerWindow(config.getBreakerWindowSize(), config.getBreakerMinimumCalls())
+                .setCircuitBreakerOpen(config.getBreakerOpenDuration(), config.getBreakerHalfOpenProbes()).setContentCompression(config.isContentCompression())
+                .setRequestCompressionThreshold(config.getRequestCompressionThreshold()).setTlsSessionCache(config.getTlsSessionCacheSize(), config.getTlsSessionTimeout())
+                .setWarmRoutes(config.getWarmRoutes()).setDnsResolver(config.getDnsResolver()).setDnsCache(config.getDnsTtl(), config.getDnsFailureCooldown())
+                .setConnectRaceDelay(config.getConnectRaceDelay()).setMaxInFlight(config.getMaxInFlight()).setMaxInFlightPerRoute(config.getMaxInFlightPerRoute())
+                .setAdmissionPolicy(config.getAdmissionPolicy()).setAdmissionTimeout(config.getAdmissionTimeout()).setVirtualThreads(config.isVirtualThreads())
+                .setHttp2(config.isHttp2()).setMaxConcurrentStreams(config.getMaxConcurrentStreams()).setHttp2WindowSize(config.getHttp2WindowSize()).setRoutes(config.getRoutes()).setJsonCodec(config.getJsonCodec());
+    }
+
+    public static class Builder {
+        private final String name;
+        private int maxTotal = 200;
+        private int defaultMaxPerRoute = 20;
+        private int connectTimeout = Constants.SOCKET_TIME_OUT;
+        private int socketTimeout = Constants.SOCKET_TIME_OUT;
+        private int connectionRequestTimeout = Constants.SOCKET_TIME_OUT;
+        private long idleTimeout = 30000;
+        private long monitorPeriod = 5000;
+        private int maxHeaderCount = 200;
+        private int maxLineLength = 2000;
+        private SSLContext sslContext;
+        private boolean pooledBuffers;
+        private boolean adaptiveRouteSizing;
+        private int minPerRoute = 2;
+        private int maxPerRoute;
+        private long adaptivePeriod = 1000;
+        private long leaseWaitThreshold = 10;
+        private long responseCacheSize;
+        private boolean coalescing;
+        private int maxRetries;
+        private long retryBackoff = 50;
+        private double retryBudgetRatio = 0.1;
+        private int retryBudgetCapacity = 10;
+        private double hedgePercentile;
+        private long hedgeMinDelay = 5;
+        private double breakerFailureRate;
+        private double breakerSlowCallRate;
+        private long breakerSlowCallDuration = 5000;
+        private int breakerWindowSize = 50;
+        private int breakerMinimumCalls = 20;
+        private long breakerOpenDuration = 5000;
+        private int breakerHalfOpenProbes = 3;
+        private boolean contentCompression = true;
+        private int requestCompressionThreshold;
+        private int tlsSessionCacheSize;
+        private int tlsSessionTimeout;
+        private final List<WarmRoute> warmRoutes = new ArrayList<WarmRoute>();
+        private DnsResolver dnsResolver;
+        private long dnsTtl;
+        private long dnsFailureCooldown = 30000;
+        private long connectRaceDelay;
+        private int maxInFlight;
+        private int maxInFlightPerRoute;
+        private AdmissionPolicy admissionPolicy = AdmissionPolicy.TIMEOUT;
+        private long admissionTimeout = 1000;
+        private boolean virtualThreads;
+        private boolean http2;
+        private int maxConcurrentStreams = 100;
+        private int http2WindowSize;
+        // 同一route后添加的覆盖先添加的
+        private final Map<HttpRoute, RouteConfig> routes = new LinkedHashMap<HttpRoute, RouteConfig>();
+        private JsonCodec jsonCodec = JacksonCodec.getDefault();
+
+        Builder(String name) {
+            if (name == null || name.isEmpty()) {
+                throw new IllegalArgumentException("name is required");
+            }
+            this.name = name;
+        }
+
+        public Builder setMaxTotal(int maxTotal) {
+            this.maxTotal = maxTotal;
+            return this;
+        }
+
+        public Builder setDefaultMaxPerRoute(int defaultMaxPerRoute) {
+            this.defaultMaxPerRoute = defaultMaxPerRoute;
+            return this;
+        }
+
+        public Builder setConnectTimeout(int connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        public Builder setSocketTimeout(int socketTimeout) {
+            this.socketTimeout = socketTimeout;
+            return this;
+        }
+
+        public Builder setConnectionRequestTimeout(int connectionRequestTimeout) {
+            this.connectionRequestTimeout = connectionRequestTimeout;
+            return this;
+        }
+
+        public Builder setIdleTimeout(long idleTimeout) {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        public Builder setMonitorPeriod(long monitorPeriod) {
+            this.monitorPeriod = monitorPeriod;
+            return this;
+        }
+
+        public Builder setMaxHeaderCount(int maxHeaderCount) {
+            this.maxHeaderCount = maxHeaderCount;
+            return this;
+        }
+
+        public Builder setMaxLineLength(int maxLineLength) {
+            this.maxLineLength = maxLineLength;
+            return this;
+        }
+
+        public Builder setSslContext(SSLContext sslContext) {
+            this.sslContext = sslContext;
+            return this;
+        }
+
+        public Builder setPooledBuffers(boolean pooledBuffers) {
+            this.pooledBuffers = pooledBuffers;
+            return this;
+        }
+
+        public Builder setAdaptiveRouteSizing(boolean adaptiveRouteSizing) {
+            this.adaptiveRouteSizing = adaptiveRouteSizing;
+            return this;
+        }
+
+        public Builder setMinPerRoute(int minPerRoute) {
+            this.minPerRoute = minPerRoute;
+            return this;
+        }
+
+        public Builder setMaxPerRoute(int maxPerRoute) {
+            this.maxPerRoute = maxPerRoute;
+            return this;
+        }
+
+        public Builder setAdaptivePeriod(long adaptivePeriod) {
+            this.adaptivePeriod = adaptivePeriod;
+            return this;
+        }
+
+        public Builder setLeaseWaitThreshold(long leaseWaitThreshold) {
+            this.leaseWaitThreshold = leaseWaitThreshold;
+            return this;
+        }
+
+        public Builder setResponseCacheSize(long responseCacheSize) {
+            this.responseCacheSize = responseCacheSize;
+            return this;
+        }
+
+        public Builder setCoalescing(boolean coalescing) {
+            this.coalescing = coalescing;
+            return this;
+        }
+
+        public Builder setMaxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        public Builder setRetryBackoff(long retryBackoff) {
+            this.retryBackoff = retryBackoff;
+            return this;
+        }
+
+        public Builder setRetryBudget(double ratio, int capacity) {
+            this.retryBudgetRatio = ratio;
+            this.retryBudgetCapacity = capacity;
+            return this;
+        }
+
+        public Builder setHedgePercentile(double hedgePercentile) {
+            this.hedgePercentile = hedgePercentile;
+            return this;
+        }
+
+        public Builder setHedgeMinDelay(long hedgeMinDelay) {
+            this.hedgeMinDelay = hedgeMinDelay;
+            return this;
+        }
+
+        /**
+         * 开启按host的熔断
+         *
+         * @param failureRate 失败率阈值(百分比)，0表示不按失败率熔断
+         * @param slowCallRate 慢调用率阈值(百分比)，0表示不按慢调用率熔断
+         * @param slowCallDuration 慢调用的耗时(ms)
+         */
+        public Builder setCircuitBreaker(double failureRate, double slowCallRate, long slowCallDuration) {
+            this.breakerFailureRate = failureRate;
+            this.breakerSlowCallRate = slowCallRate;
+            this.breakerSlowCallDuration = slowCallDuration;
+            return this;
+        }
+
+        public Builder setCircuitBreakerWindow(int windowSize, int minimumCalls) {
+            this.breakerWindowSize = windowSize;
+            this.breakerMinimumCalls = minimumCalls;
+            return this;
+        }
+
+        public Builder setCircuitBreakerOpen(long openDuration, int halfOpenProbes) {
+            this.breakerOpenDuration = openDuration;
+            this.breakerHalfOpenProbes = halfOpenProbes;
+            return this;
+        }
+
+        public Builder setContentCompression(boolean contentCompression) {
+            this.contentCompression = contentCompression;
+            return this;
+        }
+
+        /**
+         * 只有确认服务端支持Content-Encoding: gzip的请求体时才开启
+         */
+        public Builder setRequestCompressionThreshold(int requestCompressionThreshold) {
+            this.requestCompressionThreshold = requestCompressionThreshold;
+            return this;
+        }
+
+        /**
+         * @param size 客户端会话缓存的条目数，0表示使用JDK默认值
+         * @param timeoutSeconds 会话可以复用的时间，0表示使用JDK默认值
+         */
+        public Builder setTlsSessionCache(int size, int timeoutSeconds) {
+            this.tlsSessionCacheSize = size;
+            this.tlsSessionTimeout = timeoutSeconds;
+            return this;
+        }
+
+        /**
+         * 添加一个预热route，见 {@link WarmRoute#WarmRoute(String, int, int)}
+         */
+        public Builder addWarmRoute(String uri, int connections, int minIdle) {
+            this.warmRoutes.add(new WarmRoute(uri, connections, minIdle));
+            return this;
+        }
+
+        public Builder setWarmRoutes(List<WarmRoute> warmRoutes) {
+            this.warmRoutes.clear();
+            this.warmRoutes.addAll(warmRoutes);
+            return this;
+        }
+
+        /**
+         * 替换系统解析，开启DNS缓存时作为缓存的数据源
+         */
+        public Builder setDnsResolver(DnsResolver dnsResolver) {
+            this.dnsResolver = dnsResolver;
+            return this;
+        }
+
+        /**
+         * @param ttl 解析结果缓存多久(ms)后在后台刷新，0表示不缓存
+         * @param failureCooldown 连接失败的地址冷却多久(ms)，0表示不冷却
+         */
+        public Builder setDnsCache(long ttl, long failureCooldown) {
+            this.dnsTtl = ttl;
+            this.dnsFailureCooldown = failureCooldown;
+            return this;
+        }
+
+        /**
+         * 只对同步client生效，需要同时开启DNS缓存
+         */
+        public Builder setConnectRaceDelay(long connectRaceDelay) {
+            this.connectRaceDelay = connectRaceDelay;
+            return this;
+        }
+
+        /**
+         * 异步client全局的在途请求上限，超过时按 {@link #setAdmissionPolicy(AdmissionPolicy)} 处理
+         */
+        public Builder setMaxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        public Builder setMaxInFlightPerRoute(int maxInFlightPerRoute) {
+            this.maxInFlightPerRoute = maxInFlightPerRoute;
+            return this;
+        }
+
+        public Builder setAdmissionPolicy(AdmissionPolicy admissionPolicy) {
+            this.admissionPolicy = admissionPolicy;
+            return this;
+        }
+
+        public Builder setAdmissionTimeout(long admissionTimeout) {
+            this.admissionTimeout = admissionTimeout;
+            return this;
+        }
+
+        public Builder setVirtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+
+        public Builder setHttp2(boolean http2) {
+            this.http2 = http2;
+            return this;
+        }
+
+        public Builder setMaxConcurrentStreams(int maxConcurrentStreams) {
+            this.maxConcurrentStreams = maxConcurrentStreams;
+            return this;
+        }
+
+        /**
+         * @param http2WindowSize 0表示使用JDK默认值，否则不小于16384
+         */
+        public Builder setHttp2WindowSize(int http2WindowSize) {
+            this.http2WindowSize = http2WindowSize;
+            return this;
+        }
+
+        /**
+         * 替换默认的Jackson解码器
+         */
+        public Builder setJsonCodec(JsonCodec jsonCodec) {
+            this.jsonCodec = jsonCodec;
+            return this;
+        }
+
+        public Builder addRoute(RouteConfig route) {
+            this.routes.put(route.getRoute(), route);
+            return this;
+        }
+
+        public Builder setRoutes(List<RouteConfig> routes) {
+            this.routes.clear();
+            for (RouteConfig route : routes) {
+                addRoute(route);
+            }
+            return this;
+        }
+
+        /*
+         * 以下按单个值设置成组的配置，供 ClientConfigLoader 使用，属性名与ClientConfig的getter一致
+         */
+
+        Builder setRetryBudgetRatio(double retryBudgetRatio) {
+            this.retryBudgetRatio = retryBudgetRatio;
+            return this;
+        }
+
+        Builder setRetryBudgetCapacity(int retryBudgetCapacity) {
+            this.retryBudgetCapacity = retryBudgetCapacity;
+            return this;
+        }
+
+        Builder setBreakerFailureRate(double breakerFailureRate) {
+            this.breakerFailureRate = breakerFailureRate;
+            return this;
+        }
+
+        Builder setBreakerSlowCallRate(double breakerSlowCallRate) {
+            this.breakerSlowCallRate = breakerSlowCallRate;
+            return this;
+        }
+
+        Builder setBreakerSlowCallDuration(long breakerSlowCallDuration) {
+            this.breakerSlowCallDuration = breakerSlowCallDuration;
+            return this;
+        }
+
+        Builder setBreakerWindowSize(int breakerWindowSize) {
+            this.breakerWindowSize = breakerWindowSize;
+            return this;
+        }
+
+        Builder setBreakerMinimumCalls(int breakerMinimumCalls) {
+            this.breakerMinimumCalls = breakerMinimumCalls;
+            return this;
+        }
+
+        Builder setBreakerOpenDuration(long breakerOpenDuration) {
+            this.breakerOpenDuration = breakerOpenDuration;
+            return this;
+        }
+
+        Builder setBreakerHalfOpenProbes(int breakerHalfOpenProbes) {
+            this.breakerHalfOpenProbes = breakerHalfOpenProbes;
+            return this;
+        }
+
+        Builder setTlsSessionCacheSize(int tlsSessionCacheSize) {
+            this.tlsSessionCacheSize = tlsSessionCacheSize;
+            return this;
+        }
+
+        Builder setTlsSessionTimeout(int tlsSessionTimeout) {
+            this.tlsSessionTimeout = tlsSessionTimeout;
+            return this;
+        }
+
+        Builder setDnsTtl(long dnsTtl) {
+            this.dnsTtl = dnsTtl;
+            return this;
+        }
+
+        Builder setDnsFailureCooldown(long dnsFailureCooldown) {
+            this.dnsFailureCooldown = dnsFailureCooldown;
+            return this;
+        }
+
+        public ClientConfig build() {
+            if (maxTotal <= 0 || defaultMaxPerRoute <= 0) {
+                throw new IllegalArgumentException("pool size must be positive");
+            }
+            if (maxRetries < 0 || retryBudgetRatio < 0 || retryBudgetCapacity < 0 || hedgePercentile < 0 || hedgePercentile >= 100) {
+                throw new IllegalArgumentException("invalid retry or hedge settings");
+            }
+            if (breakerFailureRate < 0 || breakerFailureRate > 100 || breakerSlowCallRate < 0 || breakerSlowCallRate > 100 || breakerWindowSize <= 0 || breakerMinimumCalls <= 0
+                    || breakerMinimumCalls > breakerWindowSize || breakerOpenDuration < 0 || breakerHalfOpenProbes <= 0) {
+                throw new IllegalArgumentException("invalid circuit breaker settings");
+            }
+            if (tlsSessionCacheSize < 0 || tlsSessionTimeout < 0) {
+                throw new IllegalArgumentException("invalid tls session cache settings");
+            }
+            if (dnsTtl < 0 || dnsFailureCooldown < 0 || connectRaceDelay < 0 || (connectRaceDelay > 0 && dnsTtl == 0)) {
+                throw new IllegalArgumentException("invalid dns settings, connectRaceDelay requires dns cache");
+            }
+            if (maxInFlight < 0 || maxInFlightPerRoute < 0 || admissionPolicy == null || admissionTimeout < 0) {
+                throw new IllegalArgumentException("invalid admission settings");
+            }
+            if (maxConcurrentStreams <= 0 || (http2WindowSize != 0 && http2WindowSize < 16384)) {
+                throw new IllegalArgumentException("invalid http2 settings");
+            }
+            for (RouteConfig route : routes.values()) {
+                if (route.getMaxPerRoute() > maxTotal) {
+                    throw new IllegalArgumentException("maxPerRoute of " + route + " exceeds maxTotal");
+                }
+            }
+            for (WarmRoute warmRoute : warmRoutes) {
+                if (warmRoute.getConnections() > maxTotal) {
+                    throw new IllegalArgumentException("warm connections of " + warmRoute + " exceed maxTotal");
+                }
+            }
+            if (!warmRoutes.isEmpty() && monitorPeriod >= idleTimeout) {
+                // 保温在清理任务中执行，周期不短于空闲超时的话保持的连接会先被清理掉
+                throw new IllegalArgumentException("monitorPeriod must be shorter than idleTimeout to keep routes warm");
+            }
+            if (adaptiveRouteSizing) {
+                int max = maxPerRoute > 0 ? maxPerRoute : maxTotal;
+                if (minPerRoute <= 0 || minPerRoute > defaultMaxPerRoute || defaultMaxPerRoute > max || max > maxTotal) {
+                    throw new IllegalArgumentException("require 0 < minPerRoute <= defaultMaxPerRoute <= maxPerRoute <= maxTotal");
+                }
+                if (adaptivePeriod <= 0) {
+                    throw new IllegalArgumentException("adaptivePeriod must be positive");
+                }
+            }
+            return new ClientConfig(this);
+        }
+    }
+}
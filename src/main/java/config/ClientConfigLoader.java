@@ -0,0 +1,320 @@
+package config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import httpclientLearn.admission.AdmissionPolicy;
+
+/**
+ * 从properties加载client配置
+ *
+ * defaults.属性 对所有client生效，client.名字.属性 只对该client生效并覆盖defaults，属性名与 {@link ClientConfig.Builder} 的setter一致，
+ * 例如 client.order.maxTotal=400；一次设置多个值的setter按 {@link ClientConfig} 的getter拆成单独的属性，
+ * 例如 breakerFailureRate、breakerWindowSize、retryBudgetRatio、tlsSessionCacheSize、dnsTtl。route的覆盖以别名分组：
+ *
+ * <pre>
+ * client.order.route.pay.uri=https://pay.example.com
+ * client.order.route.pay.maxPerRoute=80
+ * client.order.route.pay.socketTimeout=2000
+ * </pre>
+ *
+ * 只能表示简单的数值和开关，SSLContext、DnsResolver等对象仍然在代码中注册，文件中的配置叠加在注册的配置之上。
+ */
+public final class ClientConfigLoader {
+
+    static final String DEFAULTS = "defaults.";
+    static final String CLIENT = "client.";
+    static final String ROUTE = "route.";
+
+    private ClientConfigLoader() {
+    }
+
+    public static Properties read(File file) throws IOException {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            return read(in);
+        }
+    }
+
+    public static Properties read(InputStream in) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = new InputStreamReader(in, Constants.DEFAULT_CHAR_SET)) {
+            properties.load(reader);
+        }
+        return properties;
+    }
+
+    /**
+     * @return 文件中单独配置了的client名字
+     */
+    public static Set<String> clientNames(Properties properties) {
+        Set<String> names = new LinkedHashSet<String>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(CLIENT) && key.indexOf('.', CLIENT.length()) > 0) {
+                names.add(key.substring(CLIENT.length(), key.indexOf('.', CLIENT.length())));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * 在base之上应用defaults和该client自己的配置
+     *
+     * @throws IllegalArgumentException 未知的属性、无法解析的值或者应用后的配置不合法
+     */
+    public static ClientConfig apply(ClientConfig base, Properties properties) {
+        ClientConfig.Builder builder = ClientConfig.copy(base);
+        String prefix = CLIENT + base.getName() + ".";
+        Map<String, Map<String, String>> routes = new LinkedHashMap<String, Map<String, String>>();
+        // 先应用defaults，client自己的配置覆盖defaults
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(DEFAULTS)) {
+                set(builder, key, key.substring(DEFAULTS.length()), properties.getProperty(key).trim());
+            }
+        }
+        for (String key : properties.stringPropertyNames()) {
+            if (!key.startsWith(prefix)) {
+                continue;
+            }
+            String property = key.substring(prefix.length());
+            String value = properties.getProperty(key).trim();
+            if (property.startsWith(ROUTE)) {
+                int dot = property.indexOf('.', ROUTE.length());
+                if (dot < 0) {
+                    throw new IllegalArgumentException("invalid route property " + key);
+                }
+                String alias = property.substring(ROUTE.length(), dot);
+                if (!routes.containsKey(alias)) {
+                    routes.put(alias, new LinkedHashMap<String, String>());
+                }
+                routes.get(alias).put(property.substring(dot + 1), value);
+            } else {
+                set(builder, key, property, value);
+            }
+        }
+        for (Map.Entry<String, Map<String, String>> route : routes.entrySet()) {
+            builder.addRoute(route(prefix + ROUTE + route.getKey(), route.getValue()));
+        }
+        return builder.build();
+    }
+
+    private static RouteConfig route(String prefix, Map<String, String> values) {
+        String uri = values.get("uri");
+        if (uri == null) {
+            throw new IllegalArgumentException(prefix + ".uri is required");
+        }
+        RouteConfig.Builder builder = RouteConfig.custom(uri);
+        for (Map.Entry<String, String> value : values.entrySet()) {
+            String key = prefix + "." + value.getKey();
+            switch (value.getKey()) {
+            case "uri":
+                break;
+            case "maxPerRoute":
+                builder.setMaxPerRoute(toInt(key, value.getValue()));
+                break;
+            case "connectTimeout":
+                builder.setConnectTimeout(toInt(key, value.getValue()));
+                break;
+            case "socketTimeout":
+                builder.setSocketTimeout(toInt(key, value.getValue()));
+                break;
+            case "connectionRequestTimeout":
+                builder.setConnectionRequestTimeout(toInt(key, value.getValue()));
+                break;
+            default:
+                throw new IllegalArgumentException("unknown property " + key);
+            }
+        }
+        return builder.build();
+    }
+
+    private static void set(ClientConfig.Builder builder, String key, String property, String value) {
+        switch (property) {
+        case "maxTotal":
+            builder.setMaxTotal(toInt(key, value));
+            break;
+        case "defaultMaxPerRoute":
+            builder.setDefaultMaxPerRoute(toInt(key, value));
+            break;
+        case "connectTimeout":
+            builder.setConnectTimeout(toInt(key, value));
+            break;
+        case "socketTimeout":
+            builder.setSocketTimeout(toInt(key, value));
+            break;
+        case "connectionRequestTimeout":
+            builder.setConnectionRequestTimeout(toInt(key, value));
+            break;
+        case "idleTimeout":
+            builder.setIdleTimeout(toLong(key, value));
+            break;
+        case "monitorPeriod":
+            builder.setMonitorPeriod(toLong(key, value));
+            break;
+        case "maxHeaderCount":
+            builder.setMaxHeaderCount(toInt(key, value));
+            break;
+        case "maxLineLength":
+            builder.setMaxLineLength(toInt(key, value));
+            break;
+        case "pooledBuffers":
+            builder.setPooledBuffers(toBoolean(key, value));
+            break;
+        case "requestCompressionThreshold":
+            builder.setRequestCompressionThreshold(toInt(key, value));
+            break;
+        case "contentCompression":
+            builder.setContentCompression(toBoolean(key, value));
+            break;
+        case "adaptiveRouteSizing":
+            builder.setAdaptiveRouteSizing(toBoolean(key, value));
+            break;
+        case "minPerRoute":
+            builder.setMinPerRoute(toInt(key, value));
+            break;
+        case "maxPerRoute":
+            builder.setMaxPerRoute(toInt(key, value));
+            break;
+        case "responseCacheSize":
+            builder.setResponseCacheSize(toLong(key, value));
+            break;
+        case "coalescing":
+            builder.setCoalescing(toBoolean(key, value));
+            break;
+        case "adaptivePeriod":
+            builder.setAdaptivePeriod(toLong(key, value));
+            break;
+        case "leaseWaitThreshold":
+            builder.setLeaseWaitThreshold(toLong(key, value));
+            break;
+        case "maxRetries":
+            builder.setMaxRetries(toInt(key, value));
+            break;
+        case "retryBackoff":
+            builder.setRetryBackoff(toLong(key, value));
+            break;
+        case "retryBudgetRatio":
+            builder.setRetryBudgetRatio(toDouble(key, value));
+            break;
+        case "retryBudgetCapacity":
+            builder.setRetryBudgetCapacity(toInt(key, value));
+            break;
+        case "hedgePercentile":
+            builder.setHedgePercentile(toDouble(key, value));
+            break;
+        case "hedgeMinDelay":
+            builder.setHedgeMinDelay(toLong(key, value));
+            break;
+        case "breakerFailureRate":
+            builder.setBreakerFailureRate(toDouble(key, value));
+            break;
+        case "breakerSlowCallRate":
+            builder.setBreakerSlowCallRate(toDouble(key, value));
+            break;
+        case "breakerSlowCallDuration":
+            builder.setBreakerSlowCallDuration(toLong(key, value));
+            break;
+        case "breakerWindowSize":
+            builder.setBreakerWindowSize(toInt(key, value));
+            break;
+        case "breakerMinimumCalls":
+            builder.setBreakerMinimumCalls(toInt(key, value));
+            break;
+        case "breakerOpenDuration":
+            builder.setBreakerOpenDuration(toLong(key, value));
+            break;
+        case "breakerHalfOpenProbes":
+            builder.setBreakerHalfOpenProbes(toInt(key, value));
+            break;
+        case "tlsSessionCacheSize":
+            builder.setTlsSessionCacheSize(toInt(key, value));
+            break;
+        case "tlsSessionTimeout":
+            builder.setTlsSessionTimeout(toInt(key, value));
+            break;
+        case "dnsTtl":
+            builder.setDnsTtl(toLong(key, value));
+            break;
+        case "dnsFailureCooldown":
+            builder.setDnsFailureCooldown(toLong(key, value));
+            break;
+        case "connectRaceDelay":
+            builder.setConnectRaceDelay(toLong(key, value));
+            break;
+        case "maxInFlight":
+            builder.setMaxInFlight(toInt(key, value));
+            break;
+        case "maxInFlightPerRoute":
+            builder.setMaxInFlightPerRoute(toInt(key, value));
+            break;
+        case "admissionPolicy":
+            builder.setAdmissionPolicy(toEnum(AdmissionPolicy.class, key, value));
+            break;
+        case "admissionTimeout":
+            builder.setAdmissionTimeout(toLong(key, value));
+            break;
+        case "virtualThreads":
+            builder.setVirtualThreads(toBoolean(key, value));
+            break;
+        case "http2":
+            builder.setHttp2(toBoolean(key, value));
+            break;
+        case "maxConcurrentStreams":
+            builder.setMaxConcurrentStreams(toInt(key, value));
+            break;
+        case "http2WindowSize":
+            builder.setHttp2WindowSize(toInt(key, value));
+            break;
+        default:
+            throw new IllegalArgumentException("unknown property " + key);
+        }
+    }
+
+    private static int toInt(String key, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid value of " + key + ": " + value, e);
+        }
+    }
+
+    private static long toLong(String key, String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid value of " + key + ": " + value, e);
+        }
+    }
+
+    private static double toDouble(String key, String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid value of " + key + ": " + value, e);
+        }
+    }
+
+    private static <E extends Enum<E>> E toEnum(Class<E> type, String key, String value) {
+        try {
+            return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("invalid value of " + key + ": " + value, e);
+        }
+    }
+
+    private static boolean toBoolean(String key, String value) {
+        if (!"true".equalsIgnoreCase(value) && !"false".equalsIgnoreCase(value)) {
+            throw new IllegalArgumentException("invalid value of " + key + ": " + value);
+        }
+        return Boolean.parseBoolean(value);
+    }
+}
@@ -0,0 +1,152 @@
+package config;
+
+import java.net.URI;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.routing.HttpRoute;
+
+/**
+ * 单个route对client配置的覆盖，值为0的项沿用client的配置
+ */
+public final class RouteConfig {
+
+    private final HttpRoute route;
+    private final int maxPerRoute;
+    private final int connectTimeout;
+    private final int socketTimeout;
+    private final int connectionRequestTimeout;
+
+    private RouteConfig(Builder builder) {
+        this.route = toRoute(builder.uri);
+        this.maxPerRoute = builder.maxPerRoute;
+        this.connectTimeout = builder.connectTimeout;
+        this.socketTimeout = builder.socketTimeout;
+        this.connectionRequestTimeout = builder.connectionRequestTimeout;
+    }
+
+    /**
+     * 与DefaultRoutePlanner规划出的route一致：端口补全为默认端口，没有代理
+     */
+    static HttpRoute toRoute(String uri) {
+        HttpHost target = normalize(URI.create(uri));
+        if (target == null) {
+            throw new IllegalArgumentException("invalid route " + uri);
+        }
+        return new HttpRoute(target, null, "https".equals(target.getSchemeName()));
+    }
+
+    /**
+     * @return 补全默认端口的目标host，不是http/https时返回null
+     */
+    public static HttpHost normalize(URI uri) {
+        String scheme = uri.getScheme() == null ? "http" : uri.getScheme().toLowerCase();
+        boolean secure = "https".equals(scheme);
+        if (uri.getHost() == null || !(secure || "http".equals(scheme))) {
+            return null;
+        }
+        return new HttpHost(uri.getHost(), uri.getPort() > 0 ? uri.getPort() : secure ? 443 : 80, scheme);
+    }
+
+    /**
+     * @return 补全默认端口的host，URIUtils.extractHost得到的默认端口为-1，与连接池和指标中的route不一致
+     */
+    public static HttpHost normalize(HttpHost host) {
+        if (host == null || host.getPort() > 0) {
+            return host;
+        }
+        return new HttpHost(host.getHostName(), "https".equals(host.getSchemeName()) ? 443 : 80, host.getSchemeName());
+    }
+
+    public HttpRoute getRoute() {
+        return route;
+    }
+
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public int getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    public int getConnectionRequestTimeout() {
+        return connectionRequestTimeout;
+    }
+
+    /**
+     * @return 在client的RequestConfig上应用本route的超时覆盖
+     */
+    public RequestConfig toRequestConfig(RequestConfig defaults) {
+        RequestConfig.Builder builder = RequestConfig.copy(defaults);
+        if (connectTimeout > 0) {
+            builder.setConnectTimeout(connectTimeout);
+        }
+        if (socketTimeout > 0) {
+            builder.setSocketTimeout(socketTimeout);
+        }
+        if (connectionRequestTimeout > 0) {
+            builder.setConnectionRequestTimeout(connectionRequestTimeout);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public String toString() {
+        return route.getTargetHost().toURI() + (maxPerRoute > 0 ? ",maxPerRoute=" + maxPerRoute : "") + (connectTimeout > 0 ? ",connectTimeout=" + connectTimeout : "")
+                + (socketTimeout > 0 ? ",socketTimeout=" + socketTimeout : "") + (connectionRequestTimeout > 0 ? ",connectionRequestTimeout=" + connectionRequestTimeout : "");
+    }
+
+    /**
+     * @param uri 只使用其中的scheme、host和port，例如 https://api.example.com
+     */
+    public static Builder custom(String uri) {
+        return new Builder(uri);
+    }
+
+    public static class Builder {
+        private final String uri;
+        private int maxPerRoute;
+        private int connectTimeout;
+        private int socketTimeout;
+        private int connectionRequestTimeout;
+
+        Builder(String uri) {
+            if (uri == null || uri.isEmpty()) {
+                throw new IllegalArgumentException("uri is required");
+            }
+            this.uri = uri;
+        }
+
+        public Builder setMaxPerRoute(int maxPerRoute) {
+            this.maxPerRoute = maxPerRoute;
+            return this;
+        }
+
+        public Builder setConnectTimeout(int connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        public Builder setSocketTimeout(int socketTimeout) {
+            this.socketTimeout = socketTimeout;
+            return this;
+        }
+
+        public Builder setConnectionRequestTimeout(int connectionRequestTimeout) {
+            this.connectionRequestTimeout = connectionRequestTimeout;
+            return this;
+        }
+
+        public RouteConfig build() {
+            if (maxPerRoute < 0 || connectTimeout < 0 || socketTimeout < 0 || connectionRequestTimeout < 0) {
+                throw new IllegalArgumentException("route settings must not be negative");
+            }
+            return new RouteConfig(this);
+        }
+    }
+}
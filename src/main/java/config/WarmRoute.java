@@ -0,0 +1,44 @@
+package config;
+
+import org.apache.http.conn.routing.HttpRoute;
+
+/**
+ * 需要预热的route：启动时建立的连接数以及之后保持的最少空闲连接数
+ */
+public final class WarmRoute {
+
+    private final HttpRoute route;
+    private final int connections;
+    private final int minIdle;
+
+    /**
+     * @param uri 只使用其中的scheme、host和port，例如 https://api.example.com
+     * @param connections 启动时建立的连接数
+     * @param minIdle 之后保持的最少空闲连接数，0表示只在启动时预热
+     */
+    public WarmRoute(String uri, int connections, int minIdle) {
+        if (connections <= 0 || minIdle < 0 || minIdle > connections) {
+            throw new IllegalArgumentException("require 0 <= minIdle <= connections and connections > 0");
+        }
+        this.route = RouteConfig.toRoute(uri);
+        this.connections = connections;
+        this.minIdle = minIdle;
+    }
+
+    public HttpRoute getRoute() {
+        return route;
+    }
+
+    public int getConnections() {
+        return connections;
+    }
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    @Override
+    public String toString() {
+        return route.getTargetHost().toURI() + "*" + connections + (minIdle > 0 ? "/" + minIdle : "");
+    }
+}
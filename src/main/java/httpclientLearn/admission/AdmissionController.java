@@ -0,0 +1,311 @@
+package httpclientLearn.admission;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpHost;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import config.ClientConfig;
+import config.RouteConfig;
+import httpclientLearn.deadline.Deadline;
+
+/**
+ * 异步client的准入控制：限制全局和每个host的在途请求数
+ *
+ * 请求在提交给io reactor之前获取名额，结果future完成时归还。超过上限的请求不进入连接池的等待队列，
+ * 按 {@link AdmissionPolicy} 阻塞调用线程、等待一段时间或者直接拒绝，被拒绝的请求以 {@link AdmissionRejectedException} 失败。
+ * 先获取host的名额再获取全局名额，等待某个慢host的请求不会占住全局名额。
+ */
+public class AdmissionController {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionController.class);
+
+    private final int maxInFlight;
+    private final int maxInFlightPerRoute;
+    private final AdmissionPolicy policy;
+    private final long timeout;
+    // 为0时表示不限制
+    private final Semaphore global;
+    private final ConcurrentMap<HttpHost, Semaphore> routes = new ConcurrentHashMap<HttpHost, Semaphore>();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final ConcurrentLinkedQueue<Waiter> waiters = new ConcurrentLinkedQueue<Waiter>();
+
+    public AdmissionController(int maxInFlight, int maxInFlightPerRoute, AdmissionPolicy policy, long timeout) {
+        this.maxInFlight = maxInFlight;
+        this.maxInFlightPerRoute = maxInFlightPerRoute;
+        this.policy = policy;
+        this.timeout = timeout;
+        this.global = maxInFlight > 0 ? new Semaphore(maxInFlight, isFair()) : null;
+    }
+
+    /**
+     * @return 配置了在途请求上限时返回控制器，否则返回null
+     */
+    public static AdmissionController create(ClientConfig config) {
+        if (config.getMaxInFlight() <= 0 && config.getMaxInFlightPerRoute() <= 0) {
+            return null;
+        }
+        return new AdmissionController(config.getMaxInFlight(), config.getMaxInFlightPerRoute(), config.getAdmissionPolicy(), config.getAdmissionTimeout());
+    }
+
+    // 会等待的策略按到达顺序分配名额
+    private boolean isFair() {
+        return policy != AdmissionPolicy.FAIL_FAST;
+    }
+
+    /**
+     * 按策略获取名额，可能阻塞调用线程；不能在io reactor线程中调用
+     *
+     * @param deadline 请求的截止时间，可以为null；等待不会超过截止时间
+     * @throws AdmissionRejectedException 没有在允许的时间内拿到名额，或者等待时被中断
+     */
+    public Permit acquire(HttpHost host, Deadline deadline) throws AdmissionRejectedException {
+        // 已经过期的请求不再等待名额；小于0的等待时间表示一直等待，只用于没有截止时间的请求
+        final long remaining = deadline != null ? Math.max(0, deadline.remaining()) : -1;
+        if (remaining == 0) {
+            throw reject(host, "deadline expired before admission");
+        }
+        long wait;
+        switch (policy) {
+        case FAIL_FAST:
+            wait = 0;
+            break;
+        case TIMEOUT:
+            wait = remaining >= 0 ? Math.min(timeout, remaining) : timeout;
+            break;
+        default:
+            wait = remaining;
+            break;
+        }
+        final Semaphore route = route(host);
+        final long start = System.nanoTime();
+        try {
+            if (!acquire(route, wait)) {
+                throw reject(host, "too many in-flight requests to host, limit " + maxInFlightPerRoute);
+            }
+            long left = wait < 0 ? -1 : Math.max(0, wait - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            if (!acquire(global, left)) {
+                release(route);
+                throw reject(host, "too many in-flight requests, limit " + maxInFlight);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw reject(host, "interrupted while waiting for admission");
+        }
+        admitted.incrementAndGet();
+        return new Permit(route);
+    }
+
+    /**
+     * 不等待，用于不能阻塞的调用方自己做背压
+     *
+     * @return 没有名额时返回null
+     */
+    public Permit tryAcquire(HttpHost host) {
+        return tryAcquire(host, true);
+    }
+
+    /**
+     * @param countRejection 重新提交已经被拒绝过的请求时传false，每个请求只计一次拒绝
+     * @return 没有名额时返回null
+     */
+    public Permit tryAcquire(HttpHost host, boolean countRejection) {
+        final Semaphore route = route(host);
+        if (route != null && !route.tryAcquire()) {
+            if (countRejection) {
+                rejected.incrementAndGet();
+            }
+            return null;
+        }
+        if (global != null && !global.tryAcquire()) {
+            release(route);
+            if (countRejection) {
+                rejected.incrementAndGet();
+            }
+            return null;
+        }
+        admitted.incrementAndGet();
+        return new Permit(route);
+    }
+
+    /**
+     * 发往host的请求可能拿到名额时回调一次task，用于 {@link #tryAcquire} 失败的调用方重新提交，不需要定时轮询
+     *
+     * task在归还名额的线程中执行(通常是io reactor线程)，不能阻塞；注册时已经有空闲名额则在当前线程立即执行。
+     * 回调时名额可能又被别的请求抢走，task需要重新tryAcquire，失败时再次注册。
+     */
+    public void whenAvailable(HttpHost host, Runnable task) {
+        final Waiter waiter = new Waiter(host, task);
+        waiters.add(waiter);
+        // 注册之前名额可能已经全部归还，之后不会再有release唤醒
+        if (isAvailable(host) && waiters.remove(waiter)) {
+            waiter.run();
+        }
+    }
+
+    /**
+     * 名额归还之后按注册顺序唤醒可能拿到名额的等待者，直到名额用完；
+     * 被唤醒后没有提交请求的等待者(例如批量请求已经结束)不占用名额，继续唤醒下一个
+     */
+    private void signal() {
+        for (Waiter waiter : waiters) {
+            if (global != null && global.availablePermits() == 0) {
+                return;
+            }
+            if (isAvailable(waiter.host) && waiters.remove(waiter)) {
+                waiter.run();
+            }
+        }
+    }
+
+    private boolean isAvailable(HttpHost host) {
+        final Semaphore route = route(host);
+        return (global == null || global.availablePermits() > 0) && (route == null || route.availablePermits() > 0);
+    }
+
+    /**
+     * @param wait 最多等待的毫秒数，小于0表示一直等待
+     */
+    private static boolean acquire(Semaphore semaphore, long wait) throws InterruptedException {
+        if (semaphore == null) {
+            return true;
+        }
+        if (wait < 0) {
+            semaphore.acquire();
+            return true;
+        }
+        // 等待时间为0时tryAcquire(0, unit)在公平模式下不插队
+        return wait == 0 ? semaphore.tryAcquire() : semaphore.tryAcquire(wait, TimeUnit.MILLISECONDS);
+    }
+
+    private static void release(Semaphore semaphore) {
+        if (semaphore != null) {
+            semaphore.release();
+        }
+    }
+
+    private AdmissionRejectedException reject(HttpHost host, String reason) {
+        rejected.incrementAndGet();
+        return new AdmissionRejectedException(host, reason);
+    }
+
+    private Semaphore route(HttpHost host) {
+        if (maxInFlightPerRoute <= 0 || host == null) {
+            return null;
+        }
+        // 写不写默认端口都是同一个route
+        final HttpHost key = RouteConfig.normalize(host);
+        Semaphore semaphore = routes.get(key);
+        if (semaphore == null) {
+            semaphore = new Semaphore(maxInFlightPerRoute, isFair());
+            Semaphore existing = routes.putIfAbsent(key, semaphore);
+            if (existing != null) {
+                semaphore = existing;
+            }
+        }
+        return semaphore;
+    }
+
+    public AdmissionPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return 全局的在途请求数，没有全局上限时返回-1
+     */
+    public int getInFlight() {
+        return global != null ? maxInFlight - global.availablePermits() : -1;
+    }
+
+    /**
+     * @return 发往host的在途请求数，没有host上限时返回-1
+     */
+    public int getInFlight(HttpHost host) {
+        if (maxInFlightPerRoute <= 0) {
+            return -1;
+        }
+        Semaphore route = routes.get(RouteConfig.normalize(host));
+        return route != null ? maxInFlightPerRoute - route.availablePermits() : 0;
+    }
+
+    public long getAdmitted() {
+        return admitted.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    @Override
+    public String toString() {
+        return "AdmissionController[" + policy + ",inFlight=" + getInFlight() + "/" + maxInFlight + ",perRoute=" + maxInFlightPerRoute + ",rejected=" + rejected + "]";
+    }
+
+    /**
+     * 一个请求占用的名额，只归还一次
+     */
+    public final class Permit {
+
+        private final Semaphore route;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(Semaphore route) {
+            this.route = route;
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                AdmissionController.release(global);
+                AdmissionController.release(route);
+                if (!waiters.isEmpty()) {
+                    signal();
+                }
+            }
+        }
+
+        /**
+         * future完成(包括失败和取消)时归还名额
+         *
+         * @return 传入的future
+         */
+        public <V> ListenableFuture<V> releaseWhenDone(ListenableFuture<V> future) {
+            future.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    release();
+                }
+            }, MoreExecutors.directExecutor());
+            return future;
+        }
+    }
+
+    private static final class Waiter {
+
+        private final HttpHost host;
+        private final Runnable task;
+
+        private Waiter(HttpHost host, Runnable task) {
+            this.host = host;
+            this.task = task;
+        }
+
+        private void run() {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.error("admission waiter " + task + " exception", e);
+            }
+        }
+    }
+}
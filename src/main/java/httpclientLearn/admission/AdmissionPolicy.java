@@ -0,0 +1,16 @@
+package httpclientLearn.admission;
+
+/**
+ * 在途请求达到上限时新请求的处理方式
+ */
+public enum AdmissionPolicy {
+
+    /** 阻塞调用线程直到有名额，请求带截止时间时最多等到截止时间 */
+    BLOCK,
+
+    /** 不等待，直接拒绝 */
+    FAIL_FAST,
+
+    /** 最多等待 {@link config.ClientConfig#getAdmissionTimeout()}，超时后拒绝 */
+    TIMEOUT
+}
@@ -0,0 +1,24 @@
+package httpclientLearn.admission;
+
+import java.io.IOException;
+
+import org.apache.http.HttpHost;
+
+/**
+ * 在途请求达到上限，请求没有获取连接，也没有发出
+ */
+public class AdmissionRejectedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final HttpHost host;
+
+    public AdmissionRejectedException(HttpHost host, String reason) {
+        super("request to " + host + " rejected: " + reason);
+        this.host = host;
+    }
+
+    public HttpHost getHost() {
+        return host;
+    }
+}
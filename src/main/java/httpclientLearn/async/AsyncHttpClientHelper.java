@@ -1,53 +1,536 @@
 package httpclientLearn.async;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
 import org.apache.http.ProtocolVersion;
-import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.methods.RequestBuilder;
-import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.URIUtils;
 import org.apache.http.entity.ContentType;
-import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.client.methods.ZeroCopyConsumer;
 import org.apache.http.protocol.HTTP;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import config.Constants;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import config.ClientConfig;
+import config.RouteConfig;
+import httpclientLearn.admission.AdmissionController;
+import httpclientLearn.admission.AdmissionController.Permit;
+import httpclientLearn.admission.AdmissionRejectedException;
+import httpclientLearn.breaker.CircuitBreaker;
+import httpclientLearn.breaker.CircuitBreakers;
+import httpclientLearn.breaker.CircuitOpenException;
+import httpclientLearn.buffer.BufferPool;
+import httpclientLearn.compress.ContentCodec;
+import httpclientLearn.compress.DecompressingEntity;
+import httpclientLearn.codec.JsonCodec;
+import httpclientLearn.codec.JsonDecodeException;
+import httpclientLearn.codec.JsonResponseHandler;
+import httpclientLearn.coalesce.RequestCoalescer;
+import httpclientLearn.deadline.Deadline;
+import httpclientLearn.deadline.DeadlineExceededException;
+import httpclientLearn.dto.BulkResult;
+import httpclientLearn.dto.DownloadResult;
+import httpclientLearn.dto.HttpRequestSpec;
 import httpclientLearn.dto.HttpResult;
+import httpclientLearn.metrics.ClientMetrics;
+import httpclientLearn.metrics.RouteMetrics;
+import httpclientLearn.registry.ClientRegistry;
+import httpclientLearn.registry.PooledAsyncClient;
+import httpclientLearn.retry.RetryPolicy;
+import httpclientLearn.retry.RetryTimer;
+import httpclientLearn.upload.RequestBody;
 
 public class AsyncHttpClientHelper {
 
-    private static final AsyncHttpClientHelper instance = new AsyncHttpClientHelper();
+    private static final AsyncHttpClientHelper instance = new AsyncHttpClientHelper(ClientRegistry.DEFAULT_ASYNC);
+    private static final ConcurrentMap<String, AsyncHttpClientHelper> instances = new ConcurrentHashMap<String, AsyncHttpClientHelper>();
 
     public static AsyncHttpClientHelper getInstance() {
         return instance;
     }
 
-    private AsyncHttpClientHelper() {
+    /**
+     * 获取使用指定命名client的helper，client需要先通过 {@link ClientRegistry#register} 注册
+     *
+     * @param clientName
+     * @return
+     */
+    public static AsyncHttpClientHelper getInstance(String clientName) {
+        AsyncHttpClientHelper helper = instances.get(clientName);
+        if (helper == null) {
+            helper = new AsyncHttpClientHelper(clientName);
+            AsyncHttpClientHelper existing = instances.putIfAbsent(clientName, helper);
+            if (existing != null) {
+                helper = existing;
+            }
+        }
+        return helper;
+    }
+
+    private final String clientName;
+
+    private AsyncHttpClientHelper(String clientName) {
+        this.clientName = clientName;
     }
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    private final RequestConfig defaultRequestConfig = RequestConfig.custom().setSocketTimeout(Constants.SOCKET_TIME_OUT).setConnectTimeout(Constants.SOCKET_TIME_OUT)
-            .setConnectionRequestTimeout(Constants.SOCKET_TIME_OUT).build();
+    public ListenableFuture<HttpResult> get(String uri) {
+        return get(uri, (Map<String, String>) null);
+    }
+
+    public ListenableFuture<HttpResult> get(String uri, Map<String, String> headers) {
+        return get(uri, headers, null);
+    }
+
+    public ListenableFuture<HttpResult> get(String uri, Map<String, String> headers, Map<String, Object> parameters) {
+        return get(uri, headers, parameters, (Deadline) null);
+    }
+
+    /**
+     * @param deadline 截止时间，为null时只受client配置的超时限制
+     * @return 无法在截止时间之前完成时以 {@link DeadlineExceededException} 失败，见 {@link Deadline}
+     */
+    public ListenableFuture<HttpResult> get(String uri, Map<String, String> headers, Map<String, Object> parameters, Deadline deadline) {
+        return execute(RequestBuilder.get(), uri, headers, parameters, null, deadline);
+    }
+
+    public ListenableFuture<HttpResult> post(String uri) {
+        return post(uri, null, null, (byte[]) null);
+    }
+
+    public ListenableFuture<HttpResult> post(String uri, Map<String, Object> parameters) {
+        return post(uri, null, parameters, (byte[]) null);
+    }
+
+    public ListenableFuture<HttpResult> post(String uri, byte[] body) {
+        return post(uri, null, null, body);
+    }
+
+    public ListenableFuture<HttpResult> post(String uri, Map<String, Object> parameters, byte[] body) {
+        return post(uri, null, parameters, body);
+    }
+
+    public ListenableFuture<HttpResult> post(String uri, Map<String, String> headers, Map<String, Object> parameters, byte[] body) {
+        return post(uri, headers, parameters, body, (Deadline) null);
+    }
+
+    /**
+     * @see #get(String, Map, Map, Deadline)
+     */
+    public ListenableFuture<HttpResult> post(String uri, Map<String, String> headers, Map<String, Object> parameters, byte[] body, Deadline deadline) {
+        return execute(RequestBuilder.post(), uri, headers, parameters, body, deadline);
+    }
+
+    /**
+     * 响应体写入buffer池，完成后从buffer直接解码成对象，不经过中间的byte[]和String；解码在io reactor线程中进行
+     *
+     * @param type 解码的目标类型，解码器见 {@link ClientConfig#getJsonCodec()}
+     * @return 非2xx响应以 {@link HttpResponseException} 失败，没有响应体时结果为null
+     * @throws IllegalStateException client没有可用的解码器
+     */
+    public <T> ListenableFuture<T> get(String uri, Class<T> type) {
+        return get(uri, null, null, type);
+    }
+
+    public <T> ListenableFuture<T> get(String uri, Map<String, String> headers, Map<String, Object> parameters, Class<T> type) {
+        return executeJson(RequestBuilder.get(), uri, headers, parameters, null, type);
+    }
+
+    /**
+     * @see #get(String, Class)
+     */
+    public <T> ListenableFuture<T> post(String uri, Map<String, String> headers, Map<String, Object> parameters, byte[] body, Class<T> type) {
+        return executeJson(RequestBuilder.post(), uri, headers, parameters, body, type);
+    }
+
+    public ListenableFuture<HttpResult> put(String uri, byte[] body) {
+        return put(uri, null, null, body);
+    }
+
+    public ListenableFuture<HttpResult> put(String uri, Map<String, String> headers, Map<String, Object> parameters, byte[] body) {
+        return execute(RequestBuilder.put(), uri, headers, parameters, body, null);
+    }
+
+    /**
+     * 流式上传，请求体在发送时才读取，不会整体加载到内存；文件在明文http下零拷贝发送，见 {@link RequestBody}
+     */
+    public ListenableFuture<HttpResult> post(String uri, RequestBody body) {
+        return post(uri, null, null, body);
+    }
+
+    public ListenableFuture<HttpResult> post(String uri, Map<String, String> headers, Map<String, Object> parameters, RequestBody body) {
+        return upload(RequestBuilder.post(), uri, headers, parameters, body);
+    }
+
+    /**
+     * @see #post(String, RequestBody)
+     */
+    public ListenableFuture<HttpResult> put(String uri, RequestBody body) {
+        return put(uri, null, null, body);
+    }
+
+    public ListenableFuture<HttpResult> put(String uri, Map<String, String> headers, Map<String, Object> parameters, RequestBody body) {
+        return upload(RequestBuilder.put(), uri, headers, parameters, body);
+    }
+
+    public ListenableFuture<HttpResult> delete(String uri) {
+        return delete(uri, null, null);
+    }
+
+    public ListenableFuture<HttpResult> delete(String uri, Map<String, String> headers, Map<String, Object> parameters) {
+        return execute(RequestBuilder.delete(), uri, headers, parameters, null, null);
+    }
+
+    /**
+     * Check status of the given resource.
+     *
+     * @param uri the uri of the resource
+     * @return the status of the resource
+     */
+    public ListenableFuture<HttpResult> head(String uri) {
+        return head(uri, null);
+    }
 
+    /**
+     * @see #get(String, Map, Map, Deadline)
+     */
+    public ListenableFuture<HttpResult> head(String uri, Deadline deadline) {
+        return execute(RequestBuilder.head(), uri, null, null, null, deadline);
+    }
+
+    public ListenableFuture<HttpResult> execute(HttpRequestSpec request) {
+        return execute(request, null);
+    }
+
+    /**
+     * @see #get(String, Map, Map, Deadline)
+     */
+    public ListenableFuture<HttpResult> execute(HttpRequestSpec request, Deadline deadline) {
+        return execute(RequestBuilder.create(request.getMethod()), request.getUri(), request.getHeaders(), request.getParameters(), request.getBody(), deadline);
+    }
+
+    /**
+     * 不阻塞地提交请求，client的在途请求达到 {@link ClientConfig#getMaxInFlight()} 等上限时立即返回null，
+     * 调用方可以据此暂停上游的生产(背压)，等已提交的future完成后再提交；client没有配置上限时与 {@link #execute(HttpRequestSpec)} 相同
+     *
+     * @return 没有名额时返回null
+     */
+    public ListenableFuture<HttpResult> tryExecute(HttpRequestSpec request) {
+        return tryExecute(request, false, null);
+    }
+
+    /**
+     * 先获取名额再构建请求，没有名额时不会压缩请求体
+     *
+     * @param resubmit 是否是之前被拒绝过的请求，重新提交时不再计入拒绝次数
+     * @param onAvailable 没有名额时注册到 {@link AdmissionController#whenAvailable}，名额归还时回调；可以为null
+     * @return 没有名额时返回null
+     */
+    ListenableFuture<HttpResult> tryExecute(HttpRequestSpec request, boolean resubmit, Runnable onAvailable) {
+        final PooledAsyncClient client = ClientRegistry.getAsyncClient(clientName);
+        final AdmissionController admission = client.getAdmissionController();
+        Permit permit = null;
+        if (admission != null) {
+            final HttpHost host = admissionHost(request.getUri());
+            permit = admission.tryAcquire(host, !resubmit);
+            if (permit == null) {
+                logger.debug("No admission for request {}", request.getUri());
+                if (onAvailable != null) {
+                    admission.whenAvailable(host, onAvailable);
+                }
+                return null;
+            }
+        }
+        final HttpUriRequest httpRequest;
+        try {
+            httpRequest = buildRequest(client, RequestBuilder.create(request.getMethod()), request.getUri(), request.getHeaders(), request.getParameters(),
+                    requestEntity(client, request.getBody()));
+        } catch (RuntimeException e) {
+            release(permit);
+            throw e;
+        }
+        return dispatch(client, httpRequest, null, permit);
+    }
+
+    /**
+     * 批量发送请求，同一时刻最多maxInFlight个请求在途
+     *
+     * @param deadline 截止时间(System.currentTimeMillis())，到达时未完成的请求被取消并记为TimeoutException
+     * @return 全部完成或截止时间到达时返回按入参顺序排列的结果，取消该future会取消所有未完成的请求
+     */
+    public ListenableFuture<BulkResult> executeAll(List<HttpRequestSpec> requests, int maxInFlight, long deadline) {
+        return executeAll(requests, maxInFlight, deadline, null);
+    }
+
+    /**
+     * @param listener 每个请求完成时立即回调，不必等待整批结束
+     * @see #executeAll(List, int, long)
+     */
+    public ListenableFuture<BulkResult> executeAll(List<HttpRequestSpec> requests, int maxInFlight, long deadline, BulkListener listener) {
+        if (requests == null) {
+            throw new IllegalArgumentException("requests is required");
+        }
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+        return new BulkExecution(this, requests, listener).start(maxInFlight, deadline);
+    }
+
+    /**
+     * 将响应体直接写入文件，无论文件多大堆内存占用都保持不变
+     *
+     * @param target 目标文件，已存在时会被覆盖
+     * @return 包含状态码、响应头和写入字节数的future，非2xx响应的响应体同样会写入文件
+     */
+    public ListenableFuture<DownloadResult> download(String uri, Path target) {
+        return download(uri, null, null, target);
+    }
+
+    public ListenableFuture<DownloadResult> download(String uri, Map<String, String> headers, Map<String, Object> parameters, Path target) {
+        if (target == null) {
+            throw new IllegalArgumentException("target is required");
+        }
+        final PooledAsyncClient client = ClientRegistry.getAsyncClient(clientName);
+        final Permit permit;
+        try {
+            permit = admit(client, uri, null);
+        } catch (AdmissionRejectedException e) {
+            logger.warn("Rejected download {}: {}", uri, e.getMessage());
+            return Futures.immediateFailedFuture(e);
+        }
+        try {
+            final HttpUriRequest request = buildRequest(client, RequestBuilder.get(), uri, headers, parameters, null);
+            if (!request.containsHeader(HttpHeaders.ACCEPT_ENCODING)) {
+                // 文件按原样写入磁盘，不要求压缩
+                request.setHeader(HttpHeaders.ACCEPT_ENCODING, "identity");
+            }
+            final ListenableFuture<DownloadResult> future = parseDownload(client, request, target);
+            return permit == null ? future : permit.releaseWhenDone(future);
+        } catch (RuntimeException e) {
+            release(permit);
+            throw e;
+        }
+    }
+
+    /**
+     * 发送GET请求，只在日志中打印结果
+     *
+     * @deprecated 使用 {@link #get(String, Map, Map)} 获取结果
+     */
+    @Deprecated
     public void asyncGet(String uri, Map<String, String> headers, Map<String, Object> parameters) throws InterruptedException, ExecutionException {
+        Futures.addCallback(get(uri, headers, parameters), new FutureCallback<HttpResult>() {
+            @Override
+            public void onSuccess(HttpResult result) {
+                logger.info("{}", result);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                logger.error(t.getMessage(), t);
+            }
+        });
+    }
+
+    private <T> ListenableFuture<T> executeJson(RequestBuilder requestBuilder, String uri, Map<String, String> headers, Map<String, Object> parameters, byte[] body,
+            Class<T> type) {
+        final PooledAsyncClient client = ClientRegistry.getAsyncClient(clientName);
+        final ClientConfig config = client.getConfig();
+        if (config.getJsonCodec() == null) {
+            throw new IllegalStateException("no JsonCodec for client " + config.getName() + ", add jackson-databind or set one with ClientConfig.Builder.setJsonCodec");
+        }
+        final Permit permit;
+        try {
+            permit = admit(client, uri, null);
+        } catch (AdmissionRejectedException e) {
+            logger.warn("Rejected request {}: {}", uri, e.getMessage());
+            return Futures.immediateFailedFuture(e);
+        }
+        try {
+            final HttpUriRequest request = buildRequest(client, requestBuilder, uri, headers, parameters, requestEntity(client, body));
+            if (!request.containsHeader(HttpHeaders.ACCEPT)) {
+                request.setHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.getMimeType());
+            }
+            final ListenableFuture<T> future = parseJson(client, request, config.getJsonCodec(), type);
+            return permit == null ? future : permit.releaseWhenDone(future);
+        } catch (RuntimeException e) {
+            release(permit);
+            throw e;
+        }
+    }
+
+    private ListenableFuture<HttpResult> upload(RequestBuilder requestBuilder, String uri, Map<String, String> headers, Map<String, Object> parameters, RequestBody body) {
+        if (body == null) {
+            throw new IllegalArgumentException("body is required");
+        }
+        final PooledAsyncClient client = ClientRegistry.getAsyncClient(clientName);
+        final Permit permit;
+        try {
+            permit = admit(client, uri, null);
+        } catch (AdmissionRejectedException e) {
+            logger.warn("Rejected request {}: {}", uri, e.getMessage());
+            return Futures.immediateFailedFuture(e);
+        }
+        final HttpUriRequest request;
+        try {
+            request = buildRequest(client, requestBuilder, uri, headers, parameters, body.toEntity());
+        } catch (RuntimeException e) {
+            release(permit);
+            throw e;
+        }
+        return dispatch(client, request, null, permit);
+    }
+
+    /**
+     * 先按client的准入策略获取名额，可能阻塞调用线程，见 {@link AdmissionController}；获得名额后才构建请求和压缩请求体
+     *
+     * 合并的请求按第一个调用方的截止时间执行，带截止时间的请求不参与合并
+     */
+    private ListenableFuture<HttpResult> execute(RequestBuilder requestBuilder, String uri, Map<String, String> headers, Map<String, Object> parameters, byte[] body,
+            Deadline deadline) {
+        final PooledAsyncClient client = ClientRegistry.getAsyncClient(clientName);
+        final Permit permit;
+        try {
+            permit = admit(client, uri, deadline);
+        } catch (AdmissionRejectedException e) {
+            logger.warn("Rejected request {}: {}", uri, e.getMessage());
+            return Futures.immediateFailedFuture(e);
+        }
+        final HttpUriRequest request;
+        try {
+            request = buildRequest(client, requestBuilder, uri, headers, parameters, requestEntity(client, body));
+        } catch (RuntimeException e) {
+            release(permit);
+            throw e;
+        }
+        return dispatch(client, request, deadline, permit);
+    }
+
+    /**
+     * @return 获得的名额，client没有配置准入控制时返回null
+     */
+    private static Permit admit(PooledAsyncClient client, String uri, Deadline deadline) throws AdmissionRejectedException {
+        final AdmissionController admission = client.getAdmissionController();
+        return admission == null ? null : admission.acquire(admissionHost(uri), deadline);
+    }
+
+    /**
+     * 参数只影响query或者请求体，不改变目标host，因此不必构建请求
+     */
+    private static HttpHost admissionHost(String uri) {
+        if (uri == null || uri.isEmpty()) {
+            throw new IllegalArgumentException("uri is required");
+        }
+        return URIUtils.extractHost(URI.create(uri));
+    }
+
+    private static void release(Permit permit) {
+        if (permit != null) {
+            permit.release();
+        }
+    }
+
+    /**
+     * @param permit 请求占用的名额，结果完成时归还；可以为null
+     */
+    private ListenableFuture<HttpResult> dispatch(PooledAsyncClient client, HttpUriRequest request, Deadline deadline, Permit permit) {
+        if (permit == null) {
+            return coalesce(client, request, deadline);
+        }
+        try {
+            return permit.releaseWhenDone(coalesce(client, request, deadline));
+        } catch (RuntimeException e) {
+            permit.release();
+            throw e;
+        }
+    }
+
+    private ListenableFuture<HttpResult> coalesce(PooledAsyncClient client, HttpUriRequest request, Deadline deadline) {
+        final RequestCoalescer coalescer = client.getCoalescer();
+        if (coalescer == null || deadline != null || !RequestCoalescer.isCoalescable(request)) {
+            return parseRequest(client, request, deadline);
+        }
+
+        final String key = RequestCoalescer.key(request);
+        final SettableFuture<HttpResult> slot = SettableFuture.create();
+        final ListenableFuture<HttpResult> shared = coalescer.join(key, slot);
+        if (shared != null) {
+            logger.debug("Coalesced request {}", request.getURI());
+            return RequestCoalescer.copyOf(shared);
+        }
+        // leader拿到自己的结果，有等待方时先生成共享拷贝再交给leader
+        final ListenableFuture<HttpResult> completed = Futures.transform(parseRequest(client, request, null), new Function<HttpResult, HttpResult>() {
+            @Override
+            public HttpResult apply(HttpResult result) {
+                coalescer.complete(key, slot, result);
+                return result;
+            }
+        });
+        // 取消leader不会取消等待方共享的请求，结果到达后归还
+        final ListenableFuture<HttpResult> leader = Futures.nonCancellationPropagating(completed);
+        Futures.addCallback(completed, new FutureCallback<HttpResult>() {
+            @Override
+            public void onSuccess(HttpResult result) {
+                if (leader.isCancelled() && result != null) {
+                    result.release();
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                coalescer.fail(key, slot, t);
+            }
+        }, MoreExecutors.directExecutor());
+        return leader;
+    }
+
+    /**
+     * byte[]请求体超过 {@link ClientConfig#getRequestCompressionThreshold()} 时压缩
+     */
+    private static HttpEntity requestEntity(PooledAsyncClient client, byte[] body) {
+        return body == null ? null : ContentCodec.requestEntity(body, client.getConfig().getRequestCompressionThreshold(), client.getMetrics());
+    }
+
+    private HttpUriRequest buildRequest(PooledAsyncClient client, RequestBuilder requestBuilder, String uri, Map<String, String> headers, Map<String, Object> parameters, HttpEntity entity) {
 
         if (uri == null || uri.isEmpty()) {
             throw new IllegalArgumentException("uri is required");
         }
 
-        RequestBuilder requestBuilder = RequestBuilder.get();
         requestBuilder.setUri(uri);
 
         // Populate request parameters
@@ -58,10 +541,15 @@ public class AsyncHttpClientHelper {
                 }
             }
         }
+        // Populate request body
+        if (entity != null) {
+            requestBuilder.setEntity(entity);
+        }
 
         // Request configuration can be overridden at the request level.
         // They will take precedence over the one set at the client level.
-        requestBuilder.setConfig(defaultRequestConfig);
+        // route配置了超时覆盖时使用覆盖后的配置
+        requestBuilder.setConfig(client.getRequestConfig(RouteConfig.normalize(requestBuilder.getUri())));
 
         // Set custom header
         if (headers != null && !headers.isEmpty()) {
@@ -70,79 +558,357 @@ public class AsyncHttpClientHelper {
             }
         }
 
-        asyncParseRequest(AsyncClientPool.getClient(), requestBuilder.build());
+        return requestBuilder.build();
+    }
+
+    /**
+     * client配置了 {@link RetryPolicy} 时幂等请求按策略重试和对冲，否则直接执行
+     */
+    private ListenableFuture<HttpResult> parseRequest(PooledAsyncClient client, HttpUriRequest request, Deadline deadline) {
+        final RetryPolicy policy = client.getRetryPolicy();
+        if (policy == null || !policy.isRetryable(request)) {
+            return executeRequest(client, request, deadline);
+        }
+        return new RetryingExecution(this, client, policy, request, deadline).start();
     }
 
-    private void asyncParseRequest(CloseableHttpAsyncClient httpClient, HttpUriRequest request) throws InterruptedException, ExecutionException {
+    /**
+     * 提交请求并立即返回，响应在io reactor线程中解析后设置到future中，不占用调用线程
+     *
+     * @param client
+     * @param request
+     * @param deadline 不为null时按剩余时间设置三段超时，估计拿不到连接时直接失败，到达截止时间时以 {@link DeadlineExceededException} 失败
+     * @return 取消该future会同时取消底层的http请求并释放连接
+     */
+    ListenableFuture<HttpResult> executeRequest(PooledAsyncClient client, final HttpUriRequest request, Deadline deadline) {
         logger.debug("Executing request " + request.getURI());
 
-        httpClient.start();
-        httpClient.execute(request, new FutureCallback<HttpResponse>() {
-            @Override
-            public void completed(HttpResponse response) {
-                try {
-                    ProtocolVersion protocolVersion = response.getProtocolVersion();
-                    int code = response.getStatusLine().getStatusCode();
-                    String reasonPhrase = response.getStatusLine().getReasonPhrase();
-                    HttpResult result = new HttpResult(protocolVersion, code, reasonPhrase);
-                    populate(response, result);
-                    logger.info(result.toString());
-                } catch (IOException e) {
-                    logger.error(e.getMessage(), e);
+        final SettableFuture<HttpResult> resultFuture = SettableFuture.create();
+        final CircuitBreaker breaker;
+        try {
+            if (deadline != null) {
+                // 先于熔断器检查，被拒绝的请求不占用半开状态的探测名额
+                deadline.checkLease(client.getConnectionManager(), client.getMetrics(), URIUtils.extractHost(request.getURI()));
+                if (request instanceof HttpRequestBase) {
+                    // 重试和对冲时按当时的剩余时间重新拆分
+                    final HttpRequestBase base = (HttpRequestBase) request;
+                    base.setConfig(deadline.split(base.getConfig() != null ? base.getConfig() : client.getRequestConfig()));
                 }
             }
+            breaker = acquireBreaker(client, request);
+        } catch (CircuitOpenException | DeadlineExceededException e) {
+            logger.warn("Rejected request {}: {}", request.getURI(), e.getMessage());
+            resultFuture.setException(e);
+            return resultFuture;
+        }
+        final ClientMetrics metrics = client.getMetrics();
+        final HttpClientContext context = createContext();
+        final long start = System.nanoTime();
+        final Future<?> responseFuture;
+        if (client.getConfig().isPooledBuffers()) {
+            // 响应体直接写入buffer池
+            responseFuture = client.getHttpClient().execute(HttpAsyncMethods.create(request), new PooledResponseConsumer(BufferPool.getDefault(), metrics), context,
+                    new org.apache.http.concurrent.FutureCallback<HttpResult>() {
+                        @Override
+                        public void completed(HttpResult result) {
+                            record(metrics, breaker, context, request, result.getStatusCode(), System.nanoTime() - start, result.getBodyLength());
+                            if (!resultFuture.set(result)) {
+                                // 调用方已经取消，没有人会release
+                                result.release();
+                            }
+                        }
+
+                        @Override
+                        public void failed(Exception e) {
+                            record(metrics, breaker, context, request, RouteMetrics.FAILURE, System.nanoTime() - start, 0);
+                            logger.error("Unexpected error occurs while executing request {}", request.getURI(), e);
+                            resultFuture.setException(e);
+                        }
+
+                        @Override
+                        public void cancelled() {
+                            cancel(resultFuture, metrics, breaker, context, request, start);
+                        }
+                    });
+        } else {
+            responseFuture = client.getHttpClient().execute(request, context, new org.apache.http.concurrent.FutureCallback<HttpResponse>() {
+                @Override
+                public void completed(HttpResponse response) {
+                    try {
+                        ProtocolVersion protocolVersion = response.getProtocolVersion();
+                        int code = response.getStatusLine().getStatusCode();
+                        String reasonPhrase = response.getStatusLine().getReasonPhrase();
+
+                        final HttpResult result = new HttpResult(protocolVersion, code, reasonPhrase);
+                        logger.trace("{}", response.getStatusLine());
+                        populate(response, result, metrics); // 将报文内容加入到result中
+                        record(metrics, breaker, context, request, code, System.nanoTime() - start, result.getBodyLength());
+                        resultFuture.set(result);
+                    } catch (IOException e) {
+                        logger.error("Unexpected I/O error occurs while reading response {}", request.getURI(), e);
+                        resultFuture.setException(e);
+                    }
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    record(metrics, breaker, context, request, RouteMetrics.FAILURE, System.nanoTime() - start, 0);
+                    logger.error("Unexpected error occurs while executing request {}", request.getURI(), e);
+                    resultFuture.setException(e);
+                }
+
+                @Override
+                public void cancelled() {
+                    cancel(resultFuture, metrics, breaker, context, request, start);
+                }
+            });
+        }
+
+        propagateCancellation(resultFuture, responseFuture);
+        if (deadline != null) {
+            expireAt(deadline, request, resultFuture, responseFuture);
+        }
+        return resultFuture;
+    }
+
+    /**
+     * 底层请求被取消：调用方取消时结果已经是取消状态；否则是截止时间到达，结果已经失败，
+     * 按失败记入指标和熔断器，与同步请求超时一致
+     */
+    private static void cancel(SettableFuture<HttpResult> resultFuture, ClientMetrics metrics, CircuitBreaker breaker, HttpClientContext context, HttpUriRequest request,
+            long start) {
+        if (!resultFuture.isCancelled()) {
+            record(metrics, breaker, context, request, RouteMetrics.FAILURE, System.nanoTime() - start, 0);
+        }
+        resultFuture.cancel(false);
+    }
 
+    /**
+     * 到达截止时间时结果以 {@link DeadlineExceededException} 失败并取消底层请求，请求先完成时取消计时
+     */
+    private void expireAt(Deadline deadline, final HttpUriRequest request, final SettableFuture<HttpResult> resultFuture, final Future<?> responseFuture) {
+        final ScheduledFuture<?> timer = RetryTimer.schedule(new Runnable() {
             @Override
-            public void failed(Exception e) {
-                logger.error(e.getMessage(), e);
+            public void run() {
+                if (resultFuture.setException(new DeadlineExceededException("deadline exceeded while executing " + request.getURI()))) {
+                    logger.warn("Request {} exceeded its deadline", request.getURI());
+                    responseFuture.cancel(true);
+                }
             }
-
+        }, deadline.remaining(), TimeUnit.MILLISECONDS);
+        resultFuture.addListener(new Runnable() {
             @Override
-            public void cancelled() {
-                logger.error("cancelled");
+            public void run() {
+                timer.cancel(false);
             }
-        });
-
+        }, MoreExecutors.directExecutor());
     }
 
-    private HttpResult parseRequest(CloseableHttpAsyncClient httpClient, HttpUriRequest request) throws InterruptedException, ExecutionException {
+    /**
+     * typed请求的实现：不论client是否开启pooledBuffers，响应体都由 {@link PooledResponseConsumer} 写入buffer池，解码后立即归还
+     */
+    private <T> ListenableFuture<T> parseJson(PooledAsyncClient client, final HttpUriRequest request, final JsonCodec codec, final Class<T> type) {
         logger.debug("Executing request " + request.getURI());
 
+        final SettableFuture<T> resultFuture = SettableFuture.create();
+        final CircuitBreaker breaker;
         try {
-            httpClient.start();
-            final Future<HttpResponse> future = httpClient.execute(request, null);
+            breaker = acquireBreaker(client, request);
+        } catch (CircuitOpenException e) {
+            logger.warn("Rejected request {}: {}", request.getURI(), e.getMessage());
+            resultFuture.setException(e);
+            return resultFuture;
+        }
+        final ClientMetrics metrics = client.getMetrics();
+        final HttpClientContext context = createContext();
+        final long start = System.nanoTime();
+        final Future<HttpResult> responseFuture = client.getHttpClient().execute(HttpAsyncMethods.create(request), new PooledResponseConsumer(BufferPool.getDefault(), metrics),
+                context, new org.apache.http.concurrent.FutureCallback<HttpResult>() {
+                    @Override
+                    public void completed(HttpResult result) {
+                        record(metrics, breaker, context, request, result.getStatusCode(), System.nanoTime() - start, result.getBodyLength());
+                        try {
+                            resultFuture.set(decode(result, codec, type));
+                        } catch (HttpResponseException e) {
+                            logger.warn("Request {} returned {} {}", request.getURI(), e.getStatusCode(), e.getMessage());
+                            resultFuture.setException(e);
+                        } catch (JsonDecodeException e) {
+                            logger.warn("Failed to decode response of {}: {}", request.getURI(), e.getMessage());
+                            resultFuture.setException(e);
+                        } catch (IOException | RuntimeException e) {
+                            logger.error("Unexpected error occurs while decoding response {}", request.getURI(), e);
+                            resultFuture.setException(e);
+                        } finally {
+                            result.release();
+                        }
+                    }
+
+                    @Override
+                    public void failed(Exception e) {
+                        record(metrics, breaker, context, request, RouteMetrics.FAILURE, System.nanoTime() - start, 0);
+                        logger.error("Unexpected error occurs while executing request {}", request.getURI(), e);
+                        resultFuture.setException(e);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        resultFuture.cancel(false);
+                    }
+                });
+
+        propagateCancellation(resultFuture, responseFuture);
+        return resultFuture;
+    }
 
-            HttpResponse response = future.get();
-            ProtocolVersion protocolVersion = response.getProtocolVersion();
-            int code = response.getStatusLine().getStatusCode();
-            String reasonPhrase = response.getStatusLine().getReasonPhrase();
+    private static <T> T decode(HttpResult result, JsonCodec codec, Class<T> type) throws IOException {
+        if (result.getStatusCode() >= 300) {
+            throw new HttpResponseException(result.getStatusCode(), result.getReasonPhrase());
+        }
+        if (result.getBodyLength() == 0) {
+            return null;
+        }
+        final String contentType = result.getHeader(HttpHeaders.CONTENT_TYPE);
+        // 响应体已经在内存中，读取不会出错，IOException都来自解码
+        try (InputStream in = result.getBodyAsStream()) {
+            return codec.read(in, JsonResponseHandler.charsetOf(contentType != null ? ContentType.parse(contentType) : null), type);
+        } catch (IOException e) {
+            throw new JsonDecodeException(result.getStatusCode(), e);
+        }
+    }
 
-            final HttpResult result = new HttpResult(protocolVersion, code, reasonPhrase);
-            logger.trace("----------------------------------------");
-            logger.trace("{}", response.getStatusLine());
-            populate(response, result); // 将报文内容加入到result中
-            logger.trace("----------------------------------------");
+    /**
+     * 下载到文件的实现：响应体由ZeroCopyConsumer直接写入FileChannel，明文http下通过transferFrom从socket拷贝到文件，不经过用户态byte数组
+     */
+    private ListenableFuture<DownloadResult> parseDownload(PooledAsyncClient client, final HttpUriRequest request, final Path target) {
+        logger.debug("Downloading {} to {}", request.getURI(), target);
+
+        final SettableFuture<DownloadResult> resultFuture = SettableFuture.create();
+        final ZeroCopyConsumer<DownloadResult> consumer;
+        try {
+            // ZeroCopyConsumer不会截断已有文件，先删除
+            Files.deleteIfExists(target);
+            consumer = new ZeroCopyConsumer<DownloadResult>(target.toFile()) {
+                @Override
+                protected DownloadResult process(HttpResponse response, File file, ContentType contentType) throws Exception {
+                    final DownloadResult result = new DownloadResult(response.getProtocolVersion(), response.getStatusLine().getStatusCode(), response.getStatusLine().getReasonPhrase(),
+                            target);
+                    for (Header header : response.getAllHeaders()) {
+                        result.addHeader(header.getName(), header.getValue());
+                    }
+                    if (contentType != null) {
+                        result.setContentType(contentType.getMimeType());
+                    }
+                    result.setBytes(file.length());
+                    return result;
+                }
+            };
+        } catch (IOException e) {
+            logger.error("Unexpected I/O error occurs while opening file {}", target, e);
+            resultFuture.setException(e);
+            return resultFuture;
+        }
 
-            return result;
-        } catch (final ClientProtocolException ex) {
-            logger.error("Unexpected Protocol error occurs while executing request {}", request.getURI(), ex);
-        } catch (final IOException ex) {
-            logger.error("Unexpected I/O error occurs while executing request {}", request.getURI(), ex);
+        final CircuitBreaker breaker;
+        try {
+            breaker = acquireBreaker(client, request);
+        } catch (CircuitOpenException e) {
+            logger.warn("Rejected download {}: {}", request.getURI(), e.getMessage());
+            resultFuture.setException(e);
+            return resultFuture;
         }
+        final ClientMetrics metrics = client.getMetrics();
+        final HttpClientContext context = createContext();
+        final long start = System.nanoTime();
+        final Future<DownloadResult> responseFuture = client.getHttpClient().execute(HttpAsyncMethods.create(request), consumer, context,
+                new org.apache.http.concurrent.FutureCallback<DownloadResult>() {
+                    @Override
+                    public void completed(DownloadResult result) {
+                        record(metrics, breaker, context, request, result.getStatusCode(), System.nanoTime() - start, result.getBytes());
+                        resultFuture.set(result);
+                    }
+
+                    @Override
+                    public void failed(Exception e) {
+                        record(metrics, breaker, context, request, RouteMetrics.FAILURE, System.nanoTime() - start, 0);
+                        logger.error("Unexpected error occurs while downloading {}", request.getURI(), e);
+                        resultFuture.setException(e);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        resultFuture.cancel(false);
+                    }
+                });
+
+        propagateCancellation(resultFuture, responseFuture);
+        return resultFuture;
+    }
 
-        return null;
+    /**
+     * @return host的熔断器，未开启熔断时返回null
+     * @throws CircuitOpenException 熔断打开，请求不获取连接直接失败
+     */
+    private static CircuitBreaker acquireBreaker(PooledAsyncClient client, HttpUriRequest request) throws CircuitOpenException {
+        final CircuitBreakers breakers = client.getCircuitBreakers();
+        final CircuitBreaker breaker = breakers == null ? null : breakers.get(request.getURI());
+        if (breaker != null && !breaker.tryAcquire()) {
+            throw new CircuitOpenException(breaker.getHost());
+        }
+        return breaker;
     }
 
-    private void populate(final HttpResponse response, final HttpResult result) throws IOException {
+    private static void record(ClientMetrics metrics, CircuitBreaker breaker, HttpClientContext context, HttpUriRequest request, int statusCode, long nanos, long bytes) {
+        metrics.recordRequest(context, request, statusCode, nanos, bytes);
+        if (breaker != null) {
+            breaker.onResult(statusCode, nanos);
+        }
+    }
 
-        Header[] headers = response.getAllHeaders();
-        if (headers != null && headers.length > 0) {
-            for (Header header : headers) {
-                result.addHeader(header.getName(), header.getValue());
+    /**
+     * 每次请求使用独立的cookie，避免共享的client在调用方之间串cookie
+     */
+    private HttpClientContext createContext() {
+        final HttpClientContext context = HttpClientContext.create();
+        context.setCookieStore(new BasicCookieStore());
+        return context;
+    }
+
+    /**
+     * 调用方取消时中断底层请求，连接立即被释放
+     */
+    private static void propagateCancellation(final ListenableFuture<?> resultFuture, final Future<?> responseFuture) {
+        resultFuture.addListener(new Runnable() {
+            @Override
+            public void run() {
+                if (resultFuture.isCancelled()) {
+                    responseFuture.cancel(true);
+                }
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * 将响应头和响应体拷贝到result中，压缩的响应体边读边解压
+     */
+    private void populate(final HttpResponse response, final HttpResult result, final ClientMetrics metrics) throws IOException {
+
+        HttpEntity entity = response.getEntity();
+        final String encoding = ContentCodec.encodingOf(entity);
+        if (encoding != null) {
+            entity = new DecompressingEntity(entity, encoding, metrics);
+        }
+
+        if (encoding == null) {
+            // getAllHeaders返回的是新数组，直接引用
+            result.setHeaders(response.getAllHeaders());
+        } else {
+            for (Header header : response.getAllHeaders()) {
+                if (!ContentCodec.isEncodingHeader(header.getName())) {
+                    result.addHeader(header);
+                }
             }
         }
 
-        final HttpEntity entity = response.getEntity();
         if (entity != null) {
 
             logger.trace("Response Content-Length: {}", entity.getContentLength());
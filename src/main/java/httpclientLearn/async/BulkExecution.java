@@ -0,0 +1,214 @@
+package httpclientLearn.async;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import httpclientLearn.dto.BulkItem;
+import httpclientLearn.dto.BulkResult;
+import httpclientLearn.dto.HttpRequestSpec;
+import httpclientLearn.dto.HttpResult;
+
+/**
+ * 一次executeAll调用的状态
+ *
+ * 先发出maxInFlight个请求，之后每完成一个再发下一个，调用线程和io reactor线程都不会阻塞。
+ * client配置了在途请求上限时通过 {@link AsyncHttpClientHelper#tryExecute} 提交，没有名额的请求在名额归还时重新提交，不占用线程等待也不轮询。
+ * 截止时间到达或者调用方取消时，未完成的请求全部取消，连接立即归还连接池。
+ */
+class BulkExecution {
+
+    // 所有批量请求共用一个线程处理截止时间
+    private static final ScheduledExecutorService deadlineTimer = Executors.newScheduledThreadPool(1,
+            new ThreadFactoryBuilder().setNameFormat("async-bulk-deadline-%d").setDaemon(true).build());
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final AsyncHttpClientHelper helper;
+    private final List<HttpRequestSpec> requests;
+    private final BulkListener listener;
+    private final AtomicReferenceArray<BulkItem> items;
+    private final ConcurrentMap<Integer, ListenableFuture<HttpResult>> inFlight = new ConcurrentHashMap<Integer, ListenableFuture<HttpResult>>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicInteger remaining;
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private final SettableFuture<BulkResult> resultFuture = SettableFuture.create();
+    private volatile ScheduledFuture<?> deadlineFuture;
+
+    BulkExecution(AsyncHttpClientHelper helper, List<HttpRequestSpec> requests, BulkListener listener) {
+        this.helper = helper;
+        this.requests = new ArrayList<HttpRequestSpec>(requests);
+        this.listener = listener;
+        this.items = new AtomicReferenceArray<BulkItem>(this.requests.size());
+        this.remaining = new AtomicInteger(this.requests.size());
+    }
+
+    ListenableFuture<BulkResult> start(int maxInFlight, long deadline) {
+        if (requests.isEmpty()) {
+            resultFuture.set(new BulkResult(new ArrayList<BulkItem>(), false));
+            return resultFuture;
+        }
+        resultFuture.addListener(new Runnable() {
+            @Override
+            public void run() {
+                if (resultFuture.isCancelled()) {
+                    finish(true, new CancellationException("bulk execution cancelled"));
+                }
+            }
+        }, MoreExecutors.directExecutor());
+        deadlineFuture = deadlineTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                finish(true, new TimeoutException("deadline exceeded"));
+            }
+        }, Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < maxInFlight && !finished.get(); i++) {
+            launchNext();
+        }
+        return resultFuture;
+    }
+
+    /**
+     * 发出下一个请求；请求无法构建(例如uri非法)时记为失败并继续发下一个，保证占用的并发名额不丢失
+     */
+    private void launchNext() {
+        while (!finished.get()) {
+            final int index = next.getAndIncrement();
+            if (index >= requests.size()) {
+                return;
+            }
+            if (launch(index, false)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param resubmit 是否是等到名额之后的重新提交
+     * @return 请求是否已经提交或者在等待准入名额，无法构建时返回false
+     */
+    private boolean launch(final int index, boolean resubmit) {
+        final ListenableFuture<HttpResult> future;
+        try {
+            future = helper.tryExecute(requests.get(index), resubmit, new Runnable() {
+                @Override
+                public void run() {
+                    if (!finished.get() && !launch(index, true)) {
+                        launchNext();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            complete(index, null, e);
+            return false;
+        }
+        if (future == null) {
+            // 已经注册到准入控制，名额归还时重新提交
+            return true;
+        }
+        inFlight.put(index, future);
+        Futures.addCallback(future, new FutureCallback<HttpResult>() {
+            @Override
+            public void onSuccess(HttpResult result) {
+                inFlight.remove(index);
+                if (!complete(index, result, null) && result != null) {
+                    // 截止时间之后才返回的结果没有人会release
+                    result.release();
+                }
+                launchNext();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                inFlight.remove(index);
+                complete(index, null, t);
+                launchNext();
+            }
+        }, MoreExecutors.directExecutor());
+        // 截止时间可能恰好在put之前到达
+        if (finished.get()) {
+            future.cancel(true);
+        }
+        return true;
+    }
+
+    /**
+     * @return 结果是否被采用，截止时间之后到达的结果返回false
+     */
+    private boolean complete(int index, HttpResult result, Throwable error) {
+        if (finished.get()) {
+            return false;
+        }
+        BulkItem item = new BulkItem(index, requests.get(index), result, error);
+        if (!items.compareAndSet(index, null, item)) {
+            return false;
+        }
+        notifyListener(item);
+        if (remaining.decrementAndGet() == 0) {
+            finish(false, null);
+        }
+        return true;
+    }
+
+    /**
+     * @param timedOut 是否提前结束
+     * @param cause 提前结束时未完成项的error
+     */
+    private void finish(boolean timedOut, Throwable cause) {
+        if (!finished.compareAndSet(false, true)) {
+            return;
+        }
+        if (deadlineFuture != null) {
+            deadlineFuture.cancel(false);
+        }
+        List<BulkItem> result = new ArrayList<BulkItem>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            BulkItem item = items.get(i);
+            if (item == null) {
+                item = new BulkItem(i, requests.get(i), null, cause);
+                if (!items.compareAndSet(i, null, item)) {
+                    item = items.get(i);
+                }
+            }
+            result.add(item);
+        }
+        if (timedOut) {
+            for (ListenableFuture<HttpResult> future : inFlight.values()) {
+                future.cancel(true);
+            }
+            logger.debug("bulk execution stopped early, {} of {} requests unfinished", remaining.get(), requests.size());
+        }
+        resultFuture.set(new BulkResult(result, timedOut));
+    }
+
+    private void notifyListener(BulkItem item) {
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.onComplete(item);
+        } catch (RuntimeException e) {
+            logger.error("bulk listener " + listener + " exception", e);
+        }
+    }
+}
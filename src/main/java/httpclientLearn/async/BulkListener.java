@@ -0,0 +1,13 @@
+package httpclientLearn.async;
+
+import httpclientLearn.dto.BulkItem;
+
+/**
+ * 批量请求中每个请求完成(成功或失败)时回调，先完成的先回调
+ *
+ * 回调在io reactor线程中执行，实现不应阻塞
+ */
+public interface BulkListener {
+
+    void onComplete(BulkItem item);
+}
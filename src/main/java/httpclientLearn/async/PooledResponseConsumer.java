@@ -0,0 +1,104 @@
+package httpclientLearn.async;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.methods.AsyncByteConsumer;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+
+import httpclientLearn.buffer.BufferPool;
+import httpclientLearn.buffer.PooledBuffer;
+import httpclientLearn.compress.ContentCodec;
+import httpclientLearn.dto.HttpResult;
+import httpclientLearn.metrics.ClientMetrics;
+
+/**
+ * 将响应体从io reactor的读缓冲区直接写入buffer池中的buffer，不经过中间的byte数组
+ *
+ * 压缩的响应体先原样写入buffer，响应结束时从这个buffer流式解压到另一个buffer中，只多占用压缩后大小的内存
+ */
+class PooledResponseConsumer extends AsyncByteConsumer<HttpResult> {
+
+    private final BufferPool pool;
+    private final ClientMetrics metrics;
+    private HttpResult result;
+    private PooledBuffer body;
+    private String encoding;
+
+    PooledResponseConsumer(BufferPool pool, ClientMetrics metrics) {
+        this.pool = pool;
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected void onResponseReceived(HttpResponse response) throws HttpException, IOException {
+        result = new HttpResult(response.getProtocolVersion(), response.getStatusLine().getStatusCode(), response.getStatusLine().getReasonPhrase());
+        final HttpEntity entity = response.getEntity();
+        encoding = ContentCodec.encodingOf(entity);
+        if (encoding == null) {
+            // getAllHeaders返回的是新数组，直接引用
+            result.setHeaders(response.getAllHeaders());
+        } else {
+            for (Header header : response.getAllHeaders()) {
+                if (!ContentCodec.isEncodingHeader(header.getName())) {
+                    result.addHeader(header);
+                }
+            }
+        }
+        if (entity != null) {
+            final ContentType contentType = ContentType.get(entity);
+            if (contentType != null) {
+                result.setContentType(contentType.getMimeType());
+                result.setCharset(contentType.getCharset() != null ? contentType.getCharset() : HTTP.DEF_CONTENT_CHARSET);
+            }
+            long length = entity.getContentLength();
+            result.setContentLength(encoding == null ? length : -1);
+            // Content-Length已知时一次申请到位
+            body = pool.acquire(length > 0 && length <= Integer.MAX_VALUE ? (int) length : 4096);
+        }
+    }
+
+    @Override
+    protected void onByteReceived(ByteBuffer buf, IOControl ioctrl) throws IOException {
+        body.write(buf);
+    }
+
+    @Override
+    protected HttpResult buildResult(HttpContext context) throws Exception {
+        if (encoding != null && body != null) {
+            decode();
+        }
+        result.setBody(body);
+        body = null;
+        return result;
+    }
+
+    private void decode() throws IOException {
+        final PooledBuffer compressed = body;
+        // 按压缩比约4倍预估，不够时buffer自动增长
+        body = pool.acquire((int) Math.min(Math.max(4096L, compressed.size() * 4L), 1 << 20));
+        try {
+            long decoded = body.readFrom(ContentCodec.decode(encoding, compressed.asInputStream()));
+            metrics.recordResponseCompression(compressed.size(), decoded);
+        } finally {
+            compressed.release();
+        }
+    }
+
+    @Override
+    protected void releaseResources() {
+        super.releaseResources();
+        // 失败或者取消时buffer没有交给result，直接归还
+        if (body != null) {
+            body.release();
+            body = null;
+        }
+    }
+}
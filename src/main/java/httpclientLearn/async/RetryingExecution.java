@@ -0,0 +1,206 @@
+package httpclientLearn.async;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.http.client.methods.HttpUriRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import httpclientLearn.breaker.CircuitOpenException;
+import httpclientLearn.deadline.Deadline;
+import httpclientLearn.deadline.DeadlineExceededException;
+import httpclientLearn.dto.HttpResult;
+import httpclientLearn.metrics.RouteMetrics;
+import httpclientLearn.registry.PooledAsyncClient;
+import httpclientLearn.retry.HedgeRace;
+import httpclientLearn.retry.RetryPolicy;
+import httpclientLearn.retry.RetryTimer;
+
+/**
+ * 一个异步请求的重试和对冲状态
+ *
+ * 每次尝试完成后在回调中决定是否重试，退避由 {@link RetryTimer} 计时，不占用io reactor线程。
+ * 调用方取消时，正在进行的尝试(包括对冲请求)一起取消。
+ */
+class RetryingExecution {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final AsyncHttpClientHelper helper;
+    private final PooledAsyncClient client;
+    private final RetryPolicy policy;
+    private final HttpUriRequest request;
+    private final Deadline deadline;
+    private final SettableFuture<HttpResult> resultFuture = SettableFuture.create();
+    private volatile ListenableFuture<HttpResult> current;
+
+    /**
+     * @param deadline 截止时间，可以为null；退避之后已经到达截止时间的不再重试
+     */
+    RetryingExecution(AsyncHttpClientHelper helper, PooledAsyncClient client, RetryPolicy policy, HttpUriRequest request, Deadline deadline) {
+        this.helper = helper;
+        this.client = client;
+        this.policy = policy;
+        this.request = request;
+        this.deadline = deadline;
+    }
+
+    ListenableFuture<HttpResult> start() {
+        policy.onRequest();
+        resultFuture.addListener(new Runnable() {
+            @Override
+            public void run() {
+                ListenableFuture<HttpResult> attempt = current;
+                if (resultFuture.isCancelled() && attempt != null) {
+                    attempt.cancel(true);
+                }
+            }
+        }, MoreExecutors.directExecutor());
+        attempt(request, 0);
+        return resultFuture;
+    }
+
+    private void attempt(final HttpUriRequest attempt, final int retry) {
+        if (resultFuture.isDone()) {
+            return;
+        }
+        final ListenableFuture<HttpResult> future = policy.isHedging(attempt) ? executeHedged(attempt) : helper.executeRequest(client, attempt, deadline);
+        current = future;
+        if (resultFuture.isCancelled()) {
+            // 在current赋值之前被取消
+            future.cancel(true);
+        }
+        Futures.addCallback(future, new FutureCallback<HttpResult>() {
+            @Override
+            public void onSuccess(HttpResult result) {
+                if (hasTimeToRetry() && policy.shouldRetry(result.getStatusCode(), retry)) {
+                    result.release();
+                    retryLater(attempt, retry);
+                } else if (!resultFuture.set(result)) {
+                    result.release();
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                if (t instanceof CancellationException) {
+                    resultFuture.cancel(false);
+                } else if (t instanceof CircuitOpenException || t instanceof DeadlineExceededException) {
+                    // 熔断期间或者截止时间之后重试同样会被拒绝
+                    resultFuture.setException(t);
+                } else if (hasTimeToRetry() && policy.shouldRetry(RouteMetrics.FAILURE, retry)) {
+                    retryLater(attempt, retry);
+                } else {
+                    resultFuture.setException(t);
+                }
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * 在 {@link RetryPolicy#shouldRetry} 之前检查，没有时间重试时不消耗重试预算
+     */
+    private boolean hasTimeToRetry() {
+        return deadline == null || deadline.remaining() > policy.getBackoff();
+    }
+
+    private void retryLater(final HttpUriRequest attempt, final int retry) {
+        logger.debug("Retrying request {}, attempt {}", request.getURI(), retry + 1);
+        RetryTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                attempt(RetryPolicy.copyOf(attempt), retry + 1);
+            }
+        }, policy.getBackoff(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 超过对冲延迟后再发一份相同的请求，先完成的胜出，另一个被取消，输掉的结果立即release
+     */
+    private ListenableFuture<HttpResult> executeHedged(final HttpUriRequest attempt) {
+        final long delay = policy.hedgeDelay(client.getMetrics(), attempt.getURI());
+        final ListenableFuture<HttpResult> primary = helper.executeRequest(client, attempt, deadline);
+        if (delay < 0) {
+            return primary;
+        }
+        final HedgeRace race = new HedgeRace();
+        final AtomicReference<ListenableFuture<HttpResult>> hedge = new AtomicReference<ListenableFuture<HttpResult>>();
+        final ScheduledFuture<?> timer = RetryTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (!race.startHedge()) {
+                    return;
+                }
+                if (!policy.tryHedge()) {
+                    race.fail(new IOException("retry budget exhausted"));
+                    return;
+                }
+                logger.debug("Hedging request {} after {}us", attempt.getURI(), delay);
+                final ListenableFuture<HttpResult> future = helper.executeRequest(client, RetryPolicy.copyOf(attempt), deadline);
+                hedge.set(future);
+                if (race.getResult().isDone()) {
+                    future.cancel(true);
+                }
+                Futures.addCallback(future, new RaceCallback(race, new AtomicReference<ListenableFuture<HttpResult>>(primary), true), MoreExecutors.directExecutor());
+            }
+        }, delay, TimeUnit.MICROSECONDS);
+        Futures.addCallback(primary, new RaceCallback(race, hedge, false), MoreExecutors.directExecutor());
+
+        race.getResult().addListener(new Runnable() {
+            @Override
+            public void run() {
+                timer.cancel(false);
+                if (race.getResult().isCancelled()) {
+                    primary.cancel(true);
+                    ListenableFuture<HttpResult> future = hedge.get();
+                    if (future != null) {
+                        future.cancel(true);
+                    }
+                }
+            }
+        }, MoreExecutors.directExecutor());
+        return race.getResult();
+    }
+
+    private class RaceCallback implements FutureCallback<HttpResult> {
+
+        private final HedgeRace race;
+        private final AtomicReference<ListenableFuture<HttpResult>> other;
+        private final boolean isHedge;
+
+        RaceCallback(HedgeRace race, AtomicReference<ListenableFuture<HttpResult>> other, boolean isHedge) {
+            this.race = race;
+            this.other = other;
+            this.isHedge = isHedge;
+        }
+
+        @Override
+        public void onSuccess(HttpResult result) {
+            if (!race.succeed(result)) {
+                result.release();
+                return;
+            }
+            if (isHedge) {
+                policy.onHedgeWin();
+            }
+            ListenableFuture<HttpResult> loser = other.get();
+            if (loser != null) {
+                loser.cancel(true);
+            }
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+            race.fail(t);
+        }
+    }
+}
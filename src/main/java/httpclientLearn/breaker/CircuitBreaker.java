@@ -0,0 +1,209 @@
+package httpclientLearn.breaker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpHost;
+
+import config.ClientConfig;
+import httpclientLearn.metrics.RouteMetrics;
+
+/**
+ * 一个host的熔断器
+ *
+ * CLOSED时在最近windowSize次调用的滑动窗口中统计失败率(I/O异常和5xx)和慢调用率，任一超过阈值即OPEN；
+ * OPEN期间请求直接被拒绝，openDuration之后进入HALF_OPEN，放行halfOpenProbes个探测请求，全部成功则CLOSED，任一失败或过慢重新OPEN。
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final CircuitBreakers owner;
+    private final HttpHost host;
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final int minimumCalls;
+    private final long openDurationNanos;
+    private final int halfOpenProbes;
+
+    // 环形窗口，只在持有锁时访问
+    private final boolean[] failures;
+    private final boolean[] slows;
+    private int next;
+    private int size;
+    private int failureCount;
+    private int slowCount;
+
+    private volatile State state = State.CLOSED;
+    private long stateSince = System.nanoTime();
+    private int probesIssued;
+    private int probeSuccesses;
+    private final AtomicLong rejected = new AtomicLong();
+
+    CircuitBreaker(CircuitBreakers owner, HttpHost host, ClientConfig config) {
+        this.owner = owner;
+        this.host = host;
+        this.failureRateThreshold = config.getBreakerFailureRate();
+        this.slowCallRateThreshold = config.getBreakerSlowCallRate();
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(config.getBreakerSlowCallDuration());
+        this.minimumCalls = config.getBreakerMinimumCalls();
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(config.getBreakerOpenDuration());
+        this.halfOpenProbes = config.getBreakerHalfOpenProbes();
+        this.failures = new boolean[config.getBreakerWindowSize()];
+        this.slows = new boolean[config.getBreakerWindowSize()];
+    }
+
+    /**
+     * 请求发出(获取连接)之前调用
+     *
+     * @return false表示熔断打开，请求应当直接失败
+     */
+    public boolean tryAcquire() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        CircuitStateChange change = null;
+        boolean permitted;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (state == State.OPEN && now - stateSince >= openDurationNanos) {
+                change = transition(State.HALF_OPEN, now);
+            } else if (state == State.HALF_OPEN && probesIssued >= halfOpenProbes && now - stateSince >= openDurationNanos) {
+                // 探测请求被取消而没有结果，重新开始一轮探测
+                stateSince = now;
+                probesIssued = 0;
+                probeSuccesses = 0;
+            }
+            if (state == State.CLOSED) {
+                permitted = true;
+            } else if (state == State.HALF_OPEN && probesIssued < halfOpenProbes) {
+                probesIssued++;
+                permitted = true;
+            } else {
+                permitted = false;
+            }
+        }
+        if (!permitted) {
+            rejected.incrementAndGet();
+        }
+        publish(change);
+        return permitted;
+    }
+
+    /**
+     * 请求结束时调用，被取消的请求不需要调用
+     *
+     * @param statusCode 响应码，请求失败时为 {@link RouteMetrics#FAILURE}
+     * @param nanos 请求耗时
+     */
+    public void onResult(int statusCode, long nanos) {
+        final boolean failed = statusCode == RouteMetrics.FAILURE || statusCode >= 500;
+        final boolean slow = slowCallNanos > 0 && nanos >= slowCallNanos;
+        CircuitStateChange change = null;
+        synchronized (this) {
+            if (state == State.HALF_OPEN) {
+                if (failed || slow) {
+                    change = transition(State.OPEN, System.nanoTime());
+                } else if (++probeSuccesses >= halfOpenProbes) {
+                    change = transition(State.CLOSED, System.nanoTime());
+                }
+            } else if (state == State.CLOSED) {
+                record(failed, slow);
+                if (size >= minimumCalls && (exceeds(failureRateThreshold, failureCount) || exceeds(slowCallRateThreshold, slowCount))) {
+                    change = transition(State.OPEN, System.nanoTime());
+                }
+            }
+            // OPEN期间返回的是打开之前发出的请求，忽略
+        }
+        publish(change);
+    }
+
+    private void record(boolean failed, boolean slow) {
+        if (size == failures.length) {
+            if (failures[next]) {
+                failureCount--;
+            }
+            if (slows[next]) {
+                slowCount--;
+            }
+        } else {
+            size++;
+        }
+        failures[next] = failed;
+        slows[next] = slow;
+        if (failed) {
+            failureCount++;
+        }
+        if (slow) {
+            slowCount++;
+        }
+        next = (next + 1) % failures.length;
+    }
+
+    private boolean exceeds(double threshold, int count) {
+        return threshold > 0 && count * 100.0 / size >= threshold;
+    }
+
+    private CircuitStateChange transition(State to, long now) {
+        CircuitStateChange change = new CircuitStateChange(owner.getClientName(), host, state, to, rate(failureCount), rate(slowCount));
+        state = to;
+        stateSince = now;
+        probesIssued = 0;
+        probeSuccesses = 0;
+        if (to == State.CLOSED) {
+            // 重新开始统计，打开之前的失败不再计入
+            next = 0;
+            size = 0;
+            failureCount = 0;
+            slowCount = 0;
+        }
+        return change;
+    }
+
+    private double rate(int count) {
+        return size == 0 ? 0 : count * 100.0 / size;
+    }
+
+    private void publish(CircuitStateChange change) {
+        if (change != null) {
+            owner.publish(change);
+        }
+    }
+
+    public HttpHost getHost() {
+        return host;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return 滑动窗口内的失败率(百分比)
+     */
+    public synchronized double getFailureRate() {
+        return rate(failureCount);
+    }
+
+    /**
+     * @return 滑动窗口内的慢调用率(百分比)
+     */
+    public synchronized double getSlowCallRate() {
+        return rate(slowCount);
+    }
+
+    /**
+     * @return 熔断打开期间被直接拒绝的请求数
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreaker[" + host + "," + state + ",failureRate=" + getFailureRate() + "%,slowCallRate=" + getSlowCallRate() + "%,rejected=" + getRejectedCount() + "]";
+    }
+}
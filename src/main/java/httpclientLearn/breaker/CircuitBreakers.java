@@ -0,0 +1,89 @@
+package httpclientLearn.breaker;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.utils.URIUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import config.ClientConfig;
+import config.RouteConfig;
+
+/**
+ * 一个命名client下按host划分的熔断器，第一次请求某个host时创建
+ */
+public class CircuitBreakers {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final ClientConfig config;
+    private final ConcurrentMap<HttpHost, CircuitBreaker> breakers = new ConcurrentHashMap<HttpHost, CircuitBreaker>();
+    private final List<CircuitStateListener> listeners = new CopyOnWriteArrayList<CircuitStateListener>();
+
+    public CircuitBreakers(ClientConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * @return 配置中开启了熔断时返回，否则返回null
+     */
+    public static CircuitBreakers create(ClientConfig config) {
+        return config.getBreakerFailureRate() > 0 || config.getBreakerSlowCallRate() > 0 ? new CircuitBreakers(config) : null;
+    }
+
+    /**
+     * @return uri所属host的熔断器，uri中没有host时返回null
+     */
+    public CircuitBreaker get(URI uri) {
+        HttpHost host = URIUtils.extractHost(uri);
+        return host == null ? null : get(host);
+    }
+
+    /**
+     * 写不写默认端口都是同一个host，共用一个熔断器
+     */
+    public CircuitBreaker get(HttpHost host) {
+        host = RouteConfig.normalize(host);
+        CircuitBreaker breaker = breakers.get(host);
+        if (breaker == null) {
+            breaker = new CircuitBreaker(this, host, config);
+            CircuitBreaker existing = breakers.putIfAbsent(host, breaker);
+            if (existing != null) {
+                breaker = existing;
+            }
+        }
+        return breaker;
+    }
+
+    public List<CircuitBreaker> getAll() {
+        return new ArrayList<CircuitBreaker>(breakers.values());
+    }
+
+    public String getClientName() {
+        return config.getName();
+    }
+
+    public void addListener(CircuitStateListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(CircuitStateListener listener) {
+        listeners.remove(listener);
+    }
+
+    void publish(CircuitStateChange change) {
+        logger.warn("{}", change);
+        for (CircuitStateListener listener : listeners) {
+            try {
+                listener.stateChanged(change);
+            } catch (RuntimeException e) {
+                logger.error("circuit state listener " + listener + " exception", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package httpclientLearn.breaker;
+
+import java.io.IOException;
+
+import org.apache.http.HttpHost;
+
+/**
+ * 熔断打开时请求被直接拒绝，没有获取连接，也没有发出
+ */
+public class CircuitOpenException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final HttpHost host;
+
+    public CircuitOpenException(HttpHost host) {
+        super("circuit for " + host + " is open");
+        this.host = host;
+    }
+
+    public HttpHost getHost() {
+        return host;
+    }
+}
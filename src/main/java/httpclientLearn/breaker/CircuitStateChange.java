@@ -0,0 +1,66 @@
+package httpclientLearn.breaker;
+
+import org.apache.http.HttpHost;
+
+/**
+ * 一次熔断状态变化，以及变化时窗口内的失败率和慢调用率
+ */
+public class CircuitStateChange {
+
+    private final String clientName;
+    private final HttpHost host;
+    private final CircuitBreaker.State from;
+    private final CircuitBreaker.State to;
+    private final double failureRate;
+    private final double slowCallRate;
+    private final long timestamp;
+
+    CircuitStateChange(String clientName, HttpHost host, CircuitBreaker.State from, CircuitBreaker.State to, double failureRate, double slowCallRate) {
+        this.clientName = clientName;
+        this.host = host;
+        this.from = from;
+        this.to = to;
+        this.failureRate = failureRate;
+        this.slowCallRate = slowCallRate;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    public String getClientName() {
+        return clientName;
+    }
+
+    public HttpHost getHost() {
+        return host;
+    }
+
+    public CircuitBreaker.State getFrom() {
+        return from;
+    }
+
+    public CircuitBreaker.State getTo() {
+        return to;
+    }
+
+    /**
+     * @return 变化时滑动窗口内的失败率(百分比)
+     */
+    public double getFailureRate() {
+        return failureRate;
+    }
+
+    /**
+     * @return 变化时滑动窗口内的慢调用率(百分比)
+     */
+    public double getSlowCallRate() {
+        return slowCallRate;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return clientName + " " + host + " circuit " + from + " -> " + to + " [failureRate=" + failureRate + "%,slowCallRate=" + slowCallRate + "%]";
+    }
+}
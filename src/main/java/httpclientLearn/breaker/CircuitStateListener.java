@@ -0,0 +1,11 @@
+package httpclientLearn.breaker;
+
+/**
+ * 监听 {@link CircuitBreaker} 的状态变化
+ *
+ * 回调在触发状态变化的请求线程(异步client为io reactor线程)中同步执行，实现不应阻塞
+ */
+public interface CircuitStateListener {
+
+    void stateChanged(CircuitStateChange change);
+}
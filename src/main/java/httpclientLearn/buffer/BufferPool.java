@@ -0,0 +1,255 @@
+package httpclientLearn.buffer;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 按大小分级的ByteBuffer池
+ *
+ * 容量按2的幂从4KB到4MB分级，每一级有一个共享的空闲队列；64KB以下的小buffer另外在每个线程中缓存几个，
+ * 大多数申请和归还不需要竞争共享队列。虚拟线程通常每个请求一个，退出时线程缓存随之丢弃，因此不使用线程缓存，
+ * 直接从共享队列申请和归还。超过最大级别的申请直接分配，归还时丢弃。
+ *
+ * 开启泄漏检测后(系统属性 httpclientLearn.buffer.leakDetection=true 或 {@link #setLeakDetection(boolean)})，
+ * 没有release就被GC的buffer会打印申请时的调用栈。
+ */
+public class BufferPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(BufferPool.class);
+
+    static final int MIN_SHIFT = 12; // 4KB
+    static final int MAX_SHIFT = 22; // 4MB
+    private static final int THREAD_CACHE_MAX_SHIFT = 16; // 64KB
+    private static final int CLASS_COUNT = MAX_SHIFT - MIN_SHIFT + 1;
+
+    // JDK 21的Thread.isVirtual()，更早的JDK没有虚拟线程
+    private static final Method IS_VIRTUAL = isVirtualMethod();
+
+    private static final BufferPool DEFAULT = new BufferPool(Boolean.getBoolean("httpclientLearn.buffer.direct"), 64, 4);
+
+    private static volatile boolean leakDetection = Boolean.getBoolean("httpclientLearn.buffer.leakDetection");
+
+    public static BufferPool getDefault() {
+        return DEFAULT;
+    }
+
+    public static void setLeakDetection(boolean enabled) {
+        leakDetection = enabled;
+    }
+
+    public static boolean isLeakDetection() {
+        return leakDetection;
+    }
+
+    private final boolean direct;
+    private final int maxPooledPerClass;
+    private final int threadCacheSize;
+    private final List<ConcurrentLinkedQueue<ByteBuffer>> shared = new ArrayList<ConcurrentLinkedQueue<ByteBuffer>>(CLASS_COUNT);
+    private final AtomicInteger[] sharedCount = new AtomicInteger[CLASS_COUNT];
+    private final ThreadLocal<ThreadCache> threadCache = new ThreadLocal<ThreadCache>() {
+        @Override
+        protected ThreadCache initialValue() {
+            return new ThreadCache(threadCacheSize);
+        }
+    };
+    private final AtomicLong allocations = new AtomicLong();
+
+    private final ReferenceQueue<PooledBuffer> leakQueue = new ReferenceQueue<PooledBuffer>();
+    private final Set<LeakRecord> leakRecords = Collections.newSetFromMap(new ConcurrentHashMap<LeakRecord, Boolean>());
+
+    /**
+     * @param direct 是否使用堆外内存
+     * @param maxPooledPerClass 每一级共享队列最多保留的空闲buffer数
+     * @param threadCacheSize 每个线程每一级最多缓存的空闲buffer数
+     */
+    public BufferPool(boolean direct, int maxPooledPerClass, int threadCacheSize) {
+        this.direct = direct;
+        this.maxPooledPerClass = maxPooledPerClass;
+        this.threadCacheSize = threadCacheSize;
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            shared.add(new ConcurrentLinkedQueue<ByteBuffer>());
+            sharedCount[i] = new AtomicInteger();
+        }
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * @return 池中没有可用buffer而新分配的次数
+     */
+    public long getAllocationCount() {
+        return allocations.get();
+    }
+
+    /**
+     * 申请一个至少能写入capacity字节的buffer，使用完毕必须 {@link PooledBuffer#release()}
+     */
+    public PooledBuffer acquire(int capacity) {
+        PooledBuffer buffer = new PooledBuffer(this, allocate(capacity));
+        if (leakDetection) {
+            reportLeaks();
+            buffer.setLeakRecord(new LeakRecord(buffer, leakQueue, leakRecords));
+        }
+        return buffer;
+    }
+
+    ByteBuffer allocate(int capacity) {
+        int index = sizeClass(capacity);
+        if (index < 0) {
+            // 超出最大级别，不池化
+            allocations.incrementAndGet();
+            return newBuffer(capacity);
+        }
+        ByteBuffer buffer = null;
+        if (index + MIN_SHIFT <= THREAD_CACHE_MAX_SHIFT) {
+            ThreadCache cache = threadCache();
+            buffer = cache != null ? cache.poll(index) : null;
+        }
+        if (buffer == null) {
+            buffer = shared.get(index).poll();
+            if (buffer != null) {
+                sharedCount[index].decrementAndGet();
+            }
+        }
+        if (buffer == null) {
+            allocations.incrementAndGet();
+            return newBuffer(1 << (index + MIN_SHIFT));
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    void recycle(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        // 只回收正好是某一级容量的buffer
+        if (Integer.bitCount(capacity) != 1 || buffer.isDirect() != direct) {
+            return;
+        }
+        int index = sizeClass(capacity);
+        if (index < 0) {
+            return;
+        }
+        if (index + MIN_SHIFT <= THREAD_CACHE_MAX_SHIFT) {
+            ThreadCache cache = threadCache();
+            if (cache != null && cache.offer(index, buffer)) {
+                return;
+            }
+        }
+        if (sharedCount[index].incrementAndGet() <= maxPooledPerClass) {
+            shared.get(index).offer(buffer);
+        } else {
+            sharedCount[index].decrementAndGet();
+        }
+    }
+
+    /**
+     * @return 当前线程的缓存，虚拟线程返回null
+     */
+    private ThreadCache threadCache() {
+        return isVirtual(Thread.currentThread()) ? null : threadCache.get();
+    }
+
+    static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (Boolean) IS_VIRTUAL.invoke(thread);
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    private static Method isVirtualMethod() {
+        try {
+            return Thread.class.getMethod("isVirtual");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private ByteBuffer newBuffer(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * @return capacity对应的级别，超过最大级别返回-1
+     */
+    static int sizeClass(int capacity) {
+        if (capacity <= 1 << MIN_SHIFT) {
+            return 0;
+        }
+        int shift = 32 - Integer.numberOfLeadingZeros(capacity - 1);
+        return shift > MAX_SHIFT ? -1 : shift - MIN_SHIFT;
+    }
+
+    private void reportLeaks() {
+        LeakRecord record;
+        while ((record = (LeakRecord) leakQueue.poll()) != null) {
+            if (leakRecords.remove(record)) {
+                logger.error("LEAK: PooledBuffer was garbage collected without release(), allocated at", record.allocationSite);
+            }
+        }
+    }
+
+    private static class ThreadCache {
+        private final ByteBuffer[][] buffers;
+        private final int[] sizes = new int[CLASS_COUNT];
+
+        ThreadCache(int size) {
+            this.buffers = new ByteBuffer[CLASS_COUNT][size];
+        }
+
+        ByteBuffer poll(int index) {
+            if (sizes[index] == 0) {
+                return null;
+            }
+            int i = --sizes[index];
+            ByteBuffer buffer = buffers[index][i];
+            buffers[index][i] = null;
+            return buffer;
+        }
+
+        boolean offer(int index, ByteBuffer buffer) {
+            if (sizes[index] == buffers[index].length) {
+                return false;
+            }
+            buffers[index][sizes[index]++] = buffer;
+            return true;
+        }
+    }
+
+    /**
+     * 只引用申请时的调用栈，不引用buffer本身，buffer不可达时进入leakQueue
+     */
+    static class LeakRecord extends PhantomReference<PooledBuffer> {
+        private final Throwable allocationSite = new Throwable("PooledBuffer allocation");
+        private final Set<LeakRecord> records;
+
+        LeakRecord(PooledBuffer referent, ReferenceQueue<PooledBuffer> queue, Set<LeakRecord> records) {
+            super(referent, queue);
+            this.records = records;
+            records.add(this);
+        }
+
+        void close() {
+            records.remove(this);
+            clear();
+        }
+    }
+}
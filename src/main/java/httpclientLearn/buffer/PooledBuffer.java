@@ -0,0 +1,172 @@
+package httpclientLearn.buffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 从 {@link BufferPool} 申请的可增长buffer，写满时换成更大一级的buffer
+ *
+ * 不是线程安全的；release之后不能再访问，之前通过 {@link #asReadOnlyBuffer()} 得到的视图也随之失效
+ */
+public final class PooledBuffer {
+
+    private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[8192];
+        }
+    };
+
+    private final BufferPool pool;
+    private final AtomicBoolean released = new AtomicBoolean();
+    private ByteBuffer buffer; // 写模式，position即已写入的字节数
+    private BufferPool.LeakRecord leakRecord;
+
+    PooledBuffer(BufferPool pool, ByteBuffer buffer) {
+        this.pool = pool;
+        this.buffer = buffer;
+    }
+
+    void setLeakRecord(BufferPool.LeakRecord leakRecord) {
+        this.leakRecord = leakRecord;
+    }
+
+    /**
+     * @return 已写入的字节数
+     */
+    public int size() {
+        checkReleased();
+        return buffer.position();
+    }
+
+    public void write(byte[] src, int offset, int length) {
+        ensureWritable(length);
+        buffer.put(src, offset, length);
+    }
+
+    public void write(ByteBuffer src) {
+        ensureWritable(src.remaining());
+        buffer.put(src);
+    }
+
+    /**
+     * 将流中剩余的内容全部读入，堆内buffer直接读到底层数组中
+     *
+     * @return 读入的字节数
+     */
+    public long readFrom(InputStream in) throws IOException {
+        checkReleased();
+        long total = 0;
+        while (true) {
+            if (!buffer.hasRemaining()) {
+                // 写满时先读一个字节确认还有内容再扩容，长度正好是某一级容量时不会为了读到EOF多拷贝一次
+                int b = in.read();
+                if (b < 0) {
+                    return total;
+                }
+                ensureWritable(1);
+                buffer.put((byte) b);
+                total++;
+                continue;
+            }
+            int n;
+            if (buffer.hasArray()) {
+                n = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                if (n > 0) {
+                    buffer.position(buffer.position() + n);
+                }
+            } else {
+                byte[] scratch = SCRATCH.get();
+                n = in.read(scratch, 0, Math.min(scratch.length, buffer.remaining()));
+                if (n > 0) {
+                    buffer.put(scratch, 0, n);
+                }
+            }
+            if (n < 0) {
+                return total;
+            }
+            total += n;
+        }
+    }
+
+    /**
+     * @return 已写入内容的只读视图，不拷贝数据
+     */
+    public ByteBuffer asReadOnlyBuffer() {
+        checkReleased();
+        ByteBuffer view = buffer.duplicate();
+        view.flip();
+        return view.asReadOnlyBuffer();
+    }
+
+    /**
+     * @return 读取已写入内容的流，不拷贝数据；与 {@link #asReadOnlyBuffer()} 一样在release之后失效
+     */
+    public InputStream asInputStream() {
+        final ByteBuffer view = asReadOnlyBuffer();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return view.hasRemaining() ? view.get() & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (!view.hasRemaining()) {
+                    return -1;
+                }
+                int n = Math.min(len, view.remaining());
+                view.get(b, off, n);
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return view.remaining();
+            }
+        };
+    }
+
+    /**
+     * 归还到buffer池，重复调用无效果
+     */
+    public void release() {
+        if (released.compareAndSet(false, true)) {
+            if (leakRecord != null) {
+                leakRecord.close();
+            }
+            ByteBuffer old = buffer;
+            buffer = null;
+            pool.recycle(old);
+        }
+    }
+
+    public boolean isReleased() {
+        return released.get();
+    }
+
+    private void ensureWritable(int length) {
+        checkReleased();
+        if (buffer.remaining() >= length) {
+            return;
+        }
+        int required = buffer.position() + length;
+        if (required < 0) {
+            throw new IllegalStateException("buffer too large");
+        }
+        // 至少翻倍，避免频繁拷贝
+        ByteBuffer grown = pool.allocate(Math.max(required, buffer.capacity() << 1));
+        buffer.flip();
+        grown.put(buffer);
+        pool.recycle(buffer);
+        buffer = grown;
+    }
+
+    private void checkReleased() {
+        if (released.get()) {
+            throw new IllegalStateException("buffer already released");
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package httpclientLearn.cache;
+
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.http.Header;
+import org.apache.http.HttpRequest;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.utils.DateUtils;
+
+import httpclientLearn.dto.HeaderList;
+import httpclientLearn.dto.HttpResult;
+
+/**
+ * 缓存中的一个响应：状态行、响应头、响应体以及按Cache-Control/Expires计算出的新鲜期
+ */
+public class CacheEntry {
+
+    private final ProtocolVersion protocolVersion;
+    private final int statusCode;
+    private final String reasonPhrase;
+    private final HeaderList headers;
+    private final byte[] body;
+    private final String contentType;
+    private final Charset charset;
+    private final long contentLength;
+    private final int weight;
+    private final long responseTime;
+    private final long freshnessLifetime;
+    private final long initialAge;
+    private final boolean noCache;
+
+    /**
+     * result随后会返回给调用方，响应体拷贝一份保存
+     */
+    CacheEntry(HttpResult result, long now) {
+        this(result.getProtocolVersion(), result.getStatusCode(), result.getReasonPhrase(), new HeaderList(result.getAllHeaders()),
+                result.getResponseBody() != null ? result.getResponseBody().clone() : new byte[0], result.getContentType(), result.getCharset(), result.getContentLength(),
+                now);
+    }
+
+    private CacheEntry(ProtocolVersion protocolVersion, int statusCode, String reasonPhrase, HeaderList headers, byte[] body, String contentType, Charset charset,
+            long contentLength, long now) {
+        this.protocolVersion = protocolVersion;
+        this.statusCode = statusCode;
+        this.reasonPhrase = reasonPhrase;
+        this.headers = headers;
+        this.body = body;
+        this.contentType = contentType;
+        this.charset = charset;
+        this.contentLength = contentLength;
+        int headerChars = 0;
+        for (int i = 0; i < headers.size(); i++) {
+            Header header = headers.get(i);
+            headerChars += header.getName().length() + (header.getValue() != null ? header.getValue().length() : 0);
+        }
+        // 对象头、字段等固定开销按256字节估算
+        this.weight = body.length + headerChars * 2 + 256;
+
+        // 按RFC 7234计算新鲜期：max-age优先，其次Expires - Date；都没有时视为已过期，只能重新验证后使用
+        Map<String, String> cacheControl = ResponseCache.parseCacheControl(headers.getCombined("Cache-Control"));
+        long lifetime = 0;
+        String maxAge = cacheControl.get("max-age");
+        if (maxAge != null) {
+            lifetime = ResponseCache.parseSeconds(maxAge) * 1000;
+        } else {
+            Date expires = parseDate(headers.getFirst("Expires"));
+            if (expires != null) {
+                Date date = parseDate(headers.getFirst("Date"));
+                lifetime = expires.getTime() - (date != null ? date.getTime() : now);
+            }
+        }
+        String age = headers.getFirst("Age");
+        this.initialAge = age != null ? ResponseCache.parseSeconds(age) * 1000 : 0;
+        this.freshnessLifetime = Math.max(0, lifetime);
+        this.noCache = cacheControl.containsKey("no-cache");
+        this.responseTime = now;
+    }
+
+    /**
+     * 服务端返回304时，用304中的响应头(Cache-Control、Expires、ETag等)更新缓存的响应头，响应体沿用
+     */
+    CacheEntry revalidate(Header[] notModifiedHeaders, long now) {
+        HeaderList merged = headers.copy();
+        // 304中出现的名字整体替换，同名的多个值都保留
+        Set<String> replaced = new HashSet<String>();
+        for (Header header : notModifiedHeaders) {
+            String name = header.getName();
+            if (!"Content-Length".equalsIgnoreCase(name) && !"Transfer-Encoding".equalsIgnoreCase(name)) {
+                if (replaced.add(name.toLowerCase(Locale.ROOT))) {
+                    merged.remove(name);
+                }
+                merged.add(header);
+            }
+        }
+        return new CacheEntry(protocolVersion, statusCode, reasonPhrase, merged, body, contentType, charset, contentLength, now);
+    }
+
+    private static Date parseDate(String value) {
+        return value != null ? DateUtils.parseDate(value) : null;
+    }
+
+    public boolean isFresh(long now) {
+        return !noCache && initialAge + (now - responseTime) < freshnessLifetime;
+    }
+
+    public String getETag() {
+        return headers.getFirst("ETag");
+    }
+
+    public String getLastModified() {
+        return headers.getFirst("Last-Modified");
+    }
+
+    public boolean hasValidators() {
+        return getETag() != null || getLastModified() != null;
+    }
+
+    /**
+     * 给请求加上If-None-Match/If-Modified-Since，由服务端判断缓存的响应是否还能使用
+     */
+    public void addConditionalHeaders(HttpRequest request) {
+        if (getETag() != null) {
+            request.setHeader("If-None-Match", getETag());
+        }
+        if (getLastModified() != null) {
+            request.setHeader("If-Modified-Since", getLastModified());
+        }
+    }
+
+    int getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return 新的HttpResult，响应体是拷贝，调用方修改不会影响缓存
+     */
+    HttpResult toResult() {
+        HttpResult result = new HttpResult(protocolVersion, statusCode, reasonPhrase);
+        result.setHeaders(headers.toArray());
+        result.setResponseBody(body.clone());
+        result.setContentType(contentType);
+        result.setCharset(charset);
+        result.setContentLength(contentLength);
+        return result;
+    }
+}
@@ -0,0 +1,197 @@
+package httpclientLearn.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Header;
+import org.apache.http.HttpRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+
+import httpclientLearn.dto.HttpResult;
+
+/**
+ * 按字节数限制大小的内存响应缓存，只缓存GET的200响应
+ *
+ * 新鲜的响应直接从内存返回；过期但带有ETag/Last-Modified的响应发条件请求重新验证，304时沿用缓存的响应体。
+ * 底层是Guava的分段LRU，按响应体和响应头的大小计算权重。作为客户端私有缓存，不区分private/public。
+ */
+public class ResponseCache {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final long maxBytes;
+    private final Cache<String, CacheEntry> entries;
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ResponseCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+        this.maxBytes = maxBytes;
+        this.entries = CacheBuilder.newBuilder().maximumWeight(maxBytes).weigher(new Weigher<String, CacheEntry>() {
+            @Override
+            public int weigh(String key, CacheEntry entry) {
+                return entry.getWeight();
+            }
+        }).removalListener(new RemovalListener<String, CacheEntry>() {
+            @Override
+            public void onRemoval(RemovalNotification<String, CacheEntry> notification) {
+                bytes.addAndGet(-notification.getValue().getWeight());
+                if (notification.wasEvicted()) {
+                    evictions.incrementAndGet();
+                }
+            }
+        }).build();
+    }
+
+    /**
+     * 请求自身带有no-cache/no-store或者Authorization时不使用缓存
+     */
+    public static boolean isCacheable(HttpRequest request) {
+        if (!"GET".equals(request.getRequestLine().getMethod()) || request.containsHeader("Authorization")) {
+            return false;
+        }
+        for (Header header : request.getHeaders("Cache-Control")) {
+            Map<String, String> directives = parseCacheControl(header.getValue());
+            if (directives.containsKey("no-cache") || directives.containsKey("no-store")) {
+                return false;
+            }
+        }
+        Header pragma = request.getFirstHeader("Pragma");
+        return pragma == null || !pragma.getValue().contains("no-cache");
+    }
+
+    /**
+     * @return 缓存的响应，可能已经过期
+     */
+    public CacheEntry get(String key) {
+        return entries.getIfPresent(key);
+    }
+
+    /**
+     * 命中新鲜的缓存
+     */
+    public HttpResult hit(CacheEntry entry) {
+        hits.incrementAndGet();
+        return entry.toResult();
+    }
+
+    /**
+     * 条件请求返回304，更新缓存的新鲜期并返回缓存的响应
+     */
+    public HttpResult notModified(String key, CacheEntry entry, HttpResult notModified) {
+        revalidations.incrementAndGet();
+        CacheEntry updated = entry.revalidate(notModified.getAllHeaders(), System.currentTimeMillis());
+        put(key, updated);
+        return updated.toResult();
+    }
+
+    /**
+     * 未命中，响应可以缓存时放入缓存
+     */
+    public void store(String key, HttpResult result) {
+        misses.incrementAndGet();
+        if (result.getStatusCode() != 200) {
+            return;
+        }
+        Map<String, String> cacheControl = parseCacheControl(result.getHeaders().get("Cache-Control"));
+        if (cacheControl.containsKey("no-store") || result.containsHeader("Vary")) {
+            // 不同请求头可能对应不同响应，简单起见不缓存带Vary的响应
+            entries.invalidate(key);
+            return;
+        }
+        CacheEntry entry = new CacheEntry(result, System.currentTimeMillis());
+        if (!entry.isFresh(System.currentTimeMillis()) && !entry.hasValidators()) {
+            // 既不新鲜也无法重新验证，缓存没有意义
+            entries.invalidate(key);
+            return;
+        }
+        put(key, entry);
+    }
+
+    private void put(String key, CacheEntry entry) {
+        if (entry.getWeight() > maxBytes) {
+            logger.debug("response of {} is larger than the cache, {} bytes", key, entry.getWeight());
+            return;
+        }
+        bytes.addAndGet(entry.getWeight());
+        entries.put(key, entry);
+    }
+
+    public void invalidateAll() {
+        entries.invalidateAll();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return 条件请求返回304而沿用缓存响应体的次数
+     */
+    public long getRevalidationCount() {
+        return revalidations.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public long getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return 当前缓存的估算字节数
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "ResponseCache[entries=" + getEntryCount() + ",bytes=" + getBytes() + "/" + maxBytes + ",hits=" + getHitCount() + ",revalidations=" + getRevalidationCount() + ",misses="
+                + getMissCount() + ",evictions=" + getEvictionCount() + "]";
+    }
+
+    static Map<String, String> parseCacheControl(String value) {
+        Map<String, String> directives = new HashMap<String, String>();
+        if (value == null) {
+            return directives;
+        }
+        for (String directive : value.split(",")) {
+            String[] pair = directive.trim().split("=", 2);
+            if (!pair[0].isEmpty()) {
+                directives.put(pair[0].toLowerCase(), pair.length > 1 ? pair[1].trim().replace("\"", "") : "");
+            }
+        }
+        return directives;
+    }
+
+    static long parseSeconds(String value) {
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package httpclientLearn.coalesce;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.client.methods.HttpUriRequest;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import httpclientLearn.dto.HttpResult;
+
+/**
+ * 合并相同的并发请求(single-flight)
+ *
+ * 方法、uri和请求头都相同的GET/HEAD请求在途时，后来的请求不再发出，而是等待第一个请求(leader)的结果。
+ * leader拿到自己的结果，不做拷贝；有等待方时才把结果拷贝一份放入共享的future，每个等待方再各自拷贝一份，互不影响。
+ * 异步等待方的拷贝在单独的线程池中进行，不占用io线程。
+ */
+public class RequestCoalescer {
+
+    private static final Function<HttpResult, HttpResult> COPY = new Function<HttpResult, HttpResult>() {
+        @Override
+        public HttpResult apply(HttpResult result) {
+            return result != null ? result.copy() : null;
+        }
+    };
+
+    private static final ExecutorService copier = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("coalesce-copy-%d").setDaemon(true).build());
+
+    private final ConcurrentMap<String, Flight> inFlight = new ConcurrentHashMap<String, Flight>();
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * 只合并没有请求体的安全方法
+     */
+    public static boolean isCoalescable(HttpUriRequest request) {
+        String method = request.getMethod();
+        return ("GET".equals(method) || "HEAD".equals(method)) && !(request instanceof HttpEntityEnclosingRequest);
+    }
+
+    /**
+     * @return 方法、uri以及按名字排序的请求头
+     */
+    public static String key(HttpUriRequest request) {
+        StringBuilder key = new StringBuilder(request.getMethod()).append(' ').append(request.getURI());
+        Header[] headers = request.getAllHeaders();
+        if (headers.length > 0) {
+            Map<String, String> sorted = new TreeMap<String, String>();
+            for (Header header : headers) {
+                String name = header.getName().toLowerCase();
+                String existing = sorted.get(name);
+                sorted.put(name, existing != null ? existing + "," + header.getValue() : header.getValue());
+            }
+            for (Map.Entry<String, String> header : sorted.entrySet()) {
+                key.append('\n').append(header.getKey()).append(':').append(header.getValue());
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * 加入相同请求的等待，或者成为leader
+     *
+     * @param slot leader完成后存放共享结果的future
+     * @return 在途请求的共享结果；返回null表示调用方成为leader，必须在完成后调用 {@link #complete} 或 {@link #fail}
+     */
+    public ListenableFuture<HttpResult> join(String key, SettableFuture<HttpResult> slot) {
+        Flight flight = new Flight(slot);
+        for (;;) {
+            Flight existing = inFlight.putIfAbsent(key, flight);
+            if (existing == null) {
+                executed.incrementAndGet();
+                return null;
+            }
+            if (existing.join()) {
+                coalesced.incrementAndGet();
+                return existing.slot;
+            }
+            // leader正在完成，等它从map中移除后重试
+            Thread.yield();
+        }
+    }
+
+    /**
+     * leader完成，之后相同的请求重新发出；result为null表示请求失败
+     *
+     * 必须在leader的调用方拿到result之前调用；没有等待方时不拷贝
+     */
+    public void complete(String key, SettableFuture<HttpResult> slot, HttpResult result) {
+        int waiters = remove(key, slot);
+        slot.set(waiters > 0 && result != null ? result.copy() : null);
+    }
+
+    public void fail(String key, SettableFuture<HttpResult> slot, Throwable t) {
+        remove(key, slot);
+        slot.setException(t);
+    }
+
+    /**
+     * @return 加入等待的调用方数量，之后不再有新的等待方加入
+     */
+    private int remove(String key, SettableFuture<HttpResult> slot) {
+        Flight flight = inFlight.get(key);
+        if (flight == null || flight.slot != slot) {
+            return 0;
+        }
+        inFlight.remove(key, flight);
+        return flight.close();
+    }
+
+    /**
+     * 同步等待共享结果，失败时返回null，与同步helper的约定一致
+     */
+    public static HttpResult await(ListenableFuture<HttpResult> shared) {
+        try {
+            return COPY.apply(Uninterruptibles.getUninterruptibly(shared));
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return 共享结果的一份拷贝，在拷贝线程池中生成；取消返回的future不会取消共享的请求
+     */
+    public static ListenableFuture<HttpResult> copyOf(ListenableFuture<HttpResult> shared) {
+        return Futures.transform(Futures.nonCancellationPropagating(shared), COPY, copier);
+    }
+
+    /**
+     * @return 实际发出的请求数
+     */
+    public long getExecutedCount() {
+        return executed.get();
+    }
+
+    /**
+     * @return 被合并、没有发出的请求数
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    @Override
+    public String toString() {
+        return "RequestCoalescer[executed=" + getExecutedCount() + ",coalesced=" + getCoalescedCount() + ",inFlight=" + getInFlightCount() + "]";
+    }
+
+    private static final class Flight {
+
+        final SettableFuture<HttpResult> slot;
+        /**
+         * 等待方数量，-1表示leader已完成
+         */
+        private final AtomicInteger waiters = new AtomicInteger();
+
+        Flight(SettableFuture<HttpResult> slot) {
+            this.slot = slot;
+        }
+
+        boolean join() {
+            for (;;) {
+                int current = waiters.get();
+                if (current < 0) {
+                    return false;
+                }
+                if (waiters.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        int close() {
+            return waiters.getAndSet(-1);
+        }
+    }
+}
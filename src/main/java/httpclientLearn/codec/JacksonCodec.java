@@ -0,0 +1,101 @@
+package httpclientLearn.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 基于jackson-databind的ObjectMapper解码
+ *
+ * 项目不直接依赖Jackson，通过反射调用；classpath中没有jackson-databind时 {@link #getDefault()} 返回null。
+ * UTF-8的响应交给Jackson的字节流解析器，其他字符集经过InputStreamReader边读边转换。
+ */
+public final class JacksonCodec implements JsonCodec {
+
+    static final String OBJECT_MAPPER = "com.fasterxml.jackson.databind.ObjectMapper";
+
+    private final Object mapper;
+    private final Method readStream;
+    private final Method readReader;
+
+    private JacksonCodec(Object mapper) throws NoSuchMethodException {
+        this.mapper = mapper;
+        this.readStream = mapper.getClass().getMethod("readValue", InputStream.class, Class.class);
+        this.readReader = mapper.getClass().getMethod("readValue", Reader.class, Class.class);
+    }
+
+    /**
+     * @return 使用默认配置的ObjectMapper，没有jackson-databind时返回null
+     */
+    public static JacksonCodec getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * @param objectMapper 自己配置好的com.fasterxml.jackson.databind.ObjectMapper
+     */
+    public static JacksonCodec of(Object objectMapper) {
+        if (objectMapper == null || !isObjectMapper(objectMapper.getClass())) {
+            throw new IllegalArgumentException(objectMapper + " is not an " + OBJECT_MAPPER);
+        }
+        try {
+            return new JacksonCodec(objectMapper);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("unsupported jackson version", e);
+        }
+    }
+
+    private static boolean isObjectMapper(Class<?> type) {
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            if (OBJECT_MAPPER.equals(c.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public <T> T read(InputStream in, Charset charset, Class<T> type) throws IOException {
+        boolean utf8 = charset == null || StandardCharsets.UTF_8.equals(charset);
+        try {
+            Object value = utf8 ? readStream.invoke(mapper, in, type) : readReader.invoke(mapper, new InputStreamReader(in, charset), type);
+            return type.cast(value);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            // JsonProcessingException是IOException的子类
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "JacksonCodec[" + mapper.getClass().getName() + "]";
+    }
+
+    private static final class DefaultHolder {
+
+        static final JacksonCodec INSTANCE = create();
+
+        private static JacksonCodec create() {
+            try {
+                return new JacksonCodec(Class.forName(OBJECT_MAPPER, true, JacksonCodec.class.getClassLoader()).getConstructor().newInstance());
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // 没有jackson-databind
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package httpclientLearn.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * 把响应体解码成对象，实现类必须是线程安全的
+ *
+ * 默认实现是 {@link JacksonCodec}，通过 ClientConfig.Builder#setJsonCodec 替换
+ */
+public interface JsonCodec {
+
+    /**
+     * 从流中边读边解码，不要先把整个流读成byte[]或者String；流由调用方关闭
+     *
+     * @param charset 响应声明的字符集，没有声明时为UTF-8
+     */
+    <T> T read(InputStream in, Charset charset, Class<T> type) throws IOException;
+}
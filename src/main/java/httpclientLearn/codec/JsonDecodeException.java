@@ -0,0 +1,24 @@
+package httpclientLearn.codec;
+
+import java.io.IOException;
+
+/**
+ * 响应已经完整收到，但响应体无法解码成目标类型
+ *
+ * 请求本身是成功的，指标和熔断器按响应码记录，不算作传输失败
+ */
+public class JsonDecodeException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    public JsonDecodeException(int statusCode, Throwable cause) {
+        super(cause.getMessage(), cause);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
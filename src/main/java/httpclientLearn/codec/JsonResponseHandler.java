@@ -0,0 +1,115 @@
+package httpclientLearn.codec;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * 从响应实体的输入流直接解码，响应体不会整体读入内存
+ *
+ * 非2xx响应抛出 {@link HttpResponseException}，没有响应体时返回null；
+ * 读取响应体本身出错时原样抛出IOException，响应体读取正常但解码失败时抛出 {@link JsonDecodeException}
+ */
+public class JsonResponseHandler<T> implements ResponseHandler<T> {
+
+    private final JsonCodec codec;
+    private final Class<T> type;
+
+    public JsonResponseHandler(JsonCodec codec, Class<T> type) {
+        this.codec = codec;
+        this.type = type;
+    }
+
+    @Override
+    public T handleResponse(HttpResponse response) throws IOException {
+        final StatusLine status = response.getStatusLine();
+        final HttpEntity entity = response.getEntity();
+        if (status.getStatusCode() >= 300) {
+            EntityUtils.consume(entity);
+            throw new HttpResponseException(status.getStatusCode(), status.getReasonPhrase());
+        }
+        if (entity == null) {
+            return null;
+        }
+        final ReadTrackingInputStream in = new ReadTrackingInputStream(entity.getContent());
+        try {
+            return codec.read(in, charsetOf(ContentType.get(entity)), type);
+        } catch (IOException e) {
+            if (in.failed) {
+                throw e;
+            }
+            throw new JsonDecodeException(status.getStatusCode(), e);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * JSON没有声明字符集时按RFC 8259使用UTF-8，而不是HTTP默认的ISO-8859-1
+     */
+    public static Charset charsetOf(ContentType contentType) {
+        return contentType != null && contentType.getCharset() != null ? contentType.getCharset() : StandardCharsets.UTF_8;
+    }
+
+    /**
+     * 记录底层流是否抛出过IOException，用来区分传输错误和解码错误
+     */
+    private static final class ReadTrackingInputStream extends FilterInputStream {
+
+        boolean failed;
+
+        ReadTrackingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                return super.read(b, off, len);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            try {
+                return super.skip(n);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public int available() throws IOException {
+            try {
+                return super.available();
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+    }
+}
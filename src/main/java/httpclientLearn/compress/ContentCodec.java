@@ -0,0 +1,112 @@
+package httpclientLearn.compress;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.entity.DeflateInputStream;
+import org.apache.http.entity.ByteArrayEntity;
+
+import httpclientLearn.metrics.ClientMetrics;
+
+/**
+ * 请求体压缩和响应体解压
+ *
+ * 支持gzip(x-gzip)和deflate，解压是流式的，边读边解，不会先把整个响应体解压到一个中间数组
+ */
+public final class ContentCodec {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+    /** 发送给服务端的Accept-Encoding */
+    public static final String ACCEPT_ENCODING = "gzip,deflate";
+
+    private ContentCodec() {
+    }
+
+    /**
+     * @return 规范化后的编码(gzip或deflate)，不支持或者没有编码时返回null
+     */
+    public static String encodingOf(HttpEntity entity) {
+        Header header = entity == null ? null : entity.getContentEncoding();
+        return header == null ? null : normalize(header.getValue());
+    }
+
+    /**
+     * @return 解压之后不再正确的响应头：Content-Encoding、Content-Length和Content-MD5
+     */
+    public static boolean isEncodingHeader(String name) {
+        return HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name) || HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name) || HttpHeaders.CONTENT_MD5.equalsIgnoreCase(name);
+    }
+
+    public static String normalize(String encoding) {
+        if (encoding == null) {
+            return null;
+        }
+        String value = encoding.trim().toLowerCase(Locale.ROOT);
+        if (GZIP.equals(value) || "x-gzip".equals(value)) {
+            return GZIP;
+        }
+        if (DEFLATE.equals(value)) {
+            return DEFLATE;
+        }
+        return null;
+    }
+
+    /**
+     * @param encoding {@link #normalize} 之后的编码
+     */
+    public static InputStream decode(String encoding, InputStream in) throws IOException {
+        if (GZIP.equals(encoding)) {
+            return new GZIPInputStream(in);
+        }
+        if (DEFLATE.equals(encoding)) {
+            // 兼容zlib格式和不带头的raw deflate
+            return new DeflateInputStream(in);
+        }
+        throw new IOException("unsupported content encoding " + encoding);
+    }
+
+    public static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        try {
+            gzip.write(data);
+        } finally {
+            gzip.close();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 请求体不小于threshold时以gzip发送，压缩后反而更大时仍发送原始内容
+     *
+     * @param threshold 0表示不压缩
+     * @param metrics 记录压缩前后的字节数
+     */
+    public static HttpEntity requestEntity(byte[] body, int threshold, ClientMetrics metrics) {
+        if (threshold <= 0 || body.length < threshold) {
+            return new ByteArrayEntity(body);
+        }
+        final byte[] compressed;
+        try {
+            compressed = gzip(body);
+        } catch (IOException e) {
+            // 内存中压缩不会出现I/O异常
+            throw new IllegalStateException(e);
+        }
+        if (compressed.length >= body.length) {
+            return new ByteArrayEntity(body);
+        }
+        ByteArrayEntity entity = new ByteArrayEntity(compressed);
+        entity.setContentEncoding(GZIP);
+        metrics.recordRequestCompression(body.length, compressed.length);
+        return entity;
+    }
+}
@@ -0,0 +1,87 @@
+package httpclientLearn.compress;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+
+import httpclientLearn.metrics.ClientMetrics;
+
+/**
+ * 边读边解压的响应体，流被关闭时记录压缩前后的字节数
+ */
+public class DecompressingEntity extends HttpEntityWrapper {
+
+    private final String encoding;
+    private final ClientMetrics metrics;
+    private InputStream content;
+
+    /**
+     * @param encoding {@link ContentCodec#normalize} 之后的编码
+     */
+    public DecompressingEntity(HttpEntity wrapped, String encoding, ClientMetrics metrics) {
+        super(wrapped);
+        this.encoding = encoding;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        if (!wrappedEntity.isStreaming()) {
+            return decode();
+        }
+        // 流式entity只能读一次，多次调用返回同一个流
+        if (content == null) {
+            content = decode();
+        }
+        return content;
+    }
+
+    private InputStream decode() throws IOException {
+        final CountingInputStream wire = new CountingInputStream(wrappedEntity.getContent());
+        final CountingInputStream decoded = new CountingInputStream(ContentCodec.decode(encoding, wire));
+        return new FilterInputStream(decoded) {
+            private boolean recorded;
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (!recorded) {
+                        recorded = true;
+                        metrics.recordResponseCompression(wire.getCount(), decoded.getCount());
+                    }
+                }
+            }
+        };
+    }
+
+    @Override
+    public long getContentLength() {
+        // 解压后的长度未知
+        return -1;
+    }
+
+    @Override
+    public Header getContentEncoding() {
+        return null;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        InputStream in = getContent();
+        try {
+            ByteStreams.copy(in, out);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package httpclientLearn.compress;
+
+import java.io.IOException;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.protocol.HttpContext;
+
+import httpclientLearn.metrics.ClientMetrics;
+
+/**
+ * 同步client的响应拦截器，替代httpclient自带的ResponseContentEncoding，多记录了压缩前后的字节数
+ *
+ * 解压发生在调用方读取响应体时，populate、流式响应和ResponseHandler看到的都是解压后的内容
+ */
+public class ResponseDecompression implements HttpResponseInterceptor {
+
+    private final ClientMetrics metrics;
+
+    public ResponseDecompression(ClientMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void process(HttpResponse response, HttpContext context) throws HttpException, IOException {
+        final HttpEntity entity = response.getEntity();
+        final String encoding = ContentCodec.encodingOf(entity);
+        if (entity == null || entity.getContentLength() == 0 || encoding == null) {
+            return;
+        }
+        response.setEntity(new DecompressingEntity(entity, encoding, metrics));
+        response.removeHeaders(HttpHeaders.CONTENT_LENGTH);
+        response.removeHeaders(HttpHeaders.CONTENT_ENCODING);
+        response.removeHeaders(HttpHeaders.CONTENT_MD5);
+    }
+}
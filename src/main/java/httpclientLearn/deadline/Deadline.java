@@ -0,0 +1,123 @@
+package httpclientLearn.deadline;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.pool.PoolStats;
+
+import config.RouteConfig;
+import httpclientLearn.metrics.ClientMetrics;
+import httpclientLearn.metrics.LatencyHistogram;
+
+/**
+ * 请求的绝对截止时间(System.currentTimeMillis())，与批量请求的截止时间是同一个时钟
+ *
+ * 每次发出请求时按剩余时间拆分出获取连接、建立连接和读取的超时，整个请求在截止时间到达时被中断。
+ * 获取连接最多使用剩余时间的一半，给建立连接和读取留出时间；估计的排队时间超过这一半时不获取连接直接拒绝，
+ * 过载时调用方尽早失败，而不是排进连接池的等待队列直到超时。
+ */
+public final class Deadline {
+
+    /** 获取连接最多占用的剩余时间比例 */
+    static final double LEASE_SHARE = 0.5;
+
+    private final long time;
+
+    private Deadline(long time) {
+        this.time = time;
+    }
+
+    public static Deadline at(long time) {
+        return new Deadline(time);
+    }
+
+    public static Deadline after(long timeout, TimeUnit unit) {
+        return new Deadline(System.currentTimeMillis() + unit.toMillis(timeout));
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * @return 剩余的毫秒数，已过期时小于等于0
+     */
+    public long remaining() {
+        return time - System.currentTimeMillis();
+    }
+
+    public boolean isExpired() {
+        return remaining() <= 0;
+    }
+
+    /**
+     * 在base的基础上把三段超时限制在剩余时间之内，base中更短的超时保持不变
+     */
+    public RequestConfig split(RequestConfig base) {
+        final long remaining = Math.max(1, remaining());
+        return RequestConfig.copy(base)
+                .setConnectionRequestTimeout(cap(base.getConnectionRequestTimeout(), Math.max(1, (long) (remaining * LEASE_SHARE))))
+                .setConnectTimeout(cap(base.getConnectTimeout(), remaining))
+                .setSocketTimeout(cap(base.getSocketTimeout(), remaining))
+                .build();
+    }
+
+    /**
+     * 获取连接之前检查能否在截止时间之前拿到连接
+     *
+     * 连接池满时每个连接平均p50归还一次，排在前面的请求和自己一共需要pending+1次归还，
+     * 估计等待时间为 (pending + 1) * p50 / max；没有耗时记录的host不做估计
+     *
+     * @param target 请求的目标host，没有端口时按scheme补全默认端口
+     * @throws DeadlineExceededException 已经过期，或者估计的等待时间超过获取连接的预算
+     */
+    public void checkLease(ConnPoolControl<HttpRoute> pool, ClientMetrics metrics, HttpHost target) throws DeadlineExceededException {
+        final long remaining = remaining();
+        if (remaining <= 0) {
+            throw new DeadlineExceededException("deadline expired " + (-remaining) + "ms ago");
+        }
+        if (target == null) {
+            return;
+        }
+        target = RouteConfig.normalize(target);
+        final PoolStats stats = pool.getStats(new HttpRoute(target, null, "https".equalsIgnoreCase(target.getSchemeName())));
+        if (!isSaturated(stats)) {
+            // 通常的情况，不必取耗时快照
+            return;
+        }
+        final long wait = estimateLeaseWait(stats, metrics.latency(target));
+        if (wait > remaining * LEASE_SHARE) {
+            throw new DeadlineExceededException("estimated lease wait " + wait + "ms for " + target + " exceeds budget, " + remaining + "ms remaining, " + stats);
+        }
+    }
+
+    /**
+     * @return 估计的获取连接等待时间(ms)
+     */
+    static long estimateLeaseWait(PoolStats stats, LatencyHistogram.HistogramSnapshot latency) {
+        if (!isSaturated(stats) || latency == null || latency.getCount() == 0) {
+            return 0;
+        }
+        return (stats.getPending() + 1) * latency.getP50() / 1000 / Math.max(1, stats.getMax());
+    }
+
+    /**
+     * @return 没有空闲连接并且已经达到上限，新的请求需要等待归还
+     */
+    private static boolean isSaturated(PoolStats stats) {
+        return stats.getAvailable() == 0 && stats.getLeased() >= stats.getMax();
+    }
+
+    private static int cap(int timeout, long limit) {
+        // 0和负数表示不限制或者使用默认值，都由剩余时间代替
+        return (int) Math.min(timeout > 0 ? timeout : Integer.MAX_VALUE, Math.min(limit, Integer.MAX_VALUE));
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline[" + remaining() + "ms remaining]";
+    }
+}
@@ -0,0 +1,15 @@
+package httpclientLearn.deadline;
+
+import java.io.IOException;
+
+/**
+ * 请求无法在截止时间之前完成：截止时间已过、估计的连接等待时间超出预算(没有获取连接就被拒绝)，或者执行中到达截止时间被中断
+ */
+public class DeadlineExceededException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+}
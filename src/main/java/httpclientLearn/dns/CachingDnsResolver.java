@@ -0,0 +1,201 @@
+package httpclientLearn.dns;
+
+import java.io.Closeable;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.apache.http.nio.reactor.SessionRequest;
+import org.apache.http.nio.reactor.SessionRequestCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import config.ClientConfig;
+
+/**
+ * 带TTL的DNS缓存，同步和异步连接池共用这一实现
+ *
+ * 解析结果缓存ttl后，下一次使用时在后台线程重新解析，期间继续返回旧的结果；超过两倍ttl没有使用的结果过期，
+ * 之后的解析会阻塞。后台解析失败时沿用旧的结果直到过期。
+ *
+ * 每次返回的地址按轮转的顺序排列，把连接分散到所有地址上。连接失败的地址在冷却期内排到最后：
+ * 同步连接按顺序尝试，异步连接池只使用第一个地址，所以只要还有可用的地址，冷却中的地址就不会被用到。
+ */
+public class CachingDnsResolver implements DnsResolver, Closeable {
+
+    private static final int MAX_HOSTS = 1024;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final DnsResolver delegate;
+    private final long failureCooldownMillis;
+    private final ExecutorService executor;
+    private final LoadingCache<String, Addresses> cache;
+    // 地址到冷却结束的时间(ms)
+    private final ConcurrentMap<InetAddress, Long> cooldowns = new ConcurrentHashMap<InetAddress, Long>();
+
+    CachingDnsResolver(String clientName, DnsResolver delegate, long ttlMillis, long failureCooldownMillis) {
+        this.delegate = delegate;
+        this.failureCooldownMillis = failureCooldownMillis;
+        // 后台刷新和同步连接的竞速共用，空闲的线程60s后退出
+        this.executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat(clientName + "-dns-%d").setDaemon(true).build());
+        this.cache = CacheBuilder.newBuilder().maximumSize(MAX_HOSTS).refreshAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+                .expireAfterWrite(ttlMillis * 2, TimeUnit.MILLISECONDS).build(CacheLoader.asyncReloading(new CacheLoader<String, Addresses>() {
+                    @Override
+                    public Addresses load(String host) throws UnknownHostException {
+                        return new Addresses(CachingDnsResolver.this.delegate.resolve(host));
+                    }
+                }, executor));
+    }
+
+    /**
+     * @return 配置开启DNS缓存时返回按配置创建的实例，否则返回null
+     */
+    public static CachingDnsResolver create(ClientConfig config) {
+        if (config.getDnsTtl() <= 0) {
+            return null;
+        }
+        DnsResolver delegate = config.getDnsResolver() != null ? config.getDnsResolver() : SystemDefaultDnsResolver.INSTANCE;
+        return new CachingDnsResolver(config.getName(), delegate, config.getDnsTtl(), config.getDnsFailureCooldown());
+    }
+
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        try {
+            return cache.get(host.toLowerCase(Locale.ROOT)).next();
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof UnknownHostException) {
+                throw (UnknownHostException) e.getCause();
+            }
+            UnknownHostException unknown = new UnknownHostException(host);
+            unknown.initCause(e.getCause());
+            throw unknown;
+        }
+    }
+
+    /**
+     * 连接该地址失败，冷却期内排到最后
+     */
+    public void markFailed(InetAddress address) {
+        if (address != null && failureCooldownMillis > 0) {
+            cooldowns.put(address, System.currentTimeMillis() + failureCooldownMillis);
+            logger.warn("connect {} failed, cool down for {}ms", address, failureCooldownMillis);
+        }
+    }
+
+    public void markSucceeded(InetAddress address) {
+        if (address != null) {
+            cooldowns.remove(address);
+        }
+    }
+
+    public boolean isCoolingDown(InetAddress address) {
+        Long until = cooldowns.get(address);
+        if (until == null) {
+            return false;
+        }
+        if (until <= System.currentTimeMillis()) {
+            cooldowns.remove(address, until);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 包装异步连接池的连接回调，按连接结果标记地址
+     */
+    public SessionRequestCallback track(final SessionRequestCallback callback) {
+        return new SessionRequestCallback() {
+            @Override
+            public void completed(SessionRequest request) {
+                markSucceeded(addressOf(request));
+                if (callback != null) {
+                    callback.completed(request);
+                }
+            }
+
+            @Override
+            public void failed(SessionRequest request) {
+                markFailed(addressOf(request));
+                if (callback != null) {
+                    callback.failed(request);
+                }
+            }
+
+            @Override
+            public void timeout(SessionRequest request) {
+                markFailed(addressOf(request));
+                if (callback != null) {
+                    callback.timeout(request);
+                }
+            }
+
+            @Override
+            public void cancelled(SessionRequest request) {
+                if (callback != null) {
+                    callback.cancelled(request);
+                }
+            }
+        };
+    }
+
+    private static InetAddress addressOf(SessionRequest request) {
+        SocketAddress remote = request.getRemoteAddress();
+        return remote instanceof InetSocketAddress ? ((InetSocketAddress) remote).getAddress() : null;
+    }
+
+    ExecutorService getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private class Addresses {
+        private final InetAddress[] addresses;
+        private final AtomicInteger next = new AtomicInteger();
+
+        Addresses(InetAddress[] addresses) {
+            this.addresses = addresses;
+        }
+
+        /**
+         * @return 从下一个位置开始轮转的地址，冷却中的排在最后
+         */
+        InetAddress[] next() {
+            int n = addresses.length;
+            if (n <= 1) {
+                return addresses.clone();
+            }
+            int start = (next.getAndIncrement() & Integer.MAX_VALUE) % n;
+            List<InetAddress> ready = new ArrayList<InetAddress>(n);
+            List<InetAddress> cooling = new ArrayList<InetAddress>(0);
+            for (int i = 0; i < n; i++) {
+                InetAddress address = addresses[(start + i) % n];
+                (isCoolingDown(address) ? cooling : ready).add(address);
+            }
+            ready.addAll(cooling);
+            return ready.toArray(new InetAddress[n]);
+        }
+    }
+}
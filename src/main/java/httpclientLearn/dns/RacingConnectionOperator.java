@@ -0,0 +1,225 @@
+package httpclientLearn.dns;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NoRouteToHostException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.config.Lookup;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.HttpClientConnectionOperator;
+import org.apache.http.conn.HttpHostConnectException;
+import org.apache.http.conn.SchemePortResolver;
+import org.apache.http.conn.UnsupportedSchemeException;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.impl.conn.DefaultSchemePortResolver;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * 同步连接池的建连：按 {@link CachingDnsResolver} 返回的顺序尝试各个地址，并记录每个地址的连接结果
+ *
+ * raceDelay大于0时，一个地址在raceDelay内没有连上就同时开始连接下一个地址，先连上(https包括握手)的胜出，
+ * 其余的连接被关闭；raceDelay为0时与默认实现一样逐个尝试。
+ */
+public class RacingConnectionOperator implements HttpClientConnectionOperator {
+
+    private final Lookup<ConnectionSocketFactory> socketFactoryRegistry;
+    private final CachingDnsResolver dnsResolver;
+    private final SchemePortResolver schemePortResolver = DefaultSchemePortResolver.INSTANCE;
+    private final long raceDelay;
+
+    public RacingConnectionOperator(Lookup<ConnectionSocketFactory> socketFactoryRegistry, CachingDnsResolver dnsResolver, long raceDelay) {
+        this.socketFactoryRegistry = socketFactoryRegistry;
+        this.dnsResolver = dnsResolver;
+        this.raceDelay = raceDelay;
+    }
+
+    @Override
+    public void connect(ManagedHttpClientConnection conn, HttpHost host, InetSocketAddress localAddress, int connectTimeout, SocketConfig socketConfig, HttpContext context)
+            throws IOException {
+        ConnectionSocketFactory sf = socketFactoryRegistry.lookup(host.getSchemeName());
+        if (sf == null) {
+            throw new UnsupportedSchemeException(host.getSchemeName() + " protocol is not supported");
+        }
+        InetAddress[] addresses = host.getAddress() != null ? new InetAddress[] { host.getAddress() } : dnsResolver.resolve(host.getHostName());
+        int port = schemePortResolver.resolve(host);
+        if (raceDelay > 0 && addresses.length > 1) {
+            race(conn, sf, host, addresses, port, localAddress, connectTimeout, socketConfig, context);
+            return;
+        }
+        for (int i = 0; i < addresses.length; i++) {
+            Socket sock = createSocket(sf, socketConfig, context);
+            // 先绑定，连接过程中关闭连接可以中断connect
+            conn.bind(sock);
+            try {
+                conn.bind(sf.connectSocket(connectTimeout, sock, host, new InetSocketAddress(addresses[i], port), localAddress, context));
+                dnsResolver.markSucceeded(addresses[i]);
+                return;
+            } catch (IOException e) {
+                dnsResolver.markFailed(addresses[i]);
+                if (i == addresses.length - 1 || !isConnectFailure(e)) {
+                    throw translate(e, host, addresses);
+                }
+            }
+        }
+    }
+
+    private void race(ManagedHttpClientConnection conn, final ConnectionSocketFactory sf, final HttpHost host, InetAddress[] addresses, int port,
+            final InetSocketAddress localAddress, final int connectTimeout, SocketConfig socketConfig, final HttpContext context) throws IOException {
+        CompletionService<Socket> completion = new ExecutorCompletionService<Socket>(dnsResolver.getExecutor());
+        List<Attempt> attempts = new ArrayList<Attempt>(addresses.length);
+        int started = 0;
+        int pending = 0;
+        IOException last = null;
+        try {
+            while (started < addresses.length || pending > 0) {
+                // 正在进行的都失败了，或者等待超过raceDelay，开始下一个地址
+                Future<Socket> done = null;
+                if (pending > 0) {
+                    done = started < addresses.length ? completion.poll(raceDelay, TimeUnit.MILLISECONDS) : completion.take();
+                }
+                if (done == null) {
+                    Attempt attempt = new Attempt(new InetSocketAddress(addresses[started++], port), createSocket(sf, socketConfig, context));
+                    attempt.future = completion.submit(attempt.task(sf, connectTimeout, host, localAddress, context));
+                    attempts.add(attempt);
+                    pending++;
+                    continue;
+                }
+                pending--;
+                Attempt attempt = find(attempts, done);
+                try {
+                    Socket sock = done.get();
+                    dnsResolver.markSucceeded(attempt.remote.getAddress());
+                    attempts.remove(attempt);
+                    conn.bind(sock);
+                    return;
+                } catch (ExecutionException e) {
+                    dnsResolver.markFailed(attempt.remote.getAddress());
+                    last = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+                    if (!isConnectFailure(last)) {
+                        throw translate(last, host, addresses);
+                    }
+                }
+            }
+            throw translate(last, host, addresses);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("connect " + host + " interrupted");
+        } finally {
+            // 没有胜出的连接全部关闭
+            for (Attempt attempt : attempts) {
+                attempt.abandon();
+            }
+        }
+    }
+
+    private static Attempt find(List<Attempt> attempts, Future<Socket> future) {
+        for (Attempt attempt : attempts) {
+            if (attempt.future == future) {
+                return attempt;
+            }
+        }
+        throw new IllegalStateException("unknown connect attempt");
+    }
+
+    @Override
+    public void upgrade(ManagedHttpClientConnection conn, HttpHost host, HttpContext context) throws IOException {
+        ConnectionSocketFactory sf = socketFactoryRegistry.lookup(host.getSchemeName());
+        if (!(sf instanceof LayeredConnectionSocketFactory)) {
+            throw new UnsupportedSchemeException(host.getSchemeName() + " protocol does not support connection upgrade");
+        }
+        Socket sock = ((LayeredConnectionSocketFactory) sf).createLayeredSocket(conn.getSocket(), host.getHostName(), schemePortResolver.resolve(host), context);
+        conn.bind(sock);
+    }
+
+    private static Socket createSocket(ConnectionSocketFactory sf, SocketConfig socketConfig, HttpContext context) throws IOException {
+        Socket sock = sf.createSocket(context);
+        sock.setSoTimeout(socketConfig.getSoTimeout());
+        sock.setReuseAddress(socketConfig.isSoReuseAddress());
+        sock.setTcpNoDelay(socketConfig.isTcpNoDelay());
+        sock.setKeepAlive(socketConfig.isSoKeepAlive());
+        if (socketConfig.getSoLinger() >= 0) {
+            sock.setSoLinger(true, socketConfig.getSoLinger());
+        }
+        return sock;
+    }
+
+    /**
+     * 只有连接本身失败才换下一个地址，TLS握手等其他失败直接抛出
+     */
+    private static boolean isConnectFailure(IOException e) {
+        return e instanceof SocketTimeoutException || e instanceof ConnectException || e instanceof NoRouteToHostException;
+    }
+
+    private static IOException translate(IOException e, HttpHost host, InetAddress[] addresses) {
+        if (e instanceof SocketTimeoutException) {
+            return new ConnectTimeoutException(e, host, addresses);
+        }
+        if (e instanceof ConnectException) {
+            return new HttpHostConnectException(e, host, addresses);
+        }
+        return e;
+    }
+
+    private static class Attempt {
+        private final InetSocketAddress remote;
+        private Socket sock;
+        private Future<Socket> future;
+        private boolean abandoned;
+
+        Attempt(InetSocketAddress remote, Socket sock) {
+            this.remote = remote;
+            this.sock = sock;
+        }
+
+        Callable<Socket> task(final ConnectionSocketFactory sf, final int connectTimeout, final HttpHost host, final InetSocketAddress localAddress,
+                final HttpContext context) {
+            return new Callable<Socket>() {
+                @Override
+                public Socket call() throws IOException {
+                    Socket connected = sf.connectSocket(connectTimeout, sock, host, remote, localAddress, context);
+                    synchronized (Attempt.this) {
+                        sock = connected;
+                        if (abandoned) {
+                            // 已经有别的地址胜出
+                            closeQuietly(connected);
+                        }
+                    }
+                    return connected;
+                }
+            };
+        }
+
+        /**
+         * 关闭socket，正在进行的connect会立即失败
+         */
+        synchronized void abandon() {
+            abandoned = true;
+            closeQuietly(sock);
+        }
+
+        private static void closeQuietly(Socket sock) {
+            try {
+                sock.close();
+            } catch (IOException ignore) {
+                // 已经不再使用
+            }
+        }
+    }
+}
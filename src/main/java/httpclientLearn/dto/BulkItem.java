@@ -0,0 +1,46 @@
+package httpclientLearn.dto;
+
+/**
+ * 批量请求中单个请求的结果，成功时result不为null，否则error说明失败原因
+ */
+public class BulkItem {
+    private final int index;
+    private final HttpRequestSpec request;
+    private final HttpResult result;
+    private final Throwable error;
+
+    public BulkItem(int index, HttpRequestSpec request, HttpResult result, Throwable error) {
+        this.index = index;
+        this.request = request;
+        this.result = result;
+        this.error = error;
+    }
+
+    /**
+     * @return 请求在入参列表中的下标
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public HttpRequestSpec getRequest() {
+        return request;
+    }
+
+    public HttpResult getResult() {
+        return result;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return result != null;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + index + "] " + request + " -> " + (result != null ? result.getStatusCode() : String.valueOf(error));
+    }
+}
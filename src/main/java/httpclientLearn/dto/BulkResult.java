@@ -0,0 +1,59 @@
+package httpclientLearn.dto;
+
+import java.util.List;
+
+/**
+ * 批量请求的结果，按入参顺序排列
+ *
+ * 截止时间到达时仍未完成的请求被取消，对应项的error为TimeoutException
+ */
+public class BulkResult {
+    private final List<BulkItem> items;
+    private final boolean timedOut;
+
+    public BulkResult(List<BulkItem> items, boolean timedOut) {
+        this.items = items;
+        this.timedOut = timedOut;
+    }
+
+    public List<BulkItem> getItems() {
+        return items;
+    }
+
+    /**
+     * @return 是否因为截止时间到达而提前结束
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    public int getSuccessCount() {
+        int count = 0;
+        for (BulkItem item : items) {
+            if (item.isSuccess()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getFailureCount() {
+        return items.size() - getSuccessCount();
+    }
+
+    /**
+     * 释放所有成功结果持有的池化buffer
+     */
+    public void release() {
+        for (BulkItem item : items) {
+            if (item.isSuccess()) {
+                item.getResult().release();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BulkResult[success=" + getSuccessCount() + ",failure=" + getFailureCount() + ",timedOut=" + timedOut + "]";
+    }
+}
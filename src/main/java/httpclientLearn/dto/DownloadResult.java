@@ -0,0 +1,76 @@
+package httpclientLearn.dto;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.http.ProtocolVersion;
+
+/**
+ * 下载到文件的结果：状态行、响应头以及写入文件的字节数，响应体不在内存中保留
+ */
+public class DownloadResult {
+    private final ProtocolVersion protocolVersion; // 协议版本号
+    private final int statusCode;// 响应码
+    private final String reasonPhrase; // 响应短语
+    private final Map<String, String> headers = new LinkedHashMap<String, String>();
+    private final Path file;
+    private String contentType;
+    private long bytes;
+
+    public DownloadResult(ProtocolVersion protocolVersion, int statusCode, String reasonPhrase, Path file) {
+        this.protocolVersion = protocolVersion;
+        this.statusCode = statusCode;
+        this.reasonPhrase = reasonPhrase;
+        this.file = file;
+    }
+
+    public ProtocolVersion getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getReasonPhrase() {
+        return reasonPhrase;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public void addHeader(String name, String value) {
+        headers.put(name, value);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    /**
+     * @return 写入文件的字节数
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public void setBytes(long bytes) {
+        this.bytes = bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "statusCode=" + statusCode + ",protocolVersion=" + protocolVersion + ",reasonPhrase=" + reasonPhrase + ",contentType=" + contentType + ", headers=" + headers
+                + ",file=" + file + ",bytes=" + bytes;
+    }
+}
@@ -0,0 +1,251 @@
+package httpclientLearn.dto;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
+
+/**
+ * 响应头的紧凑存储：按到达顺序保存在一个 {@link Header} 数组中，名字不区分大小写，同名的多个值(Set-Cookie、Vary等)都保留
+ *
+ * 直接引用httpcore解析出的Header，不为每个响应头建立Map.Entry，值在读取时才生成字符串(BufferedHeader按需从行缓冲区截取)。
+ * 响应头通常只有十几个，线性查找比哈希表省内存也不慢。与 {@link HttpResult} 一样不是线程安全的。
+ */
+public final class HeaderList {
+
+    private static final Header[] EMPTY = new Header[0];
+
+    private Header[] headers;
+    private int size;
+    // headers是外部传入的数组，修改之前先拷贝
+    private boolean shared;
+    private Map<String, String> view;
+
+    public HeaderList() {
+        this.headers = EMPTY;
+    }
+
+    /**
+     * 直接引用传入的数组，不拷贝，例如 HttpResponse.getAllHeaders() 返回的新数组
+     */
+    public HeaderList(Header[] headers) {
+        this.headers = headers != null ? headers : EMPTY;
+        this.size = this.headers.length;
+        this.shared = true;
+    }
+
+    public void add(Header header) {
+        if (shared || size == headers.length) {
+            headers = Arrays.copyOf(headers, Math.max(8, size + (size >> 1) + 1));
+            shared = false;
+        }
+        headers[size++] = header;
+    }
+
+    public void add(String name, String value) {
+        add(new BasicHeader(name, value));
+    }
+
+    /**
+     * 删除所有名为name的响应头
+     */
+    public void remove(String name) {
+        int kept = 0;
+        Header[] target = shared ? new Header[headers.length] : headers;
+        for (int i = 0; i < size; i++) {
+            if (!headers[i].getName().equalsIgnoreCase(name)) {
+                target[kept++] = headers[i];
+            }
+        }
+        Arrays.fill(target, kept, size, null);
+        headers = target;
+        size = kept;
+        shared = false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Header get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException(index + " >= " + size);
+        }
+        return headers[index];
+    }
+
+    public boolean contains(String name) {
+        return indexOf(name, 0) >= 0;
+    }
+
+    /**
+     * @return 第一个名为name的值，没有时返回null
+     */
+    public String getFirst(String name) {
+        int index = indexOf(name, 0);
+        return index >= 0 ? headers[index].getValue() : null;
+    }
+
+    /**
+     * @return 所有名为name的值，按到达顺序排列
+     */
+    public List<String> getValues(String name) {
+        int index = indexOf(name, 0);
+        if (index < 0) {
+            return Collections.emptyList();
+        }
+        List<String> values = new ArrayList<String>(2);
+        for (; index >= 0; index = indexOf(name, index + 1)) {
+            values.add(headers[index].getValue());
+        }
+        return values;
+    }
+
+    /**
+     * 多个值按RFC 7230 3.2.2用逗号合并；Set-Cookie的值中可能有逗号，应该使用 {@link #getValues(String)}
+     *
+     * @return 合并后的值，没有时返回null
+     */
+    public String getCombined(String name) {
+        int index = indexOf(name, 0);
+        if (index < 0) {
+            return null;
+        }
+        int next = indexOf(name, index + 1);
+        if (next < 0) {
+            return headers[index].getValue();
+        }
+        StringBuilder value = new StringBuilder(headers[index].getValue());
+        for (; next >= 0; next = indexOf(name, next + 1)) {
+            value.append(", ").append(headers[next].getValue());
+        }
+        return value.toString();
+    }
+
+    public Header[] toArray() {
+        return Arrays.copyOf(headers, size);
+    }
+
+    public HeaderList copy() {
+        HeaderList copy = new HeaderList(toArray());
+        copy.shared = false;
+        return copy;
+    }
+
+    /**
+     * @return 只读的Map视图，key不区分大小写，同名的值按 {@link #getCombined(String)} 合并；不拷贝数据，随本对象变化
+     */
+    public Map<String, String> asMap() {
+        if (view == null) {
+            view = new MapView();
+        }
+        return view;
+    }
+
+    private int indexOf(String name, int from) {
+        for (int i = from; i < size; i++) {
+            if (headers[i].getName().equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return 是否是该名字第一次出现的位置
+     */
+    private boolean isFirst(int index) {
+        String name = headers[index].getName();
+        for (int i = 0; i < index; i++) {
+            if (headers[i].getName().equalsIgnoreCase(name)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return asMap().toString();
+    }
+
+    private class MapView extends AbstractMap<String, String> {
+
+        @Override
+        public String get(Object key) {
+            return key instanceof String ? getCombined((String) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String && contains((String) key);
+        }
+
+        @Override
+        public Set<Map.Entry<String, String>> entrySet() {
+            return new AbstractSet<Map.Entry<String, String>>() {
+                @Override
+                public Iterator<Map.Entry<String, String>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    int names = 0;
+                    for (int i = 0; i < HeaderList.this.size; i++) {
+                        if (isFirst(i)) {
+                            names++;
+                        }
+                    }
+                    return names;
+                }
+            };
+        }
+    }
+
+    /**
+     * 按名字第一次出现的顺序遍历，每个名字一项
+     */
+    private class EntryIterator implements Iterator<Map.Entry<String, String>> {
+
+        private int next = advance(0);
+
+        private int advance(int from) {
+            for (int i = from; i < size; i++) {
+                if (isFirst(i)) {
+                    return i;
+                }
+            }
+            return size;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public Map.Entry<String, String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String name = headers[next].getName();
+            next = advance(next + 1);
+            return new AbstractMap.SimpleImmutableEntry<String, String>(name, getCombined(name));
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
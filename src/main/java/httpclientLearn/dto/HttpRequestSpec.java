@@ -0,0 +1,62 @@
+package httpclientLearn.dto;
+
+import java.util.Map;
+
+/**
+ * 一个待发送请求的描述：方法、uri、请求头、参数和请求体，用于批量发送
+ */
+public class HttpRequestSpec {
+    private final String method;
+    private final String uri;
+    private final Map<String, String> headers;
+    private final Map<String, Object> parameters;
+    private final byte[] body;
+
+    public HttpRequestSpec(String method, String uri, Map<String, String> headers, Map<String, Object> parameters, byte[] body) {
+        if (method == null || method.isEmpty()) {
+            throw new IllegalArgumentException("method is required");
+        }
+        this.method = method;
+        this.uri = uri;
+        this.headers = headers;
+        this.parameters = parameters;
+        this.body = body;
+    }
+
+    public static HttpRequestSpec get(String uri) {
+        return new HttpRequestSpec("GET", uri, null, null, null);
+    }
+
+    public static HttpRequestSpec get(String uri, Map<String, String> headers, Map<String, Object> parameters) {
+        return new HttpRequestSpec("GET", uri, headers, parameters, null);
+    }
+
+    public static HttpRequestSpec post(String uri, Map<String, String> headers, Map<String, Object> parameters, byte[] body) {
+        return new HttpRequestSpec("POST", uri, headers, parameters, body);
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public Map<String, Object> getParameters() {
+        return parameters;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + uri;
+    }
+}
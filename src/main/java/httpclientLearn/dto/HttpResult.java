@@ -1,19 +1,30 @@
 package httpclientLearn.dto;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
+import org.apache.http.Header;
 import org.apache.http.ProtocolVersion;
 
 import config.Constants;
-
-public class HttpResult {
+import httpclientLearn.buffer.PooledBuffer;
+
+/**
+ * 完整读入内存的响应
+ *
+ * 响应体读入 {@link PooledBuffer} 时(ClientConfig开启pooledBuffers)，使用完毕应调用 {@link #release()} 或使用try-with-resources归还buffer
+ */
+public class HttpResult implements AutoCloseable {
     private ProtocolVersion protocolVersion; // 协议版本号
     private int statusCode;// 响应码
     private String reasonPhrase; // 响应短语
-    private Map<String, String> headers = new LinkedHashMap<String, String>();
+    private HeaderList headers = new HeaderList();
     private byte[] responseBody;
+    private PooledBuffer body;
     private String contentType;
     private long contentLength = -1;
     private Charset charset = Constants.DEFAULT_CHAR_SET;
@@ -32,7 +43,15 @@ public class HttpResult {
         this.statusCode = statusCode;
     }
 
+    /**
+     * 响应体在buffer池中时会拷贝一份，优先使用 {@link #getBody()}
+     */
     public byte[] getResponseBody() {
+        if (responseBody == null && body != null) {
+            ByteBuffer view = body.asReadOnlyBuffer();
+            responseBody = new byte[view.remaining()];
+            view.get(responseBody);
+        }
         return responseBody;
     }
 
@@ -40,12 +59,118 @@ public class HttpResult {
         this.responseBody = responseBody;
     }
 
+    /**
+     * @return 响应体的只读视图，不拷贝数据；没有响应体时返回null，release之后不能再访问
+     */
+    public ByteBuffer getBody() {
+        if (body != null) {
+            return body.asReadOnlyBuffer();
+        }
+        if (responseBody != null) {
+            return ByteBuffer.wrap(responseBody).asReadOnlyBuffer();
+        }
+        return null;
+    }
+
+    /**
+     * @return 实际读到的响应体字节数
+     */
+    public int getBodyLength() {
+        if (body != null) {
+            return body.size();
+        }
+        return responseBody != null ? responseBody.length : 0;
+    }
+
+    /**
+     * @return 读取响应体的流，不拷贝数据；没有响应体时返回null，release之后不能再读取
+     */
+    public InputStream getBodyAsStream() {
+        if (body != null) {
+            return body.asInputStream();
+        }
+        return responseBody != null ? new ByteArrayInputStream(responseBody) : null;
+    }
+
+    public void setBody(PooledBuffer body) {
+        this.body = body;
+    }
+
+    /**
+     * 归还响应体占用的buffer，重复调用无效果
+     */
+    public void release() {
+        PooledBuffer pooled = body;
+        if (pooled != null) {
+            body = null;
+            pooled.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        release();
+    }
+
+    /**
+     * @return 独立的拷贝，响应体拷贝到堆内存中，不需要release；只读取本对象，可以被多个线程同时调用
+     */
+    public HttpResult copy() {
+        HttpResult copy = new HttpResult(protocolVersion, statusCode, reasonPhrase);
+        copy.headers = headers.copy();
+        ByteBuffer view = getBody();
+        if (view != null) {
+            byte[] bytes = new byte[view.remaining()];
+            view.get(bytes);
+            copy.setResponseBody(bytes);
+        }
+        copy.setContentType(contentType);
+        copy.setContentLength(contentLength);
+        copy.setCharset(charset);
+        return copy;
+    }
+
+    /**
+     * @return 只读视图，key不区分大小写，同名的多个值用逗号合并，见 {@link HeaderList#asMap()}
+     */
     public Map<String, String> getHeaders() {
-        return headers;
+        return headers.asMap();
     }
 
     public void setHeaders(Map<String, String> headers) {
-        this.headers = headers;
+        this.headers = new HeaderList();
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            this.headers.add(header.getKey(), header.getValue());
+        }
+    }
+
+    /**
+     * 直接引用传入的数组，不拷贝
+     */
+    public void setHeaders(Header[] headers) {
+        this.headers = new HeaderList(headers);
+    }
+
+    /**
+     * @return 第一个名为name的值(不区分大小写)，没有时返回null
+     */
+    public String getHeader(String name) {
+        return headers.getFirst(name);
+    }
+
+    /**
+     * @return 所有名为name的值，例如多个Set-Cookie
+     */
+    public List<String> getHeaderValues(String name) {
+        return headers.getValues(name);
+    }
+
+    public boolean containsHeader(String name) {
+        return headers.contains(name);
+    }
+
+    public Header[] getAllHeaders() {
+        return headers.toArray();
     }
 
     public ProtocolVersion getProtocolVersion() {
@@ -64,8 +189,15 @@ public class HttpResult {
         this.reasonPhrase = reasonPhrase;
     }
 
+    /**
+     * 同名的响应头不会被覆盖
+     */
     public void addHeader(String name, String value) {
-        headers.put(name, value);
+        headers.add(name, value);
+    }
+
+    public void addHeader(Header header) {
+        headers.add(header);
     }
 
     public long getContentLength() {
@@ -93,6 +225,10 @@ public class HttpResult {
     }
 
     public String getResponseBodyAsString() {
+        if (responseBody == null && body != null) {
+            // 直接从buffer解码，不经过中间byte[]
+            return (charset != null ? charset : Charset.defaultCharset()).decode(body.asReadOnlyBuffer()).toString();
+        }
         if (responseBody == null) {
             return null;
         }
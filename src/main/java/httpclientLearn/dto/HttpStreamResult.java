@@ -0,0 +1,121 @@
+package httpclientLearn.dto;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.http.ProtocolVersion;
+
+import config.Constants;
+
+/**
+ * 流式响应：只包含状态行和响应头，响应体通过 {@link #getInputStream()} 或 {@link #getChannel()} 读取
+ *
+ * 使用完毕必须close，流读到末尾或者被关闭后连接归还连接池
+ */
+public class HttpStreamResult implements Closeable {
+    private static final InputStream EMPTY = new ByteArrayInputStream(new byte[0]);
+
+    private final ProtocolVersion protocolVersion; // 协议版本号
+    private final int statusCode;// 响应码
+    private final String reasonPhrase; // 响应短语
+    private final Map<String, String> headers = new LinkedHashMap<String, String>();
+    private String contentType;
+    private long contentLength = -1;
+    private Charset charset = Constants.DEFAULT_CHAR_SET;
+    private InputStream content;
+    private Closeable response;
+
+    public HttpStreamResult(ProtocolVersion protocolVersion, int statusCode, String reasonPhrase) {
+        this.protocolVersion = protocolVersion;
+        this.statusCode = statusCode;
+        this.reasonPhrase = reasonPhrase;
+    }
+
+    public ProtocolVersion getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getReasonPhrase() {
+        return reasonPhrase;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    public void setContentLength(long contentLength) {
+        this.contentLength = contentLength;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * @return 响应体流，没有响应体时返回空流
+     */
+    public InputStream getInputStream() {
+        return content != null ? content : EMPTY;
+    }
+
+    public ReadableByteChannel getChannel() {
+        return Channels.newChannel(getInputStream());
+    }
+
+    public void setContent(InputStream content) {
+        this.content = content;
+    }
+
+    public void setResponse(Closeable response) {
+        this.response = response;
+    }
+
+    /**
+     * 关闭响应流：剩余内容会被读完以便连接复用，然后连接归还连接池
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (content != null) {
+                content.close();
+            }
+        } finally {
+            if (response != null) {
+                response.close();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "statusCode=" + statusCode + ",protocolVersion=" + protocolVersion + ",reasonPhrase=" + reasonPhrase + ",contentType=" + contentType + ", headers=" + headers
+                + ",contentLength=" + contentLength;
+    }
+}
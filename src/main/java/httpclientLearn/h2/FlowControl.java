@@ -0,0 +1,36 @@
+package httpclientLearn.h2;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import config.ClientConfig;
+
+/**
+ * HTTP/2流量控制窗口
+ *
+ * java.net.http没有按client的设置，每次建立连接时读取系统属性jdk.httpclient.windowsize作为stream窗口，
+ * 连接窗口默认取stream窗口和32MB中较大的一个，因此窗口大小对整个JVM生效：
+ * 启动参数中已经指定的不覆盖，多个client配置了不同的值时以第一个为准并记录警告。
+ */
+final class FlowControl {
+
+    static final String STREAM_WINDOW = "jdk.httpclient.windowsize";
+
+    private static final Logger logger = LoggerFactory.getLogger(FlowControl.class);
+
+    private FlowControl() {
+    }
+
+    static synchronized void apply(ClientConfig config) {
+        int window = config.getHttp2WindowSize();
+        if (window <= 0) {
+            return;
+        }
+        String current = System.getProperty(STREAM_WINDOW);
+        if (current == null) {
+            System.setProperty(STREAM_WINDOW, String.valueOf(window));
+        } else if (!current.equals(String.valueOf(window))) {
+            logger.warn("{} is already {}, http2WindowSize {} of {} is ignored", STREAM_WINDOW, current, window, config.getName());
+        }
+    }
+}
@@ -0,0 +1,501 @@
+package httpclientLearn.h2;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpVersion;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.Configurable;
+import org.apache.http.client.methods.HttpExecutionAware;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.concurrent.Cancellable;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.EofSensorInputStream;
+import org.apache.http.conn.EofSensorWatcher;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.impl.EnglishReasonPhraseCatalog;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.execchain.RequestAbortedException;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import config.ClientConfig;
+import config.RouteConfig;
+import httpclientLearn.compress.ResponseDecompression;
+import httpclientLearn.metrics.ClientMetrics;
+
+/**
+ * HTTP/2传输：同一个host的请求作为多个stream复用少量连接，不再受连接池每个route的连接数限制
+ *
+ * 实现为CloseableHttpClient，同步helper的重试、熔断、缓存、截止时间等逻辑不需要改动。
+ * 底层是JDK 11的java.net.http客户端：https通过ALPN协商h2，http通过Upgrade: h2c升级，对端不支持时退回HTTP/1.1。
+ * 每个host同时在途的stream不超过 {@link ClientConfig#getMaxConcurrentStreams()}，stream在响应体读完或关闭时归还，
+ * 等待stream的时间按connectionRequestTimeout限制并记作租借连接的等待时间。
+ * 与HttpClientBuilder构建的client一样，过时的getParams()不支持，getConnectionManager()只支持shutdown。
+ */
+public class Http2Transport extends CloseableHttpClient {
+
+    /** 不超过该大小的请求体一次性发送并带上Content-Length，更大的或者长度未知的边读边发 */
+    private static final int BUFFERED_BODY_LIMIT = 64 * 1024;
+    /** 由JDK客户端自己生成，或者HTTP/2中不允许出现的请求头 */
+    private static final String[] RESTRICTED_HEADERS = { "connection", "content-length", "expect", "host", "upgrade", "keep-alive", "proxy-connection", "te",
+            "transfer-encoding" };
+
+    private static final Logger logger = LoggerFactory.getLogger(Http2Transport.class);
+    private static final AtomicBoolean warned = new AtomicBoolean();
+
+    private final Object client;
+    private final String name;
+    private final int maxConcurrentStreams;
+    private final RequestConfig defaultConfig;
+    private final ClientMetrics metrics;
+    private final ResponseDecompression decompression;
+    private final ConcurrentMap<HttpHost, Host> hosts = new ConcurrentHashMap<HttpHost, Host>();
+
+    private Http2Transport(ClientConfig config, SSLContext sslContext, ClientMetrics metrics) {
+        FlowControl.apply(config);
+        this.client = JdkHttp.newClient(sslContext, config.getConnectTimeout());
+        this.name = config.getName();
+        this.maxConcurrentStreams = config.getMaxConcurrentStreams();
+        this.defaultConfig = config.toRequestConfig();
+        this.metrics = metrics;
+        this.decompression = config.isContentCompression() ? new ResponseDecompression(metrics) : null;
+    }
+
+    /**
+     * @return 配置没有开启HTTP/2时返回null；运行在JDK 11以下时记录一次警告并返回null，由调用方使用HTTP/1.1连接池
+     */
+    public static Http2Transport create(ClientConfig config, SSLContext sslContext, ClientMetrics metrics) {
+        if (!config.isHttp2()) {
+            return null;
+        }
+        if (!JdkHttp.isSupported()) {
+            if (warned.compareAndSet(false, true)) {
+                logger.warn("HTTP/2 requires java.net.http (Java 11+), {} falls back to HTTP/1.1 on Java {}", config.getName(), System.getProperty("java.version"));
+            }
+            return null;
+        }
+        return new Http2Transport(config, sslContext, metrics);
+    }
+
+    public static boolean isSupported() {
+        return JdkHttp.isSupported();
+    }
+
+    /**
+     * @return 发往target的在途stream数
+     */
+    public int getActiveStreams(HttpHost target) {
+        Host host = hosts.get(RouteConfig.normalize(target));
+        return host == null ? 0 : maxConcurrentStreams - host.streams.availablePermits();
+    }
+
+    @Override
+    protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context) throws IOException, ClientProtocolException {
+        final HttpClientContext clientContext = HttpClientContext.adapt(context != null ? context : new BasicHttpContext());
+        final RequestConfig config = requestConfig(request, clientContext);
+        final URI uri = uri(target, request);
+        // 与连接池一样按带默认端口的host统计指标和限制stream数
+        target = RouteConfig.normalize(target);
+        final HttpRoute route = new HttpRoute(target, null, "https".equalsIgnoreCase(target.getSchemeName()));
+        clientContext.setAttribute(HttpClientContext.HTTP_ROUTE, route);
+        clientContext.setAttribute(HttpClientContext.HTTP_TARGET_HOST, target);
+        clientContext.setAttribute(HttpClientContext.HTTP_REQUEST, request);
+        clientContext.setRequestConfig(config);
+
+        final HttpExecutionAware aware = request instanceof HttpExecutionAware ? (HttpExecutionAware) request : null;
+        if (aware != null && aware.isAborted()) {
+            throw new RequestAbortedException("Request aborted");
+        }
+        final Object jdkRequest = toJdkRequest(uri, request, config);
+        final Host host = host(target);
+        final Stream stream = acquire(host, route, config);
+        try {
+            final Object jdkResponse = host.connected ? send(jdkRequest, aware) : connect(host, target, jdkRequest, aware, config);
+            final Http2Response response = toResponse(jdkResponse, stream);
+            if (aware != null) {
+                // 读取响应体的过程中中断请求时关闭响应体
+                aware.setCancellable(new Cancellable() {
+                    @Override
+                    public boolean cancel() {
+                        response.abort();
+                        return true;
+                    }
+                });
+            }
+            clientContext.setAttribute(HttpClientContext.HTTP_RESPONSE, response);
+            if (decompression != null) {
+                decompression.process(response, clientContext);
+            }
+            return response;
+        } catch (HttpException e) {
+            stream.release();
+            throw new ClientProtocolException(e);
+        } catch (IOException | RuntimeException e) {
+            stream.release();
+            throw e;
+        }
+    }
+
+    private RequestConfig requestConfig(HttpRequest request, HttpClientContext context) {
+        RequestConfig config = request instanceof Configurable ? ((Configurable) request).getConfig() : null;
+        if (config == null && context.getAttribute(HttpClientContext.REQUEST_CONFIG) != null) {
+            config = context.getRequestConfig();
+        }
+        return config != null ? config : defaultConfig;
+    }
+
+    private static URI uri(HttpHost target, HttpRequest request) throws ClientProtocolException {
+        try {
+            URI uri = request instanceof HttpUriRequest ? ((HttpUriRequest) request).getURI() : new URI(request.getRequestLine().getUri());
+            return uri.isAbsolute() ? uri : URIUtils.rewriteURI(uri, target);
+        } catch (URISyntaxException e) {
+            throw new ClientProtocolException("invalid uri " + request.getRequestLine().getUri(), e);
+        }
+    }
+
+    private Object toJdkRequest(URI uri, HttpRequest request, RequestConfig config) throws IOException {
+        final Object builder = JdkHttp.newRequestBuilder(uri);
+        for (Header header : request.getAllHeaders()) {
+            if (!isRestricted(header.getName())) {
+                JdkHttp.header(builder, header.getName(), header.getValue());
+            }
+        }
+        if (decompression != null && !request.containsHeader(HttpHeaders.ACCEPT_ENCODING)) {
+            JdkHttp.header(builder, HttpHeaders.ACCEPT_ENCODING, "gzip,deflate");
+        }
+        if (config.getSocketTimeout() > 0) {
+            // java.net.http只有一个等待响应头的超时
+            JdkHttp.timeout(builder, config.getSocketTimeout());
+        }
+        Object body = null;
+        final HttpEntity entity = request instanceof HttpEntityEnclosingRequest ? ((HttpEntityEnclosingRequest) request).getEntity() : null;
+        if (entity != null) {
+            if (entity.getContentType() != null && !request.containsHeader(HttpHeaders.CONTENT_TYPE)) {
+                JdkHttp.header(builder, HttpHeaders.CONTENT_TYPE, entity.getContentType().getValue());
+            }
+            if (entity.getContentEncoding() != null && !request.containsHeader(HttpHeaders.CONTENT_ENCODING)) {
+                JdkHttp.header(builder, HttpHeaders.CONTENT_ENCODING, entity.getContentEncoding().getValue());
+            }
+            long length = entity.getContentLength();
+            body = length >= 0 && length <= BUFFERED_BODY_LIMIT ? JdkHttp.bytesBody(toByteArray(entity, (int) length)) : JdkHttp.streamingBody(entity);
+        }
+        return JdkHttp.buildRequest(builder, request.getRequestLine().getMethod(), body);
+    }
+
+    private static boolean isRestricted(String name) {
+        for (String restricted : RESTRICTED_HEADERS) {
+            if (restricted.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] toByteArray(HttpEntity entity, int length) throws IOException {
+        byte[] body = new byte[length];
+        try (InputStream in = entity.getContent()) {
+            int offset = 0;
+            while (offset < length) {
+                int read = in.read(body, offset, length - offset);
+                if (read < 0) {
+                    throw new IOException("request body shorter than its Content-Length " + length);
+                }
+                offset += read;
+            }
+        }
+        return body;
+    }
+
+    private Host host(HttpHost target) {
+        Host host = hosts.get(target);
+        if (host == null) {
+            Host created = new Host(maxConcurrentStreams);
+            host = hosts.putIfAbsent(target, created);
+            if (host == null) {
+                host = created;
+            }
+        }
+        return host;
+    }
+
+    private Stream acquire(Host host, HttpRoute route, RequestConfig config) throws IOException {
+        final long start = System.nanoTime();
+        try {
+            if (!host.streams.tryAcquire(waitTimeout(config), TimeUnit.MILLISECONDS)) {
+                throw new ConnectionPoolTimeoutException("Timeout waiting for HTTP/2 stream to " + route.getTargetHost());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RequestAbortedException("Request aborted", e);
+        } finally {
+            metrics.recordLeaseWait(route, System.nanoTime() - start);
+        }
+        return new Stream(host.streams);
+    }
+
+    /**
+     * 到一个host还没有连接时，java.net.http会为同时发出的每个请求各建立一个连接；
+     * 第一个请求单独发出，其余请求等它的连接建立之后复用
+     */
+    private Object connect(Host host, HttpHost target, Object jdkRequest, HttpExecutionAware aware, RequestConfig config) throws IOException {
+        try {
+            if (!host.connecting.tryLock(waitTimeout(config), TimeUnit.MILLISECONDS)) {
+                throw new ConnectionPoolTimeoutException("Timeout waiting for HTTP/2 connection to " + target);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RequestAbortedException("Request aborted", e);
+        }
+        try {
+            if (!host.connected) {
+                Object response = send(jdkRequest, aware);
+                host.connected = true;
+                return response;
+            }
+        } finally {
+            host.connecting.unlock();
+        }
+        return send(jdkRequest, aware);
+    }
+
+    /**
+     * connectionRequestTimeout不大于0时不限制等待时间，与连接池一致
+     */
+    private static long waitTimeout(RequestConfig config) {
+        return config.getConnectionRequestTimeout() > 0 ? config.getConnectionRequestTimeout() : Long.MAX_VALUE;
+    }
+
+    private Object send(Object jdkRequest, HttpExecutionAware aware) throws IOException {
+        final Future<Object> future = JdkHttp.sendAsync(client, jdkRequest);
+        if (aware != null) {
+            aware.setCancellable(new Cancellable() {
+                @Override
+                public boolean cancel() {
+                    return future.cancel(true);
+                }
+            });
+            if (aware.isAborted()) {
+                future.cancel(true);
+            }
+        }
+        return await(future);
+    }
+
+    private static Object await(Future<Object> future) throws IOException {
+        try {
+            return future.get();
+        } catch (CancellationException e) {
+            throw new RequestAbortedException("Request aborted");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RequestAbortedException("Request aborted", e);
+        } catch (ExecutionException e) {
+            throw JdkHttp.toIOException(e.getCause());
+        }
+    }
+
+    private static Http2Response toResponse(Object jdkResponse, Stream stream) throws IOException {
+        final int status = JdkHttp.statusCode(jdkResponse);
+        final ProtocolVersion version = JdkHttp.isHttp2(jdkResponse) ? new ProtocolVersion("HTTP", 2, 0) : HttpVersion.HTTP_1_1;
+        final Http2Response response = new Http2Response(version, status, EnglishReasonPhraseCatalog.INSTANCE.getReason(status, Locale.ENGLISH));
+        long length = -1;
+        for (Map.Entry<String, List<String>> header : JdkHttp.headers(jdkResponse).entrySet()) {
+            String name = header.getKey();
+            if (name.startsWith(":")) {
+                continue;
+            }
+            for (String value : header.getValue()) {
+                response.addHeader(name, value);
+            }
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name) && !header.getValue().isEmpty()) {
+                length = toLong(header.getValue().get(0));
+            }
+        }
+        final BasicHttpEntity entity = new BasicHttpEntity();
+        entity.setContent(response.content = new EofSensorInputStream(JdkHttp.body(jdkResponse), stream));
+        entity.setContentLength(length);
+        entity.setContentType(response.getFirstHeader(HttpHeaders.CONTENT_TYPE));
+        entity.setContentEncoding(response.getFirstHeader(HttpHeaders.CONTENT_ENCODING));
+        response.setEntity(entity);
+        return response;
+    }
+
+    private static long toLong(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void close() {
+        JdkHttp.close(client);
+    }
+
+    /**
+     * 与HttpClientBuilder构建的client一样不支持旧的HttpParams，配置通过 {@link ClientConfig} 和RequestConfig传入
+     */
+    @Deprecated
+    @Override
+    @SuppressWarnings("deprecation")
+    public org.apache.http.params.HttpParams getParams() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * 与HttpClientBuilder构建的client一样只支持shutdown和清理：shutdown关闭client，连接由JDK客户端自己管理，清理不需要做什么；
+     * 租借和归还连接抛出UnsupportedOperationException
+     */
+    @Deprecated
+    @Override
+    @SuppressWarnings("deprecation")
+    public org.apache.http.conn.ClientConnectionManager getConnectionManager() {
+        return new org.apache.http.conn.ClientConnectionManager() {
+
+            @Override
+            public void shutdown() {
+                close();
+            }
+
+            @Override
+            public org.apache.http.conn.ClientConnectionRequest requestConnection(HttpRoute route, Object state) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void releaseConnection(org.apache.http.conn.ManagedClientConnection conn, long validDuration, TimeUnit timeUnit) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public org.apache.http.conn.scheme.SchemeRegistry getSchemeRegistry() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void closeIdleConnections(long idletime, TimeUnit timeUnit) {
+            }
+
+            @Override
+            public void closeExpiredConnections() {
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "Http2Transport[" + name + ",maxConcurrentStreams=" + maxConcurrentStreams + "]";
+    }
+
+    private static class Host {
+
+        final Semaphore streams;
+        final ReentrantLock connecting = new ReentrantLock();
+        // 已经有请求成功完成，java.net.http中有可以复用的连接
+        volatile boolean connected;
+
+        Host(int maxConcurrentStreams) {
+            this.streams = new Semaphore(maxConcurrentStreams, true);
+        }
+    }
+
+    /**
+     * 一个在途的stream，响应体读完、关闭或者中断时归还名额
+     */
+    private static class Stream implements EofSensorWatcher {
+
+        private final Semaphore semaphore;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Stream(Semaphore semaphore) {
+            this.semaphore = semaphore;
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                semaphore.release();
+            }
+        }
+
+        @Override
+        public boolean eofDetected(InputStream wrapped) throws IOException {
+            release();
+            return true;
+        }
+
+        @Override
+        public boolean streamClosed(InputStream wrapped) throws IOException {
+            release();
+            return true;
+        }
+
+        @Override
+        public boolean streamAbort(InputStream wrapped) throws IOException {
+            release();
+            return true;
+        }
+    }
+
+    private static class Http2Response extends BasicHttpResponse implements CloseableHttpResponse {
+
+        // 解压时实体被替换，关闭的始终是原始的响应体
+        private InputStream content;
+
+        Http2Response(ProtocolVersion version, int code, String reason) {
+            super(version, code, reason);
+        }
+
+        /**
+         * 关闭时不读完剩余的响应体，java.net.http随之取消该stream，连接继续被其他stream使用
+         */
+        @Override
+        public void close() throws IOException {
+            if (content != null) {
+                content.close();
+            }
+        }
+
+        void abort() {
+            try {
+                close();
+            } catch (IOException e) {
+                // 中断时不关心关闭的结果
+            }
+        }
+    }
+}
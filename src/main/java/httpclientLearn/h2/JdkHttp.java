@@ -0,0 +1,298 @@
+package httpclientLearn.h2;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.conn.ConnectTimeoutException;
+
+/**
+ * JDK 11的java.net.http客户端
+ *
+ * 项目按Java 7编译，全部通过反射调用；运行在JDK 11以下时 {@link #isSupported()} 返回false。
+ * 只使用公开的接口类型上的方法，实现类不需要开放模块访问。
+ */
+final class JdkHttp {
+
+    private static final String HTTP_2 = "HTTP_2";
+
+    private JdkHttp() {
+    }
+
+    static boolean isSupported() {
+        return Api.CLIENT != null;
+    }
+
+    /**
+     * @param connectTimeout 建立连接的超时毫秒数，0表示不限制
+     * @return 优先使用HTTP/2的java.net.http.HttpClient，重定向按JDK的NORMAL策略处理
+     */
+    static Object newClient(SSLContext sslContext, long connectTimeout) {
+        try {
+            Object builder = Api.NEW_CLIENT_BUILDER.invoke(null);
+            Api.CLIENT_VERSION.invoke(builder, Api.VERSION_HTTP_2);
+            Api.CLIENT_REDIRECT.invoke(builder, Api.REDIRECT_NORMAL);
+            if (sslContext != null) {
+                Api.CLIENT_SSL_CONTEXT.invoke(builder, sslContext);
+            }
+            if (connectTimeout > 0) {
+                Api.CLIENT_CONNECT_TIMEOUT.invoke(builder, duration(connectTimeout));
+            }
+            return Api.CLIENT_BUILD.invoke(builder);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("create java.net.http.HttpClient failed", e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * JDK 21开始HttpClient实现了AutoCloseable，之前的版本没有关闭方法，随GC回收
+     */
+    static void close(Object client) {
+        if (client instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) client).close();
+            } catch (Exception e) {
+                // 关闭时的异常没有处理的必要
+            }
+        }
+    }
+
+    static Object newRequestBuilder(URI uri) throws IOException {
+        return invoke(Api.NEW_REQUEST_BUILDER, null, uri);
+    }
+
+    static void header(Object requestBuilder, String name, String value) throws IOException {
+        invoke(Api.REQUEST_HEADER, requestBuilder, name, value);
+    }
+
+    static void timeout(Object requestBuilder, long timeout) throws IOException {
+        invoke(Api.REQUEST_TIMEOUT, requestBuilder, duration(timeout));
+    }
+
+    /**
+     * @param body 请求体，为null时没有请求体
+     */
+    static Object buildRequest(Object requestBuilder, String method, Object body) throws IOException {
+        invoke(Api.REQUEST_METHOD, requestBuilder, method, body != null ? body : invoke(Api.NO_BODY, null));
+        return invoke(Api.REQUEST_BUILD, requestBuilder);
+    }
+
+    static Object bytesBody(byte[] body) throws IOException {
+        return invoke(Api.BYTES_BODY, null, (Object) body);
+    }
+
+    /**
+     * 发送时才调用entity.getContent()，请求体边读边发，不会整体加载到内存
+     */
+    static Object streamingBody(final HttpEntity entity) throws IOException {
+        Object supplier = Proxy.newProxyInstance(JdkHttp.class.getClassLoader(), new Class<?>[] { Api.SUPPLIER }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws IOException {
+                switch (method.getName()) {
+                case "get":
+                    return entity.getContent();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return "RequestBodySupplier[" + entity + "]";
+                }
+            }
+        });
+        return invoke(Api.STREAM_BODY, null, supplier);
+    }
+
+    /**
+     * @return 响应头到达时完成的CompletableFuture，响应体是InputStream
+     */
+    @SuppressWarnings("unchecked")
+    static Future<Object> sendAsync(Object client, Object request) throws IOException {
+        return (Future<Object>) invoke(Api.SEND_ASYNC, client, request, Api.STREAM_HANDLER);
+    }
+
+    static int statusCode(Object response) throws IOException {
+        return (Integer) invoke(Api.STATUS_CODE, response);
+    }
+
+    static boolean isHttp2(Object response) throws IOException {
+        return invoke(Api.RESPONSE_VERSION, response) == Api.VERSION_HTTP_2;
+    }
+
+    @SuppressWarnings("unchecked")
+    static Map<String, List<String>> headers(Object response) throws IOException {
+        return (Map<String, List<String>>) invoke(Api.HEADERS_MAP, invoke(Api.RESPONSE_HEADERS, response));
+    }
+
+    static InputStream body(Object response) throws IOException {
+        return (InputStream) invoke(Api.RESPONSE_BODY, response);
+    }
+
+    /**
+     * 把java.net.http的超时异常换成httpclient对应的异常，与HTTP/1.1的连接池行为一致
+     */
+    static IOException toIOException(Throwable cause) {
+        switch (cause.getClass().getName()) {
+        case "java.net.http.HttpConnectTimeoutException":
+            return new ConnectTimeoutException(cause.getMessage());
+        case "java.net.http.HttpTimeoutException":
+            return new SocketTimeoutException(cause.getMessage());
+        default:
+            return cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    private static Object duration(long millis) {
+        try {
+            return Api.DURATION_OF_MILLIS.invoke(null, millis);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) throws IOException {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                // 例如不允许设置的请求头
+                throw (RuntimeException) cause;
+            }
+            throw toIOException(cause);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Api {
+
+        static final Class<?> CLIENT;
+        static final Class<?> SUPPLIER;
+        static final Object VERSION_HTTP_2;
+        static final Object REDIRECT_NORMAL;
+        static final Object STREAM_HANDLER;
+        static final Method NEW_CLIENT_BUILDER;
+        static final Method CLIENT_VERSION;
+        static final Method CLIENT_REDIRECT;
+        static final Method CLIENT_SSL_CONTEXT;
+        static final Method CLIENT_CONNECT_TIMEOUT;
+        static final Method CLIENT_BUILD;
+        static final Method SEND_ASYNC;
+        static final Method NEW_REQUEST_BUILDER;
+        static final Method REQUEST_HEADER;
+        static final Method REQUEST_TIMEOUT;
+        static final Method REQUEST_METHOD;
+        static final Method REQUEST_BUILD;
+        static final Method NO_BODY;
+        static final Method BYTES_BODY;
+        static final Method STREAM_BODY;
+        static final Method STATUS_CODE;
+        static final Method RESPONSE_VERSION;
+        static final Method RESPONSE_HEADERS;
+        static final Method RESPONSE_BODY;
+        static final Method HEADERS_MAP;
+        static final Method DURATION_OF_MILLIS;
+
+        static {
+            Class<?> client = null;
+            Class<?> supplier = null;
+            Object versionHttp2 = null;
+            Object redirectNormal = null;
+            Object streamHandler = null;
+            Method[] methods = new Method[21];
+            try {
+                client = Class.forName("java.net.http.HttpClient");
+                supplier = Class.forName("java.util.function.Supplier");
+                Class<?> clientBuilder = Class.forName("java.net.http.HttpClient$Builder");
+                Class<?> version = Class.forName("java.net.http.HttpClient$Version");
+                Class<?> redirect = Class.forName("java.net.http.HttpClient$Redirect");
+                Class<?> request = Class.forName("java.net.http.HttpRequest");
+                Class<?> requestBuilder = Class.forName("java.net.http.HttpRequest$Builder");
+                Class<?> publisher = Class.forName("java.net.http.HttpRequest$BodyPublisher");
+                Class<?> publishers = Class.forName("java.net.http.HttpRequest$BodyPublishers");
+                Class<?> response = Class.forName("java.net.http.HttpResponse");
+                Class<?> handler = Class.forName("java.net.http.HttpResponse$BodyHandler");
+                Class<?> handlers = Class.forName("java.net.http.HttpResponse$BodyHandlers");
+                Class<?> headers = Class.forName("java.net.http.HttpHeaders");
+                Class<?> duration = Class.forName("java.time.Duration");
+
+                versionHttp2 = constant(version, HTTP_2);
+                redirectNormal = constant(redirect, "NORMAL");
+                streamHandler = handlers.getMethod("ofInputStream").invoke(null);
+                methods[0] = client.getMethod("newBuilder");
+                methods[1] = clientBuilder.getMethod("version", version);
+                methods[2] = clientBuilder.getMethod("followRedirects", redirect);
+                methods[3] = clientBuilder.getMethod("sslContext", SSLContext.class);
+                methods[4] = clientBuilder.getMethod("connectTimeout", duration);
+                methods[5] = clientBuilder.getMethod("build");
+                methods[6] = client.getMethod("sendAsync", request, handler);
+                methods[7] = request.getMethod("newBuilder", URI.class);
+                methods[8] = requestBuilder.getMethod("header", String.class, String.class);
+                methods[9] = requestBuilder.getMethod("timeout", duration);
+                methods[10] = requestBuilder.getMethod("method", String.class, publisher);
+                methods[11] = requestBuilder.getMethod("build");
+                methods[12] = publishers.getMethod("noBody");
+                methods[13] = publishers.getMethod("ofByteArray", byte[].class);
+                methods[14] = publishers.getMethod("ofInputStream", supplier);
+                methods[15] = response.getMethod("statusCode");
+                methods[16] = response.getMethod("version");
+                methods[17] = response.getMethod("headers");
+                methods[18] = response.getMethod("body");
+                methods[19] = headers.getMethod("map");
+                methods[20] = duration.getMethod("ofMillis", long.class);
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // JDK 11以下没有java.net.http
+                client = null;
+            }
+            CLIENT = client;
+            SUPPLIER = supplier;
+            VERSION_HTTP_2 = versionHttp2;
+            REDIRECT_NORMAL = redirectNormal;
+            STREAM_HANDLER = streamHandler;
+            NEW_CLIENT_BUILDER = methods[0];
+            CLIENT_VERSION = methods[1];
+            CLIENT_REDIRECT = methods[2];
+            CLIENT_SSL_CONTEXT = methods[3];
+            CLIENT_CONNECT_TIMEOUT = methods[4];
+            CLIENT_BUILD = methods[5];
+            SEND_ASYNC = methods[6];
+            NEW_REQUEST_BUILDER = methods[7];
+            REQUEST_HEADER = methods[8];
+            REQUEST_TIMEOUT = methods[9];
+            REQUEST_METHOD = methods[10];
+            REQUEST_BUILD = methods[11];
+            NO_BODY = methods[12];
+            BYTES_BODY = methods[13];
+            STREAM_BODY = methods[14];
+            STATUS_CODE = methods[15];
+            RESPONSE_VERSION = methods[16];
+            RESPONSE_HEADERS = methods[17];
+            RESPONSE_BODY = methods[18];
+            HEADERS_MAP = methods[19];
+            DURATION_OF_MILLIS = methods[20];
+        }
+
+        private static Object constant(Class<?> enumType, String name) {
+            for (Object constant : enumType.getEnumConstants()) {
+                if (((Enum<?>) constant).name().equals(name)) {
+                    return constant;
+                }
+            }
+            throw new IllegalStateException(enumType.getName() + "." + name + " not found");
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package httpclientLearn.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.routing.RouteInfo;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.pool.PoolStats;
+
+/**
+ * 一个命名client的指标，按route汇总
+ *
+ * 记录时只有第一次遇到某个route才创建对象，之后只做原子自增；通过 {@link #snapshot} 读取并导出到监控系统
+ */
+public class ClientMetrics {
+
+    private final String clientName;
+    private final ConcurrentMap<HttpRoute, RouteMetrics> routes = new ConcurrentHashMap<HttpRoute, RouteMetrics>();
+    // 压缩前后的字节数，只统计实际被压缩的请求和响应
+    private final AtomicLong requestBytesRaw = new AtomicLong();
+    private final AtomicLong requestBytesCompressed = new AtomicLong();
+    private final AtomicLong responseBytesCompressed = new AtomicLong();
+    private final AtomicLong responseBytesDecoded = new AtomicLong();
+
+    public ClientMetrics(String clientName) {
+        this.clientName = clientName;
+    }
+
+    public RouteMetrics route(HttpRoute route) {
+        RouteMetrics metrics = routes.get(route);
+        if (metrics == null) {
+            metrics = new RouteMetrics(route);
+            RouteMetrics existing = routes.putIfAbsent(route, metrics);
+            if (existing != null) {
+                metrics = existing;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * @param statusCode 响应码，请求失败时为 {@link RouteMetrics#FAILURE}
+     * @param nanos 请求总耗时
+     * @param bytesOut 请求体字节数
+     * @param bytesIn 响应体字节数
+     */
+    public void recordRequest(HttpRoute route, int statusCode, long nanos, long bytesOut, long bytesIn) {
+        route(route).recordRequest(statusCode, nanos, bytesOut, bytesIn);
+    }
+
+    /**
+     * 记录一次请求，route无法确定时(例如uri中没有host)忽略
+     *
+     * @param context 本次请求的上下文，执行后其中保存了实际使用的route
+     */
+    public void recordRequest(HttpClientContext context, HttpRequest request, int statusCode, long nanos, long bytesIn) {
+        HttpRoute route = routeOf(context, request);
+        if (route != null) {
+            recordRequest(route, statusCode, nanos, requestBytes(request), bytesIn);
+        }
+    }
+
+    /**
+     * @return 发往target的请求耗时，该host没有记录时返回null；同一host有多个route(例如经过不同代理)时取第一个
+     */
+    public LatencyHistogram.HistogramSnapshot latency(HttpHost target) {
+        for (RouteMetrics metrics : routes.values()) {
+            if (target.equals(metrics.getRoute().getTargetHost())) {
+                return metrics.latencySnapshot();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param raw 压缩前的请求体字节数
+     * @param compressed 实际发送的字节数
+     */
+    public void recordRequestCompression(long raw, long compressed) {
+        requestBytesRaw.addAndGet(raw);
+        requestBytesCompressed.addAndGet(compressed);
+    }
+
+    /**
+     * @param compressed 实际收到的字节数
+     * @param decoded 解压后的字节数
+     */
+    public void recordResponseCompression(long compressed, long decoded) {
+        responseBytesCompressed.addAndGet(compressed);
+        responseBytesDecoded.addAndGet(decoded);
+    }
+
+    public void recordLeaseWait(HttpRoute route, long nanos) {
+        route(route).recordLeaseWait(nanos);
+    }
+
+    /**
+     * @param resumed 是否复用了之前的TLS会话
+     */
+    public void recordHandshake(HttpRoute route, long nanos, boolean resumed) {
+        route(route).recordHandshake(nanos, resumed);
+    }
+
+    private static HttpRoute routeOf(HttpClientContext context, HttpRequest request) {
+        RouteInfo info = context.getHttpRoute();
+        HttpRoute route = info instanceof HttpRoute ? (HttpRoute) info : null;
+        if (route == null && request instanceof HttpUriRequest) {
+            // 没有拿到连接就失败了，按目标host归类
+            HttpHost host = URIUtils.extractHost(((HttpUriRequest) request).getURI());
+            if (host != null) {
+                route = new HttpRoute(host);
+            }
+        }
+        return route;
+    }
+
+    private static long requestBytes(HttpRequest request) {
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (entity != null) {
+                return Math.max(0, entity.getContentLength());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @param pool 用于读取连接池状态的连接管理器
+     * @param poolRoutes 连接池当前持有的route
+     */
+    public Snapshot snapshot(ConnPoolControl<HttpRoute> pool, Set<HttpRoute> poolRoutes) {
+        List<RouteMetrics.RouteSnapshot> snapshots = new ArrayList<RouteMetrics.RouteSnapshot>();
+        for (RouteMetrics metrics : routes.values()) {
+            snapshots.add(metrics.snapshot(poolRoutes.contains(metrics.getRoute()) ? pool.getStats(metrics.getRoute()) : null));
+        }
+        // 只出现在连接池中的route(例如预热的连接)
+        for (HttpRoute route : poolRoutes) {
+            if (!routes.containsKey(route)) {
+                snapshots.add(new RouteMetrics(route).snapshot(pool.getStats(route)));
+            }
+        }
+        return new Snapshot(clientName, pool.getTotalStats(), Collections.unmodifiableList(snapshots), requestBytesRaw.get(), requestBytesCompressed.get(), responseBytesCompressed.get(),
+                responseBytesDecoded.get());
+    }
+
+    /**
+     * 某一时刻client指标的拷贝
+     */
+    public static class Snapshot {
+        private final String clientName;
+        private final PoolStats totalStats;
+        private final List<RouteMetrics.RouteSnapshot> routes;
+        private final long requestBytesRaw;
+        private final long requestBytesCompressed;
+        private final long responseBytesCompressed;
+        private final long responseBytesDecoded;
+
+        Snapshot(String clientName, PoolStats totalStats, List<RouteMetrics.RouteSnapshot> routes, long requestBytesRaw, long requestBytesCompressed, long responseBytesCompressed,
+                long responseBytesDecoded) {
+            this.clientName = clientName;
+            this.totalStats = totalStats;
+            this.routes = routes;
+            this.requestBytesRaw = requestBytesRaw;
+            this.requestBytesCompressed = requestBytesCompressed;
+            this.responseBytesCompressed = responseBytesCompressed;
+            this.responseBytesDecoded = responseBytesDecoded;
+        }
+
+        public String getClientName() {
+            return clientName;
+        }
+
+        public PoolStats getTotalStats() {
+            return totalStats;
+        }
+
+        public List<RouteMetrics.RouteSnapshot> getRoutes() {
+            return routes;
+        }
+
+        /**
+         * @return 被压缩的请求体压缩前的字节数
+         */
+        public long getRequestBytesRaw() {
+            return requestBytesRaw;
+        }
+
+        /**
+         * @return 被压缩的请求体实际发送的字节数
+         */
+        public long getRequestBytesCompressed() {
+            return requestBytesCompressed;
+        }
+
+        /**
+         * @return 压缩的响应体实际收到的字节数
+         */
+        public long getResponseBytesCompressed() {
+            return responseBytesCompressed;
+        }
+
+        /**
+         * @return 压缩的响应体解压后的字节数
+         */
+        public long getResponseBytesDecoded() {
+            return responseBytesDecoded;
+        }
+
+        @Override
+        public String toString() {
+            return clientName + " " + totalStats + " " + routes + " compression[request=" + requestBytesRaw + "->" + requestBytesCompressed + ",response=" + responseBytesCompressed + "->"
+                    + responseBytesDecoded + "]";
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package httpclientLearn.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.PoolStats;
+
+/**
+ * 单个route的请求指标：耗时、获取连接等待时间、TLS握手耗时、状态码计数和收发字节数
+ */
+public class RouteMetrics {
+
+    /** 请求失败(没有拿到响应)计入的状态码 */
+    public static final int FAILURE = 0;
+    private static final int MAX_STATUS = 600;
+
+    private final HttpRoute route;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram leaseWait = new LatencyHistogram();
+    private final LatencyHistogram fullHandshake = new LatencyHistogram();
+    private final LatencyHistogram resumedHandshake = new LatencyHistogram();
+    private final AtomicLongArray statusCounts = new AtomicLongArray(MAX_STATUS);
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    RouteMetrics(HttpRoute route) {
+        this.route = route;
+    }
+
+    public HttpRoute getRoute() {
+        return route;
+    }
+
+    public LatencyHistogram.HistogramSnapshot latencySnapshot() {
+        return latency.snapshot();
+    }
+
+    /**
+     * @return 获取连接等待时间的累计值，需要窗口值时由调用方对两次快照做差
+     */
+    public LatencyHistogram.HistogramSnapshot leaseWaitSnapshot() {
+        return leaseWait.snapshot();
+    }
+
+    void recordRequest(int statusCode, long nanos, long sent, long received) {
+        latency.record(nanos, TimeUnit.NANOSECONDS);
+        statusCounts.incrementAndGet(statusCode >= 0 && statusCode < MAX_STATUS ? statusCode : FAILURE);
+        if (sent > 0) {
+            bytesOut.addAndGet(sent);
+        }
+        if (received > 0) {
+            bytesIn.addAndGet(received);
+        }
+    }
+
+    void recordLeaseWait(long nanos) {
+        leaseWait.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordHandshake(long nanos, boolean resumed) {
+        (resumed ? resumedHandshake : fullHandshake).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    RouteSnapshot snapshot(PoolStats poolStats) {
+        Map<Integer, Long> statuses = new TreeMap<Integer, Long>();
+        for (int i = 0; i < MAX_STATUS; i++) {
+            long count = statusCounts.get(i);
+            if (count > 0) {
+                statuses.put(i, count);
+            }
+        }
+        return new RouteSnapshot(route, latency.snapshot(), leaseWait.snapshot(), fullHandshake.snapshot(), resumedHandshake.snapshot(), statuses, bytesIn.get(), bytesOut.get(),
+                poolStats);
+    }
+
+    /**
+     * 某一时刻route指标的拷贝
+     */
+    public static class RouteSnapshot {
+        private final HttpRoute route;
+        private final LatencyHistogram.HistogramSnapshot latency;
+        private final LatencyHistogram.HistogramSnapshot leaseWait;
+        private final LatencyHistogram.HistogramSnapshot fullHandshake;
+        private final LatencyHistogram.HistogramSnapshot resumedHandshake;
+        private final Map<Integer, Long> statusCounts;
+        private final long bytesIn;
+        private final long bytesOut;
+        private final PoolStats poolStats;
+
+        RouteSnapshot(HttpRoute route, LatencyHistogram.HistogramSnapshot latency, LatencyHistogram.HistogramSnapshot leaseWait, LatencyHistogram.HistogramSnapshot fullHandshake,
+                LatencyHistogram.HistogramSnapshot resumedHandshake, Map<Integer, Long> statusCounts, long bytesIn, long bytesOut, PoolStats poolStats) {
+            this.route = route;
+            this.latency = latency;
+            this.leaseWait = leaseWait;
+            this.fullHandshake = fullHandshake;
+            this.resumedHandshake = resumedHandshake;
+            this.statusCounts = statusCounts;
+            this.bytesIn = bytesIn;
+            this.bytesOut = bytesOut;
+            this.poolStats = poolStats;
+        }
+
+        public HttpRoute getRoute() {
+            return route;
+        }
+
+        public LatencyHistogram.HistogramSnapshot getLatency() {
+            return latency;
+        }
+
+        public LatencyHistogram.HistogramSnapshot getLeaseWait() {
+            return leaseWait;
+        }
+
+        /**
+         * @return 完整TLS握手的耗时
+         */
+        public LatencyHistogram.HistogramSnapshot getFullHandshake() {
+            return fullHandshake;
+        }
+
+        /**
+         * @return 复用TLS会话的握手耗时，与 {@link #getFullHandshake()} 对比即可看出会话复用节省的时间
+         */
+        public LatencyHistogram.HistogramSnapshot getResumedHandshake() {
+            return resumedHandshake;
+        }
+
+        /**
+         * @return 状态码到次数的映射，{@link RouteMetrics#FAILURE} 表示请求失败
+         */
+        public Map<Integer, Long> getStatusCounts() {
+            return statusCounts;
+        }
+
+        public long getBytesIn() {
+            return bytesIn;
+        }
+
+        public long getBytesOut() {
+            return bytesOut;
+        }
+
+        /**
+         * @return 连接池中该route的leased/available/pending/max，route已经不在连接池中时为null
+         */
+        public PoolStats getPoolStats() {
+            return poolStats;
+        }
+
+        @Override
+        public String toString() {
+            return route + ": latency[" + latency + "], leaseWait[" + leaseWait + "]"
+                    + (fullHandshake.getCount() + resumedHandshake.getCount() > 0 ? ", handshake[full=" + fullHandshake + ", resumed=" + resumedHandshake + "]" : "") + ", status=" + statusCounts + ", bytesIn=" + bytesIn + ", bytesOut=" + bytesOut + ", pool=" + poolStats;
+        }
+    }
+}
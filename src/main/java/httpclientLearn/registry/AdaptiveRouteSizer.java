@@ -0,0 +1,180 @@
+package httpclientLearn.registry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import config.ClientConfig;
+import httpclientLearn.metrics.ClientMetrics;
+import httpclientLearn.metrics.LatencyHistogram;
+
+/**
+ * 按route的排队情况自动调整连接数上限
+ *
+ * 每个周期读取各route的pending数和这一周期内的平均获取连接等待时间：有排队或等待超过阈值的route扩大上限，
+ * 连续若干周期使用率不到一半的route缩小上限。maxTotal保持不变，所有route上限之和不超过maxTotal，
+ * 热点route扩容用的是冷route缩容让出来的额度。同步和异步连接池都实现了 {@link ConnPoolControl}，共用这一实现。
+ */
+public abstract class AdaptiveRouteSizer implements Runnable {
+
+    /** 连续多少个周期空闲才缩容，避免在突发流量之间来回抖动 */
+    static final int SHRINK_AFTER_PERIODS = 5;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final String clientName;
+    private final ConnPoolControl<HttpRoute> pool;
+    private final ClientMetrics metrics;
+    private final int minPerRoute;
+    private final int maxPerRoute;
+    private final long leaseWaitThresholdMicros;
+    private final List<RouteLimitListener> listeners = new CopyOnWriteArrayList<RouteLimitListener>();
+    // 只在调整线程中访问；route数与ClientMetrics中的一样有限，不再使用的route也保留其累计值
+    private final Map<HttpRoute, RouteState> states = new HashMap<HttpRoute, RouteState>();
+    private final AtomicLong increases = new AtomicLong();
+    private final AtomicLong decreases = new AtomicLong();
+
+    AdaptiveRouteSizer(ClientConfig config, ConnPoolControl<HttpRoute> pool, ClientMetrics metrics) {
+        this.clientName = config.getName();
+        this.pool = pool;
+        this.metrics = metrics;
+        this.minPerRoute = config.getMinPerRoute();
+        this.maxPerRoute = config.getMaxPerRoute();
+        this.leaseWaitThresholdMicros = config.getLeaseWaitThreshold() * 1000;
+    }
+
+    /**
+     * @return 连接池当前持有(有连接或者有排队)的route
+     */
+    protected abstract Set<HttpRoute> routes();
+
+    public void addListener(RouteLimitListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(RouteLimitListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return 累计扩容次数
+     */
+    public long getIncreases() {
+        return increases.get();
+    }
+
+    /**
+     * @return 累计缩容次数
+     */
+    public long getDecreases() {
+        return decreases.get();
+    }
+
+    @Override
+    public void run() {
+        try {
+            adjust();
+        } catch (RuntimeException e) {
+            // 异常会让定时任务停止，这里只记录
+            logger.error("adjust route limits of " + clientName + " exception", e);
+        }
+    }
+
+    synchronized void adjust() {
+        Set<HttpRoute> routes = routes();
+        List<RouteState> hot = new ArrayList<RouteState>();
+        int allocated = 0;
+        for (HttpRoute route : routes) {
+            RouteState state = states.get(route);
+            if (state == null) {
+                state = new RouteState(route);
+                states.put(route, state);
+            }
+            state.sample(pool.getStats(route), metrics.route(route).leaseWaitSnapshot());
+
+            if (state.stats.getPending() > 0 || state.leaseWaitMicros >= leaseWaitThresholdMicros) {
+                state.idlePeriods = 0;
+                hot.add(state);
+            } else if (state.stats.getLeased() * 2 <= state.stats.getMax()) {
+                state.idlePeriods++;
+            } else {
+                state.idlePeriods = 0;
+            }
+
+            // 先缩容，让出的额度本周期就可以给热点route使用
+            int max = state.stats.getMax();
+            if (state.idlePeriods >= SHRINK_AFTER_PERIODS && max > minPerRoute) {
+                max = Math.max(minPerRoute, max - Math.max(1, max / 4));
+                apply(state, max);
+                state.idlePeriods = 0;
+            }
+            allocated += max;
+        }
+
+        // 扩容按当前上限的一半，缩容按四分之一，快升慢降
+        int budget = pool.getMaxTotal() - allocated;
+        for (RouteState state : hot) {
+            int max = state.stats.getMax();
+            int target = Math.min(maxPerRoute, max + Math.min(Math.max(1, max / 2), budget));
+            if (target > max) {
+                budget -= target - max;
+                apply(state, target);
+            } else if (budget <= 0) {
+                logger.debug("{} {} is waiting for connections but maxTotal is fully allocated", clientName, state.route);
+            }
+        }
+    }
+
+    private void apply(RouteState state, int newMax) {
+        int previous = state.stats.getMax();
+        if (newMax == previous) {
+            return;
+        }
+        pool.setMaxPerRoute(state.route, newMax);
+        (newMax > previous ? increases : decreases).incrementAndGet();
+
+        RouteLimitChange change = new RouteLimitChange(clientName, state.route, previous, newMax, state.stats.getLeased(), state.stats.getPending(), state.leaseWaitMicros);
+        logger.info("{}", change);
+        for (RouteLimitListener listener : listeners) {
+            try {
+                listener.limitChanged(change);
+            } catch (RuntimeException e) {
+                logger.error("route limit listener " + listener + " exception", e);
+            }
+        }
+    }
+
+    private static class RouteState {
+        private final HttpRoute route;
+        private PoolStats stats;
+        private long lastCount;
+        private long lastSum;
+        private long leaseWaitMicros;
+        private int idlePeriods;
+
+        RouteState(HttpRoute route) {
+            this.route = route;
+        }
+
+        /**
+         * 与上一次的累计值做差，得到这一周期内的平均等待时间
+         */
+        void sample(PoolStats stats, LatencyHistogram.HistogramSnapshot leaseWait) {
+            this.stats = stats;
+            long count = leaseWait.getCount() - lastCount;
+            long sum = leaseWait.getSum() - lastSum;
+            this.leaseWaitMicros = count > 0 ? sum / count : 0;
+            this.lastCount = leaseWait.getCount();
+            this.lastSum = leaseWait.getSum();
+        }
+    }
+}
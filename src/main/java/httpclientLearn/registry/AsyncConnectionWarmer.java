@@ -0,0 +1,72 @@
+package httpclientLearn.registry;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.nio.NHttpClientConnection;
+
+import com.google.common.util.concurrent.SettableFuture;
+
+import config.ClientConfig;
+
+/**
+ * 异步连接池的预热：连接由io reactor建立，不需要为每个连接占用线程；https的握手在startRoute之后由io reactor完成
+ */
+class AsyncConnectionWarmer extends ConnectionWarmer<NHttpClientConnection> {
+
+    private final PoolingNHttpClientConnectionManager cm;
+    private final int leaseTimeout;
+    private final int connectTimeout;
+
+    AsyncConnectionWarmer(ClientConfig config, PoolingNHttpClientConnectionManager cm) {
+        super(config, cm);
+        this.cm = cm;
+        this.leaseTimeout = config.getConnectionRequestTimeout();
+        this.connectTimeout = config.getConnectTimeout();
+    }
+
+    @Override
+    protected Future<NHttpClientConnection> lease(final HttpRoute route) {
+        final SettableFuture<NHttpClientConnection> future = SettableFuture.create();
+        cm.requestConnection(route, null, connectTimeout, leaseTimeout, TimeUnit.MILLISECONDS, new FutureCallback<NHttpClientConnection>() {
+            @Override
+            public void completed(NHttpClientConnection conn) {
+                try {
+                    // 已经关闭的连接由io reactor从池中移除，这里拿到的都是打开的，只有新建的连接route还没有完成
+                    if (!cm.isRouteComplete(conn)) {
+                        HttpClientContext context = HttpClientContext.create();
+                        context.setAttribute(HttpClientContext.HTTP_ROUTE, route);
+                        cm.startRoute(conn, route, context);
+                        cm.routeComplete(conn, route, context);
+                        opened();
+                    }
+                    future.set(conn);
+                } catch (IOException | RuntimeException e) {
+                    release(conn);
+                    future.setException(e);
+                }
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                future.setException(ex);
+            }
+
+            @Override
+            public void cancelled() {
+                future.cancel(false);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    protected void release(NHttpClientConnection conn) {
+        cm.releaseConnection(conn, null, 0, TimeUnit.MILLISECONDS);
+    }
+}
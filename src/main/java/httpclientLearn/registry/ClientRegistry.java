@@ -0,0 +1,353 @@
+package httpclientLearn.registry;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import config.ClientConfig;
+import config.ClientConfigLoader;
+import httpclientLearn.metrics.ClientMetrics;
+import httpclientLearn.ssl.SSLClientPool;
+
+/**
+ * 命名客户端注册表
+ *
+ * 每个下游服务注册一个 {@link ClientConfig}，第一次使用时按配置构建连接池和client，之后所有调用方共享同一个实例。
+ * 同一个名字可以同时拥有一个同步client和一个异步client。
+ */
+public final class ClientRegistry {
+
+    /** HttpClientPool使用的默认client */
+    public static final String DEFAULT_HTTP = "http";
+    /** SSLClientPool使用的默认client，信任所有证书 */
+    public static final String DEFAULT_HTTPS = "https";
+    /** AsyncClientPool使用的默认client */
+    public static final String DEFAULT_ASYNC = "async";
+
+    private enum SingletonRegistry {
+        Registry;
+        private final Logger logger = LoggerFactory.getLogger(getClass());
+        // 代码中注册的配置，以及叠加了配置文件之后实际使用的配置
+        private final ConcurrentMap<String, ClientConfig> baseConfigs = new ConcurrentHashMap<String, ClientConfig>();
+        private final ConcurrentMap<String, ClientConfig> configs = new ConcurrentHashMap<String, ClientConfig>();
+        // 只在配置文件中出现、由reload补出默认配置的client，之后代码中注册同名client时替换
+        private final Set<String> fileOnly = new HashSet<String>();
+        private volatile Properties overrides = new Properties();
+        private ScheduledFuture<?> watchFuture;
+        private final ConcurrentMap<String, PooledHttpClient> clients = new ConcurrentHashMap<String, PooledHttpClient>();
+        private final ConcurrentMap<String, PooledAsyncClient> asyncClients = new ConcurrentHashMap<String, PooledAsyncClient>();
+        // 所有client共用一个线程做空闲连接清理
+        private final ScheduledExecutorService schedluedES = Executors.newScheduledThreadPool(1,
+                new ThreadFactoryBuilder().setNameFormat("client-registry-monitor-%d").setDaemon(true).build());
+        private volatile boolean shutdown;
+
+        private SingletonRegistry() {
+            for (ClientConfig config : Arrays.asList(ClientConfig.custom(DEFAULT_HTTP).build(),
+                    ClientConfig.custom(DEFAULT_HTTPS).setSslContext(SSLClientPool.createTrustAllContext()).build(), ClientConfig.custom(DEFAULT_ASYNC).build())) {
+                baseConfigs.put(config.getName(), config);
+                configs.put(config.getName(), config);
+            }
+        }
+
+        public synchronized void register(ClientConfig config) {
+            if (baseConfigs.containsKey(config.getName()) && !fileOnly.remove(config.getName())) {
+                throw new IllegalStateException("client " + config.getName() + " is already registered");
+            }
+            baseConfigs.put(config.getName(), config);
+            // 配置文件先于注册加载时，注册时叠加文件中的配置；按文件补出的配置已经创建了client时按新配置调整
+            ClientConfig effective = withOverrides(config, overrides);
+            apply(effective != null ? effective : config);
+            logger.info("register {}", configs.get(config.getName()));
+        }
+
+        public synchronized void reconfigure(ClientConfig config) {
+            fileOnly.remove(config.getName());
+            baseConfigs.put(config.getName(), config);
+            ClientConfig effective = withOverrides(config, overrides);
+            apply(effective != null ? effective : config);
+        }
+
+        public synchronized void reload(Properties properties) {
+            Set<String> names = new LinkedHashSet<String>(baseConfigs.keySet());
+            names.addAll(ClientConfigLoader.clientNames(properties));
+            for (String name : names) {
+                ClientConfig base = baseConfigs.get(name);
+                if (base == null) {
+                    // 只在配置文件中出现的client
+                    base = ClientConfig.custom(name).build();
+                    baseConfigs.put(name, base);
+                    fileOnly.add(name);
+                }
+                ClientConfig effective = withOverrides(base, properties);
+                if (effective != null) {
+                    apply(effective);
+                }
+            }
+            this.overrides = properties;
+        }
+
+        /**
+         * @return 叠加后的配置，配置文件有错误时返回null
+         */
+        private ClientConfig withOverrides(ClientConfig base, Properties properties) {
+            try {
+                return ClientConfigLoader.apply(base, properties);
+            } catch (IllegalArgumentException e) {
+                logger.error("invalid configuration of client " + base.getName() + ", keep the current one", e);
+                return null;
+            }
+        }
+
+        private void apply(ClientConfig config) {
+            configs.put(config.getName(), config);
+            PooledHttpClient client = clients.get(config.getName());
+            if (client != null) {
+                client.reconfigure(config);
+            }
+            PooledAsyncClient asyncClient = asyncClients.get(config.getName());
+            if (asyncClient != null) {
+                asyncClient.reconfigure(config);
+            }
+        }
+
+        public synchronized void watch(final File file, long period) throws IOException {
+            reload(ClientConfigLoader.read(file));
+            if (watchFuture != null) {
+                watchFuture.cancel(false);
+            }
+            final long loaded = file.lastModified();
+            watchFuture = schedluedES.scheduleWithFixedDelay(new Runnable() {
+                private long lastModified = loaded;
+
+                @Override
+                public void run() {
+                    try {
+                        long modified = file.lastModified();
+                        if (modified != lastModified) {
+                            lastModified = modified;
+                            logger.info("reload {}", file);
+                            reload(ClientConfigLoader.read(file));
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        // 异常会让定时任务停止，这里只记录，保留当前配置
+                        logger.error("reload " + file + " exception", e);
+                    }
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+            logger.info("watch {} every {}ms", file, period);
+        }
+
+        public synchronized void unwatch() {
+            if (watchFuture != null) {
+                watchFuture.cancel(false);
+                watchFuture = null;
+            }
+        }
+
+        public PooledHttpClient getClient(String name) {
+            PooledHttpClient client = clients.get(name);
+            if (client != null) {
+                return client;
+            }
+            synchronized (this) {
+                client = clients.get(name);
+                if (client == null) {
+                    client = new PooledHttpClient(requireConfig(name), schedluedES);
+                    clients.put(name, client);
+                }
+                return client;
+            }
+        }
+
+        public PooledAsyncClient getAsyncClient(String name) {
+            PooledAsyncClient client = asyncClients.get(name);
+            if (client != null) {
+                return client;
+            }
+            synchronized (this) {
+                client = asyncClients.get(name);
+                if (client == null) {
+                    client = new PooledAsyncClient(requireConfig(name), schedluedES);
+                    asyncClients.put(name, client);
+                }
+                return client;
+            }
+        }
+
+        private ClientConfig requireConfig(String name) {
+            if (shutdown) {
+                throw new IllegalStateException("client registry is shut down");
+            }
+            ClientConfig config = configs.get(name);
+            if (config == null) {
+                throw new IllegalArgumentException("no client registered with name " + name);
+            }
+            return config;
+        }
+
+        public int warmUp() {
+            int ready = 0;
+            for (ClientConfig config : configs.values()) {
+                if (config.getWarmRoutes().isEmpty()) {
+                    continue;
+                }
+                ready += getClient(config.getName()).getWarmer().warmUp();
+                // 异步client只有已经创建了才预热，避免为不使用的client启动io reactor
+                PooledAsyncClient async = asyncClients.get(config.getName());
+                if (async != null) {
+                    ready += async.getWarmer().warmUp();
+                }
+            }
+            return ready;
+        }
+
+        public List<ClientMetrics.Snapshot> snapshotMetrics() {
+            List<ClientMetrics.Snapshot> snapshots = new ArrayList<ClientMetrics.Snapshot>();
+            for (PooledHttpClient client : clients.values()) {
+                snapshots.add(client.snapshotMetrics());
+            }
+            for (PooledAsyncClient client : asyncClients.values()) {
+                snapshots.add(client.snapshotMetrics());
+            }
+            return snapshots;
+        }
+
+        public synchronized void close(String name) {
+            closeQuietly(clients.remove(name));
+            closeQuietly(asyncClients.remove(name));
+        }
+
+        public synchronized void shutdown() {
+            shutdown = true;
+            List<Closeable> all = new ArrayList<Closeable>();
+            all.addAll(clients.values());
+            all.addAll(asyncClients.values());
+            clients.clear();
+            asyncClients.clear();
+            for (Closeable client : all) {
+                closeQuietly(client);
+            }
+            schedluedES.shutdownNow();
+            logger.info("{} shutdown success", this);
+        }
+
+        private void closeQuietly(Closeable client) {
+            if (client == null) {
+                return;
+            }
+            try {
+                client.close();
+            } catch (IOException e) {
+                logger.error("close " + client + " exception", e);
+            }
+        }
+    }
+
+    private ClientRegistry() {
+    }
+
+    /**
+     * 注册一个命名client，连接池在第一次使用时才创建
+     *
+     * 配置文件中已经出现过、但还没有在代码中注册的名字可以注册，代码中的配置代替按文件补出的默认配置
+     *
+     * @param config
+     * @throws IllegalStateException 名字已经被注册
+     */
+    public static void register(ClientConfig config) {
+        SingletonRegistry.Registry.register(config);
+    }
+
+    /**
+     * 替换一个client的配置，已经创建的client在运行中应用，见 {@link PooledHttpClient#reconfigure(ClientConfig)}
+     *
+     * @param config 名字没有注册过时直接注册
+     */
+    public static void reconfigure(ClientConfig config) {
+        SingletonRegistry.Registry.reconfigure(config);
+    }
+
+    /**
+     * 在代码注册的配置之上叠加properties中的配置并应用到所有client，格式见 {@link ClientConfigLoader}
+     *
+     * 某个client的配置有错误时只记录日志，该client保留当前配置
+     */
+    public static void reload(Properties properties) {
+        SingletonRegistry.Registry.reload(properties);
+    }
+
+    /**
+     * 立即加载配置文件，之后每隔period(ms)检查一次修改时间，有修改时重新加载
+     *
+     * @throws IOException 第一次加载失败
+     */
+    public static void watch(File file, long period) throws IOException {
+        SingletonRegistry.Registry.watch(file, period);
+    }
+
+    /**
+     * 停止检查配置文件，已经加载的配置保持不变
+     */
+    static void unwatch() {
+        SingletonRegistry.Registry.unwatch();
+    }
+
+    public static PooledHttpClient getClient(String name) {
+        return SingletonRegistry.Registry.getClient(name);
+    }
+
+    public static PooledAsyncClient getAsyncClient(String name) {
+        return SingletonRegistry.Registry.getAsyncClient(name);
+    }
+
+    /**
+     * 为配置了预热route的client建立连接，同步client按需创建，阻塞直到完成
+     *
+     * @return 成功就绪的连接数
+     * @see ConnectionWarmer#warmUp()
+     */
+    public static int warmUp() {
+        return SingletonRegistry.Registry.warmUp();
+    }
+
+    /**
+     * @return 所有已创建client的指标快照，同步和异步client各占一项
+     */
+    public static List<ClientMetrics.Snapshot> snapshotMetrics() {
+        return SingletonRegistry.Registry.snapshotMetrics();
+    }
+
+    /**
+     * 关闭某个名字下已经创建的client，配置仍然保留，下次使用时会重新创建
+     *
+     * @param name
+     */
+    public static void close(String name) {
+        SingletonRegistry.Registry.close(name);
+    }
+
+    /**
+     * 关闭所有client，之后注册表不可再使用
+     */
+    public static void shutdown() {
+        SingletonRegistry.Registry.shutdown();
+    }
+}
@@ -0,0 +1,42 @@
+package httpclientLearn.registry;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * 应用启动时加载配置文件并预热连接，停止时关闭 {@link ClientRegistry} 中的所有client，在web.xml中注册
+ *
+ * context-param clientConfigLocation 指定配置文件路径，clientConfigReloadPeriod 指定检查修改的周期(ms)，默认10s。
+ * 预热只覆盖在此之前已经注册的client，注册client的listener要排在它前面
+ */
+public class ClientRegistryListener implements ServletContextListener {
+
+    static final String CONFIG_LOCATION = "clientConfigLocation";
+    static final String RELOAD_PERIOD = "clientConfigReloadPeriod";
+    static final long DEFAULT_RELOAD_PERIOD = 10000;
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        ServletContext context = sce.getServletContext();
+        String location = context.getInitParameter(CONFIG_LOCATION);
+        if (location != null && !location.trim().isEmpty()) {
+            String period = context.getInitParameter(RELOAD_PERIOD);
+            try {
+                ClientRegistry.watch(new File(location.trim()), period == null ? DEFAULT_RELOAD_PERIOD : Long.parseLong(period.trim()));
+            } catch (IOException e) {
+                throw new IllegalStateException("load client config " + location + " failed", e);
+            }
+        }
+        // 阻塞到预热完成，容器在所有listener初始化之后才开始接收请求
+        ClientRegistry.warmUp();
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        ClientRegistry.shutdown();
+    }
+}
@@ -0,0 +1,192 @@
+package httpclientLearn.registry;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import config.ClientConfig;
+import config.WarmRoute;
+
+/**
+ * 按配置的route预热连接，并在之后保持最少空闲连接
+ *
+ * 预热：每个route同时租出connections个连接，池中没有的连接在租出时建立(https同时完成握手)，全部拿到后再一起归还，
+ * 这样池中留下的是connections个不同的连接，而不是同一个连接被反复租还。所有route并行进行。
+ *
+ * 保温：紧跟在空闲连接清理之后执行，每个route同时租出minIdle个连接再归还。池中的空闲连接后进先出，
+ * 租出的正是最近使用的minIdle个：已经被服务端关闭的在这里被发现并重建，其余的刷新空闲时间；
+ * 超出minIdle的空闲连接不会被租出，仍然按idleTimeout清理，保温和清理互不抵消。有请求排队的route不做保温。
+ * 保温在warmer自己的线程中进行，不占用所有client共用的清理线程；上一轮还没有结束时跳过本轮。
+ * 同步和异步连接池各有一个实现。
+ *
+ * @param <C> 连接池的连接类型
+ */
+public abstract class ConnectionWarmer<C> {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final String clientName;
+    private final List<WarmRoute> routes;
+    private final ConnPoolControl<HttpRoute> pool;
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicBoolean keepingWarm = new AtomicBoolean();
+    // 只在预热和保温时有线程，空闲的线程60s后退出
+    private final ExecutorService executor;
+
+    ConnectionWarmer(ClientConfig config, ConnPoolControl<HttpRoute> pool) {
+        this.clientName = config.getName();
+        this.routes = config.getWarmRoutes();
+        this.pool = pool;
+        this.executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat(clientName + "-warmer-%d").setDaemon(true).build());
+    }
+
+    /**
+     * 租出一个连接，连接没有建立时建立并完成route，失败时连接已经归还
+     */
+    protected abstract Future<C> lease(HttpRoute route);
+
+    protected abstract void release(C conn);
+
+    protected ExecutorService executor() {
+        return executor;
+    }
+
+    void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 子类新建了一个连接
+     */
+    protected void opened() {
+        opened.incrementAndGet();
+    }
+
+    /**
+     * @return 累计新建的连接数
+     */
+    public long getOpened() {
+        return opened.get();
+    }
+
+    /**
+     * @return 累计建立失败的连接数
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * 所有route并行建立配置的连接数，阻塞直到全部完成，每个连接最多等待获取连接超时加上连接超时
+     *
+     * @return 成功就绪的连接数
+     */
+    public int warmUp() {
+        Map<HttpRoute, Integer> targets = new LinkedHashMap<HttpRoute, Integer>();
+        for (WarmRoute route : routes) {
+            targets.put(route.getRoute(), route.getConnections());
+        }
+        int ready = warm(targets);
+        logger.info("{} warmed up {} connections for {}", clientName, ready, routes);
+        return ready;
+    }
+
+    /**
+     * 在空闲连接清理之后调用，提交到warmer的线程后立即返回
+     */
+    void keepWarm() {
+        if (!keepingWarm.compareAndSet(false, true)) {
+            logger.debug("{} previous keep-warm round still running, skip", clientName);
+            return;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        keepWarmNow();
+                    } finally {
+                        keepingWarm.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 已经关闭
+            keepingWarm.set(false);
+        }
+    }
+
+    private void keepWarmNow() {
+        try {
+            Map<HttpRoute, Integer> targets = new LinkedHashMap<HttpRoute, Integer>();
+            for (WarmRoute route : routes) {
+                PoolStats stats = pool.getStats(route.getRoute());
+                // 有排队说明连接都在使用中，不需要保温，也不和请求争抢连接
+                int count = Math.min(route.getMinIdle(), stats.getMax() - stats.getLeased());
+                if (stats.getPending() == 0 && count > 0) {
+                    targets.put(route.getRoute(), count);
+                }
+            }
+            if (!targets.isEmpty()) {
+                warm(targets);
+            }
+        } catch (RuntimeException e) {
+            logger.error("keep " + clientName + " warm exception", e);
+        }
+    }
+
+    /**
+     * 预热和保温不同时进行，否则两边各自新建连接，建立的连接数会超过配置
+     */
+    private synchronized int warm(Map<HttpRoute, Integer> targets) {
+        Map<HttpRoute, List<Future<C>>> leases = new LinkedHashMap<HttpRoute, List<Future<C>>>();
+        for (Map.Entry<HttpRoute, Integer> target : targets.entrySet()) {
+            List<Future<C>> futures = new ArrayList<Future<C>>(target.getValue());
+            for (int i = 0; i < target.getValue(); i++) {
+                futures.add(lease(target.getKey()));
+            }
+            leases.put(target.getKey(), futures);
+        }
+
+        int ready = 0;
+        for (Map.Entry<HttpRoute, List<Future<C>>> lease : leases.entrySet()) {
+            // 同一route的连接全部拿到之后再归还，否则归还的连接会被后面的租用复用
+            List<C> conns = new ArrayList<C>(lease.getValue().size());
+            Throwable cause = null;
+            for (Future<C> future : lease.getValue()) {
+                try {
+                    // 每个租用都有获取连接和建立连接的超时，不会无限等待；中断也要等完，否则连接无人归还
+                    conns.add(Uninterruptibles.getUninterruptibly(future));
+                } catch (ExecutionException e) {
+                    failures.incrementAndGet();
+                    cause = e.getCause();
+                }
+            }
+            for (C conn : conns) {
+                release(conn);
+            }
+            ready += conns.size();
+            if (cause != null) {
+                logger.warn("{} warm {} got {}/{} connections: {}", clientName, lease.getKey(), conns.size(), lease.getValue().size(), cause.toString());
+            }
+        }
+        return ready;
+    }
+}
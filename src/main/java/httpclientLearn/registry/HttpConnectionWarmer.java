@@ -0,0 +1,68 @@
+package httpclientLearn.registry;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import config.ClientConfig;
+
+/**
+ * 同步连接池的预热：建立连接是阻塞的，每个连接在warmer的线程池中单独建立
+ */
+class HttpConnectionWarmer extends ConnectionWarmer<HttpClientConnection> {
+
+    private final PoolingHttpClientConnectionManager cm;
+    private final int leaseTimeout;
+    private final int connectTimeout;
+
+    HttpConnectionWarmer(ClientConfig config, PoolingHttpClientConnectionManager cm) {
+        super(config, cm);
+        this.cm = cm;
+        this.leaseTimeout = config.getConnectionRequestTimeout();
+        this.connectTimeout = config.getConnectTimeout();
+    }
+
+    @Override
+    protected Future<HttpClientConnection> lease(final HttpRoute route) {
+        final ConnectionRequest request = cm.requestConnection(route, null);
+        return executor().submit(new Callable<HttpClientConnection>() {
+            @Override
+            public HttpClientConnection call() throws Exception {
+                HttpClientConnection conn = request.get(leaseTimeout, TimeUnit.MILLISECONDS);
+                try {
+                    // 服务端已经关闭的空闲连接
+                    if (conn.isOpen() && conn.isStale()) {
+                        conn.close();
+                    }
+                    if (!conn.isOpen()) {
+                        HttpClientContext context = HttpClientContext.create();
+                        context.setAttribute(HttpClientContext.HTTP_ROUTE, route);
+                        cm.connect(conn, route, connectTimeout, context);
+                        cm.routeComplete(conn, route, context);
+                        // 连接的输入输出流在第一次使用时才绑定，没有使用过的连接做isStale检查会抛异常，
+                        // 连接池的validateAfterInactivity同样会检查，这里先flush一次完成绑定
+                        conn.flush();
+                        opened();
+                    }
+                    return conn;
+                } catch (IOException | RuntimeException e) {
+                    release(conn);
+                    throw e;
+                }
+            }
+        });
+    }
+
+    @Override
+    protected void release(HttpClientConnection conn) {
+        // 没有建立成功的连接会被连接池丢弃
+        cm.releaseConnection(conn, null, 0, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,76 @@
+package httpclientLearn.registry;
+
+import java.nio.charset.CodingErrorAction;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.http.Consts;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.config.MessageConstraints;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnPoolControl;
+
+import config.ClientConfig;
+import config.RouteConfig;
+
+/**
+ * 同步和异步连接池共用的配置应用，创建时和运行中重新配置时都通过这里
+ */
+final class PoolSettings {
+
+    private PoolSettings() {
+    }
+
+    /**
+     * 应用连接池大小和各route的上限，previous中有而config中没有的route恢复为默认上限
+     *
+     * @param previous 第一次应用时为null
+     */
+    static void applyPoolSize(ConnPoolControl<HttpRoute> pool, ClientConfig previous, ClientConfig config) {
+        pool.setMaxTotal(config.getMaxTotal());
+        pool.setDefaultMaxPerRoute(config.getDefaultMaxPerRoute());
+        Set<HttpRoute> configured = new HashSet<HttpRoute>();
+        for (RouteConfig route : config.getRoutes()) {
+            configured.add(route.getRoute());
+            pool.setMaxPerRoute(route.getRoute(), route.getMaxPerRoute() > 0 ? route.getMaxPerRoute() : config.getDefaultMaxPerRoute());
+        }
+        if (previous != null) {
+            for (RouteConfig route : previous.getRoutes()) {
+                if (!configured.contains(route.getRoute())) {
+                    pool.setMaxPerRoute(route.getRoute(), config.getDefaultMaxPerRoute());
+                }
+            }
+        }
+    }
+
+    /**
+     * 只对之后新建的连接生效
+     */
+    static ConnectionConfig connectionConfig(ClientConfig config) {
+        // Create message constraints
+        MessageConstraints messageConstraints = MessageConstraints.custom().setMaxHeaderCount(config.getMaxHeaderCount()).setMaxLineLength(config.getMaxLineLength()).build();
+
+        // Create connection configuration
+        return ConnectionConfig.custom().setMalformedInputAction(CodingErrorAction.IGNORE).setUnmappableInputAction(CodingErrorAction.IGNORE).setCharset(Consts.UTF_8)
+                .setMessageConstraints(messageConstraints).build();
+    }
+
+    /**
+     * @return 有超时覆盖的route目标host到RequestConfig的映射
+     */
+    static Map<HttpHost, RequestConfig> routeRequestConfigs(ClientConfig config, RequestConfig defaults) {
+        if (config.getRoutes().isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<HttpHost, RequestConfig> configs = new HashMap<HttpHost, RequestConfig>();
+        for (RouteConfig route : config.getRoutes()) {
+            configs.put(route.getRoute().getTargetHost(), route.toRequestConfig(defaults));
+        }
+        return configs;
+    }
+}
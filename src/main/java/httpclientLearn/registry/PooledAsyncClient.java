@@ -0,0 +1,357 @@
+package httpclientLearn.registry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.RequestAcceptEncoding;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.NHttpClientConnection;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.reactor.ConnectingIOReactor;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.nio.reactor.SessionRequest;
+import org.apache.http.nio.reactor.SessionRequestCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import config.ClientConfig;
+import httpclientLearn.admission.AdmissionController;
+import httpclientLearn.coalesce.RequestCoalescer;
+import httpclientLearn.breaker.CircuitBreakers;
+import httpclientLearn.dns.CachingDnsResolver;
+import httpclientLearn.metrics.ClientMetrics;
+import httpclientLearn.retry.RetryPolicy;
+import httpclientLearn.ssl.InstrumentedSSLIOSessionStrategy;
+import httpclientLearn.ssl.TlsContexts;
+
+/**
+ * 一个命名的异步客户端：连接池以及一个已经start的CloseableHttpAsyncClient
+ *
+ * client只在创建时start一次，所有请求共享同一组io reactor线程
+ */
+public class PooledAsyncClient implements Closeable {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final ScheduledExecutorService scheduler;
+    // 以下四项可以在运行中通过reconfigure替换
+    private volatile ClientConfig config;
+    private volatile RequestConfig requestConfig;
+    private volatile Map<HttpHost, RequestConfig> routeRequestConfigs;
+    private volatile ScheduledFuture<?> monitorFuture;
+    private final PoolingNHttpClientConnectionManager cm;
+    private final CloseableHttpAsyncClient httpClient;
+    private final ClientMetrics metrics;
+    private final AdaptiveRouteSizer routeSizer;
+    private final ScheduledFuture<?> sizerFuture;
+    private final RequestCoalescer coalescer;
+    private final RetryPolicy retryPolicy;
+    private final CircuitBreakers circuitBreakers;
+    private final ConnectionWarmer<NHttpClientConnection> warmer;
+    private final CachingDnsResolver dnsResolver;
+    private final AdmissionController admission;
+
+    PooledAsyncClient(ClientConfig config, ScheduledExecutorService scheduler) {
+        this.config = config;
+        this.scheduler = scheduler;
+        this.metrics = new ClientMetrics(config.getName());
+        this.requestConfig = config.toRequestConfig();
+        this.routeRequestConfigs = PoolSettings.routeRequestConfigs(config, requestConfig);
+        this.coalescer = config.isCoalescing() ? new RequestCoalescer() : null;
+        this.retryPolicy = RetryPolicy.create(config);
+        this.circuitBreakers = CircuitBreakers.create(config);
+        this.dnsResolver = CachingDnsResolver.create(config);
+        this.admission = AdmissionController.create(config);
+        try {
+            this.cm = init(config);
+        } catch (IOReactorException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+        HttpAsyncClientBuilder builder = HttpAsyncClients.custom().setConnectionManager(cm).setDefaultRequestConfig(requestConfig);
+        if (config.isContentCompression()) {
+            // 异步client没有自带解压，响应体在AsyncHttpClientHelper中解压
+            builder.addInterceptorLast(new RequestAcceptEncoding());
+        }
+        this.httpClient = builder.build();
+        this.httpClient.start();
+
+        // 定时把过期链接清除，之后为预热的route补足空闲连接
+        this.warmer = config.getWarmRoutes().isEmpty() ? null : new AsyncConnectionWarmer(config, cm);
+        this.monitorFuture = scheduleMonitor(config);
+
+        // 按排队情况调整各route的连接数上限
+        if (config.isAdaptiveRouteSizing()) {
+            this.routeSizer = new AdaptiveRouteSizer(config, cm, metrics) {
+                @Override
+                protected Set<HttpRoute> routes() {
+                    return cm.getRoutes();
+                }
+            };
+            this.sizerFuture = scheduler.scheduleWithFixedDelay(routeSizer, config.getAdaptivePeriod(), config.getAdaptivePeriod(), TimeUnit.MILLISECONDS);
+        } else {
+            this.routeSizer = null;
+            this.sizerFuture = null;
+        }
+        logger.info("{} init success", this);
+    }
+
+    /**
+     * 初始化连接配置
+     *
+     * @return
+     * @throws IOReactorException
+     */
+    private PoolingNHttpClientConnectionManager init(ClientConfig config) throws IOReactorException {
+        // 配置io线程
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom().setIoThreadCount(Runtime.getRuntime().availableProcessors()).build();
+        ConnectingIOReactor ioReactor;
+        if (dnsResolver != null) {
+            // 异步连接池只连接解析结果的第一个地址，按连接结果标记地址，失败的地址冷却期内不再排在第一位
+            ioReactor = new DefaultConnectingIOReactor(ioReactorConfig) {
+                @Override
+                public SessionRequest connect(SocketAddress remoteAddress, SocketAddress localAddress, Object attachment, SessionRequestCallback callback) {
+                    return super.connect(remoteAddress, localAddress, attachment, dnsResolver.track(callback));
+                }
+            };
+        } else {
+            ioReactor = new DefaultConnectingIOReactor(ioReactorConfig);
+        }
+
+        // 设置协议http和https对应的处理socket链接工厂的对象
+        // 与同名的同步client共用SSLContext，从而共用TLS会话缓存
+        SSLContext sslcontext = TlsContexts.resolve(config);
+        Registry<SchemeIOSessionStrategy> sessionStrategyRegistry = RegistryBuilder.<SchemeIOSessionStrategy> create().register("http", NoopIOSessionStrategy.INSTANCE)
+                .register("https", new InstrumentedSSLIOSessionStrategy(sslcontext, metrics)).build();
+
+        // Create a connection manager with custom configuration.
+        PoolingNHttpClientConnectionManager cm = new PoolingNHttpClientConnectionManager(ioReactor, null, sessionStrategyRegistry,
+                dnsResolver != null ? dnsResolver : config.getDnsResolver()) {
+            @Override
+            public Future<NHttpClientConnection> requestConnection(final HttpRoute route, Object state, long connectTimeout, long leaseTimeout, TimeUnit tunit,
+                    final FutureCallback<NHttpClientConnection> callback) {
+                // 记录从申请到拿到连接的等待时间
+                final long start = System.nanoTime();
+                return super.requestConnection(route, state, connectTimeout, leaseTimeout, tunit, new FutureCallback<NHttpClientConnection>() {
+                    @Override
+                    public void completed(NHttpClientConnection result) {
+                        metrics.recordLeaseWait(route, System.nanoTime() - start);
+                        if (callback != null) {
+                            callback.completed(result);
+                        }
+                    }
+
+                    @Override
+                    public void failed(Exception ex) {
+                        metrics.recordLeaseWait(route, System.nanoTime() - start);
+                        if (callback != null) {
+                            callback.failed(ex);
+                        }
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        if (callback != null) {
+                            callback.cancelled();
+                        }
+                    }
+                });
+            }
+        };
+
+        // Configure total max or per route limits for persistent connections
+        // that can be kept in the pool or leased by the connection manager.
+        PoolSettings.applyPoolSize(cm, null, config);
+
+        // Configure the connection manager to use connection configuration either
+        // by default or for a specific host.
+        cm.setDefaultConnectionConfig(PoolSettings.connectionConfig(config));
+        return cm;
+    }
+
+    public String getName() {
+        return config.getName();
+    }
+
+    public ClientConfig getConfig() {
+        return config;
+    }
+
+    public CloseableHttpAsyncClient getHttpClient() {
+        return httpClient;
+    }
+
+    public RequestConfig getRequestConfig() {
+        return requestConfig;
+    }
+
+    /**
+     * @return 目标host有超时覆盖时返回覆盖后的RequestConfig，否则返回client的RequestConfig
+     */
+    public RequestConfig getRequestConfig(HttpHost target) {
+        RequestConfig routeConfig = target == null ? null : routeRequestConfigs.get(target);
+        return routeConfig != null ? routeConfig : requestConfig;
+    }
+
+    /**
+     * 在运行中应用新的配置：连接池大小和route上限立即生效，超时从下一个请求开始生效，
+     * 报文限制对之后新建的连接生效，空闲清理按新的周期重新调度。其余配置项只记录，client重新创建后生效。
+     */
+    synchronized void reconfigure(ClientConfig newConfig) {
+        ClientConfig previous = this.config;
+        PoolSettings.applyPoolSize(cm, previous, newConfig);
+        cm.setDefaultConnectionConfig(PoolSettings.connectionConfig(newConfig));
+        RequestConfig newRequestConfig = newConfig.toRequestConfig();
+        this.routeRequestConfigs = PoolSettings.routeRequestConfigs(newConfig, newRequestConfig);
+        this.requestConfig = newRequestConfig;
+        this.config = newConfig;
+        if (previous.getIdleTimeout() != newConfig.getIdleTimeout() || previous.getMonitorPeriod() != newConfig.getMonitorPeriod()) {
+            ScheduledFuture<?> old = monitorFuture;
+            this.monitorFuture = scheduleMonitor(newConfig);
+            old.cancel(false);
+        }
+        List<String> coldChanges = previous.coldChanges(newConfig);
+        if (!coldChanges.isEmpty()) {
+            logger.warn("{} changes of {} take effect after the client is recreated", this, coldChanges);
+        }
+        logger.info("{} reconfigured {}", this, newConfig);
+    }
+
+    private ScheduledFuture<?> scheduleMonitor(ClientConfig config) {
+        IdleConnectionMonitorThread monitor = new IdleConnectionMonitorThread(cm, config.getIdleTimeout(), warmer);
+        return scheduler.scheduleAtFixedRate(monitor, 0, config.getMonitorPeriod(), TimeUnit.MILLISECONDS);
+    }
+
+    public PoolingNHttpClientConnectionManager getConnectionManager() {
+        return cm;
+    }
+
+    public ClientMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return 按host的熔断器，配置未开启时为null
+     */
+    public CircuitBreakers getCircuitBreakers() {
+        return circuitBreakers;
+    }
+
+    /**
+     * @return 重试和对冲策略，配置未开启时为null
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * @return 相同并发请求的合并器，配置未开启时为null
+     */
+    public RequestCoalescer getCoalescer() {
+        return coalescer;
+    }
+
+    /**
+     * @return 在途请求的准入控制，没有配置上限时为null
+     */
+    public AdmissionController getAdmissionController() {
+        return admission;
+    }
+
+    /**
+     * @return DNS缓存，配置未开启时为null
+     */
+    public CachingDnsResolver getDnsResolver() {
+        return dnsResolver;
+    }
+
+    /**
+     * @return 连接预热和保温，配置中没有预热route时为null
+     */
+    public ConnectionWarmer<NHttpClientConnection> getWarmer() {
+        return warmer;
+    }
+
+    /**
+     * @return 自动调整route连接数上限的控制器，配置未开启时为null
+     */
+    public AdaptiveRouteSizer getRouteSizer() {
+        return routeSizer;
+    }
+
+    /**
+     * @return 请求指标以及连接池各route的leased/available/pending
+     */
+    public ClientMetrics.Snapshot snapshotMetrics() {
+        return metrics.snapshot(cm, cm.getRoutes());
+    }
+
+    @Override
+    public void close() throws IOException {
+        monitorFuture.cancel(false);
+        if (sizerFuture != null) {
+            sizerFuture.cancel(false);
+        }
+        if (warmer != null) {
+            warmer.close();
+        }
+        // 关闭client的同时会停止io reactor并关闭连接池
+        httpClient.close();
+        if (dnsResolver != null) {
+            dnsResolver.close();
+        }
+        logger.info("{} shutdown success", this);
+    }
+
+    @Override
+    public String toString() {
+        return "PooledAsyncClient[" + config.getName() + "]";
+    }
+
+    private static class IdleConnectionMonitorThread implements Runnable {
+
+        private final Logger logger = LoggerFactory.getLogger(getClass());
+        private final PoolingNHttpClientConnectionManager cm;
+        private final long idleTimeout;
+        private final ConnectionWarmer<?> warmer;
+
+        public IdleConnectionMonitorThread(PoolingNHttpClientConnectionManager cm, long idleTimeout, ConnectionWarmer<?> warmer) {
+            this.cm = cm;
+            this.idleTimeout = idleTimeout;
+            this.warmer = warmer;
+        }
+
+        @Override
+        public void run() {
+            // Close expired connections
+            cm.closeExpiredConnections();
+            // Optionally, close connections
+            // that have been idle longer than idleTimeout
+            cm.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+            if (warmer != null) {
+                warmer.keepWarm();
+            }
+            logger.trace("Status: {}", cm.getTotalStats());
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package httpclientLearn.registry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.RequestAcceptEncoding;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionOperator;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.DefaultHttpClientConnectionOperator;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import config.ClientConfig;
+import httpclientLearn.coalesce.RequestCoalescer;
+import httpclientLearn.cache.ResponseCache;
+import httpclientLearn.breaker.CircuitBreakers;
+import httpclientLearn.compress.ResponseDecompression;
+import httpclientLearn.dns.CachingDnsResolver;
+import httpclientLearn.dns.RacingConnectionOperator;
+import httpclientLearn.h2.Http2Transport;
+import httpclientLearn.metrics.ClientMetrics;
+import httpclientLearn.retry.RetryPolicy;
+import httpclientLearn.ssl.InstrumentedSSLSocketFactory;
+import httpclientLearn.ssl.TlsContexts;
+
+/**
+ * 一个命名的同步客户端：连接池、预先构建好的CloseableHttpClient以及空闲连接清理任务
+ *
+ * CloseableHttpClient是线程安全的，所有调用方共享同一个实例
+ */
+public class PooledHttpClient implements Closeable {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final ScheduledExecutorService scheduler;
+    // 以下四项可以在运行中通过reconfigure替换
+    private volatile ClientConfig config;
+    private volatile RequestConfig requestConfig;
+    private volatile Map<HttpHost, RequestConfig> routeRequestConfigs;
+    private volatile ScheduledFuture<?> monitorFuture;
+    private final PoolingHttpClientConnectionManager cm;
+    private final CloseableHttpClient httpClient;
+    private final ClientMetrics metrics;
+    private final AdaptiveRouteSizer routeSizer;
+    private final ScheduledFuture<?> sizerFuture;
+    private final RequestCoalescer coalescer;
+    private final RetryPolicy retryPolicy;
+    private final CircuitBreakers circuitBreakers;
+    private final ConnectionWarmer<HttpClientConnection> warmer;
+    private final CachingDnsResolver dnsResolver;
+    private final ResponseCache responseCache;
+
+    PooledHttpClient(ClientConfig config, ScheduledExecutorService scheduler) {
+        this.config = config;
+        this.scheduler = scheduler;
+        this.metrics = new ClientMetrics(config.getName());
+        this.requestConfig = config.toRequestConfig();
+        this.routeRequestConfigs = PoolSettings.routeRequestConfigs(config, requestConfig);
+        this.coalescer = config.isCoalescing() ? new RequestCoalescer() : null;
+        this.retryPolicy = RetryPolicy.create(config);
+        this.circuitBreakers = CircuitBreakers.create(config);
+        this.responseCache = config.getResponseCacheSize() > 0 ? new ResponseCache(config.getResponseCacheSize()) : null;
+        this.dnsResolver = CachingDnsResolver.create(config);
+        this.cm = init(config);
+        // 用自己的拦截器替换自带的解压，以便统计压缩前后的字节数
+        HttpClientBuilder builder = HttpClients.custom().setConnectionManager(cm).setDefaultRequestConfig(requestConfig).disableContentCompression();
+        if (config.isContentCompression()) {
+            builder.addInterceptorLast(new RequestAcceptEncoding()).addInterceptorLast(new ResponseDecompression(metrics));
+        }
+        // 开启HTTP/2时请求由Http2Transport多路复用发送，连接池闲置；JDK不支持时退回连接池
+        Http2Transport http2 = Http2Transport.create(config, TlsContexts.resolve(config), metrics);
+        this.httpClient = http2 != null ? http2 : builder.build();
+
+        // 定时把过期链接清除，之后为预热的route补足空闲连接
+        this.warmer = config.getWarmRoutes().isEmpty() || http2 != null ? null : new HttpConnectionWarmer(config, cm);
+        this.monitorFuture = scheduleMonitor(config);
+
+        // 按排队情况调整各route的连接数上限
+        if (config.isAdaptiveRouteSizing()) {
+            this.routeSizer = new AdaptiveRouteSizer(config, cm, metrics) {
+                @Override
+                protected Set<HttpRoute> routes() {
+                    return cm.getRoutes();
+                }
+            };
+            this.sizerFuture = scheduler.scheduleWithFixedDelay(routeSizer, config.getAdaptivePeriod(), config.getAdaptivePeriod(), TimeUnit.MILLISECONDS);
+        } else {
+            this.routeSizer = null;
+            this.sizerFuture = null;
+        }
+        logger.info("{} init success", this);
+    }
+
+    /**
+     * 初始化连接配置
+     *
+     * @return
+     */
+    private PoolingHttpClientConnectionManager init(ClientConfig config) {
+        // 与同名的异步client共用SSLContext，从而共用TLS会话缓存
+        SSLConnectionSocketFactory sslsf = new InstrumentedSSLSocketFactory(TlsContexts.resolve(config), metrics);
+        Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory> create().register("https", sslsf)
+                .register("http", PlainConnectionSocketFactory.getSocketFactory()).build();
+
+        // Create a connection manager with custom configuration.
+        // 开启DNS缓存时按缓存返回的地址顺序建连，并记录各地址的连接结果
+        HttpClientConnectionOperator operator = dnsResolver != null ? new RacingConnectionOperator(socketFactoryRegistry, dnsResolver, config.getConnectRaceDelay())
+                : new DefaultHttpClientConnectionOperator(socketFactoryRegistry, null, config.getDnsResolver());
+        final PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager(operator, null, -1, TimeUnit.MILLISECONDS) {
+            @Override
+            public ConnectionRequest requestConnection(final HttpRoute route, Object state) {
+                // 记录从申请到拿到连接的等待时间
+                final ConnectionRequest request = super.requestConnection(route, state);
+                final long start = System.nanoTime();
+                return new ConnectionRequest() {
+                    @Override
+                    public boolean cancel() {
+                        return request.cancel();
+                    }
+
+                    @Override
+                    public HttpClientConnection get(long timeout, TimeUnit tunit) throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                        try {
+                            return request.get(timeout, tunit);
+                        } finally {
+                            metrics.recordLeaseWait(route, System.nanoTime() - start);
+                        }
+                    }
+                };
+            }
+        };
+
+        // Configure total max or per route limits for persistent connections
+        // that can be kept in the pool or leased by the connection manager.
+        PoolSettings.applyPoolSize(cm, null, config);
+
+        // Create socket configuration
+        final SocketConfig socketConfig = SocketConfig.custom().setTcpNoDelay(true).build();
+
+        // Configure the connection manager to use socket configuration either
+        // by default or for a specific host.
+        cm.setDefaultSocketConfig(socketConfig);
+
+        // Configure the connection manager to use connection configuration either
+        // by default or for a specific host.
+        cm.setDefaultConnectionConfig(PoolSettings.connectionConfig(config));
+        return cm;
+    }
+
+    public String getName() {
+        return config.getName();
+    }
+
+    public ClientConfig getConfig() {
+        return config;
+    }
+
+    public CloseableHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public RequestConfig getRequestConfig() {
+        return requestConfig;
+    }
+
+    /**
+     * @return 目标host有超时覆盖时返回覆盖后的RequestConfig，否则返回client的RequestConfig
+     */
+    public RequestConfig getRequestConfig(HttpHost target) {
+        RequestConfig routeConfig = target == null ? null : routeRequestConfigs.get(target);
+        return routeConfig != null ? routeConfig : requestConfig;
+    }
+
+    /**
+     * 在运行中应用新的配置：连接池大小和route上限立即生效，超时从下一个请求开始生效，
+     * 报文限制对之后新建的连接生效，空闲清理按新的周期重新调度。其余配置项只记录，client重新创建后生效。
+     */
+    synchronized void reconfigure(ClientConfig newConfig) {
+        ClientConfig previous = this.config;
+        PoolSettings.applyPoolSize(cm, previous, newConfig);
+        cm.setDefaultConnectionConfig(PoolSettings.connectionConfig(newConfig));
+        RequestConfig newRequestConfig = newConfig.toRequestConfig();
+        this.routeRequestConfigs = PoolSettings.routeRequestConfigs(newConfig, newRequestConfig);
+        this.requestConfig = newRequestConfig;
+        this.config = newConfig;
+        if (previous.getIdleTimeout() != newConfig.getIdleTimeout() || previous.getMonitorPeriod() != newConfig.getMonitorPeriod()) {
+            ScheduledFuture<?> old = monitorFuture;
+            this.monitorFuture = scheduleMonitor(newConfig);
+            old.cancel(false);
+        }
+        List<String> coldChanges = previous.coldChanges(newConfig);
+        if (!coldChanges.isEmpty()) {
+            logger.warn("{} changes of {} take effect after the client is recreated", this, coldChanges);
+        }
+        logger.info("{} reconfigured {}", this, newConfig);
+    }
+
+    private ScheduledFuture<?> scheduleMonitor(ClientConfig config) {
+        IdleConnectionMonitorThread monitor = new IdleConnectionMonitorThread(cm, config.getIdleTimeout(), warmer);
+        return scheduler.scheduleAtFixedRate(monitor, 0, config.getMonitorPeriod(), TimeUnit.MILLISECONDS);
+    }
+
+    public PoolingHttpClientConnectionManager getConnectionManager() {
+        return cm;
+    }
+
+    public ClientMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return GET响应缓存，配置未开启时为null
+     */
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * @return 按host的熔断器，配置未开启时为null
+     */
+    public CircuitBreakers getCircuitBreakers() {
+        return circuitBreakers;
+    }
+
+    /**
+     * @return 重试和对冲策略，配置未开启时为null
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * @return 相同并发请求的合并器，配置未开启时为null
+     */
+    public RequestCoalescer getCoalescer() {
+        return coalescer;
+    }
+
+    /**
+     * @return DNS缓存，配置未开启时为null
+     */
+    public CachingDnsResolver getDnsResolver() {
+        return dnsResolver;
+    }
+
+    /**
+     * @return 连接预热和保温，配置中没有预热route时为null
+     */
+    public ConnectionWarmer<HttpClientConnection> getWarmer() {
+        return warmer;
+    }
+
+    /**
+     * @return 自动调整route连接数上限的控制器，配置未开启时为null
+     */
+    public AdaptiveRouteSizer getRouteSizer() {
+        return routeSizer;
+    }
+
+    /**
+     * @return 请求指标以及连接池各route的leased/available/pending
+     */
+    public ClientMetrics.Snapshot snapshotMetrics() {
+        return metrics.snapshot(cm, cm.getRoutes());
+    }
+
+    @Override
+    public void close() throws IOException {
+        monitorFuture.cancel(false);
+        if (sizerFuture != null) {
+            sizerFuture.cancel(false);
+        }
+        if (warmer != null) {
+            warmer.close();
+        }
+        // 关闭client的同时会关闭其连接池，HTTP/2时连接池需要单独关闭，重复关闭没有影响
+        httpClient.close();
+        cm.shutdown();
+        if (dnsResolver != null) {
+            dnsResolver.close();
+        }
+        logger.info("{} shutdown success", this);
+    }
+
+    @Override
+    public String toString() {
+        return "PooledHttpClient[" + config.getName() + "]";
+    }
+
+    private static class IdleConnectionMonitorThread implements Runnable {
+
+        private final Logger logger = LoggerFactory.getLogger(getClass());
+        private final PoolingHttpClientConnectionManager cm;
+        private final long idleTimeout;
+        private final ConnectionWarmer<?> warmer;
+
+        public IdleConnectionMonitorThread(PoolingHttpClientConnectionManager cm, long idleTimeout, ConnectionWarmer<?> warmer) {
+            this.cm = cm;
+            this.idleTimeout = idleTimeout;
+            this.warmer = warmer;
+        }
+
+        @Override
+        public void run() {
+            // Close expired connections
+            cm.closeExpiredConnections();
+            // Optionally, close connections
+            // that have been idle longer than idleTimeout
+            cm.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+            if (warmer != null) {
+                warmer.keepWarm();
+            }
+            logger.trace("Status: {}", cm.getTotalStats());
+        }
+    }
+}
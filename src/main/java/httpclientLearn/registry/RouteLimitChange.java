@@ -0,0 +1,73 @@
+package httpclientLearn.registry;
+
+import org.apache.http.conn.routing.HttpRoute;
+
+/**
+ * 一次route连接数上限的调整，以及做出调整时的连接池状态
+ */
+public class RouteLimitChange {
+
+    private final String clientName;
+    private final HttpRoute route;
+    private final int previousMax;
+    private final int newMax;
+    private final int leased;
+    private final int pending;
+    private final long leaseWaitMicros;
+    private final long timestamp;
+
+    RouteLimitChange(String clientName, HttpRoute route, int previousMax, int newMax, int leased, int pending, long leaseWaitMicros) {
+        this.clientName = clientName;
+        this.route = route;
+        this.previousMax = previousMax;
+        this.newMax = newMax;
+        this.leased = leased;
+        this.pending = pending;
+        this.leaseWaitMicros = leaseWaitMicros;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    public String getClientName() {
+        return clientName;
+    }
+
+    public HttpRoute getRoute() {
+        return route;
+    }
+
+    public int getPreviousMax() {
+        return previousMax;
+    }
+
+    public int getNewMax() {
+        return newMax;
+    }
+
+    public boolean isIncrease() {
+        return newMax > previousMax;
+    }
+
+    public int getLeased() {
+        return leased;
+    }
+
+    public int getPending() {
+        return pending;
+    }
+
+    /**
+     * @return 上一个周期内平均获取连接等待时间(微秒)
+     */
+    public long getLeaseWaitMicros() {
+        return leaseWaitMicros;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return clientName + " " + route + " maxPerRoute " + previousMax + " -> " + newMax + " [leased=" + leased + ",pending=" + pending + ",leaseWait=" + leaseWaitMicros + "us]";
+    }
+}
@@ -0,0 +1,11 @@
+package httpclientLearn.registry;
+
+/**
+ * 监听 {@link AdaptiveRouteSizer} 对route连接数上限的调整
+ *
+ * 回调在调整线程中同步执行，实现不应阻塞
+ */
+public interface RouteLimitListener {
+
+    void limitChanged(RouteLimitChange change);
+}
@@ -0,0 +1,52 @@
+package httpclientLearn.retry;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import httpclientLearn.dto.HttpResult;
+
+/**
+ * 原始请求与对冲请求之间的竞争：第一个成功的结果胜出，全部失败时以最后一个失败原因结束
+ */
+public class HedgeRace {
+
+    private final SettableFuture<HttpResult> result = SettableFuture.create();
+    private int outstanding = 1;
+    private boolean decided;
+
+    /**
+     * @return false表示已经有结果，不需要再发对冲请求
+     */
+    public synchronized boolean startHedge() {
+        if (decided) {
+            return false;
+        }
+        outstanding++;
+        return true;
+    }
+
+    /**
+     * @return 结果是否胜出；未胜出的结果由调用方release
+     */
+    public synchronized boolean succeed(HttpResult r) {
+        outstanding--;
+        if (decided) {
+            return false;
+        }
+        decided = true;
+        // 调用方已经取消时同样返回false
+        return result.set(r);
+    }
+
+    public synchronized void fail(Throwable t) {
+        outstanding--;
+        if (!decided && outstanding == 0) {
+            decided = true;
+            result.setException(t);
+        }
+    }
+
+    public ListenableFuture<HttpResult> getResult() {
+        return result;
+    }
+}
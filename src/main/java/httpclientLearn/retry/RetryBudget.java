@@ -0,0 +1,48 @@
+package httpclientLearn.retry;
+
+/**
+ * 重试预算(令牌桶)
+ *
+ * 每个请求存入ratio个令牌，每次重试或对冲取出1个，桶容量为capacity。后端整体故障时重试次数被限制在请求数的ratio倍以内，不会放大故障。
+ */
+public class RetryBudget {
+
+    // 以千分之一令牌为单位，避免浮点运算
+    private static final long SCALE = 1000;
+
+    private final long depositPerRequest;
+    private final long capacity;
+    private long balance;
+
+    public RetryBudget(double ratio, int capacity) {
+        if (ratio < 0 || capacity < 0) {
+            throw new IllegalArgumentException("ratio and capacity must not be negative");
+        }
+        this.depositPerRequest = (long) (ratio * SCALE);
+        this.capacity = capacity * SCALE;
+        // 启动时是满的，冷启动阶段也允许少量重试
+        this.balance = this.capacity;
+    }
+
+    public synchronized void deposit() {
+        balance = Math.min(capacity, balance + depositPerRequest);
+    }
+
+    /**
+     * @return 是否取到令牌，没有时不应重试
+     */
+    public synchronized boolean tryWithdraw() {
+        if (balance < SCALE) {
+            return false;
+        }
+        balance -= SCALE;
+        return true;
+    }
+
+    /**
+     * @return 当前可用的令牌数
+     */
+    public synchronized double getBalance() {
+        return (double) balance / SCALE;
+    }
+}
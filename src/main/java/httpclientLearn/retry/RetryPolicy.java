@@ -0,0 +1,215 @@
+package httpclientLearn.retry;
+
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.Configurable;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.nio.entity.HttpAsyncContentProducer;
+
+import config.ClientConfig;
+import config.RouteConfig;
+import httpclientLearn.metrics.ClientMetrics;
+import httpclientLearn.metrics.LatencyHistogram;
+import httpclientLearn.metrics.RouteMetrics;
+
+/**
+ * 一个命名client的重试和对冲策略，以及共享的重试预算
+ *
+ * 只对幂等方法生效；请求失败或者返回502/503/504时按退避时间重试。开启对冲时，请求耗时超过该host历史耗时的指定百分位后再发一份，
+ * 先返回的结果胜出，另一个被取消。重试和对冲都从同一个 {@link RetryBudget} 中取令牌。
+ */
+public class RetryPolicy {
+
+    /** 样本数不足时不对冲，避免用冷启动的耗时估算 */
+    static final int MIN_HEDGE_SAMPLES = 20;
+    /** 对冲延迟按host缓存的时间 */
+    private static final long HEDGE_DELAY_TTL = 1000;
+
+    private final int maxRetries;
+    private final long backoff;
+    private final double hedgePercentile;
+    private final long hedgeMinDelayMicros;
+    private final RetryBudget budget;
+    private final ConcurrentMap<HttpHost, long[]> hedgeDelays = new ConcurrentHashMap<HttpHost, long[]>();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong budgetExhausted = new AtomicLong();
+
+    public RetryPolicy(ClientConfig config) {
+        this.maxRetries = config.getMaxRetries();
+        this.backoff = config.getRetryBackoff();
+        this.hedgePercentile = config.getHedgePercentile();
+        this.hedgeMinDelayMicros = config.getHedgeMinDelay() * 1000;
+        this.budget = new RetryBudget(config.getRetryBudgetRatio(), config.getRetryBudgetCapacity());
+    }
+
+    /**
+     * @return 配置中开启了重试或对冲时返回策略，否则返回null
+     */
+    public static RetryPolicy create(ClientConfig config) {
+        return config.getMaxRetries() > 0 || config.getHedgePercentile() > 0 ? new RetryPolicy(config) : null;
+    }
+
+    /**
+     * 幂等方法并且请求体可以重复发送
+     */
+    public boolean isRetryable(HttpUriRequest request) {
+        String method = request.getMethod();
+        if (!("GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method) || "PUT".equals(method) || "DELETE".equals(method) || "TRACE".equals(method))) {
+            return false;
+        }
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            return entity == null || entity.isRepeatable();
+        }
+        return true;
+    }
+
+    /**
+     * 每个请求开始时调用一次，向预算中存入令牌
+     */
+    public void onRequest() {
+        budget.deposit();
+    }
+
+    /**
+     * @param statusCode 响应码，请求失败时为 {@link RouteMetrics#FAILURE}
+     * @param attempt 已经重试的次数
+     * @return 是否重试；返回true时已经从预算中取走令牌
+     */
+    public boolean shouldRetry(int statusCode, int attempt) {
+        if (attempt >= maxRetries) {
+            return false;
+        }
+        if (statusCode != RouteMetrics.FAILURE && statusCode != HttpStatus.SC_BAD_GATEWAY && statusCode != HttpStatus.SC_SERVICE_UNAVAILABLE
+                && statusCode != HttpStatus.SC_GATEWAY_TIMEOUT) {
+            return false;
+        }
+        if (!budget.tryWithdraw()) {
+            budgetExhausted.incrementAndGet();
+            return false;
+        }
+        retries.incrementAndGet();
+        return true;
+    }
+
+    public long getBackoff() {
+        return backoff;
+    }
+
+    public boolean isHedging() {
+        return hedgePercentile > 0;
+    }
+
+    /**
+     * 实现了HttpAsyncContentProducer的请求体(文件、ByteBuffer等)在发送过程中保存读取位置，不能同时在两个连接上发送，只按顺序重试
+     */
+    public boolean isHedging(HttpUriRequest request) {
+        if (!isHedging()) {
+            return false;
+        }
+        if (request instanceof HttpEntityEnclosingRequest) {
+            return !(((HttpEntityEnclosingRequest) request).getEntity() instanceof HttpAsyncContentProducer);
+        }
+        return true;
+    }
+
+    /**
+     * @return 发出对冲请求前等待的微秒数，该host样本不足时返回-1表示不对冲
+     */
+    public long hedgeDelay(ClientMetrics metrics, URI uri) {
+        // 指标中的route带默认端口
+        HttpHost host = RouteConfig.normalize(uri);
+        if (host == null) {
+            return -1;
+        }
+        long now = System.currentTimeMillis();
+        long[] cached = hedgeDelays.get(host);
+        if (cached != null && now - cached[1] < HEDGE_DELAY_TTL) {
+            return cached[0];
+        }
+        LatencyHistogram.HistogramSnapshot latency = metrics.latency(host);
+        long delay = latency == null || latency.getCount() < MIN_HEDGE_SAMPLES ? -1 : Math.max(hedgeMinDelayMicros, latency.getValueAtPercentile(hedgePercentile));
+        hedgeDelays.put(host, new long[] { delay, now });
+        return delay;
+    }
+
+    /**
+     * @return 是否可以发出对冲请求；返回true时已经从预算中取走令牌
+     */
+    public boolean tryHedge() {
+        if (!budget.tryWithdraw()) {
+            budgetExhausted.incrementAndGet();
+            return false;
+        }
+        hedges.incrementAndGet();
+        return true;
+    }
+
+    public void onHedgeWin() {
+        hedgeWins.incrementAndGet();
+    }
+
+    /**
+     * 重新构建一个相同的请求用于重试或对冲
+     *
+     * 不能使用clone()：克隆出的请求与原请求共享abort状态，取消其中一个会同时取消另一个
+     */
+    public static HttpUriRequest copyOf(HttpUriRequest request) {
+        RequestBuilder builder = RequestBuilder.create(request.getMethod()).setUri(request.getURI());
+        for (Header header : request.getAllHeaders()) {
+            builder.addHeader(header);
+        }
+        if (request instanceof HttpEntityEnclosingRequest) {
+            builder.setEntity(((HttpEntityEnclosingRequest) request).getEntity());
+        }
+        if (request instanceof Configurable) {
+            RequestConfig config = ((Configurable) request).getConfig();
+            builder.setConfig(config);
+        }
+        return builder.build();
+    }
+
+    public RetryBudget getBudget() {
+        return budget;
+    }
+
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    public long getHedgeCount() {
+        return hedges.get();
+    }
+
+    /**
+     * @return 对冲请求先于原始请求返回的次数
+     */
+    public long getHedgeWinCount() {
+        return hedgeWins.get();
+    }
+
+    /**
+     * @return 因为预算不足而放弃重试或对冲的次数
+     */
+    public long getBudgetExhaustedCount() {
+        return budgetExhausted.get();
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy[retries=" + getRetryCount() + ",hedges=" + getHedgeCount() + ",hedgeWins=" + getHedgeWinCount() + ",budgetExhausted=" + getBudgetExhaustedCount() + ",budget="
+                + budget.getBalance() + "]";
+    }
+}
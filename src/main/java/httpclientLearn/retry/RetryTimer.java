@@ -0,0 +1,33 @@
+package httpclientLearn.retry;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * 重试退避和对冲请求的定时器
+ *
+ * 计时只占用一个线程，到期后的任务交给线程池执行，同步的对冲请求阻塞的是线程池中的线程
+ */
+public final class RetryTimer {
+
+    private static final ScheduledExecutorService timer = Executors.newScheduledThreadPool(1,
+            new ThreadFactoryBuilder().setNameFormat("retry-timer-%d").setDaemon(true).build());
+    private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("retry-worker-%d").setDaemon(true).build());
+
+    private RetryTimer() {
+    }
+
+    public static ScheduledFuture<?> schedule(final Runnable task, long delay, TimeUnit unit) {
+        return timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                executor.execute(task);
+            }
+        }, delay, unit);
+    }
+}
@@ -0,0 +1,733 @@
+package httpclientLearn.simple;
+
+import httpclientLearn.breaker.CircuitBreaker;
+import httpclientLearn.breaker.CircuitBreakers;
+import httpclientLearn.breaker.CircuitOpenException;
+import httpclientLearn.buffer.BufferPool;
+import httpclientLearn.compress.ContentCodec;
+import httpclientLearn.cache.CacheEntry;
+import httpclientLearn.cache.ResponseCache;
+import httpclientLearn.codec.JsonCodec;
+import httpclientLearn.codec.JsonDecodeException;
+import httpclientLearn.codec.JsonResponseHandler;
+import httpclientLearn.coalesce.RequestCoalescer;
+import httpclientLearn.deadline.Deadline;
+import httpclientLearn.deadline.DeadlineExceededException;
+import httpclientLearn.buffer.PooledBuffer;
+import httpclientLearn.dto.BulkResult;
+import httpclientLearn.dto.HttpRequestSpec;
+import httpclientLearn.dto.HttpResult;
+import httpclientLearn.dto.HttpStreamResult;
+import httpclientLearn.metrics.RouteMetrics;
+import httpclientLearn.registry.ClientRegistry;
+import httpclientLearn.registry.PooledHttpClient;
+import httpclientLearn.retry.HedgeRace;
+import httpclientLearn.retry.RetryPolicy;
+import httpclientLearn.retry.RetryTimer;
+import httpclientLearn.upload.RequestBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import config.ClientConfig;
+import config.RouteConfig;
+
+/**
+ * 同步helper的公共实现，HttpClientHelper和HttpsClientHelper只是绑定了不同的默认client
+ */
+public abstract class BaseHttpClientHelper {
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+    private final String clientName;
+
+    protected BaseHttpClientHelper(String clientName) {
+        this.clientName = clientName;
+    }
+
+    public String getClientName() {
+        return clientName;
+    }
+
+    public HttpResult get(String uri) {
+        return get(uri, (Map<String, String>) null);
+    }
+
+    public HttpResult get(String uri, Map<String, String> headers) {
+        return get(uri, headers, null);
+    }
+
+    public HttpResult get(String uri, Map<String, String> headers, Map<String, Object> parameters) {
+        return get(uri, headers, parameters, (Deadline) null);
+    }
+
+    /**
+     * @param deadline 截止时间，为null时只受client配置的超时限制
+     * @return 出现I/O异常或者无法在截止时间之前完成时返回null，见 {@link Deadline}
+     */
+    public HttpResult get(String uri, Map<String, String> headers, Map<String, Object> parameters, Deadline deadline) {
+        final PooledHttpClient client = ClientRegistry.getClient(clientName);
+        return parseSharedRequest(client, buildRequest(client, RequestBuilder.get(), uri, headers, parameters, null), deadline);
+    }
+
+    public HttpResult post(String uri) {
+        return post(uri, null, null, (byte[]) null);
+    }
+
+    public HttpResult post(String uri, Map<String, Object> parameters) {
+        return post(uri, null, parameters, (byte[]) null);
+    }
+
+    public HttpResult post(String uri, byte[] body) {
+        return post(uri, null, null, body);
+    }
+
+    public HttpResult post(String uri, Map<String, Object> parameters, byte[] body) {
+        return post(uri, null, parameters, body);
+    }
+
+    public HttpResult post(String uri, Map<String, String> headers, Map<String, Object> parameters, byte[] body) {
+        return post(uri, headers, parameters, body, (Deadline) null);
+    }
+
+    /**
+     * @see #get(String, Map, Map, Deadline)
+     */
+    public HttpResult post(String uri, Map<String, String> headers, Map<String, Object> parameters, byte[] body, Deadline deadline) {
+        final PooledHttpClient client = ClientRegistry.getClient(clientName);
+        return parseRequest(client, buildRequest(client, RequestBuilder.post(), uri, headers, parameters, requestEntity(client, body)), deadline);
+    }
+
+    /**
+     * 流式上传，请求体在发送时才读取，不会整体加载到内存，见 {@link RequestBody}
+     *
+     * @return 出现I/O异常时返回null
+     */
+    public HttpResult post(String uri, RequestBody body) {
+        return post(uri, null, null, body);
+    }
+
+    public HttpResult post(String uri, Map<String, String> headers, Map<String, Object> parameters, RequestBody body) {
+        return upload(RequestBuilder.post(), uri, headers, parameters, body);
+    }
+
+    /**
+     * @see #post(String, RequestBody)
+     */
+    public HttpResult put(String uri, RequestBody body) {
+        return put(uri, null, null, body);
+    }
+
+    public HttpResult put(String uri, Map<String, String> headers, Map<String, Object> parameters, RequestBody body) {
+        return upload(RequestBuilder.put(), uri, headers, parameters, body);
+    }
+
+    private HttpResult upload(RequestBuilder requestBuilder, String uri, Map<String, String> headers, Map<String, Object> parameters, RequestBody body) {
+        if (body == null) {
+            throw new IllegalArgumentException("body is required");
+        }
+        final PooledHttpClient client = ClientRegistry.getClient(clientName);
+        return parseRequest(client, buildRequest(client, requestBuilder, uri, headers, parameters, body.toEntity()), (Deadline) null);
+    }
+
+    /**
+     * Check status of the given resource.
+     *
+     * @param uri the uri of the resource
+     * @return the status of the resource
+     */
+    public HttpResult head(String uri) {
+        return head(uri, null);
+    }
+
+    /**
+     * @see #get(String, Map, Map, Deadline)
+     */
+    public HttpResult head(String uri, Deadline deadline) {
+        final PooledHttpClient client = ClientRegistry.getClient(clientName);
+        return parseSharedRequest(client, buildRequest(client, RequestBuilder.head(), uri, null, null, null), deadline);
+    }
+
+    public HttpResult execute(HttpRequestSpec request) {
+        return execute(request, null);
+    }
+
+    /**
+     * @see #get(String, Map, Map, Deadline)
+     */
+    public HttpResult execute(HttpRequestSpec request, Deadline deadline) {
+        final PooledHttpClient client = ClientRegistry.getClient(clientName);
+        return parseSharedRequest(client, buildRequest(client, RequestBuilder.create(request.getMethod()), request.getUri(), request.getHeaders(), request.getParameters(),
+                requestEntity(client, request.getBody())), deadline);
+    }
+
+    /**
+     * 批量发送请求，每个请求占用一个线程阻塞执行，同一时刻最多maxConcurrency个请求在途，调用线程等待全部完成
+     *
+     * client配置了 {@link ClientConfig#isVirtualThreads()} 并且运行在JDK 21及以上时使用虚拟线程，
+     * 上万个并发请求也只占用少量的平台线程；否则使用最多maxConcurrency个平台线程
+     *
+     * @param deadline 截止时间(System.currentTimeMillis())，到达时未完成的请求被abort并记为TimeoutException
+     * @return 按入参顺序排列的结果，调用线程被中断时未完成的请求记为CancellationException
+     */
+    public BulkResult executeAll(List<HttpRequestSpec> requests, int maxConcurrency, long deadline) {
+        if (requests == null) {
+            throw new IllegalArgumentException("requests is required");
+        }
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be positive");
+        }
+        final ClientConfig config = ClientRegistry.getClient(clientName).getConfig();
+        final ThreadFactory threadFactory = config.isVirtualThreads() ? VirtualThreads.factory("bulk-" + clientName + "-") : null;
+        return new BlockingBulkExecution(this, requests).run(maxConcurrency, deadline, threadFactory);
+    }
+
+    /**
+     * 以流的方式读取响应，响应体不会被缓存到内存中
+     *
+     * 调用方必须关闭返回的结果，读完或者关闭流之后连接立即归还连接池
+     *
+     * @return 出现I/O异常时返回null
+     */
+    public HttpStreamResult getStream(String uri) {
+        return getStream(uri, null, null);
+    }
+
+    public HttpStreamResult getStream(String uri, Map<String, String> headers, Map<String, Object> parameters) {
+        final PooledHttpClient client = ClientRegistry.getClient(clientName);
+        return parseStreamRequest(client, buildRequest(client, RequestBuilder.get(), uri, headers, parameters, null));
+    }
+
+    public HttpStreamResult postStream(String uri, Map<String, String> headers, Map<String, Object> parameters, byte[] body) {
+        final PooledHttpClient client = ClientRegistry.getClient(clientName);
+        return parseStreamRequest(client, buildRequest(client, RequestBuilder.post(), uri, headers, parameters, requestEntity(client, body)));
+    }
+
+    /**
+     * 由handler直接处理响应流，handler返回后连接自动归还连接池
+     *
+     * @return handler的处理结果，出现I/O异常时返回null
+     */
+    public <T> T get(String uri, Map<String, String> headers, Map<String, Object> parameters, ResponseHandler<? extends T> handler) {
+        final PooledHttpClient client = ClientRegistry.getClient(clientName);
+        return parseRequest(client, buildRequest(client, RequestBuilder.get(), uri, headers, parameters, null), handler);
+    }
+
+    public <T> T post(String uri, Map<String, String> headers, Map<String, Object> parameters, byte[] body, ResponseHandler<? extends T> handler) {
+        final PooledHttpClient client = ClientRegistry.getClient(clientName);
+        return parseRequest(client, buildRequest(client, RequestBuilder.post(), uri, headers, parameters, requestEntity(client, body)), handler);
+    }
+
+    /**
+     * 响应体从连接的输入流直接解码成对象，不经过中间的byte[]和String
+     *
+     * @param type 解码的目标类型，解码器见 {@link ClientConfig#getJsonCodec()}
+     * @return 解码结果；非2xx响应、没有响应体或者出现I/O异常时返回null
+     * @throws IllegalStateException client没有可用的解码器
+     */
+    public <T> T get(String uri, Class<T> type) {
+        return get(uri, null, null, type);
+    }
+
+    public <T> T get(String uri, Map<String, String> headers, Map<String, Object> parameters, Class<T> type) {
+        final PooledHttpClient client = ClientRegistry.getClient(clientName);
+        final JsonResponseHandler<T> handler = new JsonResponseHandler<T>(requireCodec(client.getConfig()), type);
+        return parseRequest(client, acceptJson(buildRequest(client, RequestBuilder.get(), uri, headers, parameters, null)), handler);
+    }
+
+    /**
+     * @see #get(String, Class)
+     */
+    public <T> T post(String uri, Map<String, String> headers, Map<String, Object> parameters, byte[] body, Class<T> type) {
+        final PooledHttpClient client = ClientRegistry.getClient(clientName);
+        final JsonResponseHandler<T> handler = new JsonResponseHandler<T>(requireCodec(client.getConfig()), type);
+        return parseRequest(client, acceptJson(buildRequest(client, RequestBuilder.post(), uri, headers, parameters, requestEntity(client, body))), handler);
+    }
+
+    private static JsonCodec requireCodec(ClientConfig config) {
+        if (config.getJsonCodec() == null) {
+            throw new IllegalStateException("no JsonCodec for client " + config.getName() + ", add jackson-databind or set one with ClientConfig.Builder.setJsonCodec");
+        }
+        return config.getJsonCodec();
+    }
+
+    private static HttpUriRequest acceptJson(HttpUriRequest request) {
+        if (!request.containsHeader(HttpHeaders.ACCEPT)) {
+            request.setHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.getMimeType());
+        }
+        return request;
+    }
+
+    /**
+     * byte[]请求体超过 {@link ClientConfig#getRequestCompressionThreshold()} 时压缩
+     */
+    private static HttpEntity requestEntity(PooledHttpClient client, byte[] body) {
+        return body == null ? null : ContentCodec.requestEntity(body, client.getConfig().getRequestCompressionThreshold(), client.getMetrics());
+    }
+
+    protected HttpUriRequest buildRequest(PooledHttpClient client, RequestBuilder requestBuilder, String uri, Map<String, String> headers, Map<String, Object> parameters, HttpEntity entity) {
+
+        if (uri == null || uri.isEmpty()) {
+            throw new IllegalArgumentException("uri is required");
+        }
+
+        requestBuilder.setUri(uri);
+
+        // Populate request parameters
+        if (parameters != null && !parameters.isEmpty()) {
+            for (final String key : parameters.keySet()) {
+                if (parameters.get(key) != null) {
+                    requestBuilder.addParameter(key, String.valueOf(parameters.get(key)));
+                }
+            }
+        }
+        // Populate request body
+        if (entity != null) {
+            requestBuilder.setEntity(entity);
+        }
+
+        // Request configuration can be overridden at the request level.
+        // They will take precedence over the one set at the client level.
+        // route配置了超时覆盖时使用覆盖后的配置
+        requestBuilder.setConfig(client.getRequestConfig(RouteConfig.normalize(requestBuilder.getUri())));
+
+        // Set custom header
+        if (headers != null && !headers.isEmpty()) {
+            for (final String key : headers.keySet()) {
+                requestBuilder.addHeader(key, headers.get(key));
+            }
+        }
+        return requestBuilder.build();
+    }
+
+    /**
+     * 每次请求使用独立的cookie，避免共享的client在调用方之间串cookie
+     */
+    protected HttpClientContext createContext() {
+        final HttpClientContext context = HttpClientContext.create();
+        context.setCookieStore(new BasicCookieStore());
+        return context;
+    }
+
+    /**
+     * 将httpclient(连接)与请求方式结合，client配置了 {@link RetryPolicy} 时幂等请求按策略重试和对冲
+     *
+     * @param client
+     * @param request
+     * @param deadline 截止时间，可以为null；退避之后已经到达截止时间的不再重试
+     * @return
+     */
+    protected HttpResult parseRequest(PooledHttpClient client, HttpUriRequest request, Deadline deadline) {
+        final RetryPolicy policy = client.getRetryPolicy();
+        if (policy == null || !policy.isRetryable(request)) {
+            return executeRequest(client, request, deadline);
+        }
+        policy.onRequest();
+        HttpUriRequest attempt = request;
+        for (int retry = 0;; retry++) {
+            final HttpResult result = policy.isHedging(attempt) ? executeHedged(client, policy, attempt, deadline) : executeRequest(client, attempt, deadline);
+            // 先检查截止时间，没有时间重试时不消耗重试预算
+            if (deadline != null && deadline.remaining() <= policy.getBackoff()) {
+                logger.debug("No time left to retry request {}", request.getURI());
+                return result;
+            }
+            if (!policy.shouldRetry(result == null ? RouteMetrics.FAILURE : result.getStatusCode(), retry)) {
+                return result;
+            }
+            logger.debug("Retrying request {}, attempt {}", request.getURI(), retry + 1);
+            try {
+                Thread.sleep(policy.getBackoff());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return result;
+            }
+            if (result != null) {
+                result.release();
+            }
+            // 已经执行过的请求不能再次执行
+            attempt = RetryPolicy.copyOf(attempt);
+        }
+    }
+
+    /**
+     * 请求耗时超过该host的对冲延迟后，在另一个线程上发出同样的请求，先返回的结果胜出，另一个被abort
+     */
+    private HttpResult executeHedged(final PooledHttpClient client, final RetryPolicy policy, final HttpUriRequest request, final Deadline deadline) {
+        final long delay = policy.hedgeDelay(client.getMetrics(), request.getURI());
+        if (delay < 0) {
+            return executeRequest(client, request, deadline);
+        }
+        final HedgeRace race = new HedgeRace();
+        final HttpUriRequest hedge = RetryPolicy.copyOf(request);
+        final ScheduledFuture<?> timer = RetryTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (!race.startHedge()) {
+                    return;
+                }
+                if (!policy.tryHedge()) {
+                    race.fail(new IOException("retry budget exhausted"));
+                    return;
+                }
+                logger.debug("Hedging request {} after {}us", request.getURI(), delay);
+                final HttpResult result = executeRequest(client, hedge, deadline);
+                if (result == null) {
+                    race.fail(new IOException("hedged request failed"));
+                } else if (race.succeed(result)) {
+                    policy.onHedgeWin();
+                    request.abort();
+                } else {
+                    result.release();
+                }
+            }
+        }, delay, TimeUnit.MICROSECONDS);
+
+        final HttpResult result = executeRequest(client, request, deadline);
+        if (result != null && race.succeed(result)) {
+            timer.cancel(false);
+            hedge.abort();
+            return result;
+        }
+        if (result == null) {
+            race.fail(new IOException("request failed"));
+        } else {
+            result.release();
+        }
+        try {
+            return Uninterruptibles.getUninterruptibly(race.getResult());
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 执行一次请求，不做重试
+     *
+     * @param deadline 不为null时按剩余时间设置三段超时，估计拿不到连接时直接拒绝，到达截止时间时中断请求
+     */
+    protected HttpResult executeRequest(PooledHttpClient client, final HttpUriRequest request, Deadline deadline) {
+        logger.debug("Executing request " + request.getURI());
+
+        final HttpClientContext context = createContext();
+        final long start = System.nanoTime();
+        CircuitBreaker breaker = null;
+        ScheduledFuture<?> abort = null;
+        try {
+            if (deadline != null) {
+                // 先于熔断器检查，被拒绝的请求不占用半开状态的探测名额
+                deadline.checkLease(client.getConnectionManager(), client.getMetrics(), URIUtils.extractHost(request.getURI()));
+                if (request instanceof HttpRequestBase) {
+                    // 重试和对冲时按当时的剩余时间重新拆分
+                    final HttpRequestBase base = (HttpRequestBase) request;
+                    base.setConfig(deadline.split(base.getConfig() != null ? base.getConfig() : client.getRequestConfig()));
+                }
+                abort = RetryTimer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        request.abort();
+                    }
+                }, deadline.remaining(), TimeUnit.MILLISECONDS);
+            }
+            breaker = acquireBreaker(client, request);
+            final CloseableHttpResponse response = client.getHttpClient().execute(request, context);
+
+            ProtocolVersion protocolVersion = response.getProtocolVersion();
+            int code = response.getStatusLine().getStatusCode();
+            String reasonPhrase = response.getStatusLine().getReasonPhrase();
+
+            final HttpResult result = new HttpResult(protocolVersion, code, reasonPhrase);
+            logger.trace("----------------------------------------");
+            logger.trace("{}", response.getStatusLine());
+            populate(response, result, client.getConfig().isPooledBuffers()); // 将报文内容加入到result中
+            logger.trace("----------------------------------------");
+            response.close();
+
+            record(client, breaker, context, request, code, System.nanoTime() - start, result.getBodyLength());
+            return result;
+        } catch (final CircuitOpenException | DeadlineExceededException ex) {
+            logger.warn("Rejected request {}: {}", request.getURI(), ex.getMessage());
+            return null;
+        } catch (final ClientProtocolException ex) {
+            logger.error("Unexpected Protocol error occurs while executing request {}", request.getURI(), ex);
+        } catch (final IOException ex) {
+            if (deadline != null && deadline.isExpired()) {
+                logger.warn("Request {} exceeded its deadline", request.getURI());
+            } else if (request.isAborted()) {
+                // 对冲中输掉的请求，不算作失败
+                logger.debug("Request {} aborted", request.getURI());
+                return null;
+            } else {
+                logger.error("Unexpected I/O error occurs while executing request {}", request.getURI(), ex);
+            }
+        } finally {
+            if (abort != null) {
+                abort.cancel(false);
+            }
+        }
+
+        record(client, breaker, context, request, RouteMetrics.FAILURE, System.nanoTime() - start, 0);
+        return null;
+    }
+
+    /**
+     * 依次经过请求合并和响应缓存，最后经过 {@link #parseRequest(PooledHttpClient, HttpUriRequest, Deadline)} 的重试
+     *
+     * 合并的请求按第一个调用方的截止时间执行，带截止时间的请求不参与合并
+     */
+    protected HttpResult parseSharedRequest(PooledHttpClient client, HttpUriRequest request, Deadline deadline) {
+        final RequestCoalescer coalescer = client.getCoalescer();
+        if (coalescer == null || deadline != null || !RequestCoalescer.isCoalescable(request)) {
+            return parseWithCache(client, request, deadline);
+        }
+        final String key = RequestCoalescer.key(request);
+        final SettableFuture<HttpResult> slot = SettableFuture.create();
+        final ListenableFuture<HttpResult> shared = coalescer.join(key, slot);
+        if (shared != null) {
+            logger.debug("Coalesced request {}", request.getURI());
+            return RequestCoalescer.await(shared);
+        }
+        HttpResult result = null;
+        try {
+            result = parseWithCache(client, request, null);
+            return result;
+        } finally {
+            // 异常时result为null，等待方与leader一样得到null；leader直接拿到result，有等待方时才拷贝
+            coalescer.complete(key, slot, result);
+        }
+    }
+
+    private HttpResult parseWithCache(PooledHttpClient client, HttpUriRequest request, Deadline deadline) {
+        final ResponseCache cache = client.getResponseCache();
+        return cache != null ? parseCachedRequest(client, cache, request, deadline) : parseRequest(client, request, deadline);
+    }
+
+    /**
+     * 先查响应缓存：新鲜的直接返回，过期的带上If-None-Match/If-Modified-Since重新验证，304时沿用缓存的响应体
+     */
+    protected HttpResult parseCachedRequest(PooledHttpClient client, ResponseCache cache, HttpUriRequest request, Deadline deadline) {
+        if (!ResponseCache.isCacheable(request)) {
+            return parseRequest(client, request, deadline);
+        }
+        final String key = request.getURI().toString();
+        final CacheEntry entry = cache.get(key);
+        if (entry != null) {
+            if (entry.isFresh(System.currentTimeMillis())) {
+                logger.debug("Cache hit {}", key);
+                return cache.hit(entry);
+            }
+            entry.addConditionalHeaders(request);
+        }
+
+        final HttpResult result = parseRequest(client, request, deadline);
+        if (result == null) {
+            return null;
+        }
+        if (entry != null && result.getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+            return cache.notModified(key, entry, result);
+        }
+        cache.store(key, result);
+        return result;
+    }
+
+    protected <T> T parseRequest(PooledHttpClient client, HttpUriRequest request, ResponseHandler<? extends T> handler) {
+        logger.debug("Executing request " + request.getURI());
+
+        final HttpClientContext context = createContext();
+        final long start = System.nanoTime();
+        CircuitBreaker breaker = null;
+        try {
+            breaker = acquireBreaker(client, request);
+            // execute保证handler返回后响应体被消费掉，连接归还连接池
+            T result = client.getHttpClient().execute(request, handler, context);
+            HttpResponse response = context.getResponse();
+            record(client, breaker, context, request, response.getStatusLine().getStatusCode(), System.nanoTime() - start, contentLength(response));
+            return result;
+        } catch (final CircuitOpenException ex) {
+            logger.warn("Rejected request {}: {}", request.getURI(), ex.getMessage());
+            return null;
+        } catch (final HttpResponseException ex) {
+            // handler不接受的响应码，请求本身是成功的
+            logger.warn("Request {} returned {} {}", request.getURI(), ex.getStatusCode(), ex.getMessage());
+            record(client, breaker, context, request, ex.getStatusCode(), System.nanoTime() - start, 0);
+            return null;
+        } catch (final JsonDecodeException ex) {
+            // 响应体格式不对，服务端和连接都是正常的
+            logger.warn("Failed to decode response of {}: {}", request.getURI(), ex.getMessage());
+            record(client, breaker, context, request, ex.getStatusCode(), System.nanoTime() - start, 0);
+            return null;
+        } catch (final ClientProtocolException ex) {
+            logger.error("Unexpected Protocol error occurs while executing request {}", request.getURI(), ex);
+        } catch (final IOException ex) {
+            logger.error("Unexpected I/O error occurs while executing request {}", request.getURI(), ex);
+        }
+
+        record(client, breaker, context, request, RouteMetrics.FAILURE, System.nanoTime() - start, 0);
+        return null;
+    }
+
+    protected HttpStreamResult parseStreamRequest(PooledHttpClient client, HttpUriRequest request) {
+        logger.debug("Executing request " + request.getURI());
+
+        final HttpClientContext context = createContext();
+        final long start = System.nanoTime();
+        CloseableHttpResponse response = null;
+        CircuitBreaker breaker = null;
+        try {
+            breaker = acquireBreaker(client, request);
+            response = client.getHttpClient().execute(request, context);
+
+            final HttpStreamResult result = new HttpStreamResult(response.getProtocolVersion(), response.getStatusLine().getStatusCode(), response.getStatusLine().getReasonPhrase());
+            logger.trace("{}", response.getStatusLine());
+            populateHeaders(response, result.getHeaders());
+
+            final HttpEntity entity = response.getEntity();
+            if (entity != null) {
+                final ContentType contentType = ContentType.get(entity);
+                if (contentType != null) {
+                    result.setContentType(contentType.getMimeType());
+                    result.setCharset(contentType.getCharset() != null ? contentType.getCharset() : HTTP.DEF_CONTENT_CHARSET);
+                }
+                result.setContentLength(entity.getContentLength());
+                // 流读到末尾或者被关闭时连接自动归还连接池
+                result.setContent(entity.getContent());
+            }
+            result.setResponse(response);
+            // 流式响应只统计到响应头返回为止，响应体字节数按Content-Length计
+            record(client, breaker, context, request, result.getStatusCode(), System.nanoTime() - start, contentLength(response));
+            return result;
+        } catch (final CircuitOpenException ex) {
+            logger.warn("Rejected request {}: {}", request.getURI(), ex.getMessage());
+            return null;
+        } catch (final ClientProtocolException ex) {
+            logger.error("Unexpected Protocol error occurs while executing request {}", request.getURI(), ex);
+        } catch (final IOException ex) {
+            logger.error("Unexpected I/O error occurs while executing request {}", request.getURI(), ex);
+        }
+
+        record(client, breaker, context, request, RouteMetrics.FAILURE, System.nanoTime() - start, 0);
+
+        if (response != null) {
+            try {
+                response.close();
+            } catch (IOException e) {
+                logger.debug("close response exception", e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return host的熔断器，未开启熔断时返回null
+     * @throws CircuitOpenException 熔断打开，请求不获取连接直接失败
+     */
+    private static CircuitBreaker acquireBreaker(PooledHttpClient client, HttpUriRequest request) throws CircuitOpenException {
+        final CircuitBreakers breakers = client.getCircuitBreakers();
+        final CircuitBreaker breaker = breakers == null ? null : breakers.get(request.getURI());
+        if (breaker != null && !breaker.tryAcquire()) {
+            throw new CircuitOpenException(breaker.getHost());
+        }
+        return breaker;
+    }
+
+    private static void record(PooledHttpClient client, CircuitBreaker breaker, HttpClientContext context, HttpUriRequest request, int statusCode, long nanos, long bytes) {
+        client.getMetrics().recordRequest(context, request, statusCode, nanos, bytes);
+        if (breaker != null) {
+            breaker.onResult(statusCode, nanos);
+        }
+    }
+
+    /**
+     * 将响应体读入buffer池中的buffer，Content-Length已知时一次申请到位
+     */
+    private PooledBuffer readPooled(final HttpEntity entity) throws IOException {
+        long length = entity.getContentLength();
+        PooledBuffer buffer = BufferPool.getDefault().acquire(length > 0 && length <= Integer.MAX_VALUE ? (int) length : 4096);
+        InputStream in = entity.getContent();
+        try {
+            buffer.readFrom(in);
+            return buffer;
+        } catch (IOException e) {
+            buffer.release();
+            throw e;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static long contentLength(HttpResponse response) {
+        return response != null && response.getEntity() != null ? response.getEntity().getContentLength() : 0;
+    }
+
+    private void populateHeaders(final HttpResponse response, final Map<String, String> target) {
+        Header[] headers = response.getAllHeaders();
+        if (headers != null && headers.length > 0) {
+            for (Header header : headers) {
+                target.put(header.getName(), header.getValue());
+            }
+        }
+    }
+
+    /**
+     * 将响应头和响应体拷贝到result中，响应体会被完全消费
+     */
+    protected void populate(final HttpResponse response, final HttpResult result, boolean pooledBuffers) throws IOException {
+
+        // getAllHeaders返回的是新数组，直接引用
+        result.setHeaders(response.getAllHeaders());
+
+        final HttpEntity entity = response.getEntity();
+        if (entity != null) {
+
+            logger.trace("Response Content-Length: {}", entity.getContentLength());
+            final ContentType contentType = ContentType.get(entity);
+
+            if (contentType != null) {
+                result.setContentType(contentType.getMimeType());
+                Charset charset = contentType.getCharset();
+                if (charset == null) {
+                    charset = HTTP.DEF_CONTENT_CHARSET;
+                }
+                result.setCharset(charset);
+            }
+            result.setContentLength(entity.getContentLength());
+            if (pooledBuffers) {
+                result.setBody(readPooled(entity));
+            } else {
+                result.setResponseBody(EntityUtils.toByteArray(entity));
+            }
+            EntityUtils.consume(entity);// 保证内容完全被消费掉，如果流存在则会被close
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package httpclientLearn.simple;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import httpclientLearn.deadline.Deadline;
+import httpclientLearn.dto.BulkItem;
+import httpclientLearn.dto.BulkResult;
+import httpclientLearn.dto.HttpRequestSpec;
+import httpclientLearn.dto.HttpResult;
+
+/**
+ * 同步helper一次executeAll调用：每个请求占用一个线程阻塞执行，调用线程等待全部完成
+ *
+ * 线程只属于这一次调用，返回之前全部结束，不会有请求在调用返回之后还在运行。
+ * 每个请求按批量的截止时间执行，到达截止时间时请求被abort，线程随之结束。
+ */
+class BlockingBulkExecution {
+
+    // 截止时间到达之后等待线程结束的时间
+    private static final long SHUTDOWN_GRACE = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final BaseHttpClientHelper helper;
+    private final List<HttpRequestSpec> requests;
+    private final AtomicReferenceArray<BulkItem> items;
+
+    BlockingBulkExecution(BaseHttpClientHelper helper, List<HttpRequestSpec> requests) {
+        this.helper = helper;
+        this.requests = new ArrayList<HttpRequestSpec>(requests);
+        this.items = new AtomicReferenceArray<BulkItem>(this.requests.size());
+    }
+
+    /**
+     * @param virtualThreads 虚拟线程的ThreadFactory，为null时使用最多maxConcurrency个平台线程
+     */
+    BulkResult run(int maxConcurrency, final long deadline, ThreadFactory virtualThreads) {
+        final int size = requests.size();
+        if (size == 0) {
+            return new BulkResult(new ArrayList<BulkItem>(), false);
+        }
+        final ExecutorService executor;
+        if (virtualThreads != null) {
+            // 虚拟线程不需要复用，并发数只由semaphore限制
+            executor = Executors.newCachedThreadPool(virtualThreads);
+        } else {
+            executor = Executors.newFixedThreadPool(Math.min(maxConcurrency, size),
+                    new ThreadFactoryBuilder().setNameFormat("bulk-" + helper.getClientName() + "-%d").setDaemon(true).build());
+        }
+        final Semaphore permits = new Semaphore(maxConcurrency);
+        final Deadline itemDeadline = Deadline.at(deadline);
+        Throwable cause = new TimeoutException("deadline exceeded");
+        try {
+            for (int i = 0; i < size; i++) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0 || !permits.tryAcquire(wait, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+                final int index = i;
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            execute(index, itemDeadline);
+                        } finally {
+                            permits.release();
+                        }
+                    }
+                });
+            }
+            executor.shutdown();
+            if (!executor.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                // 请求在截止时间被abort，线程很快结束
+                executor.shutdownNow();
+                if (!executor.awaitTermination(SHUTDOWN_GRACE, TimeUnit.MILLISECONDS)) {
+                    logger.warn("bulk requests of {} still running after the deadline", helper.getClientName());
+                }
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            cause = new CancellationException("bulk execution interrupted");
+            // 被中断时同样等待线程结束，之后恢复中断标记
+            try {
+                if (!executor.awaitTermination(SHUTDOWN_GRACE, TimeUnit.MILLISECONDS)) {
+                    logger.warn("bulk requests of {} still running after interruption", helper.getClientName());
+                }
+            } catch (InterruptedException again) {
+                logger.warn("bulk requests of {} may still be running after interruption", helper.getClientName());
+            }
+            Thread.currentThread().interrupt();
+        }
+
+        boolean timedOut = false;
+        List<BulkItem> result = new ArrayList<BulkItem>(size);
+        for (int i = 0; i < size; i++) {
+            items.compareAndSet(i, null, new BulkItem(i, requests.get(i), null, cause));
+            BulkItem item = items.get(i);
+            // 在截止时间被abort的请求与没有来得及执行的请求一样算作提前结束
+            timedOut |= item.getError() instanceof TimeoutException || item.getError() instanceof CancellationException;
+            result.add(item);
+        }
+        if (timedOut) {
+            logger.debug("bulk execution of {} stopped early", helper.getClientName());
+        }
+        return new BulkResult(result, timedOut);
+    }
+
+    private void execute(int index, Deadline deadline) {
+        final HttpRequestSpec request = requests.get(index);
+        if (deadline.isExpired()) {
+            complete(index, null, new TimeoutException("deadline exceeded"));
+            return;
+        }
+        try {
+            HttpResult result = helper.execute(request, deadline);
+            if (result == null) {
+                // 同步helper出错时只记录日志并返回null
+                complete(index, null, deadline.isExpired() ? new TimeoutException("deadline exceeded") : new IOException("request " + request + " failed"));
+            } else if (!complete(index, result, null)) {
+                result.release();
+            }
+        } catch (Throwable t) {
+            // Error同样记录下来，否则会被当作超时
+            complete(index, null, t);
+        }
+    }
+
+    /**
+     * @return 结果是否被采用，调用已经结束之后到达的结果返回false
+     */
+    private boolean complete(int index, HttpResult result, Throwable error) {
+        return items.compareAndSet(index, null, new BulkItem(index, requests.get(index), result, error));
+    }
+}
@@ -0,0 +1,73 @@
+package httpclientLearn.simple;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * JDK 21的虚拟线程
+ *
+ * 项目按Java 7编译，不能直接调用Thread.ofVirtual()，通过反射创建ThreadFactory；
+ * 运行在不支持虚拟线程的JDK上(或者JDK 19/20没有开启preview)时 {@link #factory(String)} 返回null，由调用方退回到平台线程。
+ */
+public final class VirtualThreads {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreads.class);
+    private static final AtomicBoolean warned = new AtomicBoolean();
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return Support.OF_VIRTUAL != null;
+    }
+
+    /**
+     * @param prefix 线程名前缀，后面接从0开始的序号
+     * @return 创建虚拟线程的ThreadFactory，JDK不支持时返回null并记录一次警告
+     */
+    public static ThreadFactory factory(String prefix) {
+        if (!isSupported()) {
+            if (warned.compareAndSet(false, true)) {
+                logger.warn("virtual threads are not available on Java {}, falling back to platform threads", System.getProperty("java.version"));
+            }
+            return null;
+        }
+        try {
+            Object builder = Support.OF_VIRTUAL.invoke(null);
+            builder = Support.NAME.invoke(builder, prefix, 0L);
+            return (ThreadFactory) Support.FACTORY.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("create virtual thread factory failed", e);
+        }
+    }
+
+    private static final class Support {
+
+        static final Method OF_VIRTUAL;
+        static final Method NAME;
+        static final Method FACTORY;
+
+        static {
+            Method ofVirtual = null;
+            Method name = null;
+            Method factory = null;
+            try {
+                Class<?> builder = Class.forName("java.lang.Thread$Builder");
+                ofVirtual = Thread.class.getMethod("ofVirtual");
+                name = builder.getMethod("name", String.class, long.class);
+                factory = builder.getMethod("factory");
+                // preview没有开启时抛出UnsupportedOperationException
+                ofVirtual.invoke(null);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                ofVirtual = null;
+            }
+            OF_VIRTUAL = ofVirtual;
+            NAME = name;
+            FACTORY = factory;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package httpclientLearn.ssl;
+
+import javax.net.ssl.SSLSession;
+
+/**
+ * TLS握手相关的工具方法
+ */
+final class Handshakes {
+
+    private Handshakes() {
+    }
+
+    /**
+     * 复用的会话保留了最初建立时的创建时间，早于本次握手开始说明没有做完整握手。TLS 1.2的session id和TLS 1.3的session ticket都适用
+     *
+     * @param startMillis 本次握手开始的时间
+     */
+    static boolean isResumed(SSLSession session, long startMillis) {
+        return session != null && session.getCreationTime() < startMillis;
+    }
+}
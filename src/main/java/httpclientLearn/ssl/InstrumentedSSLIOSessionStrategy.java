@@ -0,0 +1,50 @@
+package httpclientLearn.ssl;
+
+import java.io.IOException;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOSession;
+import org.apache.http.nio.reactor.ssl.SSLIOSession;
+
+import httpclientLearn.metrics.ClientMetrics;
+
+/**
+ * 异步连接池的https会话策略，按route记录完整握手和复用会话握手的耗时
+ *
+ * 握手在io reactor中异步进行，开始时间保存在IOSession的属性中，握手完成校验会话时取出
+ */
+public class InstrumentedSSLIOSessionStrategy extends SSLIOSessionStrategy {
+
+    private static final String START_NANOS = "httpclientLearn.tls.start-nanos";
+    private static final String START_MILLIS = "httpclientLearn.tls.start-millis";
+
+    private final ClientMetrics metrics;
+
+    public InstrumentedSSLIOSessionStrategy(SSLContext sslContext, ClientMetrics metrics) {
+        super(sslContext);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public SSLIOSession upgrade(HttpHost host, IOSession iosession) throws IOException {
+        iosession.setAttribute(START_MILLIS, System.currentTimeMillis());
+        iosession.setAttribute(START_NANOS, System.nanoTime());
+        return super.upgrade(host, iosession);
+    }
+
+    @Override
+    protected void verifySession(HttpHost host, IOSession iosession, SSLSession sslsession) throws SSLException {
+        super.verifySession(host, iosession, sslsession);
+        Object startNanos = iosession.getAttribute(START_NANOS);
+        Object startMillis = iosession.getAttribute(START_MILLIS);
+        if (startNanos instanceof Long && startMillis instanceof Long) {
+            metrics.recordHandshake(new HttpRoute(host, null, true), System.nanoTime() - (Long) startNanos, Handshakes.isResumed(sslsession, (Long) startMillis));
+        }
+    }
+}
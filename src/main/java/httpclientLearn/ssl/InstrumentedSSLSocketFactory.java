@@ -0,0 +1,47 @@
+package httpclientLearn.ssl;
+
+import java.io.IOException;
+import java.net.Socket;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.routing.RouteInfo;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.protocol.HttpContext;
+
+import httpclientLearn.metrics.ClientMetrics;
+
+/**
+ * 同步连接池的https socket工厂，按route记录完整握手和复用会话握手的耗时
+ */
+public class InstrumentedSSLSocketFactory extends SSLConnectionSocketFactory {
+
+    private final ClientMetrics metrics;
+
+    public InstrumentedSSLSocketFactory(SSLContext sslContext, ClientMetrics metrics) {
+        super(sslContext);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context) throws IOException {
+        final long startMillis = System.currentTimeMillis();
+        final long start = System.nanoTime();
+        // 父类在这里完成握手和主机名校验
+        final Socket layered = super.createLayeredSocket(socket, target, port, context);
+        final long nanos = System.nanoTime() - start;
+        if (layered instanceof SSLSocket) {
+            metrics.recordHandshake(routeOf(context, target, port), nanos, Handshakes.isResumed(((SSLSocket) layered).getSession(), startMillis));
+        }
+        return layered;
+    }
+
+    private static HttpRoute routeOf(HttpContext context, String target, int port) {
+        RouteInfo info = context == null ? null : HttpClientContext.adapt(context).getHttpRoute();
+        return info instanceof HttpRoute ? (HttpRoute) info : new HttpRoute(new HttpHost(target, port, "https"), null, true);
+    }
+}
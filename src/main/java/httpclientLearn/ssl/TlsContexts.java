@@ -0,0 +1,49 @@
+package httpclientLearn.ssl;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+
+import org.apache.http.ssl.SSLContexts;
+
+import config.ClientConfig;
+
+/**
+ * 同步和异步连接池共用的TLS上下文
+ *
+ * 同一个SSLContext内的会话缓存是共享的：同步client建立过的会话，异步client连接同一个host:port时可以直接复用，反之亦然。
+ * 配置中没有指定SSLContext的client共用一个进程级的默认上下文。
+ */
+public final class TlsContexts {
+
+    private static class DefaultHolder {
+        private static final SSLContext DEFAULT = SSLContexts.createDefault();
+    }
+
+    private TlsContexts() {
+    }
+
+    /**
+     * @return 配置中的SSLContext，没有时返回共享的默认上下文；返回前按配置调整客户端会话缓存
+     */
+    public static SSLContext resolve(ClientConfig config) {
+        SSLContext context = config.getSslContext() != null ? config.getSslContext() : DefaultHolder.DEFAULT;
+        configureSessionCache(context, config);
+        return context;
+    }
+
+    /**
+     * 多个配置共用一个上下文时以最后创建的client为准
+     */
+    static void configureSessionCache(SSLContext context, ClientConfig config) {
+        SSLSessionContext sessions = context.getClientSessionContext();
+        if (sessions == null) {
+            return;
+        }
+        if (config.getTlsSessionCacheSize() > 0) {
+            sessions.setSessionCacheSize(config.getTlsSessionCacheSize());
+        }
+        if (config.getTlsSessionTimeout() > 0) {
+            sessions.setSessionTimeout(config.getTlsSessionTimeout());
+        }
+    }
+}
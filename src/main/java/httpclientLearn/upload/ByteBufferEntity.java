@@ -0,0 +1,82 @@
+package httpclientLearn.upload;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.HttpAsyncContentProducer;
+
+/**
+ * 发送ByteBuffer中position到limit之间的内容，每次发送使用buffer的副本，原buffer的position不变，可以重复发送
+ */
+class ByteBufferEntity extends AbstractHttpEntity implements HttpAsyncContentProducer {
+
+    private final ByteBuffer buffer;
+    // 异步发送中的副本
+    private ByteBuffer producing;
+
+    ByteBufferEntity(ByteBuffer buffer, ContentType contentType) {
+        this.buffer = buffer.duplicate();
+        if (contentType != null) {
+            setContentType(contentType.toString());
+        }
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        if (buffer.hasArray()) {
+            return new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        byte[] copy = new byte[buffer.remaining()];
+        buffer.duplicate().get(copy);
+        return new ByteArrayInputStream(copy);
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        if (buffer.hasArray()) {
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            Channels.newChannel(out).write(buffer.duplicate());
+        }
+        out.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    @Override
+    public void produceContent(ContentEncoder encoder, IOControl ioctrl) throws IOException {
+        if (producing == null) {
+            producing = buffer.duplicate();
+        }
+        encoder.write(producing);
+        if (!producing.hasRemaining()) {
+            encoder.complete();
+        }
+    }
+
+    @Override
+    public void close() {
+        producing = null;
+    }
+}
@@ -0,0 +1,103 @@
+package httpclientLearn.upload;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.nio.entity.NFileEntity;
+
+/**
+ * 流式请求体，内容在发送时才读取，不会整体加载到堆内存
+ *
+ * <ul>
+ * <li>文件：长度已知，异步请求在明文http下通过FileChannel.transferTo从page cache直接写入socket，不经过用户态byte数组</li>
+ * <li>ByteBuffer：长度已知，发送position到limit之间的内容，不修改buffer本身，direct buffer直接写入socket</li>
+ * <li>InputStream：长度未知时使用chunked传输；只能发送一次，不会被重试。异步请求在io reactor线程中读取，
+ * 流应该来自文件或内存这类不会长时间阻塞的来源</li>
+ * </ul>
+ *
+ * 流式请求体不按 {@link config.ClientConfig#getRequestCompressionThreshold()} 压缩，按原样发送
+ */
+public final class RequestBody {
+
+    private final AbstractHttpEntity entity;
+
+    private RequestBody(AbstractHttpEntity entity) {
+        this.entity = entity;
+    }
+
+    /**
+     * @param length 内容长度，小于0时使用chunked传输
+     */
+    public static RequestBody of(InputStream in, long length, ContentType contentType) {
+        if (in == null) {
+            throw new IllegalArgumentException("in is required");
+        }
+        return new RequestBody(new InputStreamEntity(in, length, contentType));
+    }
+
+    public static RequestBody of(InputStream in, ContentType contentType) {
+        return of(in, -1, contentType);
+    }
+
+    public static RequestBody of(File file, ContentType contentType) {
+        if (file == null) {
+            throw new IllegalArgumentException("file is required");
+        }
+        return new RequestBody(new NFileEntity(file, contentType, true));
+    }
+
+    public static RequestBody of(Path path, ContentType contentType) {
+        if (path == null) {
+            throw new IllegalArgumentException("path is required");
+        }
+        return of(path.toFile(), contentType);
+    }
+
+    public static RequestBody of(ByteBuffer buffer, ContentType contentType) {
+        if (buffer == null) {
+            throw new IllegalArgumentException("buffer is required");
+        }
+        return new RequestBody(new ByteBufferEntity(buffer, contentType));
+    }
+
+    /**
+     * 长度已知时也使用chunked传输，例如服务端需要边收边处理；chunked编码下文件不能零拷贝发送
+     */
+    public RequestBody chunked() {
+        entity.setChunked(true);
+        return this;
+    }
+
+    public long getContentLength() {
+        return entity.getContentLength();
+    }
+
+    public boolean isChunked() {
+        return entity.isChunked() || entity.getContentLength() < 0;
+    }
+
+    /**
+     * @return 文件和ByteBuffer可以重复发送，InputStream只能发送一次
+     */
+    public boolean isRepeatable() {
+        return entity.isRepeatable();
+    }
+
+    /**
+     * 同时实现了HttpAsyncContentProducer的实体，异步client直接由它向连接写入内容
+     */
+    public HttpEntity toEntity() {
+        return entity;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestBody[" + entity.getClass().getSimpleName() + ", length=" + entity.getContentLength() + (entity.isChunked() ? ", chunked" : "") + "]";
+    }
+}
@@ -0,0 +1,250 @@
+package httpclientLearn;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocket;
+
+/**
+ * 单元测试使用的本地HTTP/2服务(h2 over TLS，ALPN)，只实现测试需要的最小子集，需要Java 9+
+ *
+ * 不解码请求头，每个请求在delay毫秒后返回200和"h2 stream 流编号 请求体字节数"；
+ * SETTINGS中声明maxConcurrentStreams，记录建立的连接数和同时在途的最大stream数
+ */
+public class LocalH2Server {
+
+    private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final int DATA = 0x0;
+    private static final int HEADERS = 0x1;
+    private static final int SETTINGS = 0x4;
+    private static final int PING = 0x6;
+    private static final int GOAWAY = 0x7;
+    private static final int WINDOW_UPDATE = 0x8;
+    private static final int END_STREAM = 0x1;
+    private static final int ACK = 0x1;
+    private static final int END_HEADERS = 0x4;
+    private static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+
+    private final int maxConcurrentStreams;
+    private final long delay;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+    private final Set<Socket> sockets = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+    private final ScheduledExecutorService responder = Executors.newScheduledThreadPool(4);
+    private SSLServerSocket serverSocket;
+
+    public LocalH2Server(int maxConcurrentStreams, long delay) {
+        this.maxConcurrentStreams = maxConcurrentStreams;
+        this.delay = delay;
+    }
+
+    public LocalH2Server start() throws IOException {
+        serverSocket = (SSLServerSocket) LocalTestServer.serverSslContext().getServerSocketFactory().createServerSocket(0);
+        SSLParameters parameters = serverSocket.getSSLParameters();
+        try {
+            SSLParameters.class.getMethod("setApplicationProtocols", String[].class).invoke(parameters, (Object) new String[] { "h2" });
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("ALPN requires Java 9+", e);
+        }
+        serverSocket.setSSLParameters(parameters);
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!serverSocket.isClosed()) {
+                    try {
+                        final Socket socket = serverSocket.accept();
+                        socket.setTcpNoDelay(true);
+                        sockets.add(socket);
+                        Thread connection = new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                serve(socket);
+                            }
+                        }, "h2-connection");
+                        connection.setDaemon(true);
+                        connection.start();
+                    } catch (IOException e) {
+                        // 服务停止
+                    }
+                }
+            }
+        }, "h2-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return this;
+    }
+
+    public String getBaseUri() {
+        return "https://localhost:" + serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return 建立过的TCP连接数
+     */
+    public int getConnections() {
+        return connections.get();
+    }
+
+    /**
+     * @return 同一时刻在途的最大stream数
+     */
+    public int getMaxActiveStreams() {
+        return maxActive.get();
+    }
+
+    public void stop() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+        for (Socket socket : sockets) {
+            close(socket);
+        }
+        responder.shutdownNow();
+    }
+
+    private void serve(Socket socket) {
+        connections.incrementAndGet();
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            byte[] preface = new byte[PREFACE.length];
+            in.readFully(preface);
+            if (!Arrays.equals(PREFACE, preface)) {
+                throw new IOException("not an h2 connection");
+            }
+            writeFrame(out, SETTINGS, 0, 0, new byte[] { 0, SETTINGS_MAX_CONCURRENT_STREAMS, (byte) (maxConcurrentStreams >>> 24), (byte) (maxConcurrentStreams >>> 16),
+                    (byte) (maxConcurrentStreams >>> 8), (byte) maxConcurrentStreams });
+            Map<Integer, Integer> bodies = new HashMap<Integer, Integer>();
+            while (true) {
+                int length = in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8 | in.readUnsignedByte();
+                int type = in.readUnsignedByte();
+                int flags = in.readUnsignedByte();
+                int stream = in.readInt() & 0x7fffffff;
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                switch (type) {
+                case SETTINGS:
+                    if ((flags & ACK) == 0) {
+                        writeFrame(out, SETTINGS, ACK, 0, new byte[0]);
+                    }
+                    break;
+                case PING:
+                    if ((flags & ACK) == 0) {
+                        writeFrame(out, PING, ACK, 0, payload);
+                    }
+                    break;
+                case HEADERS:
+                    // 请求头按HPACK编码，这里不需要解码
+                    bodies.put(stream, 0);
+                    if ((flags & END_STREAM) != 0) {
+                        respond(out, stream, 0);
+                    }
+                    break;
+                case DATA:
+                    Integer received = bodies.get(stream);
+                    int total = (received == null ? 0 : received) + length;
+                    bodies.put(stream, total);
+                    if (length > 0) {
+                        byte[] increment = { (byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length };
+                        writeFrame(out, WINDOW_UPDATE, 0, 0, increment);
+                        writeFrame(out, WINDOW_UPDATE, 0, stream, increment);
+                    }
+                    if ((flags & END_STREAM) != 0) {
+                        respond(out, stream, total);
+                    }
+                    break;
+                case GOAWAY:
+                    return;
+                default:
+                    // WINDOW_UPDATE、PRIORITY、RST_STREAM等不需要处理
+                }
+            }
+        } catch (IOException e) {
+            // 连接关闭
+        } finally {
+            sockets.remove(socket);
+            close(socket);
+        }
+    }
+
+    private void respond(final OutputStream out, final int stream, int bodyLength) {
+        int current = active.incrementAndGet();
+        for (int max = maxActive.get(); current > max && !maxActive.compareAndSet(max, current); max = maxActive.get()) {
+        }
+        final byte[] body = ("h2 stream " + stream + " " + bodyLength).getBytes(StandardCharsets.US_ASCII);
+        responder.schedule(new Runnable() {
+            @Override
+            public void run() {
+                active.decrementAndGet();
+                try {
+                    // :status 200取静态表第8项，其余响应头按不索引的字面量编码
+                    byte[] contentType = literal("content-type", "text/plain");
+                    byte[] contentLength = literal("content-length", String.valueOf(body.length));
+                    byte[] block = new byte[1 + contentType.length + contentLength.length];
+                    block[0] = (byte) 0x88;
+                    System.arraycopy(contentType, 0, block, 1, contentType.length);
+                    System.arraycopy(contentLength, 0, block, 1 + contentType.length, contentLength.length);
+                    writeFrame(out, HEADERS, END_HEADERS, stream, block);
+                    writeFrame(out, DATA, END_STREAM, stream, body);
+                } catch (IOException e) {
+                    // 连接已经关闭
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static byte[] literal(String name, String value) {
+        byte[] n = name.getBytes(StandardCharsets.US_ASCII);
+        byte[] v = value.getBytes(StandardCharsets.US_ASCII);
+        byte[] field = new byte[3 + n.length + v.length];
+        field[0] = 0;
+        field[1] = (byte) n.length;
+        System.arraycopy(n, 0, field, 2, n.length);
+        field[2 + n.length] = (byte) v.length;
+        System.arraycopy(v, 0, field, 3 + n.length, v.length);
+        return field;
+    }
+
+    private static void writeFrame(OutputStream out, int type, int flags, int stream, byte[] payload) throws IOException {
+        synchronized (out) {
+            out.write(payload.length >>> 16);
+            out.write(payload.length >>> 8);
+            out.write(payload.length);
+            out.write(type);
+            out.write(flags);
+            out.write(stream >>> 24);
+            out.write(stream >>> 16);
+            out.write(stream >>> 8);
+            out.write(stream);
+            out.write(payload);
+            out.flush();
+        }
+    }
+
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package httpclientLearn;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.bootstrap.HttpServer;
+import org.apache.http.impl.bootstrap.ServerBootstrap;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.apache.http.ssl.SSLContexts;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * 单元测试使用的本地http服务，不依赖外网
+ *
+ * 默认处理器：/echo 回显请求方法和请求体，/delay?ms=N 延迟N毫秒后返回，/bytes?n=N 返回N个字节
+ */
+public class LocalTestServer {
+
+    private static final String KEYSTORE = "/localhost.jks";
+    private static final char[] KEYSTORE_PASSWORD = "benchmark".toCharArray();
+
+    private final ServerBootstrap bootstrap;
+    private final boolean https;
+    private HttpServer server;
+
+    public LocalTestServer() {
+        this(false);
+    }
+
+    /**
+     * @param https 是否使用classpath中的自签名证书localhost.jks提供https服务
+     */
+    public LocalTestServer(boolean https) {
+        this.https = https;
+        this.bootstrap = ServerBootstrap.bootstrap().setListenerPort(0).registerHandler("/echo*", new EchoHandler()).registerHandler("/delay*", new DelayHandler())
+                .registerHandler("/bytes*", new BytesHandler());
+        if (https) {
+            bootstrap.setSslContext(serverSslContext());
+        }
+    }
+
+    /**
+     * @return 使用localhost.jks中证书的服务端SSLContext
+     */
+    static SSLContext serverSslContext() {
+        try {
+            return SSLContexts.custom().loadKeyMaterial(keyStore(), KEYSTORE_PASSWORD).build();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return 只信任localhost.jks中证书的客户端SSLContext
+     */
+    public static SSLContext clientSslContext() {
+        try {
+            return SSLContexts.custom().loadTrustMaterial(keyStore(), null).build();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static KeyStore keyStore() throws GeneralSecurityException {
+        try (InputStream in = LocalTestServer.class.getResourceAsStream(KEYSTORE)) {
+            KeyStore keyStore = KeyStore.getInstance("JKS");
+            keyStore.load(in, KEYSTORE_PASSWORD);
+            return keyStore;
+        } catch (IOException e) {
+            throw new IllegalStateException("load " + KEYSTORE + " failed", e);
+        }
+    }
+
+    /**
+     * 只监听指定的本地地址，默认监听所有地址
+     */
+    public LocalTestServer setLocalAddress(InetAddress address) {
+        bootstrap.setLocalAddress(address);
+        return this;
+    }
+
+    public LocalTestServer registerHandler(String pattern, HttpRequestHandler handler) {
+        bootstrap.registerHandler(pattern, handler);
+        return this;
+    }
+
+    public LocalTestServer start() throws IOException {
+        server = bootstrap.create();
+        server.start();
+        return this;
+    }
+
+    public String getBaseUri() {
+        return (https ? "https" : "http") + "://localhost:" + server.getLocalPort();
+    }
+
+    public void stop() {
+        server.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    private static class EchoHandler implements HttpRequestHandler {
+
+        @Override
+        public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+            if (request instanceof HttpEntityEnclosingRequest && ((HttpEntityEnclosingRequest) request).getEntity() != null) {
+                byte[] body = EntityUtils.toByteArray(((HttpEntityEnclosingRequest) request).getEntity());
+                response.setEntity(new ByteArrayEntity(body, ContentType.APPLICATION_OCTET_STREAM));
+            } else {
+                response.setEntity(new StringEntity(request.getRequestLine().getMethod() + " " + request.getRequestLine().getUri(), ContentType.TEXT_PLAIN));
+            }
+        }
+    }
+
+    private static class DelayHandler implements HttpRequestHandler {
+
+        @Override
+        public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+            String uri = request.getRequestLine().getUri();
+            int index = uri.indexOf("ms=");
+            long delay = index < 0 ? 0 : Long.parseLong(uri.substring(index + 3).split("&")[0]);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            response.setEntity(new StringEntity("delayed " + delay, ContentType.TEXT_PLAIN));
+        }
+    }
+
+    private static class BytesHandler implements HttpRequestHandler {
+
+        @Override
+        public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+            String uri = request.getRequestLine().getUri();
+            int n = Integer.parseInt(uri.substring(uri.indexOf("n=") + 2).split("&")[0]);
+            byte[] body = new byte[n];
+            for (int i = 0; i < n; i++) {
+                body[i] = (byte) i;
+            }
+            response.setEntity(new ByteArrayEntity(body, ContentType.APPLICATION_OCTET_STREAM));
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package httpclientLearn.admission;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpStatus;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import config.ClientConfig;
+import config.ClientConfigLoader;
+import httpclientLearn.LocalTestServer;
+import httpclientLearn.admission.AdmissionController.Permit;
+import httpclientLearn.async.AsyncHttpClientHelper;
+import httpclientLearn.deadline.Deadline;
+import httpclientLearn.dto.BulkItem;
+import httpclientLearn.dto.BulkResult;
+import httpclientLearn.dto.HttpRequestSpec;
+import httpclientLearn.dto.HttpResult;
+import httpclientLearn.registry.ClientRegistry;
+
+public class AdmissionControllerTest {
+
+    private static final HttpHost A = new HttpHost("a.example.com");
+    private static final HttpHost B = new HttpHost("b.example.com");
+    private static final HttpHost C = new HttpHost("c.example.com");
+
+    private static LocalTestServer server;
+
+    @BeforeClass
+    public static void start() throws Exception {
+        server = new LocalTestServer().start();
+    }
+
+    @AfterClass
+    public static void stop() {
+        server.stop();
+    }
+
+    @Test
+    public void testLimits() throws Exception {
+        AdmissionController admission = new AdmissionController(2, 1, AdmissionPolicy.FAIL_FAST, 0);
+        Permit a = admission.acquire(A, null);
+        // host上限，写出默认端口的同一个host共用名额
+        assertNull(admission.tryAcquire(A));
+        assertNull(admission.tryAcquire(new HttpHost("a.example.com", 80)));
+        assertEquals(1, admission.getInFlight(new HttpHost("a.example.com", 80)));
+        Permit b = admission.acquire(B, null);
+        // 全局上限，被拒绝的请求不占用host的名额
+        try {
+            admission.acquire(C, null);
+            fail();
+        } catch (AdmissionRejectedException e) {
+            assertEquals(C, e.getHost());
+        }
+        assertEquals(0, admission.getInFlight(C));
+        assertEquals(2, admission.getInFlight());
+
+        a.release();
+        a.release();
+        assertEquals(1, admission.getInFlight());
+        assertNotNull(admission.tryAcquire(C));
+        b.release();
+        assertEquals(3, admission.getRejected());
+    }
+
+    @Test
+    public void testWhenAvailable() throws Exception {
+        AdmissionController admission = new AdmissionController(1, 0, AdmissionPolicy.FAIL_FAST, 0);
+        Permit a = admission.tryAcquire(A);
+        assertNull(admission.tryAcquire(B));
+        // 重新提交被拒绝的请求不再计数
+        assertNull(admission.tryAcquire(B, false));
+        assertEquals(1, admission.getRejected());
+
+        final AtomicInteger woken = new AtomicInteger();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                woken.incrementAndGet();
+            }
+        };
+        admission.whenAvailable(B, task);
+        assertEquals(0, woken.get());
+        a.release();
+        assertEquals(1, woken.get());
+        a.release();
+        assertEquals(1, woken.get());
+
+        // 注册时已经有名额则立即回调
+        admission.whenAvailable(B, task);
+        assertEquals(2, woken.get());
+    }
+
+    @Test
+    public void testTimeoutAndDeadline() throws Exception {
+        AdmissionController admission = new AdmissionController(1, 0, AdmissionPolicy.TIMEOUT, 200);
+        admission.acquire(A, null);
+        long start = System.currentTimeMillis();
+        try {
+            admission.acquire(B, null);
+            fail();
+        } catch (AdmissionRejectedException e) {
+            assertTrue(System.currentTimeMillis() - start >= 190);
+        }
+
+        // 阻塞策略最多等到截止时间
+        admission = new AdmissionController(1, 0, AdmissionPolicy.BLOCK, 0);
+        admission.acquire(A, null);
+        start = System.currentTimeMillis();
+        try {
+            admission.acquire(B, Deadline.after(100, TimeUnit.MILLISECONDS));
+            fail();
+        } catch (AdmissionRejectedException e) {
+            long elapsed = System.currentTimeMillis() - start;
+            assertTrue(elapsed >= 90 && elapsed < 1000);
+        }
+
+        // 已经过期的请求立即拒绝，不会一直等待名额
+        start = System.currentTimeMillis();
+        try {
+            admission.acquire(B, Deadline.at(start - 10));
+            fail();
+        } catch (AdmissionRejectedException e) {
+            assertTrue(System.currentTimeMillis() - start < 100);
+        }
+    }
+
+    @Test
+    public void testAsyncClient() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("client.admission-test.maxInFlight", "2");
+        properties.setProperty("client.admission-test.admissionPolicy", "fail_fast");
+        ClientRegistry.register(ClientConfigLoader.apply(ClientConfig.custom("admission-test").setRequestCompressionThreshold(16).build(), properties));
+        try {
+            AsyncHttpClientHelper helper = AsyncHttpClientHelper.getInstance("admission-test");
+            AdmissionController admission = ClientRegistry.getAsyncClient("admission-test").getAdmissionController();
+            String slow = server.getBaseUri() + "/delay?ms=500";
+            List<ListenableFuture<HttpResult>> futures = new ArrayList<ListenableFuture<HttpResult>>();
+            futures.add(helper.get(slow));
+            futures.add(helper.tryExecute(HttpRequestSpec.get(slow)));
+            assertEquals(2, admission.getInFlight());
+
+            assertNull(helper.tryExecute(HttpRequestSpec.get(slow)));
+            try {
+                helper.get(slow).get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof AdmissionRejectedException);
+            }
+            // 被拒绝的请求不会构建，也不会压缩请求体
+            try {
+                helper.post(server.getBaseUri() + "/echo", new byte[1024]).get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof AdmissionRejectedException);
+            }
+            assertEquals(0, ClientRegistry.getAsyncClient("admission-test").snapshotMetrics().getRequestBytesRaw());
+
+            for (ListenableFuture<HttpResult> future : futures) {
+                assertEquals(HttpStatus.SC_OK, future.get(5, TimeUnit.SECONDS).getStatusCode());
+            }
+            awaitIdle(admission);
+
+            // 批量请求没有名额时稍后重新提交，不会失败
+            List<HttpRequestSpec> requests = new ArrayList<HttpRequestSpec>();
+            for (int i = 0; i < 10; i++) {
+                requests.add(HttpRequestSpec.get(server.getBaseUri() + "/delay?ms=50"));
+            }
+            long rejected = admission.getRejected();
+            BulkResult result = helper.executeAll(requests, 5, System.currentTimeMillis() + 10000).get(15, TimeUnit.SECONDS);
+            for (BulkItem item : result.getItems()) {
+                assertTrue(String.valueOf(item.getError()), item.isSuccess());
+            }
+            // 名额归还时重新提交，每个请求最多计一次拒绝
+            assertTrue(admission.getRejected() - rejected <= requests.size());
+            awaitIdle(admission);
+        } finally {
+            ClientRegistry.close("admission-test");
+        }
+    }
+
+    /**
+     * 名额在future完成之后由完成它的线程归还，get()返回时可能还没有归还
+     */
+    private static void awaitIdle(AdmissionController admission) throws InterruptedException {
+        long wait = System.currentTimeMillis() + 1000;
+        while (admission.getInFlight() > 0 && System.currentTimeMillis() < wait) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, admission.getInFlight());
+    }
+}
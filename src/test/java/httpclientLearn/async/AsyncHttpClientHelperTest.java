@@ -1,12 +1,44 @@
 package httpclientLearn.async;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
 
 import org.junit.Test;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import config.ClientConfig;
+import httpclientLearn.LocalTestServer;
+import httpclientLearn.dto.BulkItem;
+import httpclientLearn.dto.BulkResult;
+import httpclientLearn.dto.DownloadResult;
+import httpclientLearn.dto.HttpRequestSpec;
+import httpclientLearn.dto.HttpResult;
+import httpclientLearn.registry.ClientRegistry;
+
 public class AsyncHttpClientHelperTest {
 
     @Test
@@ -21,4 +53,139 @@ public class AsyncHttpClientHelperTest {
 //        AsyncClientPool.shutdown();
     }
 
+    @Test
+    public void testFutures() throws Exception {
+        LocalTestServer server = new LocalTestServer().start();
+        try {
+            AsyncHttpClientHelper helper = AsyncHttpClientHelper.getInstance();
+
+            List<ListenableFuture<HttpResult>> futures = new ArrayList<ListenableFuture<HttpResult>>();
+            for (int i = 0; i < 100; i++) {
+                futures.add(helper.get(server.getBaseUri() + "/echo/" + i));
+            }
+            List<HttpResult> results = Futures.allAsList(futures).get(10, TimeUnit.SECONDS);
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(200, results.get(i).getStatusCode());
+                assertEquals("GET /echo/" + i, results.get(i).getResponseBodyAsString());
+            }
+
+            assertEquals("body", helper.post(server.getBaseUri() + "/echo", "body".getBytes()).get().getResponseBodyAsString());
+            assertEquals("put", helper.put(server.getBaseUri() + "/echo", "put".getBytes()).get().getResponseBodyAsString());
+            assertEquals("DELETE /echo", helper.delete(server.getBaseUri() + "/echo").get().getResponseBodyAsString());
+            assertEquals(200, helper.head(server.getBaseUri() + "/echo").get().getStatusCode());
+
+            ListenableFuture<HttpResult> slow = helper.get(server.getBaseUri() + "/delay?ms=5000");
+            assertTrue(slow.cancel(true));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testDownload() throws Exception {
+        LocalTestServer server = new LocalTestServer().start();
+        Path target = Files.createTempFile("download", ".bin");
+        try {
+            DownloadResult result = AsyncHttpClientHelper.getInstance().download(server.getBaseUri() + "/bytes?n=1048576", target).get(10, TimeUnit.SECONDS);
+            assertEquals(200, result.getStatusCode());
+            assertEquals(1048576, result.getBytes());
+            assertEquals(1048576, Files.size(target));
+            assertEquals((byte) 255, Files.readAllBytes(target)[255]);
+        } finally {
+            Files.deleteIfExists(target);
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testPooledBuffers() throws Exception {
+        LocalTestServer server = new LocalTestServer().start();
+        ClientRegistry.register(ClientConfig.custom("async-pooled-test").setPooledBuffers(true).build());
+        try {
+            try (HttpResult result = AsyncHttpClientHelper.getInstance("async-pooled-test").get(server.getBaseUri() + "/bytes?n=100000").get(10, TimeUnit.SECONDS)) {
+                assertEquals(100000, result.getBody().remaining());
+                assertEquals((byte) 99999, result.getBody().get(99999));
+            }
+        } finally {
+            ClientRegistry.close("async-pooled-test");
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testExecuteAll() throws Exception {
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        LocalTestServer server = new LocalTestServer().registerHandler("/count*", new HttpRequestHandler() {
+            @Override
+            public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+                int current = concurrent.incrementAndGet();
+                while (current > maxConcurrent.get() && !maxConcurrent.compareAndSet(maxConcurrent.get(), current)) {
+                }
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                concurrent.decrementAndGet();
+                response.setEntity(new StringEntity(request.getRequestLine().getUri()));
+            }
+        }).start();
+        try {
+            List<HttpRequestSpec> requests = new ArrayList<HttpRequestSpec>();
+            for (int i = 0; i < 30; i++) {
+                requests.add(HttpRequestSpec.get(server.getBaseUri() + "/count/" + i));
+            }
+            requests.add(HttpRequestSpec.get("not a uri"));
+            final List<BulkItem> streamed = new CopyOnWriteArrayList<BulkItem>();
+            BulkResult result = AsyncHttpClientHelper.getInstance().executeAll(requests, 4, System.currentTimeMillis() + 10000, new BulkListener() {
+                @Override
+                public void onComplete(BulkItem item) {
+                    streamed.add(item);
+                }
+            }).get(15, TimeUnit.SECONDS);
+
+            assertFalse(result.isTimedOut());
+            assertEquals(31, streamed.size());
+            assertEquals(30, result.getSuccessCount());
+            assertTrue(maxConcurrent.get() <= 4);
+            for (int i = 0; i < 30; i++) {
+                assertEquals("/count/" + i, result.getItems().get(i).getResult().getResponseBodyAsString());
+            }
+            assertTrue(result.getItems().get(30).getError() instanceof IllegalArgumentException);
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testExecuteAllDeadline() throws Exception {
+        LocalTestServer server = new LocalTestServer().start();
+        try {
+            List<HttpRequestSpec> requests = new ArrayList<HttpRequestSpec>();
+            requests.add(HttpRequestSpec.get(server.getBaseUri() + "/echo"));
+            for (int i = 0; i < 5; i++) {
+                requests.add(HttpRequestSpec.get(server.getBaseUri() + "/delay?ms=5000"));
+            }
+            // 先建立好连接，避免client初始化的耗时计入截止时间
+            AsyncHttpClientHelper.getInstance().get(server.getBaseUri() + "/echo").get(5, TimeUnit.SECONDS);
+            long start = System.currentTimeMillis();
+            BulkResult result = AsyncHttpClientHelper.getInstance().executeAll(requests, 2, start + 1000).get(5, TimeUnit.SECONDS);
+
+            assertTrue(System.currentTimeMillis() - start < 3000);
+            assertTrue(result.isTimedOut());
+            assertEquals(1, result.getSuccessCount());
+            assertTrue(result.getItems().get(1).getError() instanceof TimeoutException);
+            assertTrue(result.getItems().get(5).getError() instanceof TimeoutException);
+
+            // 被取消的请求立即归还连接
+            PoolingNHttpClientConnectionManager cm = ClientRegistry.getAsyncClient(ClientRegistry.DEFAULT_ASYNC).getConnectionManager();
+            for (int i = 0; i < 20 && cm.getTotalStats().getLeased() > 0; i++) {
+                Thread.sleep(50);
+            }
+            assertEquals(0, cm.getTotalStats().getLeased());
+        } finally {
+            server.stop();
+        }
+    }
 }
@@ -0,0 +1,134 @@
+package httpclientLearn.breaker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import config.ClientConfig;
+import httpclientLearn.LocalTestServer;
+import httpclientLearn.async.AsyncHttpClientHelper;
+import httpclientLearn.metrics.RouteMetrics;
+import httpclientLearn.registry.ClientRegistry;
+import httpclientLearn.simple.HttpClientHelper;
+
+public class CircuitBreakerTest {
+
+    private static final String CLIENT = "breaker-test";
+
+    @BeforeClass
+    public static void register() {
+        ClientRegistry.register(ClientConfig.custom(CLIENT).setCircuitBreaker(50, 0, 1000).setCircuitBreakerWindow(10, 5).setCircuitBreakerOpen(60000, 1).build());
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        ClientRegistry.close(CLIENT);
+    }
+
+    @Test
+    public void testStateTransitions() throws Exception {
+        ClientConfig config = ClientConfig.custom("breaker-unit").setCircuitBreaker(50, 50, 100).setCircuitBreakerWindow(10, 5).setCircuitBreakerOpen(200, 2).build();
+        CircuitBreakers breakers = new CircuitBreakers(config);
+        final List<CircuitStateChange> changes = new ArrayList<CircuitStateChange>();
+        breakers.addListener(new CircuitStateListener() {
+            @Override
+            public void stateChanged(CircuitStateChange change) {
+                changes.add(change);
+            }
+        });
+        CircuitBreaker breaker = breakers.get(new HttpHost("localhost", 8080));
+
+        // 不足minimumCalls时不熔断
+        for (int i = 0; i < 4; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onResult(RouteMetrics.FAILURE, 0);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onResult(503, 0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(1, breaker.getRejectedCount());
+
+        // 半开只放行指定数量的探测请求
+        Thread.sleep(250);
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onResult(200, TimeUnit.MILLISECONDS.toNanos(1));
+        breaker.onResult(200, TimeUnit.MILLISECONDS.toNanos(1));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getFailureRate(), 0.001);
+
+        // 慢调用同样触发熔断，半开时探测失败重新打开
+        for (int i = 0; i < 5; i++) {
+            breaker.onResult(200, TimeUnit.MILLISECONDS.toNanos(150));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Thread.sleep(250);
+        assertTrue(breaker.tryAcquire());
+        breaker.onResult(RouteMetrics.FAILURE, 0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        assertEquals(6, changes.size());
+        assertEquals(CircuitBreaker.State.CLOSED, changes.get(0).getFrom());
+        assertEquals(CircuitBreaker.State.OPEN, changes.get(0).getTo());
+        assertEquals(100, changes.get(0).getFailureRate(), 0.001);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, changes.get(5).getFrom());
+    }
+
+    @Test
+    public void testDefaultPort() {
+        CircuitBreakers breakers = new CircuitBreakers(ClientConfig.custom("breaker-port").setCircuitBreaker(50, 0, 1000).build());
+        // 写不写默认端口都是同一个熔断器
+        CircuitBreaker breaker = breakers.get(URI.create("https://api.example.com/a"));
+        assertSame(breaker, breakers.get(URI.create("https://api.example.com:443/b")));
+        assertSame(breaker, breakers.get(new HttpHost("api.example.com", 443, "https")));
+        assertEquals(1, breakers.getAll().size());
+    }
+
+    @Test
+    public void testFailFast() throws Exception {
+        // 取一个没有服务监听的端口
+        LocalTestServer server = new LocalTestServer().start();
+        String uri = server.getBaseUri() + "/echo";
+        server.stop();
+
+        for (int i = 0; i < 5; i++) {
+            assertNull(HttpClientHelper.getInstance(CLIENT).get(uri));
+        }
+        CircuitBreaker breaker = ClientRegistry.getClient(CLIENT).getCircuitBreakers().getAll().get(0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertNull(HttpClientHelper.getInstance(CLIENT).get(uri));
+        assertEquals(1, breaker.getRejectedCount());
+
+        for (int i = 0; i < 5; i++) {
+            try {
+                AsyncHttpClientHelper.getInstance(CLIENT).get(uri).get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                // 连接被拒绝
+            }
+        }
+        try {
+            AsyncHttpClientHelper.getInstance(CLIENT).get(uri).get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof CircuitOpenException);
+        }
+    }
+}
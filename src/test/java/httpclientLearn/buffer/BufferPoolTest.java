@@ -0,0 +1,106 @@
+package httpclientLearn.buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadFactory;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import httpclientLearn.simple.VirtualThreads;
+
+public class BufferPoolTest {
+
+    @Test
+    public void testSizeClass() {
+        assertEquals(0, BufferPool.sizeClass(1));
+        assertEquals(0, BufferPool.sizeClass(4096));
+        assertEquals(1, BufferPool.sizeClass(4097));
+        assertEquals(BufferPool.MAX_SHIFT - BufferPool.MIN_SHIFT, BufferPool.sizeClass(1 << BufferPool.MAX_SHIFT));
+        assertEquals(-1, BufferPool.sizeClass((1 << BufferPool.MAX_SHIFT) + 1));
+    }
+
+    @Test
+    public void testReuse() {
+        BufferPool pool = new BufferPool(false, 4, 2);
+        PooledBuffer buffer = pool.acquire(100);
+        buffer.write(new byte[100], 0, 100);
+        buffer.release();
+        assertTrue(buffer.isReleased());
+        buffer.release();
+
+        long allocations = pool.getAllocationCount();
+        pool.acquire(200).release();
+        assertEquals(allocations, pool.getAllocationCount());
+    }
+
+    @Test
+    public void testVirtualThreadsUseSharedPool() throws Exception {
+        final ThreadFactory factory = VirtualThreads.factory("buffer-test-");
+        Assume.assumeNotNull(factory);
+        final BufferPool pool = new BufferPool(false, 4, 2);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                assertTrue(BufferPool.isVirtual(Thread.currentThread()));
+                pool.acquire(100).release();
+            }
+        };
+        Thread first = factory.newThread(task);
+        first.start();
+        first.join();
+        long allocations = pool.getAllocationCount();
+        // 上一个虚拟线程归还的buffer进入共享队列，下一个线程可以复用
+        Thread second = factory.newThread(task);
+        second.start();
+        second.join();
+        assertEquals(allocations, pool.getAllocationCount());
+    }
+
+    @Test
+    public void testGrow() throws Exception {
+        for (boolean direct : new boolean[] { false, true }) {
+            BufferPool pool = new BufferPool(direct, 4, 2);
+            byte[] data = new byte[100000];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) i;
+            }
+            PooledBuffer buffer = pool.acquire(16);
+            assertEquals(data.length, buffer.readFrom(new ByteArrayInputStream(data)));
+            ByteBuffer view = buffer.asReadOnlyBuffer();
+            assertEquals(data.length, view.remaining());
+            assertEquals((byte) 99999, view.get(99999));
+            assertFalse(view.isDirect() != direct);
+            buffer.release();
+        }
+    }
+
+    @Test
+    public void testReadExactSize() throws Exception {
+        BufferPool pool = new BufferPool(false, 4, 2);
+        byte[] data = new byte[1 << BufferPool.MIN_SHIFT];
+        PooledBuffer buffer = pool.acquire(data.length);
+        // 长度正好等于容量时读到EOF不扩容
+        assertEquals(data.length, buffer.readFrom(new ByteArrayInputStream(data)));
+        assertEquals(1, pool.getAllocationCount());
+        assertEquals(data.length, buffer.asReadOnlyBuffer().capacity());
+
+        // 多出一个字节时才扩容
+        buffer.release();
+        buffer = pool.acquire(data.length);
+        assertEquals(data.length + 1, buffer.readFrom(new ByteArrayInputStream(new byte[data.length + 1])));
+        assertEquals(data.length + 1, buffer.size());
+        buffer.release();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUseAfterRelease() {
+        PooledBuffer buffer = new BufferPool(false, 4, 2).acquire(16);
+        buffer.release();
+        buffer.asReadOnlyBuffer();
+    }
+}
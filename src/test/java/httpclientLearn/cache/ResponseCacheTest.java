@@ -0,0 +1,102 @@
+package httpclientLearn.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import config.ClientConfig;
+import httpclientLearn.LocalTestServer;
+import httpclientLearn.dto.HttpResult;
+import httpclientLearn.registry.ClientRegistry;
+import httpclientLearn.simple.HttpClientHelper;
+
+public class ResponseCacheTest {
+
+    private static final String CLIENT = "cache-test";
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private LocalTestServer server;
+    private HttpClientHelper helper;
+
+    @Before
+    public void setUp() throws IOException {
+        // /cc/<Cache-Control>：返回指定的Cache-Control以及固定的ETag，带If-None-Match时返回304
+        server = new LocalTestServer().registerHandler("/cc/*", new HttpRequestHandler() {
+            @Override
+            public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+                requests.incrementAndGet();
+                String uri = request.getRequestLine().getUri();
+                String cacheControl = uri.substring(uri.indexOf("/cc/") + 4).split("\\?")[0];
+                response.setHeader("Cache-Control", cacheControl);
+                response.setHeader("ETag", "\"v1\"");
+                if (request.getFirstHeader("If-None-Match") != null && "\"v1\"".equals(request.getFirstHeader("If-None-Match").getValue())) {
+                    notModified.incrementAndGet();
+                    response.setStatusCode(HttpStatus.SC_NOT_MODIFIED);
+                    return;
+                }
+                response.setEntity(new StringEntity(uri));
+            }
+        }).start();
+        ClientRegistry.register(ClientConfig.custom(CLIENT).setResponseCacheSize(64 * 1024).build());
+        helper = HttpClientHelper.getInstance(CLIENT);
+    }
+
+    @After
+    public void tearDown() {
+        ClientRegistry.close(CLIENT);
+        server.stop();
+    }
+
+    @Test
+    public void testCache() {
+        ResponseCache cache = ClientRegistry.getClient(CLIENT).getResponseCache();
+
+        // 新鲜期内直接从内存返回；写入缓存的调用方修改自己的响应体不影响缓存
+        HttpResult first = helper.get(server.getBaseUri() + "/cc/max-age=60");
+        assertEquals("/cc/max-age=60", first.getResponseBodyAsString());
+        Arrays.fill(first.getResponseBody(), (byte) 'x');
+        assertEquals("/cc/max-age=60", helper.get(server.getBaseUri() + "/cc/max-age=60").getResponseBodyAsString());
+        assertEquals(1, requests.get());
+        assertEquals(1, cache.getHitCount());
+
+        // no-cache每次都要重新验证，304时沿用缓存的响应体
+        assertEquals("/cc/no-cache", helper.get(server.getBaseUri() + "/cc/no-cache").getResponseBodyAsString());
+        assertEquals("/cc/no-cache", helper.get(server.getBaseUri() + "/cc/no-cache").getResponseBodyAsString());
+        assertEquals(3, requests.get());
+        assertEquals(1, notModified.get());
+        assertEquals(1, cache.getRevalidationCount());
+
+        // no-store不缓存
+        helper.get(server.getBaseUri() + "/cc/no-store");
+        helper.get(server.getBaseUri() + "/cc/no-store");
+        assertEquals(5, requests.get());
+        assertEquals(1, cache.getHitCount());
+
+        // 请求要求不使用缓存
+        helper.get(server.getBaseUri() + "/cc/max-age=60", Collections.singletonMap("Cache-Control", "no-cache"), null);
+        assertEquals(6, requests.get());
+
+        // 按字节数淘汰
+        for (int i = 0; i < 200; i++) {
+            helper.get(server.getBaseUri() + "/cc/max-age=60?" + i + "=" + new String(new char[1000]).replace('\0', 'x'));
+        }
+        assertTrue(cache.getEvictionCount() > 0);
+        assertTrue(cache.getBytes() <= cache.getMaxBytes());
+    }
+}
@@ -0,0 +1,156 @@
+package httpclientLearn.coalesce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import config.ClientConfig;
+import httpclientLearn.LocalTestServer;
+import httpclientLearn.async.AsyncHttpClientHelper;
+import httpclientLearn.dto.HttpResult;
+import httpclientLearn.registry.ClientRegistry;
+import httpclientLearn.simple.HttpClientHelper;
+
+public class RequestCoalescerTest {
+
+    private static final String CLIENT = "coalesce-test";
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private LocalTestServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalTestServer().registerHandler("/slow*", new HttpRequestHandler() {
+            @Override
+            public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+                requests.incrementAndGet();
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                response.setEntity(new StringEntity(request.getRequestLine().getUri()));
+            }
+        }).start();
+    }
+
+    @BeforeClass
+    public static void register() {
+        ClientRegistry.register(ClientConfig.custom(CLIENT).setCoalescing(true).setPooledBuffers(true).build());
+    }
+
+    @After
+    public void tearDown() {
+        ClientRegistry.close(CLIENT);
+        server.stop();
+    }
+
+    @Test
+    public void testSync() throws Exception {
+        final String uri = server.getBaseUri() + "/slow/sync";
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(20);
+        List<Future<HttpResult>> futures = new ArrayList<Future<HttpResult>>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(executor.submit(new Callable<HttpResult>() {
+                @Override
+                public HttpResult call() throws Exception {
+                    start.await();
+                    return HttpClientHelper.getInstance(CLIENT).get(uri);
+                }
+            }));
+        }
+        start.countDown();
+        List<HttpResult> results = new ArrayList<HttpResult>();
+        for (Future<HttpResult> future : futures) {
+            HttpResult result = future.get(10, TimeUnit.SECONDS);
+            assertEquals("/slow/sync", result.getResponseBodyAsString());
+            results.add(result);
+        }
+        executor.shutdown();
+        assertNotSame(results.get(0), results.get(1));
+        for (HttpResult result : results) {
+            result.release();
+        }
+
+        RequestCoalescer coalescer = ClientRegistry.getClient(CLIENT).getCoalescer();
+        assertEquals(20, coalescer.getExecutedCount() + coalescer.getCoalescedCount());
+        assertEquals(requests.get(), coalescer.getExecutedCount());
+        assertTrue(coalescer.getCoalescedCount() > 0);
+        assertEquals(0, coalescer.getInFlightCount());
+
+        // leader完成后相同的请求重新发出
+        long executed = coalescer.getExecutedCount();
+        HttpClientHelper.getInstance(CLIENT).get(uri);
+        assertEquals(executed + 1, coalescer.getExecutedCount());
+    }
+
+    @Test
+    public void testAsync() throws Exception {
+        String uri = server.getBaseUri() + "/slow/async";
+        List<ListenableFuture<HttpResult>> futures = new ArrayList<ListenableFuture<HttpResult>>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(AsyncHttpClientHelper.getInstance(CLIENT).get(uri));
+        }
+        // 取消其中一个不影响其他等待方
+        futures.remove(0).cancel(true);
+        for (HttpResult result : Futures.allAsList(futures).get(10, TimeUnit.SECONDS)) {
+            assertEquals("/slow/async", result.getResponseBodyAsString());
+        }
+        RequestCoalescer coalescer = ClientRegistry.getAsyncClient(CLIENT).getCoalescer();
+        assertEquals(1, coalescer.getExecutedCount());
+        assertEquals(19, coalescer.getCoalescedCount());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testCopyOnlyForWaiters() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        HttpResult result = new HttpResult(HttpVersion.HTTP_1_1, 200, "OK");
+        result.setResponseBody("body".getBytes("UTF-8"));
+
+        // 没有等待方时不生成共享拷贝
+        SettableFuture<HttpResult> slot = SettableFuture.create();
+        assertNull(coalescer.join("k", slot));
+        coalescer.complete("k", slot, result);
+        assertNull(slot.get());
+
+        slot = SettableFuture.create();
+        assertNull(coalescer.join("k", slot));
+        ListenableFuture<HttpResult> shared = coalescer.join("k", SettableFuture.<HttpResult>create());
+        coalescer.complete("k", slot, result);
+        HttpResult copy = RequestCoalescer.copyOf(shared).get(5, TimeUnit.SECONDS);
+        assertNotSame(result, copy);
+        assertNotSame(slot.get(), copy);
+        assertEquals("body", copy.getResponseBodyAsString());
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+}
@@ -0,0 +1,171 @@
+package httpclientLearn.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import config.ClientConfig;
+import httpclientLearn.LocalTestServer;
+import httpclientLearn.async.AsyncHttpClientHelper;
+import httpclientLearn.metrics.ClientMetrics;
+import httpclientLearn.metrics.RouteMetrics;
+import httpclientLearn.registry.ClientRegistry;
+import httpclientLearn.simple.HttpClientHelper;
+
+public class JsonCodecTest {
+
+    private static final String CLIENT = "codec-test";
+    private static LocalTestServer server;
+
+    public static class Item {
+        String name;
+        int count;
+    }
+
+    /**
+     * 测试环境没有Jackson，只解析 {"name":"...","count":N}
+     */
+    static class ItemCodec implements JsonCodec {
+
+        private static final Pattern ITEM = Pattern.compile("\\{\"name\":\"(.*)\",\"count\":(\\d+)\\}");
+
+        @Override
+        public <T> T read(InputStream in, Charset charset, Class<T> type) throws IOException {
+            StringBuilder json = new StringBuilder();
+            Reader reader = new InputStreamReader(in, charset);
+            char[] chars = new char[256];
+            for (int n; (n = reader.read(chars)) != -1;) {
+                json.append(chars, 0, n);
+            }
+            Matcher matcher = ITEM.matcher(json);
+            if (!matcher.matches()) {
+                throw new IOException("unexpected json " + json);
+            }
+            Item item = new Item();
+            item.name = matcher.group(1);
+            item.count = Integer.parseInt(matcher.group(2));
+            return type.cast(item);
+        }
+    }
+
+    @BeforeClass
+    public static void start() throws IOException {
+        ClientRegistry.register(ClientConfig.custom(CLIENT).setJsonCodec(new ItemCodec()).build());
+        server = new LocalTestServer().registerHandler("/item*", new HttpRequestHandler() {
+            @Override
+            public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+                // name回显Accept，没有声明字符集时按UTF-8
+                String json = "{\"name\":\"" + request.getFirstHeader(HttpHeaders.ACCEPT).getValue() + " caf\u00e9\",\"count\":3}";
+                response.setEntity(new ByteArrayEntity(json.getBytes("UTF-8"), ContentType.create("application/json")));
+            }
+        }).registerHandler("/latin*", new HttpRequestHandler() {
+            @Override
+            public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+                response.setEntity(new StringEntity("{\"name\":\"caf\u00e9\",\"count\":1}", ContentType.create("application/json", "ISO-8859-1")));
+            }
+        }).registerHandler("/malformed*", new HttpRequestHandler() {
+            @Override
+            public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+                response.setEntity(new StringEntity("[1,2", ContentType.APPLICATION_JSON));
+            }
+        }).registerHandler("/missing*", new HttpRequestHandler() {
+            @Override
+            public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+                response.setStatusCode(HttpStatus.SC_NOT_FOUND);
+                response.setEntity(new StringEntity("{}", ContentType.APPLICATION_JSON));
+            }
+        }).start();
+    }
+
+    @AfterClass
+    public static void stop() {
+        server.stop();
+        ClientRegistry.close(CLIENT);
+    }
+
+    @Test
+    public void testGet() throws Exception {
+        Item item = HttpClientHelper.getInstance(CLIENT).get(server.getBaseUri() + "/item", Item.class);
+        assertEquals("application/json caf\u00e9", item.name);
+        assertEquals(3, item.count);
+
+        item = AsyncHttpClientHelper.getInstance(CLIENT).get(server.getBaseUri() + "/item", Item.class).get(5, TimeUnit.SECONDS);
+        assertEquals("application/json caf\u00e9", item.name);
+        assertEquals(3, item.count);
+    }
+
+    @Test
+    public void testDeclaredCharset() throws Exception {
+        assertEquals("caf\u00e9", HttpClientHelper.getInstance(CLIENT).get(server.getBaseUri() + "/latin", Item.class).name);
+        assertEquals("caf\u00e9", AsyncHttpClientHelper.getInstance(CLIENT).get(server.getBaseUri() + "/latin", Item.class).get(5, TimeUnit.SECONDS).name);
+    }
+
+    @Test
+    public void testErrorStatus() throws Exception {
+        assertNull(HttpClientHelper.getInstance(CLIENT).get(server.getBaseUri() + "/missing", Item.class));
+        try {
+            AsyncHttpClientHelper.getInstance(CLIENT).get(server.getBaseUri() + "/missing", Item.class).get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof HttpResponseException);
+            assertEquals(HttpStatus.SC_NOT_FOUND, ((HttpResponseException) e.getCause()).getStatusCode());
+        }
+    }
+
+    @Test
+    public void testMalformedBody() throws Exception {
+        // 解码失败按实际的响应码记录，不计为传输失败
+        assertNull(HttpClientHelper.getInstance(CLIENT).get(server.getBaseUri() + "/malformed", Item.class));
+        assertStatusCounted(ClientRegistry.getClient(CLIENT).snapshotMetrics());
+        try {
+            AsyncHttpClientHelper.getInstance(CLIENT).get(server.getBaseUri() + "/malformed", Item.class).get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof JsonDecodeException);
+            assertEquals(HttpStatus.SC_OK, ((JsonDecodeException) e.getCause()).getStatusCode());
+        }
+        assertStatusCounted(ClientRegistry.getAsyncClient(CLIENT).snapshotMetrics());
+    }
+
+    private static void assertStatusCounted(ClientMetrics.Snapshot snapshot) {
+        for (RouteMetrics.RouteSnapshot route : snapshot.getRoutes()) {
+            assertNull(route.getStatusCounts().get(RouteMetrics.FAILURE));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNoCodec() {
+        ClientRegistry.register(ClientConfig.custom("codec-none").setJsonCodec(null).build());
+        try {
+            HttpClientHelper.getInstance("codec-none").get(server.getBaseUri() + "/item", Item.class);
+        } finally {
+            ClientRegistry.close("codec-none");
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package httpclientLearn.compress;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+import config.ClientConfig;
+import httpclientLearn.LocalTestServer;
+import httpclientLearn.async.AsyncHttpClientHelper;
+import httpclientLearn.dto.HttpResult;
+import httpclientLearn.metrics.ClientMetrics;
+import httpclientLearn.registry.ClientRegistry;
+import httpclientLearn.simple.HttpClientHelper;
+
+public class ContentCodecTest {
+
+    private static final String CLIENT = "compress-test";
+    private static final String POOLED_CLIENT = "compress-pooled-test";
+    private static final byte[] PAYLOAD = payload();
+
+    private LocalTestServer server;
+
+    @BeforeClass
+    public static void register() {
+        ClientRegistry.register(ClientConfig.custom(CLIENT).setRequestCompressionThreshold(1024).build());
+        ClientRegistry.register(ClientConfig.custom(POOLED_CLIENT).setPooledBuffers(true).build());
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalTestServer().registerHandler("/gzip*", new HttpRequestHandler() {
+            @Override
+            public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+                // 客户端声明支持gzip时才压缩
+                Header accept = request.getFirstHeader(HttpHeaders.ACCEPT_ENCODING);
+                ByteArrayEntity entity;
+                if (accept != null && accept.getValue().contains("gzip")) {
+                    entity = new ByteArrayEntity(ContentCodec.gzip(PAYLOAD));
+                    entity.setContentEncoding("gzip");
+                } else {
+                    entity = new ByteArrayEntity(PAYLOAD);
+                }
+                response.setEntity(entity);
+            }
+        }).registerHandler("/gunzip*", new HttpRequestHandler() {
+            @Override
+            public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+                // 返回解压后的请求体，响应头标明请求体是否被压缩
+                Header encoding = request.getFirstHeader(HttpHeaders.CONTENT_ENCODING);
+                InputStream in = ((HttpEntityEnclosingRequest) request).getEntity().getContent();
+                if (encoding != null && "gzip".equals(encoding.getValue())) {
+                    in = new GZIPInputStream(in);
+                    response.setHeader("X-Compressed", "true");
+                }
+                response.setEntity(new ByteArrayEntity(ByteStreams.toByteArray(in)));
+            }
+        }).start();
+    }
+
+    @After
+    public void tearDown() {
+        ClientRegistry.close(CLIENT);
+        ClientRegistry.close(POOLED_CLIENT);
+        server.stop();
+    }
+
+    @Test
+    public void testResponseDecompression() throws Exception {
+        String uri = server.getBaseUri() + "/gzip";
+        assertDecoded(HttpClientHelper.getInstance(CLIENT).get(uri));
+        assertDecoded(HttpClientHelper.getInstance(POOLED_CLIENT).get(uri));
+        assertDecoded(AsyncHttpClientHelper.getInstance(CLIENT).get(uri).get(5, TimeUnit.SECONDS));
+        assertDecoded(AsyncHttpClientHelper.getInstance(POOLED_CLIENT).get(uri).get(5, TimeUnit.SECONDS));
+
+        for (ClientMetrics.Snapshot snapshot : Arrays.asList(ClientRegistry.getClient(CLIENT).snapshotMetrics(), ClientRegistry.getAsyncClient(POOLED_CLIENT).snapshotMetrics())) {
+            assertEquals(PAYLOAD.length, snapshot.getResponseBytesDecoded());
+            assertTrue(snapshot.getResponseBytesCompressed() < PAYLOAD.length / 5);
+        }
+    }
+
+    @Test
+    public void testContentCompressionDisabled() throws Exception {
+        ClientRegistry.register(ClientConfig.custom("compress-disabled-test").setContentCompression(false).build());
+        try {
+            HttpResult result = HttpClientHelper.getInstance("compress-disabled-test").get(server.getBaseUri() + "/gzip");
+            assertArrayEquals(PAYLOAD, result.getResponseBody());
+            assertEquals(0, ClientRegistry.getClient("compress-disabled-test").snapshotMetrics().getResponseBytesCompressed());
+        } finally {
+            ClientRegistry.close("compress-disabled-test");
+        }
+    }
+
+    @Test
+    public void testRequestCompression() throws Exception {
+        String uri = server.getBaseUri() + "/gunzip";
+        HttpResult result = HttpClientHelper.getInstance(CLIENT).post(uri, PAYLOAD);
+        assertArrayEquals(PAYLOAD, result.getResponseBody());
+        assertEquals("true", result.getHeaders().get("X-Compressed"));
+
+        result = AsyncHttpClientHelper.getInstance(CLIENT).post(uri, PAYLOAD).get(5, TimeUnit.SECONDS);
+        assertArrayEquals(PAYLOAD, result.getResponseBody());
+        assertEquals("true", result.getHeaders().get("X-Compressed"));
+
+        // 小于阈值的请求体原样发送
+        result = HttpClientHelper.getInstance(CLIENT).post(uri, "small".getBytes("UTF-8"));
+        assertEquals("small", result.getResponseBodyAsString());
+        assertFalse(result.getHeaders().containsKey("X-Compressed"));
+
+        ClientMetrics.Snapshot snapshot = ClientRegistry.getClient(CLIENT).snapshotMetrics();
+        assertEquals(PAYLOAD.length, snapshot.getRequestBytesRaw());
+        assertTrue(snapshot.getRequestBytesCompressed() < PAYLOAD.length / 5);
+    }
+
+    private static void assertDecoded(HttpResult result) {
+        try {
+            assertArrayEquals(PAYLOAD, result.getResponseBody());
+            assertNull(result.getHeaders().get(HttpHeaders.CONTENT_ENCODING));
+        } finally {
+            result.release();
+        }
+    }
+
+    private static byte[] payload() {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 500; i++) {
+            json.append("{\"id\":").append(i).append(",\"name\":\"item-").append(i).append("\",\"enabled\":true},");
+        }
+        return json.append("{}]").toString().getBytes();
+    }
+}
@@ -0,0 +1,233 @@
+package httpclientLearn.deadline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.pool.PoolStats;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import config.ClientConfig;
+import httpclientLearn.LocalTestServer;
+import httpclientLearn.async.AsyncHttpClientHelper;
+import httpclientLearn.dto.HttpResult;
+import httpclientLearn.metrics.ClientMetrics;
+import httpclientLearn.metrics.LatencyHistogram;
+import httpclientLearn.registry.ClientRegistry;
+import httpclientLearn.registry.PooledHttpClient;
+import httpclientLearn.simple.HttpClientHelper;
+
+public class DeadlineTest {
+
+    private static final String CLIENT = "deadline-test";
+
+    private LocalTestServer server;
+
+    @BeforeClass
+    public static void register() {
+        ClientRegistry.register(ClientConfig.custom(CLIENT).setDefaultMaxPerRoute(1).build());
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        ClientRegistry.close(CLIENT);
+    }
+
+    @Before
+    public void start() throws IOException {
+        server = new LocalTestServer().start();
+    }
+
+    @After
+    public void stop() {
+        server.stop();
+    }
+
+    @Test
+    public void testSplit() {
+        RequestConfig base = RequestConfig.custom().setConnectionRequestTimeout(30000).setConnectTimeout(200).setSocketTimeout(0).build();
+        RequestConfig split = Deadline.after(1000, TimeUnit.MILLISECONDS).split(base);
+
+        // 获取连接最多用一半，更短的超时保持不变，不限制的超时由剩余时间代替
+        assertTrue(split.getConnectionRequestTimeout() > 0 && split.getConnectionRequestTimeout() <= 500);
+        assertEquals(200, split.getConnectTimeout());
+        assertTrue(split.getSocketTimeout() > 500 && split.getSocketTimeout() <= 1000);
+    }
+
+    @Test
+    public void testExpired() throws Exception {
+        Deadline expired = Deadline.at(System.currentTimeMillis() - 1);
+        assertNull(HttpClientHelper.getInstance(CLIENT).get(server.getBaseUri() + "/echo", null, null, expired));
+        try {
+            AsyncHttpClientHelper.getInstance(CLIENT).head(server.getBaseUri() + "/echo", expired).get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof DeadlineExceededException);
+        }
+        assertEquals(0, ClientRegistry.getClient(CLIENT).getConnectionManager().getTotalStats().getLeased());
+    }
+
+    @Test
+    public void testShedWhenPoolIsBusy() throws Exception {
+        final PooledHttpClient client = ClientRegistry.getClient(CLIENT);
+        final String uri = server.getBaseUri() + "/delay?ms=1000";
+        // 占住唯一的连接
+        Thread holder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                HttpClientHelper.getInstance(CLIENT).get(uri);
+            }
+        });
+        holder.start();
+        long wait = System.currentTimeMillis() + 2000;
+        while (client.getConnectionManager().getTotalStats().getLeased() == 0 && System.currentTimeMillis() < wait) {
+            Thread.sleep(10);
+        }
+        HttpHost target = URIUtils.extractHost(URI.create(uri));
+        for (int i = 0; i < 10; i++) {
+            client.getMetrics().recordRequest(new HttpRoute(target), HttpStatus.SC_OK, TimeUnit.SECONDS.toNanos(2), 0, 0);
+        }
+
+        // 估计要等2s才有连接，500ms的截止时间不排队直接拒绝
+        long start = System.currentTimeMillis();
+        assertNull(HttpClientHelper.getInstance(CLIENT).get(server.getBaseUri() + "/echo", null, null, Deadline.after(500, TimeUnit.MILLISECONDS)));
+        assertTrue(System.currentTimeMillis() - start < 200);
+        assertEquals(0, client.getConnectionManager().getTotalStats().getPending());
+
+        // 连接归还之后同样的截止时间可以拿到连接
+        holder.join();
+        HttpResult result = HttpClientHelper.getInstance(CLIENT).get(server.getBaseUri() + "/echo", null, null, Deadline.after(500, TimeUnit.MILLISECONDS));
+        assertNotNull(result);
+        assertEquals(HttpStatus.SC_OK, result.getStatusCode());
+    }
+
+    @Test
+    public void testCheckLeaseDefaultPort() {
+        // 连接池和指标中的route都带默认端口，uri中没有写端口
+        HttpHost target = new HttpHost("api.example.com", 443, "https");
+        final HttpRoute route = new HttpRoute(target, null, true);
+        ConnPoolControl<HttpRoute> pool = new FullPool(route);
+        ClientMetrics metrics = new ClientMetrics(CLIENT);
+        for (int i = 0; i < 10; i++) {
+            metrics.recordRequest(route, HttpStatus.SC_OK, TimeUnit.SECONDS.toNanos(2), 0, 0);
+        }
+        try {
+            Deadline.after(500, TimeUnit.MILLISECONDS).checkLease(pool, metrics, URIUtils.extractHost(URI.create("https://api.example.com/items")));
+            fail();
+        } catch (DeadlineExceededException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("estimated lease wait"));
+        }
+    }
+
+    @Test
+    public void testCheckLeaseSkipsLatencyWhenPoolHasRoom() throws DeadlineExceededException {
+        HttpHost full = new HttpHost("full.example.com", 443, "https");
+        ClientMetrics metrics = new ClientMetrics(CLIENT) {
+            @Override
+            public LatencyHistogram.HistogramSnapshot latency(HttpHost target) {
+                throw new AssertionError("latency snapshot for " + target);
+            }
+        };
+        // 连接池还有空间时不取耗时快照
+        Deadline.after(500, TimeUnit.MILLISECONDS).checkLease(new FullPool(new HttpRoute(full, null, true)), metrics, new HttpHost("api.example.com", 443, "https"));
+    }
+
+    @Test
+    public void testAbortAtDeadline() throws Exception {
+        long start = System.currentTimeMillis();
+        assertNull(HttpClientHelper.getInstance(CLIENT).get(server.getBaseUri() + "/delay?ms=3000", null, null, Deadline.after(300, TimeUnit.MILLISECONDS)));
+        assertTrue(System.currentTimeMillis() - start < 1500);
+
+        ClientMetrics metrics = ClientRegistry.getAsyncClient(CLIENT).getMetrics();
+        HttpHost target = URIUtils.extractHost(URI.create(server.getBaseUri()));
+        start = System.currentTimeMillis();
+        ListenableFuture<HttpResult> future = AsyncHttpClientHelper.getInstance(CLIENT).get(server.getBaseUri() + "/delay?ms=3000", null, null,
+                Deadline.after(300, TimeUnit.MILLISECONDS));
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertTrue(System.currentTimeMillis() - start < 1500);
+        // 超时的异步请求记入指标，计时线程在结果失败之后记录
+        long wait = System.currentTimeMillis() + 1000;
+        while (failures(metrics, target) == 0 && System.currentTimeMillis() < wait) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, failures(metrics, target));
+    }
+
+    private static long failures(ClientMetrics metrics, HttpHost target) {
+        LatencyHistogram.HistogramSnapshot latency = metrics.latency(target);
+        return latency != null ? latency.getCount() : 0;
+    }
+
+    /**
+     * 只有给定route的连接全部被占用，其他route为空
+     */
+    private static final class FullPool implements ConnPoolControl<HttpRoute> {
+
+        private final HttpRoute full;
+
+        FullPool(HttpRoute full) {
+            this.full = full;
+        }
+
+        @Override
+        public PoolStats getStats(HttpRoute route) {
+            return full.equals(route) ? new PoolStats(1, 3, 0, 1) : new PoolStats(0, 0, 0, 1);
+        }
+
+        @Override
+        public PoolStats getTotalStats() {
+            return getStats(full);
+        }
+
+        @Override
+        public void setMaxTotal(int max) {
+        }
+
+        @Override
+        public int getMaxTotal() {
+            return 1;
+        }
+
+        @Override
+        public void setDefaultMaxPerRoute(int max) {
+        }
+
+        @Override
+        public int getDefaultMaxPerRoute() {
+            return 1;
+        }
+
+        @Override
+        public void setMaxPerRoute(HttpRoute route, int max) {
+        }
+
+        @Override
+        public int getMaxPerRoute(HttpRoute route) {
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package httpclientLearn.dns;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import config.ClientConfig;
+import httpclientLearn.LocalTestServer;
+import httpclientLearn.async.AsyncHttpClientHelper;
+import httpclientLearn.registry.ClientRegistry;
+import httpclientLearn.simple.HttpClientHelper;
+
+public class CachingDnsResolverTest {
+
+    private static final String HOST = "svc.test";
+
+    private LocalTestServer server;
+    private int port;
+    private final List<Socket> sockets = new ArrayList<Socket>();
+    private ServerSocket blackhole;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalTestServer().setLocalAddress(InetAddress.getByName("127.0.0.1")).start();
+        port = Integer.parseInt(server.getBaseUri().substring(server.getBaseUri().lastIndexOf(':') + 1));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (Socket sock : sockets) {
+            sock.close();
+        }
+        if (blackhole != null) {
+            blackhole.close();
+        }
+        server.stop();
+    }
+
+    @Test
+    public void testCacheRotateAndRefresh() throws Exception {
+        LocalDnsResolver local = new LocalDnsResolver().add(HOST, "127.0.0.1", "127.0.0.2", "127.0.0.3");
+        CachingDnsResolver resolver = CachingDnsResolver.create(ClientConfig.custom("dns-test").setDnsResolver(local).setDnsCache(200, 60000).build());
+        try {
+            InetAddress[] first = resolver.resolve(HOST);
+            InetAddress[] second = resolver.resolve(HOST);
+            assertEquals(1, local.getLookups());
+            assertEquals(3, first.length);
+            assertNotEquals(first[0], second[0]);
+
+            // 冷却中的地址总是排在最后
+            InetAddress failed = InetAddress.getByName("127.0.0.2");
+            resolver.markFailed(failed);
+            for (int i = 0; i < 3; i++) {
+                assertEquals(failed, resolver.resolve(HOST)[2]);
+            }
+            resolver.markSucceeded(failed);
+            assertFalse(resolver.isCoolingDown(failed));
+
+            // 超过ttl后不等待慢的解析，先返回旧的结果，后台刷新之后返回新的结果
+            local.add(HOST, "127.0.0.9").setDelay(300);
+            Thread.sleep(250);
+            long start = System.nanoTime();
+            assertEquals(3, resolver.resolve(HOST).length);
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 100);
+            long deadline = System.currentTimeMillis() + 2000;
+            while (resolver.resolve(HOST).length != 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(InetAddress.getByName("127.0.0.9"), resolver.resolve(HOST)[0]);
+            assertEquals(2, local.getLookups());
+        } finally {
+            resolver.close();
+        }
+    }
+
+    @Test(expected = UnknownHostException.class)
+    public void testUnknownHost() throws Exception {
+        CachingDnsResolver resolver = CachingDnsResolver.create(ClientConfig.custom("dns-unknown-test").setDnsResolver(new LocalDnsResolver()).setDnsCache(200, 0).build());
+        try {
+            resolver.resolve("missing.test");
+        } finally {
+            resolver.close();
+        }
+    }
+
+    @Test
+    public void testRaceSlowAddress() throws Exception {
+        // 127.0.0.2上的监听队列被占满，连接会一直挂起
+        blackhole = new ServerSocket();
+        blackhole.bind(new InetSocketAddress("127.0.0.2", port), 1);
+        for (int i = 0; i < 3; i++) {
+            Socket sock = new Socket();
+            sockets.add(sock);
+            try {
+                sock.connect(blackhole.getLocalSocketAddress(), 200);
+            } catch (IOException e) {
+                // 队列已满
+            }
+        }
+        ClientRegistry.register(ClientConfig.custom("dns-race-test").setDnsResolver(new LocalDnsResolver().add(HOST, "127.0.0.2", "127.0.0.1")).setDnsCache(60000, 60000)
+                .setConnectRaceDelay(50).setConnectTimeout(5000).build());
+        try {
+            long start = System.nanoTime();
+            assertEquals(200, HttpClientHelper.getInstance("dns-race-test").get("http://" + HOST + ":" + port + "/echo").getStatusCode());
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+        } finally {
+            ClientRegistry.close("dns-race-test");
+        }
+    }
+
+    @Test
+    public void testFailedAddressCoolsDown() throws Exception {
+        // server只监听127.0.0.1，连接127.0.0.3会被拒绝
+        InetAddress refused = InetAddress.getByName("127.0.0.3");
+        ClientRegistry.register(ClientConfig.custom("dns-cooldown-test").setDnsResolver(new LocalDnsResolver().add(HOST, "127.0.0.3", "127.0.0.1"))
+                .setDnsCache(60000, 60000).build());
+        try {
+            String uri = "http://" + HOST + ":" + port + "/echo";
+            // 同步连接按顺序尝试，第一个地址被拒绝后连接第二个
+            assertEquals(200, HttpClientHelper.getInstance("dns-cooldown-test").get(uri).getStatusCode());
+            assertTrue(ClientRegistry.getClient("dns-cooldown-test").getDnsResolver().isCoolingDown(refused));
+
+            // 异步连接只用第一个地址，失败一次之后被拒绝的地址不再排在第一位
+            AsyncHttpClientHelper async = AsyncHttpClientHelper.getInstance("dns-cooldown-test");
+            int failures = 0;
+            for (int i = 0; i < 6; i++) {
+                try {
+                    async.get(uri).get(5, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    failures++;
+                }
+            }
+            assertTrue(failures <= 1);
+            assertTrue(ClientRegistry.getAsyncClient("dns-cooldown-test").getDnsResolver().isCoolingDown(refused));
+        } finally {
+            ClientRegistry.close("dns-cooldown-test");
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package httpclientLearn.dns;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.conn.DnsResolver;
+
+/**
+ * 测试用的本地解析，host到地址的映射可以随时修改，并统计解析次数
+ */
+public class LocalDnsResolver implements DnsResolver {
+
+    private final ConcurrentMap<String, InetAddress[]> hosts = new ConcurrentHashMap<String, InetAddress[]>();
+    private final AtomicInteger lookups = new AtomicInteger();
+    private volatile long delay;
+
+    public LocalDnsResolver add(String host, String... ips) throws UnknownHostException {
+        InetAddress[] addresses = new InetAddress[ips.length];
+        for (int i = 0; i < ips.length; i++) {
+            addresses[i] = InetAddress.getByName(ips[i]);
+        }
+        hosts.put(host, addresses);
+        return this;
+    }
+
+    /**
+     * 模拟慢的DNS服务器，每次解析等待delay(ms)
+     */
+    public LocalDnsResolver setDelay(long delay) {
+        this.delay = delay;
+        return this;
+    }
+
+    public int getLookups() {
+        return lookups.get();
+    }
+
+    @Override
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        lookups.incrementAndGet();
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UnknownHostException(host);
+            }
+        }
+        InetAddress[] addresses = hosts.get(host);
+        if (addresses == null) {
+            throw new UnknownHostException(host);
+        }
+        return addresses.clone();
+    }
+}
@@ -0,0 +1,82 @@
+package httpclientLearn.dto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.Header;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.junit.Test;
+
+import httpclientLearn.LocalTestServer;
+import httpclientLearn.async.AsyncHttpClientHelper;
+import httpclientLearn.simple.HttpClientHelper;
+
+public class HeaderListTest {
+
+    @Test
+    public void testMultiValue() {
+        Header[] parsed = { new BasicHeader("Set-Cookie", "a=1"), new BasicHeader("Vary", "Accept"), new BasicHeader("set-cookie", "b=2"),
+                new BasicHeader("VARY", "Accept-Encoding") };
+        HeaderList headers = new HeaderList(parsed);
+
+        assertEquals(4, headers.size());
+        assertTrue(headers.contains("SET-COOKIE"));
+        assertEquals("a=1", headers.getFirst("set-cookie"));
+        assertEquals(Arrays.asList("a=1", "b=2"), headers.getValues("Set-Cookie"));
+        assertEquals("Accept, Accept-Encoding", headers.getCombined("vary"));
+        assertNull(headers.getFirst("ETag"));
+        assertTrue(headers.getValues("ETag").isEmpty());
+
+        // Map视图按名字第一次出现的顺序，每个名字一项
+        Map<String, String> view = headers.asMap();
+        assertEquals(2, view.size());
+        assertEquals(Arrays.asList("Set-Cookie", "Vary"), Arrays.asList(view.keySet().toArray()));
+        assertEquals("a=1, b=2", view.get("set-cookie"));
+        assertTrue(view.containsKey("vary"));
+
+        // 引用的数组在修改之前被拷贝
+        headers.remove("vary");
+        headers.add("ETag", "\"1\"");
+        assertEquals("Vary", parsed[1].getName());
+        assertEquals(3, headers.size());
+        assertFalse(view.containsKey("Vary"));
+        assertEquals("\"1\"", view.get("etag"));
+    }
+
+    @Test
+    public void testResponseHeaders() throws Exception {
+        LocalTestServer server = new LocalTestServer().registerHandler("/cookies*", new HttpRequestHandler() {
+            @Override
+            public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+                response.addHeader("Set-Cookie", "a=1");
+                response.addHeader("Set-Cookie", "b=2");
+                response.setEntity(new StringEntity("ok"));
+            }
+        }).start();
+        try {
+            HttpResult result = HttpClientHelper.getInstance().get(server.getBaseUri() + "/cookies");
+            assertEquals(Arrays.asList("a=1", "b=2"), result.getHeaderValues("set-cookie"));
+            assertEquals("a=1, b=2", result.getHeaders().get("SET-COOKIE"));
+            assertEquals(Arrays.asList("a=1", "b=2"), result.copy().getHeaderValues("Set-Cookie"));
+
+            result = AsyncHttpClientHelper.getInstance().get(server.getBaseUri() + "/cookies").get(5, TimeUnit.SECONDS);
+            assertEquals(Arrays.asList("a=1", "b=2"), result.getHeaderValues("Set-Cookie"));
+            assertEquals("a=1", result.getHeader("set-cookie"));
+        } finally {
+            server.stop();
+        }
+    }
+}
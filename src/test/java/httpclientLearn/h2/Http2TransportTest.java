@@ -0,0 +1,100 @@
+package httpclientLearn.h2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.ProtocolVersion;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import config.ClientConfig;
+import httpclientLearn.LocalH2Server;
+import httpclientLearn.LocalTestServer;
+import httpclientLearn.deadline.Deadline;
+import httpclientLearn.dto.BulkItem;
+import httpclientLearn.dto.BulkResult;
+import httpclientLearn.dto.HttpRequestSpec;
+import httpclientLearn.dto.HttpResult;
+import httpclientLearn.registry.ClientRegistry;
+import httpclientLearn.simple.HttpClientHelper;
+
+public class Http2TransportTest {
+
+    private static final ProtocolVersion HTTP_2 = new ProtocolVersion("HTTP", 2, 0);
+
+    @Before
+    public void requireJava11() {
+        Assume.assumeTrue(Http2Transport.isSupported());
+    }
+
+    @Test
+    public void testMultiplexing() throws Exception {
+        LocalH2Server server = new LocalH2Server(10, 200).start();
+        ClientRegistry.register(ClientConfig.custom("h2-test").setHttp2(true).setMaxConcurrentStreams(10).setSslContext(LocalTestServer.clientSslContext()).build());
+        try {
+            HttpClientHelper helper = HttpClientHelper.getInstance("h2-test");
+            List<HttpRequestSpec> requests = new ArrayList<HttpRequestSpec>();
+            for (int i = 0; i < 30; i++) {
+                requests.add(HttpRequestSpec.get(server.getBaseUri() + "/stream?i=" + i));
+            }
+            long start = System.currentTimeMillis();
+            BulkResult result = helper.executeAll(requests, 30, System.currentTimeMillis() + 10000);
+            long elapsed = System.currentTimeMillis() - start;
+            for (BulkItem item : result.getItems()) {
+                assertTrue(String.valueOf(item.getError()), item.isSuccess());
+                assertEquals(HTTP_2, item.getResult().getProtocolVersion());
+                assertTrue(item.getResult().getResponseBodyAsString().startsWith("h2 stream "));
+            }
+            result.release();
+            // 30个请求复用一个连接，stream数不超过服务端声明的上限，超出的在客户端排队
+            assertEquals(1, server.getConnections());
+            assertTrue(String.valueOf(server.getMaxActiveStreams()), server.getMaxActiveStreams() <= 10);
+            assertTrue(String.valueOf(elapsed), elapsed >= 590);
+
+            HttpResult posted = helper.post(server.getBaseUri() + "/upload", "hello".getBytes(StandardCharsets.UTF_8));
+            assertEquals(200, posted.getStatusCode());
+            assertTrue(posted.getResponseBodyAsString().endsWith(" 5"));
+            assertEquals("text/plain", posted.getHeader("Content-Type"));
+        } finally {
+            ClientRegistry.close("h2-test");
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testHttp11Fallback() throws Exception {
+        LocalTestServer server = new LocalTestServer().start();
+        ClientRegistry.register(ClientConfig.custom("h2c-test").setHttp2(true).build());
+        try {
+            HttpClientHelper helper = HttpClientHelper.getInstance("h2c-test");
+            // 服务端忽略Upgrade: h2c，请求照常按HTTP/1.1完成
+            HttpResult result = helper.get(server.getBaseUri() + "/echo?a=1");
+            assertEquals(HttpVersion.HTTP_1_1, result.getProtocolVersion());
+            assertEquals("GET /echo?a=1", result.getResponseBodyAsString());
+            result = helper.post(server.getBaseUri() + "/echo", "body".getBytes(StandardCharsets.UTF_8));
+            assertEquals("body", result.getResponseBodyAsString());
+
+            // 截止时间到达时中断请求
+            long start = System.currentTimeMillis();
+            assertNull(helper.get(server.getBaseUri() + "/delay?ms=3000", null, null, Deadline.after(200, TimeUnit.MILLISECONDS)));
+            assertTrue(System.currentTimeMillis() - start < 2000);
+
+            // 按普通CloseableHttpClient使用的调用方可以做清理，连接由JDK客户端管理
+            @SuppressWarnings("deprecation")
+            org.apache.http.conn.ClientConnectionManager manager = ClientRegistry.getClient("h2c-test").getHttpClient().getConnectionManager();
+            manager.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+            manager.closeExpiredConnections();
+        } finally {
+            ClientRegistry.close("h2c-test");
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package httpclientLearn.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import config.ClientConfig;
+import httpclientLearn.LocalTestServer;
+import httpclientLearn.async.AsyncHttpClientHelper;
+import httpclientLearn.registry.ClientRegistry;
+import httpclientLearn.simple.HttpClientHelper;
+
+public class ClientMetricsTest {
+
+    @Test
+    public void testHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10000; i++) {
+            histogram.recordMicros(i);
+        }
+        LatencyHistogram.HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(10000, snapshot.getCount());
+        assertEquals(10000, snapshot.getMax());
+        // 每个桶的相对误差不超过12.5%
+        assertTrue(Math.abs(snapshot.getP50() - 5000) <= 5000 / 8);
+        assertTrue(Math.abs(snapshot.getP99() - 9900) <= 9900 / 8);
+        assertTrue(snapshot.getP999() <= 10000);
+        for (long value = 0; value < 1L << 41; value = value * 3 + 1) {
+            int index = LatencyHistogram.index(value);
+            assertTrue(value <= LatencyHistogram.upperBound(index) || index == LatencyHistogram.BUCKET_COUNT - 1);
+        }
+    }
+
+    @Test
+    public void testClientSnapshot() throws Exception {
+        LocalTestServer server = new LocalTestServer().start();
+        ClientRegistry.register(ClientConfig.custom("metrics-test").build());
+        try {
+            for (int i = 0; i < 10; i++) {
+                HttpClientHelper.getInstance("metrics-test").post(server.getBaseUri() + "/echo", new byte[100]);
+            }
+            AsyncHttpClientHelper.getInstance("metrics-test").get(server.getBaseUri() + "/echo").get(10, TimeUnit.SECONDS);
+
+            ClientMetrics.Snapshot snapshot = ClientRegistry.getClient("metrics-test").snapshotMetrics();
+            assertEquals(1, snapshot.getRoutes().size());
+            RouteMetrics.RouteSnapshot route = snapshot.getRoutes().get(0);
+            assertEquals(10, route.getLatency().getCount());
+            assertEquals(10, route.getLeaseWait().getCount());
+            assertEquals(Long.valueOf(10), route.getStatusCounts().get(200));
+            assertEquals(1000, route.getBytesIn());
+            assertEquals(1000, route.getBytesOut());
+            assertNotNull(route.getPoolStats());
+            assertEquals(0, route.getPoolStats().getLeased());
+
+            ClientMetrics.Snapshot async = ClientRegistry.getAsyncClient("metrics-test").snapshotMetrics();
+            assertEquals(1, async.getRoutes().get(0).getLatency().getCount());
+        } finally {
+            ClientRegistry.close("metrics-test");
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package httpclientLearn.registry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.pool.PoolStats;
+import org.junit.Test;
+
+import config.ClientConfig;
+import httpclientLearn.metrics.ClientMetrics;
+
+public class AdaptiveRouteSizerTest {
+
+    private static final HttpRoute HOT = new HttpRoute(new HttpHost("hot.example.com"));
+    private static final HttpRoute COLD = new HttpRoute(new HttpHost("cold.example.com"));
+
+    @Test
+    public void testHotRouteGrowsIntoColdRouteBudget() {
+        StubPool pool = new StubPool(40, 20);
+        pool.leased.put(HOT, 20);
+        pool.pending.put(HOT, 5);
+        pool.leased.put(COLD, 0);
+
+        ClientConfig config = ClientConfig.custom("sizer-test").setMaxTotal(40).setDefaultMaxPerRoute(20).setAdaptiveRouteSizing(true).setMinPerRoute(2).setMaxPerRoute(36).build();
+        final List<RouteLimitChange> changes = new ArrayList<RouteLimitChange>();
+        AdaptiveRouteSizer sizer = newSizer(config, pool, new ClientMetrics("sizer-test"));
+        sizer.addListener(new RouteLimitListener() {
+            @Override
+            public void limitChanged(RouteLimitChange change) {
+                changes.add(change);
+            }
+        });
+
+        // 20 + 20 已经占满maxTotal，热点route只能等冷route缩容
+        sizer.adjust();
+        assertEquals(20, pool.getMaxPerRoute(HOT));
+        for (int i = 1; i < AdaptiveRouteSizer.SHRINK_AFTER_PERIODS; i++) {
+            sizer.adjust();
+        }
+        assertEquals(15, pool.getMaxPerRoute(COLD));
+        assertEquals(25, pool.getMaxPerRoute(HOT));
+
+        for (int i = 0; i < 50; i++) {
+            sizer.adjust();
+        }
+        assertEquals(2, pool.getMaxPerRoute(COLD));
+        assertTrue(pool.getMaxPerRoute(HOT) + pool.getMaxPerRoute(COLD) <= 40);
+        assertEquals(36, pool.getMaxPerRoute(HOT));
+        assertEquals(sizer.getIncreases() + sizer.getDecreases(), changes.size());
+        assertEquals(COLD, changes.get(0).getRoute());
+        assertTrue(changes.get(1).isIncrease());
+    }
+
+    @Test
+    public void testLeaseWaitTriggersGrowth() {
+        StubPool pool = new StubPool(100, 10);
+        pool.leased.put(HOT, 8);
+        ClientConfig config = ClientConfig.custom("sizer-test").setMaxTotal(100).setDefaultMaxPerRoute(10).setAdaptiveRouteSizing(true).setLeaseWaitThreshold(5).build();
+        ClientMetrics metrics = new ClientMetrics("sizer-test");
+        AdaptiveRouteSizer sizer = newSizer(config, pool, metrics);
+
+        metrics.recordLeaseWait(HOT, 1000000); // 1ms
+        sizer.adjust();
+        assertEquals(10, pool.getMaxPerRoute(HOT));
+
+        metrics.recordLeaseWait(HOT, 20000000); // 20ms
+        sizer.adjust();
+        assertEquals(15, pool.getMaxPerRoute(HOT));
+
+        // 没有新的等待，窗口内的平均值归零
+        sizer.adjust();
+        assertEquals(15, pool.getMaxPerRoute(HOT));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBounds() {
+        ClientConfig.custom("sizer-test").setDefaultMaxPerRoute(20).setAdaptiveRouteSizing(true).setMaxPerRoute(10).build();
+    }
+
+    private static AdaptiveRouteSizer newSizer(ClientConfig config, final StubPool pool, ClientMetrics metrics) {
+        return new AdaptiveRouteSizer(config, pool, metrics) {
+            @Override
+            protected Set<HttpRoute> routes() {
+                return pool.leased.keySet();
+            }
+        };
+    }
+
+    private static class StubPool implements ConnPoolControl<HttpRoute> {
+        private final Map<HttpRoute, Integer> leased = new HashMap<HttpRoute, Integer>();
+        private final Map<HttpRoute, Integer> pending = new HashMap<HttpRoute, Integer>();
+        private final Map<HttpRoute, Integer> maxPerRoute = new HashMap<HttpRoute, Integer>();
+        private int maxTotal;
+        private int defaultMaxPerRoute;
+
+        StubPool(int maxTotal, int defaultMaxPerRoute) {
+            this.maxTotal = maxTotal;
+            this.defaultMaxPerRoute = defaultMaxPerRoute;
+        }
+
+        @Override
+        public void setMaxTotal(int max) {
+            this.maxTotal = max;
+        }
+
+        @Override
+        public int getMaxTotal() {
+            return maxTotal;
+        }
+
+        @Override
+        public void setDefaultMaxPerRoute(int max) {
+            this.defaultMaxPerRoute = max;
+        }
+
+        @Override
+        public int getDefaultMaxPerRoute() {
+            return defaultMaxPerRoute;
+        }
+
+        @Override
+        public void setMaxPerRoute(HttpRoute route, int max) {
+            maxPerRoute.put(route, max);
+        }
+
+        @Override
+        public int getMaxPerRoute(HttpRoute route) {
+            Integer max = maxPerRoute.get(route);
+            return max != null ? max : defaultMaxPerRoute;
+        }
+
+        @Override
+        public PoolStats getTotalStats() {
+            return new PoolStats(0, 0, 0, maxTotal);
+        }
+
+        @Override
+        public PoolStats getStats(HttpRoute route) {
+            Integer p = pending.get(route);
+            return new PoolStats(leased.get(route), p != null ? p : 0, 0, getMaxPerRoute(route));
+        }
+    }
+}
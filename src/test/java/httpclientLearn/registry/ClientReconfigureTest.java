@@ -0,0 +1,168 @@
+package httpclientLearn.registry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.Test;
+
+import config.ClientConfig;
+import config.ClientConfigLoader;
+import config.RouteConfig;
+
+public class ClientReconfigureTest {
+
+    private static Properties properties(String text) throws IOException {
+        return ClientConfigLoader.read(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testApply() throws IOException {
+        Properties properties = properties("defaults.socketTimeout=3000\n"
+                + "defaults.maxTotal=50\n"
+                + "client.loader.maxTotal=80\n"
+                + "client.loader.route.pay.uri=https://pay.example.com\n"
+                + "client.loader.route.pay.maxPerRoute=40\n"
+                + "client.loader.route.pay.socketTimeout=500\n");
+        ClientConfig config = ClientConfigLoader.apply(ClientConfig.custom("loader").setConnectTimeout(700).build(), properties);
+
+        assertEquals(80, config.getMaxTotal());
+        assertEquals(3000, config.getSocketTimeout());
+        // 文件中没有的配置保留代码中注册的值
+        assertEquals(700, config.getConnectTimeout());
+        assertEquals(1, config.getRoutes().size());
+        RouteConfig route = config.getRoutes().get(0);
+        assertEquals(new HttpRoute(new HttpHost("pay.example.com", 443, "https"), null, true), route.getRoute());
+        assertEquals(40, route.getMaxPerRoute());
+        assertEquals(500, route.toRequestConfig(config.toRequestConfig()).getSocketTimeout());
+        assertEquals(700, route.toRequestConfig(config.toRequestConfig()).getConnectTimeout());
+
+        // 其他client只受defaults影响
+        assertEquals(50, ClientConfigLoader.apply(ClientConfig.custom("other").build(), properties).getMaxTotal());
+    }
+
+    @Test
+    public void testGroupedProperties() throws IOException {
+        Properties properties = properties("client.loader.breakerFailureRate=40\n"
+                + "client.loader.breakerWindowSize=30\n"
+                + "client.loader.breakerMinimumCalls=10\n"
+                + "client.loader.breakerOpenDuration=2000\n"
+                + "client.loader.retryBudgetRatio=0.2\n"
+                + "client.loader.hedgeMinDelay=15\n"
+                + "client.loader.leaseWaitThreshold=25\n"
+                + "client.loader.tlsSessionCacheSize=500\n"
+                + "client.loader.dnsTtl=60000\n");
+        ClientConfig config = ClientConfigLoader.apply(ClientConfig.custom("loader").setCircuitBreakerOpen(5000, 7).setDnsCache(0, 9000).build(), properties);
+
+        assertEquals(40, config.getBreakerFailureRate(), 0.001);
+        assertEquals(30, config.getBreakerWindowSize());
+        assertEquals(10, config.getBreakerMinimumCalls());
+        assertEquals(2000, config.getBreakerOpenDuration());
+        assertEquals(0.2, config.getRetryBudgetRatio(), 0.001);
+        assertEquals(15, config.getHedgeMinDelay());
+        assertEquals(25, config.getLeaseWaitThreshold());
+        assertEquals(500, config.getTlsSessionCacheSize());
+        assertEquals(60000, config.getDnsTtl());
+        // 同一组中文件没有设置的值保留代码中注册的值
+        assertEquals(7, config.getBreakerHalfOpenProbes());
+        assertEquals(9000, config.getDnsFailureCooldown());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownProperty() throws IOException {
+        ClientConfigLoader.apply(ClientConfig.custom("loader").build(), properties("client.loader.maxTotl=80\n"));
+    }
+
+    @Test
+    public void testReloadLiveClient() throws IOException {
+        ClientRegistry.register(ClientConfig.custom("reload-test").setMaxTotal(10).setDefaultMaxPerRoute(5).setSocketTimeout(1000).build());
+        PooledHttpClient client = ClientRegistry.getClient("reload-test");
+        HttpHost host = new HttpHost("127.0.0.1", 8080, "http");
+        try {
+            ClientRegistry.reload(properties("client.reload-test.maxTotal=30\n"
+                    + "client.reload-test.defaultMaxPerRoute=8\n"
+                    + "client.reload-test.route.local.uri=http://127.0.0.1:8080\n"
+                    + "client.reload-test.route.local.maxPerRoute=20\n"
+                    + "client.reload-test.route.local.socketTimeout=200\n"));
+
+            // 同一个实例，连接池和超时在运行中修改
+            assertSame(client, ClientRegistry.getClient("reload-test"));
+            PoolingHttpClientConnectionManager cm = client.getConnectionManager();
+            assertEquals(30, cm.getMaxTotal());
+            assertEquals(8, cm.getDefaultMaxPerRoute());
+            assertEquals(20, cm.getMaxPerRoute(new HttpRoute(host)));
+            assertEquals(200, client.getRequestConfig(host).getSocketTimeout());
+            assertEquals(1000, client.getRequestConfig(new HttpHost("localhost", 8080, "http")).getSocketTimeout());
+
+            // 错误的配置不会应用，保留当前配置
+            ClientRegistry.reload(properties("client.reload-test.maxTotal=abc\n"));
+            assertEquals(30, cm.getMaxTotal());
+
+            // 去掉route覆盖之后恢复默认值
+            ClientRegistry.reload(properties("client.reload-test.maxTotal=30\n"));
+            assertEquals(5, cm.getDefaultMaxPerRoute());
+            assertEquals(5, cm.getMaxPerRoute(new HttpRoute(host)));
+            assertEquals(1000, client.getRequestConfig(host).getSocketTimeout());
+        } finally {
+            ClientRegistry.reload(new Properties());
+            ClientRegistry.close("reload-test");
+        }
+    }
+
+    @Test
+    public void testFileBeforeRegister() throws IOException {
+        try {
+            ClientRegistry.reload(properties("client.file-first.maxTotal=30\n"));
+            // 代码中的配置代替按文件补出的默认配置，文件中的配置仍然叠加在上面
+            ClientRegistry.register(ClientConfig.custom("file-first").setMaxTotal(10).setDefaultMaxPerRoute(5).build());
+            PooledHttpClient client = ClientRegistry.getClient("file-first");
+            assertEquals(30, client.getConnectionManager().getMaxTotal());
+            assertEquals(5, client.getConnectionManager().getDefaultMaxPerRoute());
+            try {
+                ClientRegistry.register(ClientConfig.custom("file-first").build());
+                fail();
+            } catch (IllegalStateException e) {
+                // 代码中只能注册一次
+            }
+        } finally {
+            ClientRegistry.reload(new Properties());
+            ClientRegistry.close("file-first");
+        }
+    }
+
+    @Test
+    public void testWatch() throws Exception {
+        ClientRegistry.register(ClientConfig.custom("watch-test").setMaxTotal(10).build());
+        PooledHttpClient client = ClientRegistry.getClient("watch-test");
+        File file = File.createTempFile("clients", ".properties");
+        try {
+            Files.write(file.toPath(), "client.watch-test.maxTotal=20\n".getBytes(StandardCharsets.UTF_8));
+            ClientRegistry.watch(file, 50);
+            assertEquals(20, client.getConnectionManager().getMaxTotal());
+
+            Files.write(file.toPath(), "client.watch-test.maxTotal=40\n".getBytes(StandardCharsets.UTF_8));
+            // 部分文件系统的修改时间精度是秒
+            file.setLastModified(file.lastModified() + 2000);
+            long deadline = System.currentTimeMillis() + 3000;
+            while (client.getConnectionManager().getMaxTotal() != 40 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals(40, client.getConnectionManager().getMaxTotal());
+        } finally {
+            ClientRegistry.unwatch();
+            ClientRegistry.reload(new Properties());
+            ClientRegistry.close("watch-test");
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package httpclientLearn.registry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import config.ClientConfig;
+
+public class ClientRegistryTest {
+
+    @Test
+    public void testSharedInstance() {
+        ClientRegistry.register(ClientConfig.custom("registry-test").setMaxTotal(10).setDefaultMaxPerRoute(5).build());
+
+        PooledHttpClient client = ClientRegistry.getClient("registry-test");
+        assertSame(client, ClientRegistry.getClient("registry-test"));
+        assertSame(client.getHttpClient(), ClientRegistry.getClient("registry-test").getHttpClient());
+        assertEquals(10, client.getConnectionManager().getMaxTotal());
+        assertEquals(5, client.getConnectionManager().getDefaultMaxPerRoute());
+
+        // 关闭之后再次获取会按原配置重新创建
+        ClientRegistry.close("registry-test");
+        PooledHttpClient recreated = ClientRegistry.getClient("registry-test");
+        assertNotSame(client, recreated);
+        ClientRegistry.close("registry-test");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDuplicateName() {
+        ClientRegistry.register(ClientConfig.custom("registry-dup").build());
+        ClientRegistry.register(ClientConfig.custom("registry-dup").build());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownName() {
+        ClientRegistry.getClient("registry-unknown");
+    }
+}
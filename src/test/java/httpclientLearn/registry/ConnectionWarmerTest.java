@@ -0,0 +1,116 @@
+package httpclientLearn.registry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.util.concurrent.SettableFuture;
+
+import config.ClientConfig;
+import httpclientLearn.LocalTestServer;
+import httpclientLearn.async.AsyncHttpClientHelper;
+import httpclientLearn.simple.HttpClientHelper;
+
+public class ConnectionWarmerTest {
+
+    private static final String CLIENT = "warmer-test";
+
+    private LocalTestServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalTestServer(true).start();
+    }
+
+    @After
+    public void tearDown() {
+        ClientRegistry.close(CLIENT);
+        server.stop();
+    }
+
+    @Test
+    public void testWarmUpAndKeepWarm() throws Exception {
+        ClientConfig config = ClientConfig.custom(CLIENT).setSslContext(LocalTestServer.clientSslContext()).setIdleTimeout(600).setMonitorPeriod(100)
+                .addWarmRoute(server.getBaseUri(), 4, 2).build();
+        HttpRoute route = config.getWarmRoutes().get(0).getRoute();
+        ClientRegistry.register(config);
+
+        PooledHttpClient client = ClientRegistry.getClient(CLIENT);
+        PooledAsyncClient async = ClientRegistry.getAsyncClient(CLIENT);
+        assertEquals(8, ClientRegistry.warmUp());
+        assertEquals(4, client.getWarmer().getOpened());
+        assertEquals(4, async.getWarmer().getOpened());
+        assertEquals(4, client.getConnectionManager().getStats(route).getAvailable());
+        assertEquals(4, async.getConnectionManager().getStats(route).getAvailable());
+
+        // 请求直接使用预热好的连接
+        assertNotNull(HttpClientHelper.getInstance(CLIENT).get(server.getBaseUri() + "/echo"));
+        assertNotNull(AsyncHttpClientHelper.getInstance(CLIENT).get(server.getBaseUri() + "/echo").get(5, TimeUnit.SECONDS));
+        assertEquals(4, client.getConnectionManager().getStats(route).getAvailable());
+        assertEquals(4, client.getWarmer().getOpened());
+
+        // 超出minIdle的连接按空闲超时清理，保留的minIdle个连接不会被清理后重建
+        Thread.sleep(2000);
+        assertEquals(2, client.getConnectionManager().getStats(route).getAvailable());
+        assertEquals(2, async.getConnectionManager().getStats(route).getAvailable());
+        assertEquals(4, client.getWarmer().getOpened());
+        assertEquals(4, async.getWarmer().getOpened());
+        assertEquals(200, HttpClientHelper.getInstance(CLIENT).get(server.getBaseUri() + "/echo").getStatusCode());
+    }
+
+    @Test
+    public void testKeepWarmDoesNotBlockMonitor() throws Exception {
+        ClientConfig config = ClientConfig.custom("warmer-blocking").addWarmRoute("http://localhost:8080", 2, 1).build();
+        final SettableFuture<Object> connect = SettableFuture.create();
+        final AtomicInteger leases = new AtomicInteger();
+        ConnectionWarmer<Object> warmer = new ConnectionWarmer<Object>(config, new PoolingHttpClientConnectionManager()) {
+            @Override
+            protected Future<Object> lease(HttpRoute route) {
+                leases.incrementAndGet();
+                return connect;
+            }
+
+            @Override
+            protected void release(Object conn) {
+            }
+        };
+        try {
+            // 连接迟迟建立不起来时保温在warmer的线程中等待，清理线程立即返回；上一轮没有结束时跳过
+            long start = System.currentTimeMillis();
+            warmer.keepWarm();
+            warmer.keepWarm();
+            assertTrue(System.currentTimeMillis() - start < 500);
+            long wait = System.currentTimeMillis() + 1000;
+            while (leases.get() == 0 && System.currentTimeMillis() < wait) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, leases.get());
+
+            connect.set(new Object());
+            wait = System.currentTimeMillis() + 1000;
+            do {
+                warmer.keepWarm();
+                Thread.sleep(10);
+            } while (leases.get() < 2 && System.currentTimeMillis() < wait);
+            assertEquals(2, leases.get());
+        } finally {
+            warmer.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMonitorPeriodMustBeShorterThanIdleTimeout() {
+        ClientConfig.custom("warmer-invalid").setIdleTimeout(1000).setMonitorPeriod(1000).addWarmRoute("http://localhost:8080", 2, 1).build();
+    }
+}
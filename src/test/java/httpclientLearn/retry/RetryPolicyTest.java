@@ -0,0 +1,183 @@
+package httpclientLearn.retry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import config.ClientConfig;
+import httpclientLearn.deadline.Deadline;
+import httpclientLearn.LocalTestServer;
+import httpclientLearn.async.AsyncHttpClientHelper;
+import httpclientLearn.dto.HttpResult;
+import httpclientLearn.metrics.ClientMetrics;
+import httpclientLearn.registry.ClientRegistry;
+import httpclientLearn.simple.HttpClientHelper;
+
+public class RetryPolicyTest {
+
+    private static final String RETRY_CLIENT = "retry-test";
+    private static final String HEDGE_CLIENT = "hedge-test";
+    private static final String SLOW_RETRY_CLIENT = "slow-retry-test";
+    private static final long SLOW = 2000;
+
+    private final AtomicInteger flaky = new AtomicInteger();
+    private final AtomicInteger slowOnce = new AtomicInteger();
+    private LocalTestServer server;
+
+    @BeforeClass
+    public static void register() {
+        ClientRegistry.register(ClientConfig.custom(RETRY_CLIENT).setMaxRetries(2).setRetryBackoff(10).build());
+        ClientRegistry.register(ClientConfig.custom(SLOW_RETRY_CLIENT).setMaxRetries(2).setRetryBackoff(5000).build());
+        ClientRegistry.register(ClientConfig.custom(HEDGE_CLIENT).setHedgePercentile(90).setHedgeMinDelay(20).build());
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalTestServer().registerHandler("/flaky*", new HttpRequestHandler() {
+            @Override
+            public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+                // 奇数次返回503
+                if (flaky.incrementAndGet() % 2 == 1) {
+                    response.setStatusCode(HttpStatus.SC_SERVICE_UNAVAILABLE);
+                    return;
+                }
+                response.setEntity(new StringEntity("ok"));
+            }
+        }).registerHandler("/slowonce*", new HttpRequestHandler() {
+            @Override
+            public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+                // 只有第一次请求很慢，对冲请求立即返回
+                if (slowOnce.incrementAndGet() == 1) {
+                    try {
+                        Thread.sleep(SLOW);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                response.setEntity(new StringEntity("ok"));
+            }
+        }).start();
+    }
+
+    @After
+    public void tearDown() {
+        ClientRegistry.close(RETRY_CLIENT);
+        ClientRegistry.close(HEDGE_CLIENT);
+        ClientRegistry.close(SLOW_RETRY_CLIENT);
+        server.stop();
+    }
+
+    @Test
+    public void testBudget() {
+        RetryBudget budget = new RetryBudget(0.1, 2);
+        assertTrue(budget.tryWithdraw());
+        assertTrue(budget.tryWithdraw());
+        assertFalse(budget.tryWithdraw());
+        for (int i = 0; i < 9; i++) {
+            budget.deposit();
+        }
+        assertFalse(budget.tryWithdraw());
+        budget.deposit();
+        assertTrue(budget.tryWithdraw());
+        // 不超过容量
+        for (int i = 0; i < 100; i++) {
+            budget.deposit();
+        }
+        assertEquals(2.0, budget.getBalance(), 0.001);
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+        HttpResult result = HttpClientHelper.getInstance(RETRY_CLIENT).get(server.getBaseUri() + "/flaky");
+        assertEquals(HttpStatus.SC_OK, result.getStatusCode());
+        assertEquals("ok", result.getResponseBodyAsString());
+        assertEquals(1, ClientRegistry.getClient(RETRY_CLIENT).getRetryPolicy().getRetryCount());
+
+        result = AsyncHttpClientHelper.getInstance(RETRY_CLIENT).get(server.getBaseUri() + "/flaky").get(5, TimeUnit.SECONDS);
+        assertEquals(HttpStatus.SC_OK, result.getStatusCode());
+        assertEquals(1, ClientRegistry.getAsyncClient(RETRY_CLIENT).getRetryPolicy().getRetryCount());
+
+        // POST不是幂等的，不重试
+        result = HttpClientHelper.getInstance(RETRY_CLIENT).post(server.getBaseUri() + "/flaky");
+        assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, result.getStatusCode());
+        assertEquals(1, ClientRegistry.getClient(RETRY_CLIENT).getRetryPolicy().getRetryCount());
+    }
+
+    @Test
+    public void testNoTimeToRetry() throws Exception {
+        // 退避时间超过截止时间，不重试，也不消耗重试预算
+        HttpResult result = HttpClientHelper.getInstance(SLOW_RETRY_CLIENT).get(server.getBaseUri() + "/flaky", null, null, Deadline.after(2, TimeUnit.SECONDS));
+        assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, result.getStatusCode());
+        RetryPolicy policy = ClientRegistry.getClient(SLOW_RETRY_CLIENT).getRetryPolicy();
+        assertEquals(0, policy.getRetryCount());
+        double balance = policy.getBudget().getBalance();
+
+        flaky.set(0);
+        result = AsyncHttpClientHelper.getInstance(SLOW_RETRY_CLIENT).get(server.getBaseUri() + "/flaky", null, null, Deadline.after(2, TimeUnit.SECONDS)).get(5, TimeUnit.SECONDS);
+        assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, result.getStatusCode());
+        policy = ClientRegistry.getAsyncClient(SLOW_RETRY_CLIENT).getRetryPolicy();
+        assertEquals(0, policy.getRetryCount());
+        assertEquals(balance, policy.getBudget().getBalance(), 0.001);
+    }
+
+    @Test
+    public void testHedgeDelayDefaultPort() {
+        RetryPolicy policy = new RetryPolicy(ClientConfig.custom(HEDGE_CLIENT).setHedgePercentile(90).setHedgeMinDelay(20).build());
+        ClientMetrics metrics = new ClientMetrics(HEDGE_CLIENT);
+        HttpRoute route = new HttpRoute(new HttpHost("api.example.com", 443, "https"), null, true);
+        for (int i = 0; i < RetryPolicy.MIN_HEDGE_SAMPLES; i++) {
+            metrics.recordRequest(route, HttpStatus.SC_OK, TimeUnit.MILLISECONDS.toNanos(50), 0, 0);
+        }
+        // uri中没有端口，也按指标中带默认端口的route计算
+        assertTrue(policy.hedgeDelay(metrics, URI.create("https://api.example.com/items")) >= TimeUnit.MILLISECONDS.toMicros(20));
+    }
+
+    @Test
+    public void testHedgeSync() throws Exception {
+        String echo = server.getBaseUri() + "/echo";
+        for (int i = 0; i < RetryPolicy.MIN_HEDGE_SAMPLES; i++) {
+            HttpClientHelper.getInstance(HEDGE_CLIENT).get(echo);
+        }
+        // 对冲延迟按host缓存，等缓存过期后按预热的样本计算
+        Thread.sleep(1100);
+        long start = System.currentTimeMillis();
+        HttpResult result = HttpClientHelper.getInstance(HEDGE_CLIENT).get(server.getBaseUri() + "/slowonce");
+        assertEquals("ok", result.getResponseBodyAsString());
+        assertTrue(System.currentTimeMillis() - start < SLOW);
+        // 两个请求到达服务端的先后不确定，慢的也可能是对冲请求，只检查发出了对冲
+        assertEquals(1, ClientRegistry.getClient(HEDGE_CLIENT).getRetryPolicy().getHedgeCount());
+    }
+
+    @Test
+    public void testHedgeAsync() throws Exception {
+        String echo = server.getBaseUri() + "/echo";
+        for (int i = 0; i < RetryPolicy.MIN_HEDGE_SAMPLES; i++) {
+            AsyncHttpClientHelper.getInstance(HEDGE_CLIENT).get(echo).get(5, TimeUnit.SECONDS);
+        }
+        Thread.sleep(1100);
+        long start = System.currentTimeMillis();
+        HttpResult result = AsyncHttpClientHelper.getInstance(HEDGE_CLIENT).get(server.getBaseUri() + "/slowonce").get(5, TimeUnit.SECONDS);
+        assertEquals("ok", result.getResponseBodyAsString());
+        assertTrue(System.currentTimeMillis() - start < SLOW);
+        assertEquals(1, ClientRegistry.getAsyncClient(HEDGE_CLIENT).getRetryPolicy().getHedgeCount());
+    }
+}
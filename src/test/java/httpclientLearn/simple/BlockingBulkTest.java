@@ -0,0 +1,123 @@
+package httpclientLearn.simple;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import config.ClientConfig;
+import httpclientLearn.LocalTestServer;
+import httpclientLearn.dto.BulkItem;
+import httpclientLearn.dto.BulkResult;
+import httpclientLearn.dto.HttpRequestSpec;
+import httpclientLearn.registry.ClientRegistry;
+
+public class BlockingBulkTest {
+
+    private static LocalTestServer server;
+
+    @BeforeClass
+    public static void start() throws Exception {
+        server = new LocalTestServer().start();
+    }
+
+    @AfterClass
+    public static void stop() {
+        server.stop();
+    }
+
+    @Test
+    public void testExecuteAll() {
+        List<HttpRequestSpec> requests = new ArrayList<HttpRequestSpec>();
+        for (int i = 0; i < 8; i++) {
+            requests.add(HttpRequestSpec.get(server.getBaseUri() + "/delay?ms=200&i=" + i));
+        }
+        requests.add(HttpRequestSpec.get("not a uri"));
+
+        long start = System.currentTimeMillis();
+        BulkResult result = HttpClientHelper.getInstance().executeAll(requests, 4, System.currentTimeMillis() + 10000);
+        long elapsed = System.currentTimeMillis() - start;
+        // 同一时刻最多4个请求，8个慢请求至少两轮
+        assertTrue(String.valueOf(elapsed), elapsed >= 390);
+        assertEquals(9, result.getItems().size());
+        assertEquals(8, result.getSuccessCount());
+        for (int i = 0; i < 8; i++) {
+            BulkItem item = result.getItems().get(i);
+            assertEquals(i, item.getIndex());
+            assertEquals("delayed 200", item.getResult().getResponseBodyAsString());
+        }
+        assertFalse(result.getItems().get(8).isSuccess());
+        assertFalse(result.isTimedOut());
+        result.release();
+    }
+
+    @Test
+    public void testDeadline() {
+        List<HttpRequestSpec> requests = new ArrayList<HttpRequestSpec>();
+        requests.add(HttpRequestSpec.get(server.getBaseUri() + "/delay?ms=50"));
+        requests.add(HttpRequestSpec.get(server.getBaseUri() + "/delay?ms=3000"));
+        requests.add(HttpRequestSpec.get(server.getBaseUri() + "/delay?ms=3000"));
+
+        long start = System.currentTimeMillis();
+        BulkResult result = HttpClientHelper.getInstance().executeAll(requests, 2, System.currentTimeMillis() + 300);
+        assertTrue(System.currentTimeMillis() - start < 2500);
+        assertTrue(result.isTimedOut());
+        assertTrue(result.getItems().get(0).isSuccess());
+        assertTrue(result.getItems().get(1).getError() instanceof TimeoutException);
+        assertTrue(result.getItems().get(2).getError() instanceof TimeoutException);
+        result.release();
+    }
+
+    @Test
+    public void testInterrupted() throws Exception {
+        final List<HttpRequestSpec> requests = new ArrayList<HttpRequestSpec>();
+        requests.add(HttpRequestSpec.get(server.getBaseUri() + "/delay?ms=300"));
+        requests.add(HttpRequestSpec.get(server.getBaseUri() + "/delay?ms=300"));
+        final AtomicReference<BulkResult> result = new AtomicReference<BulkResult>();
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        Thread caller = new Thread() {
+            @Override
+            public void run() {
+                result.set(HttpClientHelper.getInstance().executeAll(requests, 2, System.currentTimeMillis() + 10000));
+                interrupted.set(Thread.currentThread().isInterrupted());
+            }
+        };
+        caller.start();
+        Thread.sleep(100);
+        caller.interrupt();
+        caller.join(5000);
+
+        // 被中断时等待已经发出的请求结束之后才返回，并且保留中断标记
+        assertTrue(interrupted.get());
+        for (BulkItem item : result.get().getItems()) {
+            assertTrue(String.valueOf(item.getError()), item.isSuccess());
+        }
+        result.get().release();
+    }
+
+    @Test
+    public void testVirtualThreads() {
+        ClientRegistry.register(ClientConfig.custom("virtual-test").setVirtualThreads(true).build());
+        try {
+            List<HttpRequestSpec> requests = new ArrayList<HttpRequestSpec>();
+            for (int i = 0; i < 50; i++) {
+                requests.add(HttpRequestSpec.get(server.getBaseUri() + "/delay?ms=20&i=" + i));
+            }
+            // JDK 21以下退回到平台线程，结果相同
+            BulkResult result = HttpClientHelper.getInstance("virtual-test").executeAll(requests, 50, System.currentTimeMillis() + 10000);
+            assertEquals(50, result.getSuccessCount());
+            result.release();
+        } finally {
+            ClientRegistry.close("virtual-test");
+        }
+    }
+}
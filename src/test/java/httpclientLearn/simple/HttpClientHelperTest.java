@@ -1,12 +1,26 @@
 package httpclientLearn.simple;
 
+import static org.junit.Assert.assertEquals;
+
+import httpclientLearn.LocalTestServer;
 import httpclientLearn.dto.HttpResult;
+import httpclientLearn.dto.HttpStreamResult;
+import httpclientLearn.registry.ClientRegistry;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.util.EntityUtils;
 import org.junit.Test;
 
+import com.google.common.io.ByteStreams;
+
+import config.ClientConfig;
+
 public class HttpClientHelperTest {
 
     @Test
@@ -27,4 +41,55 @@ public class HttpClientHelperTest {
         System.out.println("==================================");
         HttpClientPool.shutdown();
     }
+
+    @Test
+    public void testStream() throws IOException {
+        LocalTestServer server = new LocalTestServer().start();
+        // 每个route只有一个连接，流没有归还连接时后续请求会获取连接超时
+        ClientRegistry.register(ClientConfig.custom("stream-test").setDefaultMaxPerRoute(1).setConnectionRequestTimeout(1000).build());
+        try {
+            HttpClientHelper helper = HttpClientHelper.getInstance("stream-test");
+            for (int i = 0; i < 3; i++) {
+                HttpStreamResult result = helper.getStream(server.getBaseUri() + "/echo/" + i);
+                try {
+                    assertEquals(200, result.getStatusCode());
+                    assertEquals("GET /echo/" + i, new String(ByteStreams.toByteArray(result.getInputStream()), result.getCharset()));
+                } finally {
+                    result.close();
+                }
+            }
+
+            // 没有读完就关闭
+            helper.postStream(server.getBaseUri() + "/echo", null, null, new byte[64 * 1024]).close();
+
+            String body = helper.get(server.getBaseUri() + "/echo", null, null, new ResponseHandler<String>() {
+                @Override
+                public String handleResponse(HttpResponse response) throws ClientProtocolException, IOException {
+                    return EntityUtils.toString(response.getEntity());
+                }
+            });
+            assertEquals("GET /echo", body);
+        } finally {
+            ClientRegistry.close("stream-test");
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testPooledBuffers() throws IOException {
+        LocalTestServer server = new LocalTestServer().start();
+        ClientRegistry.register(ClientConfig.custom("pooled-test").setPooledBuffers(true).build());
+        try {
+            try (HttpResult result = HttpClientHelper.getInstance("pooled-test").get(server.getBaseUri() + "/bytes?n=100000")) {
+                assertEquals(100000, result.getBody().remaining());
+                assertEquals((byte) 99999, result.getBody().get(99999));
+            }
+            try (HttpResult result = HttpClientHelper.getInstance("pooled-test").get(server.getBaseUri() + "/echo")) {
+                assertEquals("GET /echo", result.getResponseBodyAsString());
+            }
+        } finally {
+            ClientRegistry.close("pooled-test");
+            server.stop();
+        }
+    }
 }
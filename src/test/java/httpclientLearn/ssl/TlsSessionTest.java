@@ -0,0 +1,76 @@
+package httpclientLearn.ssl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.HttpHeaders;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import config.ClientConfig;
+import httpclientLearn.LocalTestServer;
+import httpclientLearn.async.AsyncHttpClientHelper;
+import httpclientLearn.metrics.ClientMetrics;
+import httpclientLearn.metrics.RouteMetrics;
+import httpclientLearn.registry.ClientRegistry;
+import httpclientLearn.simple.HttpClientHelper;
+
+public class TlsSessionTest {
+
+    private static final String CLIENT = "tls-test";
+    // 每个请求都关闭连接，强制下一个请求重新握手
+    private static final Map<String, String> CLOSE = Collections.singletonMap(HttpHeaders.CONNECTION, "close");
+
+    private LocalTestServer server;
+    private SSLContext sslContext;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalTestServer(true).start();
+        sslContext = LocalTestServer.clientSslContext();
+        ClientRegistry.register(ClientConfig.custom(CLIENT).setSslContext(sslContext).setTlsSessionCache(100, 300).build());
+    }
+
+    @After
+    public void tearDown() {
+        ClientRegistry.close(CLIENT);
+        server.stop();
+    }
+
+    @Test
+    public void testSessionResumedAcrossSyncAndAsync() throws Exception {
+        String uri = server.getBaseUri() + "/echo";
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(HttpClientHelper.getInstance(CLIENT).get(uri, CLOSE));
+        }
+        assertHandshakes(ClientRegistry.getClient(CLIENT).snapshotMetrics(), 1, 2);
+
+        // 异步client共用同一个SSLContext，第一次连接就能复用同步client建立的会话
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(AsyncHttpClientHelper.getInstance(CLIENT).get(uri, CLOSE).get(5, TimeUnit.SECONDS));
+        }
+        assertHandshakes(ClientRegistry.getAsyncClient(CLIENT).snapshotMetrics(), 0, 3);
+
+        assertEquals(100, sslContext.getClientSessionContext().getSessionCacheSize());
+        assertEquals(300, sslContext.getClientSessionContext().getSessionTimeout());
+    }
+
+    private static void assertHandshakes(ClientMetrics.Snapshot snapshot, long full, long resumed) {
+        long fullCount = 0;
+        long resumedCount = 0;
+        for (RouteMetrics.RouteSnapshot route : snapshot.getRoutes()) {
+            fullCount += route.getFullHandshake().getCount();
+            resumedCount += route.getResumedHandshake().getCount();
+        }
+        assertEquals(full, fullCount);
+        assertEquals(resumed, resumedCount);
+    }
+}
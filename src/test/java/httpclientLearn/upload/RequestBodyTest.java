@@ -0,0 +1,131 @@
+package httpclientLearn.upload;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestHandler;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import httpclientLearn.LocalTestServer;
+import httpclientLearn.async.AsyncHttpClientHelper;
+import httpclientLearn.dto.HttpResult;
+import httpclientLearn.simple.HttpClientHelper;
+
+public class RequestBodyTest {
+
+    private static LocalTestServer server;
+    private static byte[] data;
+    private static Path file;
+
+    @BeforeClass
+    public static void start() throws IOException {
+        data = new byte[1024 * 1024 + 17];
+        new Random(7).nextBytes(data);
+        file = Files.createTempFile("upload", ".bin");
+        Files.write(file, data);
+        // 回显收到的方法、字节数、CRC和传输方式
+        server = new LocalTestServer().registerHandler("/upload*", new HttpRequestHandler() {
+            @Override
+            public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException, IOException {
+                CRC32 crc = new CRC32();
+                long length = 0;
+                try (InputStream in = ((HttpEntityEnclosingRequest) request).getEntity().getContent()) {
+                    byte[] chunk = new byte[8192];
+                    for (int n; (n = in.read(chunk)) != -1; length += n) {
+                        crc.update(chunk, 0, n);
+                    }
+                }
+                Header encoding = request.getFirstHeader(HttpHeaders.TRANSFER_ENCODING);
+                response.setEntity(new StringEntity(request.getRequestLine().getMethod() + " " + length + " " + crc.getValue() + " "
+                        + (encoding != null ? encoding.getValue() : "length")));
+            }
+        }).start();
+    }
+
+    @AfterClass
+    public static void stop() throws IOException {
+        server.stop();
+        Files.deleteIfExists(file);
+    }
+
+    private static String expected(String method, byte[] bytes, String transfer) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return method + " " + bytes.length + " " + crc.getValue() + " " + transfer;
+    }
+
+    @Test
+    public void testFile() throws Exception {
+        String uri = server.getBaseUri() + "/upload";
+        HttpResult result = HttpClientHelper.getInstance().post(uri, RequestBody.of(file, ContentType.APPLICATION_OCTET_STREAM));
+        assertEquals(expected("POST", data, "length"), result.getResponseBodyAsString());
+
+        // 异步通过FileContentEncoder零拷贝发送
+        result = AsyncHttpClientHelper.getInstance().put(uri, RequestBody.of(file.toFile(), ContentType.APPLICATION_OCTET_STREAM)).get(10, TimeUnit.SECONDS);
+        assertEquals(expected("PUT", data, "length"), result.getResponseBodyAsString());
+        result.release();
+
+        result = AsyncHttpClientHelper.getInstance().post(uri, RequestBody.of(file, ContentType.APPLICATION_OCTET_STREAM).chunked()).get(10, TimeUnit.SECONDS);
+        assertEquals(expected("POST", data, "chunked"), result.getResponseBodyAsString());
+        result.release();
+    }
+
+    @Test
+    public void testInputStream() throws Exception {
+        String uri = server.getBaseUri() + "/upload";
+        RequestBody body = RequestBody.of(new ByteArrayInputStream(data), ContentType.APPLICATION_OCTET_STREAM);
+        assertTrue(body.isChunked());
+        assertFalse(body.isRepeatable());
+        assertEquals(expected("POST", data, "chunked"), HttpClientHelper.getInstance().post(uri, body).getResponseBodyAsString());
+
+        HttpResult result = AsyncHttpClientHelper.getInstance().post(uri, RequestBody.of(new ByteArrayInputStream(data), data.length, ContentType.APPLICATION_OCTET_STREAM))
+                .get(10, TimeUnit.SECONDS);
+        assertEquals(expected("POST", data, "length"), result.getResponseBodyAsString());
+        result.release();
+    }
+
+    @Test
+    public void testByteBuffer() throws Exception {
+        String uri = server.getBaseUri() + "/upload";
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data).flip();
+        direct.position(10);
+        byte[] tail = new byte[data.length - 10];
+        System.arraycopy(data, 10, tail, 0, tail.length);
+
+        RequestBody body = RequestBody.of(direct, ContentType.APPLICATION_OCTET_STREAM);
+        // 可以重复发送，原buffer不变
+        for (int i = 0; i < 2; i++) {
+            HttpResult result = AsyncHttpClientHelper.getInstance().put(uri, body).get(10, TimeUnit.SECONDS);
+            assertEquals(expected("PUT", tail, "length"), result.getResponseBodyAsString());
+            result.release();
+        }
+        assertEquals(expected("POST", tail, "length"), HttpClientHelper.getInstance().post(uri, body).getResponseBodyAsString());
+        assertEquals(10, direct.position());
+
+        ByteBuffer heap = ByteBuffer.wrap(data, 10, tail.length);
+        assertEquals(expected("PUT", tail, "length"), HttpClientHelper.getInstance().put(uri, RequestBody.of(heap, null)).getResponseBodyAsString());
+    }
+}